@@ -0,0 +1,263 @@
+package gov.gsa.pivconformance.benchmarks;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.icao.DataGroupHash;
+import org.bouncycastle.asn1.icao.LDSSecurityObject;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvBufferBuilder;
+import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
+
+/**
+ * Raw containers, as returned by GET DATA, for the benchmarks. By default they are synthetic but
+ * well-formed: signed containers carry CMS signatures from a throwaway RSA 2048 key that verify.
+ *
+ * Setting the system property piv.fixtures.dir to a directory of container dumps (the
+ * piv-artifacts/*.dat files written by PIVDataObject.dump()) replaces the synthetic containers
+ * with the captured ones, one file per container named after APDUConstants.getFileNameForOid().
+ */
+public final class ContainerFixtures {
+	public static final String FIXTURES_DIR_PROPERTY = "piv.fixtures.dir";
+
+	private static final String PIV_CHUID_SECURITY_OBJECT_OID = "2.16.840.1.101.3.6.1";
+	private static final String PIV_BIOMETRIC_OBJECT_OID = "2.16.840.1.101.3.6.2";
+	private static final String LDS_SECURITY_OBJECT_OID = "2.23.136.1.1.1";
+	private static final int CBEFF_HEADER_LENGTH = 88;
+
+	private static ContainerFixtures s_instance;
+
+	private final Map<String, byte[]> m_containers;
+	private final Random m_random = new Random(734L);
+	private KeyPair m_keyPair;
+	private X509CertificateHolder m_signerCert;
+
+	/**
+	 * Gets the fixtures, building them on first use
+	 *
+	 * @return the fixtures
+	 */
+	public static synchronized ContainerFixtures getInstance() {
+		if (s_instance == null) {
+			try {
+				s_instance = new ContainerFixtures();
+			} catch (Exception e) {
+				throw new IllegalStateException("Unable to build container fixtures", e);
+			}
+		}
+		return s_instance;
+	}
+
+	private ContainerFixtures() throws Exception {
+		if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+			Security.addProvider(new BouncyCastleProvider());
+		}
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+		kpg.initialize(2048, new SecureRandom());
+		m_keyPair = kpg.generateKeyPair();
+		m_signerCert = selfSignedCert("CN=Benchmark Content Signer, O=PIV Conformance");
+
+		Map<String, byte[]> containers = new LinkedHashMap<String, byte[]>();
+		containers.put(APDUConstants.CARD_CAPABILITY_CONTAINER_OID, cardCapabilityContainer());
+		containers.put(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID, cardHolderUniqueIdentifier());
+		containers.put(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, certificateContainer());
+		containers.put(APDUConstants.CARDHOLDER_FINGERPRINTS_OID, biometricContainer(TagConstants.FINGERPRINT_I_AND_II_TAG, 1024));
+		containers.put(APDUConstants.CARDHOLDER_FACIAL_IMAGE_OID, biometricContainer(TagConstants.IMAGE_FOR_VISUAL_VERIFICATION_TAG, 12000));
+		containers.put(APDUConstants.SECURITY_OBJECT_OID, securityObject(containers));
+
+		String dir = System.getProperty(FIXTURES_DIR_PROPERTY);
+		if (dir != null) {
+			for (String oid : containers.keySet()) {
+				File f = new File(dir, APDUConstants.getFileNameForOid(oid) + ".dat");
+				if (f.isFile()) {
+					containers.put(oid, Files.readAllBytes(f.toPath()));
+				}
+			}
+		}
+		m_containers = Collections.unmodifiableMap(containers);
+	}
+
+	/**
+	 * Gets a raw container
+	 *
+	 * @param oid container OID
+	 * @return the container, which callers must not modify
+	 */
+	public byte[] getContainer(String oid) {
+		byte[] rv = m_containers.get(oid);
+		if (rv == null) {
+			throw new IllegalArgumentException("No fixture for " + oid);
+		}
+		return rv;
+	}
+
+	public Map<String, byte[]> getContainers() {
+		return m_containers;
+	}
+
+	private byte[] cardCapabilityContainer() {
+		BerTlvBufferBuilder b = new BerTlvBufferBuilder(64);
+		byte[] cardIdentifier = new byte[21];
+		m_random.nextBytes(cardIdentifier);
+		b.addBytes(TagConstants.CARD_IDENTIFIER_TAG, cardIdentifier, 0, cardIdentifier.length);
+		b.addBytes(TagConstants.CAPABILITY_CONTAINER_VERSION_NUMBER_TAG, new byte[] { 0x21 }, 0, 1);
+		b.addBytes(TagConstants.CAPABILITY_GRAMMAR_VERSION_NUMBER_TAG, new byte[] { 0x21 }, 0, 1);
+		b.putHeader(TagConstants.APPLICATIONS_CARDURL_TAG, 0);
+		b.addBytes(TagConstants.PKCS15_TAG, new byte[] { 0x00 }, 0, 1);
+		b.addBytes(TagConstants.REGISTERED_DATA_MODEL_NUMBER_TAG, new byte[] { 0x10 }, 0, 1);
+		b.putHeader(TagConstants.ACCESS_CONTROL_RULE_TABLE_TAG, 0);
+		b.putHeader(TagConstants.CARD_APDUS_TAG, 0);
+		b.putHeader(TagConstants.REDIRECTION_TAG_TAG, 0);
+		b.putHeader(TagConstants.CAPABILITY_TUPLES_TAG, 0);
+		b.putHeader(TagConstants.STATUS_TUPLES_TAG, 0);
+		b.putHeader(TagConstants.NEXT_CCC_TAG, 0);
+		b.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0);
+		return wrap(b.toByteArray());
+	}
+
+	/**
+	 * CHUID with FASC-N, GUID and expiration date, signed (detached) over those tags and the
+	 * error detection code, the same content CardHolderUniqueIdentifier.decode() rebuilds
+	 */
+	private byte[] cardHolderUniqueIdentifier() throws Exception {
+		BerTlvBufferBuilder b = new BerTlvBufferBuilder(2048);
+		byte[] fascn = new byte[25];
+		byte[] guid = new byte[16];
+		m_random.nextBytes(fascn);
+		m_random.nextBytes(guid);
+		byte[] expiration = "20301231".getBytes("US-ASCII");
+		b.addBytes(TagConstants.FASC_N_TAG, fascn, 0, fascn.length);
+		b.addBytes(TagConstants.GUID_TAG, guid, 0, guid.length);
+		b.addBytes(TagConstants.CHUID_EXPIRATION_DATE_TAG, expiration, 0, expiration.length);
+
+		BerTlvBufferBuilder signed = new BerTlvBufferBuilder(64);
+		signed.put(b.toByteArray(), 0, b.length());
+		signed.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0);
+		byte[] signature = sign(PIV_CHUID_SECURITY_OBJECT_OID, signed.toByteArray(), false);
+
+		b.addBytes(TagConstants.ISSUER_ASYMMETRIC_SIGNATURE_TAG, signature, 0, signature.length);
+		b.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0);
+		return wrap(b.toByteArray());
+	}
+
+	private byte[] certificateContainer() throws Exception {
+		byte[] cert = selfSignedCert("CN=Benchmark PIV Authentication, O=PIV Conformance").getEncoded();
+		BerTlvBufferBuilder b = new BerTlvBufferBuilder(cert.length + 16);
+		b.addBytes(TagConstants.CERTIFICATE_TAG, cert, 0, cert.length);
+		b.addBytes(TagConstants.CERTINFO_TAG, new byte[] { 0x00 }, 0, 1);
+		b.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0);
+		return wrap(b.toByteArray());
+	}
+
+	/**
+	 * Biometric container holding a CBEFF record: patron header, biometric data block and a
+	 * signature block signed (detached) over the header and data block
+	 */
+	private byte[] biometricContainer(byte[] tag, int bdbLength) throws Exception {
+		byte[] header = new byte[CBEFF_HEADER_LENGTH];
+		header[0] = 0x03; // patron header version
+		header[1] = 0x0D; // SBH security options: signed
+		header[2] = (byte) (bdbLength >>> 24);
+		header[3] = (byte) (bdbLength >>> 16);
+		header[4] = (byte) (bdbLength >>> 8);
+		header[5] = (byte) bdbLength;
+		System.arraycopy(new byte[] { 20, 26, 1, 1, 0, 0, 0, 'Z' }, 0, header, 12, 8); // creation date
+		System.arraycopy(new byte[] { 20, 26, 1, 1, 0, 0, 0, 'Z' }, 0, header, 20, 8); // validity from
+		System.arraycopy(new byte[] { 20, 32, 1, 1, 0, 0, 0, 'Z' }, 0, header, 28, 8); // validity to
+		byte[] signedContent = new byte[CBEFF_HEADER_LENGTH + bdbLength];
+		System.arraycopy(header, 0, signedContent, 0, CBEFF_HEADER_LENGTH);
+		byte[] bdb = new byte[bdbLength];
+		m_random.nextBytes(bdb);
+		System.arraycopy(bdb, 0, signedContent, CBEFF_HEADER_LENGTH, bdbLength);
+
+		// The signature block length is part of the signed header, so sign until it is stable
+		byte[] signature = new byte[0];
+		int sbLength;
+		do {
+			sbLength = signature.length;
+			signedContent[6] = (byte) (sbLength >>> 8);
+			signedContent[7] = (byte) sbLength;
+			signature = sign(PIV_BIOMETRIC_OBJECT_OID, signedContent, false);
+		} while (signature.length != sbLength);
+
+		byte[] cbeff = Arrays.copyOf(signedContent, signedContent.length + signature.length);
+		System.arraycopy(signature, 0, cbeff, signedContent.length, signature.length);
+		BerTlvBufferBuilder b = new BerTlvBufferBuilder(cbeff.length + 16);
+		b.addBytes(tag, cbeff, 0, cbeff.length);
+		b.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0);
+		return wrap(b.toByteArray());
+	}
+
+	/**
+	 * Security object mapping data groups 1 and 2 to the CHUID and facial image, with an
+	 * LDSSecurityObject holding their SHA-256 hashes
+	 */
+	private byte[] securityObject(Map<String, byte[]> containers) throws Exception {
+		byte[] mapping = {
+				0x01, (byte) (APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_ID >>> 8), (byte) APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_ID,
+				0x02, (byte) (APDUConstants.CARDHOLDER_FACIAL_IMAGE_ID >>> 8), (byte) APDUConstants.CARDHOLDER_FACIAL_IMAGE_ID };
+		MessageDigest md = MessageDigest.getInstance("SHA-256");
+		DataGroupHash[] hashes = {
+				new DataGroupHash(1, new DEROctetString(md.digest(containers.get(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID)))),
+				new DataGroupHash(2, new DEROctetString(md.digest(containers.get(APDUConstants.CARDHOLDER_FACIAL_IMAGE_OID)))) };
+		LDSSecurityObject lds = new LDSSecurityObject(new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256), hashes);
+		byte[] so = sign(LDS_SECURITY_OBJECT_OID, lds.getEncoded(ASN1Encoding.DER), true);
+
+		BerTlvBufferBuilder b = new BerTlvBufferBuilder(so.length + 32);
+		b.addBytes(TagConstants.MAPPING_OF_DG_TO_CONTAINER_ID_TAG, mapping, 0, mapping.length);
+		b.addBytes(TagConstants.SECURITY_OBJECT_TAG, so, 0, so.length);
+		b.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0);
+		return wrap(b.toByteArray());
+	}
+
+	private X509CertificateHolder selfSignedCert(String dn) throws Exception {
+		X500Name name = new X500Name(dn);
+		Date notBefore = new Date(System.currentTimeMillis() - 86400000L);
+		Date notAfter = new Date(System.currentTimeMillis() + 365 * 86400000L);
+		JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name,
+				BigInteger.valueOf(m_random.nextInt() & 0x7fffffff), notBefore, notAfter, name, m_keyPair.getPublic());
+		return builder.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider("BC").build(m_keyPair.getPrivate()));
+	}
+
+	private byte[] sign(String contentType, byte[] content, boolean encapsulate) throws Exception {
+		CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+		gen.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().setProvider("BC").build())
+				.build(new JcaContentSignerBuilder("SHA256withRSA").setProvider("BC").build(m_keyPair.getPrivate()), m_signerCert));
+		gen.addCertificate(m_signerCert);
+		return gen.generate(new CMSProcessableByteArray(new ASN1ObjectIdentifier(contentType), content), encapsulate)
+				.toASN1Structure().getEncoded(ASN1Encoding.DER);
+	}
+
+	private static byte[] wrap(byte[] value) {
+		BerTlvBufferBuilder b = new BerTlvBufferBuilder(value.length + 4);
+		b.addBytes(APDUConstants.DATA, value, 0, value.length);
+		return b.toByteArray();
+	}
+}
@@ -0,0 +1,50 @@
+package gov.gsa.pivconformance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObjectFactory;
+
+/**
+ * Creates and decodes a data object from a raw container, as the conformance atoms do after
+ * each GET DATA
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DecodeBenchmark {
+
+	@Param({ APDUConstants.CARD_CAPABILITY_CONTAINER_OID, APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID,
+			APDUConstants.SECURITY_OBJECT_OID, APDUConstants.CARDHOLDER_FINGERPRINTS_OID,
+			APDUConstants.CARDHOLDER_FACIAL_IMAGE_OID, APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID })
+	public String oid;
+
+	private byte[] m_container;
+
+	@Setup
+	public void setUp() {
+		m_container = ContainerFixtures.getInstance().getContainer(oid);
+		if (!decode()) {
+			throw new IllegalStateException("Fixture for " + APDUConstants.oidNameMap.get(oid) + " does not decode");
+		}
+	}
+
+	@Benchmark
+	public boolean decode() {
+		PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(oid);
+		o.setOID(oid);
+		o.setContainerName(APDUConstants.getFileNameForOid(oid));
+		o.setBytes(m_container);
+		return o.decode();
+	}
+}
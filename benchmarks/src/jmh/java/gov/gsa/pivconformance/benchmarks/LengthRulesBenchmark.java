@@ -0,0 +1,55 @@
+package gov.gsa.pivconformance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.ContainerLengthReport;
+import gov.gsa.pivconformance.cardlib.tlv.TagBoundaryManager;
+import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
+
+/**
+ * Checks tag lengths against the SP 800-73-4 rules, one tag at a time by container name and by
+ * container id, and for a whole container in one pass
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LengthRulesBenchmark {
+
+	private TagBoundaryManager m_rules;
+	private int m_containerId;
+	private BerTag m_tag;
+	private byte[] m_container;
+
+	@Setup
+	public void setUp() {
+		m_rules = TagBoundaryManager.getInstance();
+		m_containerId = TagBoundaryManager.getContainerId(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID);
+		m_tag = new BerTag(TagConstants.GUID_TAG);
+		m_container = ContainerFixtures.getInstance().getContainer(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID);
+	}
+
+	@Benchmark
+	public int lengthDeltaByName() throws Exception {
+		return m_rules.lengthDelta(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_NAME, m_tag, 16);
+	}
+
+	@Benchmark
+	public int lengthDeltaById() throws Exception {
+		return m_rules.lengthDelta(m_containerId, m_tag, 16);
+	}
+
+	@Benchmark
+	public ContainerLengthReport validate() {
+		return TagBoundaryManager.validate(m_containerId, m_container);
+	}
+}
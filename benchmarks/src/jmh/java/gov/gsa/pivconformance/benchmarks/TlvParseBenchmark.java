@@ -0,0 +1,74 @@
+package gov.gsa.pivconformance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvs;
+import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
+import gov.gsa.pivconformance.cardlib.tlv.IBerTlvVisitor;
+
+/**
+ * Parses raw containers into TLV trees, copying values, as views over the container, and by
+ * walking them without building a tree
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TlvParseBenchmark {
+
+	@Param({ APDUConstants.CARD_CAPABILITY_CONTAINER_OID, APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID,
+			APDUConstants.SECURITY_OBJECT_OID, APDUConstants.CARDHOLDER_FACIAL_IMAGE_OID })
+	public String oid;
+
+	private byte[] m_container;
+	private BerTlvParser m_parser;
+	private BerTlvParser m_viewParser;
+
+	@Setup
+	public void setUp() {
+		m_container = ContainerFixtures.getInstance().getContainer(oid);
+		m_parser = new BerTlvParser(new CCTTlvLogger(TlvParseBenchmark.class));
+		m_viewParser = new BerTlvParser(new CCTTlvLogger(TlvParseBenchmark.class), true);
+	}
+
+	@Benchmark
+	public BerTlvs parse() {
+		return m_parser.parse(m_container);
+	}
+
+	@Benchmark
+	public BerTlvs parseView() {
+		return m_viewParser.parse(m_container);
+	}
+
+	@Benchmark
+	public void walk(final Blackhole bh) {
+		m_parser.walk(m_container, new IBerTlvVisitor() {
+			@Override
+			public Action onTagStart(BerTag aTag, int aDepth, int aOffset, int aLength) {
+				bh.consume(aLength);
+				return aDepth == 0 ? Action.DESCEND : Action.SKIP;
+			}
+
+			@Override
+			public void onPrimitive(BerTag aTag, int aDepth, byte[] aBuf, int aOffset, int aLength) {
+			}
+
+			@Override
+			public void onTagEnd(BerTag aTag, int aDepth) {
+			}
+		});
+	}
+}
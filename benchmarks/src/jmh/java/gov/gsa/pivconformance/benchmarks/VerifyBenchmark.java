@@ -0,0 +1,78 @@
+package gov.gsa.pivconformance.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObjectFactory;
+import gov.gsa.pivconformance.cardlib.card.client.SignatureVerifier;
+import gov.gsa.pivconformance.cardlib.card.client.SignedPIVDataObject;
+
+/**
+ * Verifies the signature of a decoded signed container. The CHUID is decoded first so that its
+ * signer certificate is available to the other containers, as it is during a conformance run.
+ * Verdicts are memoized by {@link SignatureVerifier}, so verifySignature empties the memo before
+ * each call to measure CMS verification, and verifySignatureMemoHit measures the memo lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VerifyBenchmark {
+
+	@Param({ APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID, APDUConstants.SECURITY_OBJECT_OID,
+			APDUConstants.CARDHOLDER_FINGERPRINTS_OID, APDUConstants.CARDHOLDER_FACIAL_IMAGE_OID })
+	public String oid;
+
+	private SignedPIVDataObject m_object;
+
+	/**
+	 * Empties the signature memo before every call, so each verification is done in full
+	 */
+	@State(Scope.Thread)
+	public static class EmptyMemo {
+		@Setup(Level.Invocation)
+		public void clear() {
+			SignatureVerifier.getInstance().clear();
+		}
+	}
+
+	@Setup
+	public void setUp() {
+		decode(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID);
+		m_object = (SignedPIVDataObject) decode(oid);
+		if (!m_object.verifySignature()) {
+			throw new IllegalStateException("Fixture for " + APDUConstants.oidNameMap.get(oid) + " does not verify");
+		}
+	}
+
+	private static PIVDataObject decode(String oid) {
+		PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(oid);
+		o.setOID(oid);
+		o.setContainerName(APDUConstants.getFileNameForOid(oid));
+		o.setBytes(ContainerFixtures.getInstance().getContainer(oid));
+		if (!o.decode()) {
+			throw new IllegalStateException("Fixture for " + APDUConstants.oidNameMap.get(oid) + " does not decode");
+		}
+		return o;
+	}
+
+	@Benchmark
+	public boolean verifySignature(EmptyMemo memo) {
+		return m_object.verifySignature();
+	}
+
+	@Benchmark
+	public boolean verifySignatureMemoHit() {
+		return m_object.verifySignature();
+	}
+}
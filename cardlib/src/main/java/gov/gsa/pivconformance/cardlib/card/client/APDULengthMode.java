@@ -0,0 +1,13 @@
+package gov.gsa.pivconformance.cardlib.card.client;
+
+/**
+ * How GET DATA commands are encoded
+ */
+public enum APDULengthMode {
+	// Short APDUs, with large containers retrieved 256 bytes at a time using GET RESPONSE
+	SHORT,
+	// Extended-length APDUs, so that a container comes back in one response
+	EXTENDED,
+	// Extended-length APDUs if the card and reader accept them, falling back to short APDUs otherwise
+	AUTO
+}
@@ -1,5 +1,6 @@
 package gov.gsa.pivconformance.cardlib.card.client;
 
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvBufferBuilder;
 import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -189,6 +190,64 @@ public class APDUUtils {
         return rv_pivGenerate;
     }
 
+    /**
+     *
+     * Return APDU value for GET DATA of one data object
+     *
+     * @param tag tag of the data object, as in APDUConstants.oidMAP
+     * @param extended true to encode an extended-length APDU, with Le asking for up to 65536 bytes
+     * @return Byte array with GET DATA APDU
+     */
+    public static byte[] PIVGetDataAPDU(byte[] tag, boolean extended) {
+        int lc = 2 + tag.length;
+        int header = extended ? 7 : 5;
+        byte[] rv_pivGetData = new byte[header + lc + (extended ? 2 : 1)];
+        rv_pivGetData[0] = APDUConstants.COMMAND;
+        rv_pivGetData[1] = APDUConstants.GET;
+        rv_pivGetData[2] = 0x3f;
+        rv_pivGetData[3] = (byte) 0xff;
+        if(extended) {
+            // 00 Lc1 Lc2
+            rv_pivGetData[5] = (byte) (lc >> 8);
+            rv_pivGetData[6] = (byte) lc;
+        } else {
+            rv_pivGetData[4] = (byte) lc;
+        }
+        rv_pivGetData[header] = TagConstants.DATA_FIELD_TAG;
+        rv_pivGetData[header + 1] = (byte) tag.length;
+        System.arraycopy(tag, 0, rv_pivGetData, header + 2, tag.length);
+        // Le is left 00, or 00 00 for extended APDUs
+        return rv_pivGetData;
+    }
+
+    /**
+     *
+     * Reads whether a card accepts extended-length APDUs from the card capabilities in its ATR
+     * historical bytes (ISO/IEC 7816-4, third software function table, tag 73)
+     *
+     * @param historicalBytes historical bytes of the ATR
+     * @return TRUE or FALSE if the card capabilities say so, or null if they are not there
+     */
+    public static Boolean extendedLengthFromHistoricalBytes(byte[] historicalBytes) {
+        // Only the compact-TLV format, category indicator 0x80, carries card capabilities
+        if(historicalBytes == null || historicalBytes.length < 2 || (historicalBytes[0] & 0xFF) != 0x80) {
+            return null;
+        }
+        int i = 1;
+        while(i < historicalBytes.length) {
+            int tag = (historicalBytes[i] >> 4) & 0x0F;
+            int length = historicalBytes[i] & 0x0F;
+            if(i + 1 + length > historicalBytes.length) {
+                return null;
+            }
+            if(tag == 0x7 && length >= 3) {
+                return (historicalBytes[i + 3] & 0x40) != 0;
+            }
+            i += 1 + length;
+        }
+        return null;
+    }
+
     /**
      *
      * @param data
@@ -280,31 +339,43 @@ public class APDUUtils {
 
         if(tag == null || value == null)
             throw new IllegalArgumentException("Null buffer passed into getTLV().");
-        byte[] rv = null;
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        int numberLenBytes = (value == null) ? 0 : (value.length > 127) ? 2 : 1;
-        try {
-            // Tag
-            os.write(tag);
-            // Length & value
-            if (numberLenBytes == 2) {
-                os.write((byte) ((0x80 + numberLenBytes) & 0xff));
-                os.write((byte) (((value.length & 0xff00) >> 8) & 0xff));
-                os.write((byte) (value.length & 0x00ff));
-                os.write(value);
-            } else if (numberLenBytes == 1) {
-                os.write((byte) (value.length & 0xff));
-                os.write(value);
-            } else if (numberLenBytes == 0) {
-                os.write(0x00);
-            }
-        } catch (IOException e) {
-            s_logger.error("Failed to create TLV value: {}" , e.getMessage());
-            return rv;
-        }
+        BerTlvBufferBuilder builder = new BerTlvBufferBuilder(getTLVLength(tag.length, value.length));
+        putTLV(builder, tag, value, 0, value.length);
+        return builder.getBuffer().array();
+    }
+
+    /**
+     *
+     * Helper function that writes a TLV into a builder with the same encoding as getTLV(), which
+     * uses a two-byte length for any value longer than 127 bytes
+     *
+     * @param builder Builder to write into
+     * @param tag  Byte array with tag info
+     * @param value Byte array holding the value
+     * @param offset Offset of the value
+     * @param length Length of the value
+     */
+    public static final void putTLV(BerTlvBufferBuilder builder, byte[] tag, byte[] value, int offset, int length) {
+        builder.putHeader(tag, length, getTLVLengthBytesCount(length));
+        builder.put(value, offset, length);
+    }
+
+    /**
+     *
+     * Helper function that returns the size of the TLV that getTLV() would return
+     *
+     * @param tagLength Number of tag bytes
+     * @param valueLength Number of value bytes
+     * @return Number of bytes in the TLV
+     */
+    public static final int getTLVLength(int tagLength, int valueLength) {
+        return tagLength + getTLVLengthBytesCount(valueLength) + valueLength;
+    }
 
-        rv = os.toByteArray();
-        return rv;
+    private static int getTLVLengthBytesCount(int valueLength) {
+        if (valueLength > 0xFFFF)
+            return BerTlvBufferBuilder.getLengthBytesCount(valueLength);
+        return (valueLength > 127) ? 3 : 1;
     }
 
     /**
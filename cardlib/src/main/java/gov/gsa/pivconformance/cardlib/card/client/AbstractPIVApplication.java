@@ -1,10 +1,9 @@
 package gov.gsa.pivconformance.cardlib.card.client;
 
 import gov.gsa.pivconformance.cardlib.tlv.BerTag;
-import gov.gsa.pivconformance.cardlib.tlv.BerTlv;
 import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
-import gov.gsa.pivconformance.cardlib.tlv.BerTlvs;
 import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
+import gov.gsa.pivconformance.cardlib.tlv.IBerTlvVisitor;
 import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
 import gov.gsa.pivconformance.cardlib.utils.PCSCWrapper;
 
@@ -29,8 +28,9 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
 
     // slf4j will thunk this through to an appropriately configured logging library
     private static final Logger s_logger = LoggerFactory.getLogger(AbstractPIVApplication.class);
-    private CommandAPDU m_lastCommandAPDU = null;
-    private ResponseAPDU m_lastResponseAPDU;
+    private RequestAPDUWrapper m_lastCommandAPDU = null;
+    private ResponseAPDUWrapper m_lastResponseAPDU;
+    private APDULengthMode m_lengthMode = APDULengthMode.AUTO;
 
     /**
      *
@@ -59,28 +59,28 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             PCSCWrapper pcsc = PCSCWrapper.getInstance();
 
             //Construct APDU command using APDUUtils and applicationAID that was passed in.
-            CommandAPDU cmd = new CommandAPDU(APDUUtils.PIVSelectAPDU(applicationAID.getBytes()));
+            RequestAPDUWrapper cmd = new RequestAPDUWrapper(APDUUtils.PIVSelectAPDU(applicationAID.getBytes()));
             m_lastCommandAPDU = cmd; m_lastResponseAPDU = null;
             // Transmit command and get response
-            ResponseAPDU response = pcsc.transmit(channel, cmd);
+            ResponseAPDUWrapper response = pcsc.transmit(cardHandle, channel, cmd);
             m_lastResponseAPDU = response;
-            s_logger.debug("Response to SELECT command: {} {}", String.format("0x%02X", response.getSW1()), String.format("0x%02X", response.getSW2()));
+            s_logger.debug("Response to SELECT command: {} {}", String.format("0x%02X", response.getSw1()), String.format("0x%02X", response.getSw2()));
 
             //Check for Successful execution status word
-            if(response.getSW() != APDUConstants.SUCCESSFUL_EXEC) {
+            if(response.getSw() != APDUConstants.SUCCESSFUL_EXEC) {
             	
             	// XXX *** TODO: handle 61XX
-            	if(response.getSW1() == 0x61) {
+            	if(response.getSw1() == 0x61) {
             		s_logger.info("SW1 == 61");
             		return MiddlewareStatus.PIV_OK;
             	}
 
-                if(response.getSW() == APDUConstants.APP_NOT_FOUND){
+                if(response.getSw() == APDUConstants.APP_NOT_FOUND){
                     s_logger.info("Card application not found");
                     return MiddlewareStatus.PIV_CARD_APPLICATION_NOT_FOUND;
                 }
 
-                s_logger.error("Error selecting card application, failed with error: {}", Integer.toHexString(response.getSW()));
+                s_logger.error("Error selecting card application, failed with error: {}", Integer.toHexString(response.getSw()));
                 return MiddlewareStatus.PIV_CONNECTION_FAILURE;
             }
 
@@ -131,18 +131,18 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             byte[] rawAPDU = baos.toByteArray();
             //s_logger.error("VERIFY APDU: {}", Hex.encodeHexString(rawAPDU));
             CardChannel channel = cardHandle.getCurrentChannel();
-            CommandAPDU verifyApdu = new CommandAPDU(rawAPDU);
-            ResponseAPDU resp = null;
+            RequestAPDUWrapper verifyApdu = new RequestAPDUWrapper(rawAPDU);
+            ResponseAPDUWrapper resp = null;
             try {
             	PCSCWrapper pcsc = PCSCWrapper.getInstance();
                 m_lastCommandAPDU = verifyApdu; m_lastResponseAPDU = null;
-                resp = pcsc.transmit(channel, verifyApdu);
+                resp = pcsc.transmit(cardHandle, channel, verifyApdu);
                 m_lastResponseAPDU = resp;
-            } catch (CardException e) {
+            } catch (CardException | CardClientException e) {
             	s_logger.error("Failed to transmit VERIFY APDU to card", e);
                 return MiddlewareStatus.PIV_CARD_READER_ERROR;
             }
-            if(resp.getSW() == 0x9000) {
+            if(resp.getSw() == 0x9000) {
                 cardHandle.setCurrentChannel(channel);
                 s_logger.debug("Successfully logged into card application");
             } else {
@@ -231,65 +231,43 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
                 throw new IllegalStateException("Must select PIV application before calling pivGetData");
             }
 
-            //Construct data field based on the data field oid and the tag for the specific oid
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            baos.write(TagConstants.DATA_FIELD_TAG);
-            baos.write(oidBytes.length);
-            baos.write(oidBytes);
-
-            //Construct APDU command using APDUUtils and applicationAID that was passed in.
-            CommandAPDU cmd = new CommandAPDU(APDUUtils.PIVGetDataAPDU(baos.toByteArray()));
-
-            PCSCWrapper pcsc = PCSCWrapper.getInstance();
-            // Transmit command and get response
-            m_lastCommandAPDU = cmd; m_lastResponseAPDU = null;
-            ResponseAPDU response = pcsc.transmit(channel, cmd);
-            m_lastResponseAPDU = response;
+            ResponseAPDUWrapper response = transmitGetData(cardHandle, channel, OID, oidBytes);
 
             //Check for Successful execution status word
-            if(response.getSW() != APDUConstants.SUCCESSFUL_EXEC) {
+            if(response.getSw() != APDUConstants.SUCCESSFUL_EXEC) {
 
-                if(response.getSW() == APDUConstants.APP_NOT_FOUND){
+                if(response.getSw() == APDUConstants.APP_NOT_FOUND){
                     s_logger.info("Data object not found");
                     return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
                 }
-                else if(response.getSW() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
+                else if(response.getSw() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
                     s_logger.info("Security status not satisfied");
                     return MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
                 }
 
-                s_logger.error("Error getting object {}, failed with error: {}", OID, Integer.toHexString(response.getSW()));
+                s_logger.error("Error getting object {}, failed with error: {}", OID, Integer.toHexString(response.getSw()));
                 return MiddlewareStatus.PIV_CONNECTION_FAILURE;
             }
-            byte[] responseData = response.getData();
+            byte[] responseData = response.sharedData();
             BerTlvParser lengthCheckTlvParser = new BerTlvParser(new CCTTlvLogger(this.getClass()));
-            BerTlvs outer = lengthCheckTlvParser.parse(response.getData());
-            if(outer != null) {
-            	if (outer.getList() == null) {
-            		s_logger.warn("GET DATA returned status of 90 00 but tag list is null");
-            		return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
-            	}
-            	BerTlv tlv = outer.getList().get(0);
-            	if (tlv == null) {
-            		s_logger.warn("GET DATA returned status of 90 00 but TLV at 0 is null");
-            		return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
-            	}
-            	BerTag tag = tlv.getTag();
-            	if (tag == null) {
-            		s_logger.warn("GET DATA returned status of 90 00 but tag {} is null", tlv.getHexValue());
-            		return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
-            	}
-            	if(tag.bytes.length == 1 && tag.bytes[0] == 0x53 && responseData.length == 2 && responseData[1] == 0x00) {
-            		s_logger.debug("GET DATA returned status of 90 00 but a tag of 0x53 with a length of 0." +
-            				" Per SP800-73-4, PIV middleware should return PIV_DATA_OBJECT_NOT_FOUND." );
-            		return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
-            	}
+            FirstTagVisitor first = new FirstTagVisitor();
+            lengthCheckTlvParser.walk(responseData, first);
+            BerTag tag = first.tag;
+            if (tag == null) {
+            	s_logger.error("GET DATA returned status of 90 00 but no TLV for object {}", OID);
+            	return MiddlewareStatus.PIV_CONNECTION_FAILURE;
+            }
+            if(tag.bytes.length == 1 && tag.bytes[0] == 0x53 && responseData.length == 2 && responseData[1] == 0x00) {
+            	s_logger.debug("GET DATA returned status of 90 00 but a tag of 0x53 with a length of 0." +
+            			" Per SP800-73-4, PIV middleware should return PIV_DATA_OBJECT_NOT_FOUND." );
+            	return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
             }
 
             // Populate the response in PIVDataObject
             data.setOID(OID);
             data.setContainerName(getFileNameForOid(OID));
-            data.setBytes(response.getData());
+            data.setBytes(responseData);
+            data.setValueDigests(response.getValueDigests());
         } catch (SecurityException ex) {
             s_logger.error("Error retrieving data from the card application: {}", ex.getMessage(), ex);
             return MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
@@ -329,27 +307,27 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             baos.write(APDUConstants.oidMAP.get(OID));
 
             //Construct APDU command using APDUUtils and applicationAID that was passed in.
-            CommandAPDU cmd = new CommandAPDU(APDUUtils.PIVGetDataAPDU(baos.toByteArray()));
+            RequestAPDUWrapper cmd = new RequestAPDUWrapper(APDUUtils.PIVGetDataAPDU(baos.toByteArray()));
 
             PCSCWrapper pcsc = PCSCWrapper.getInstance();
             // Transmit command and get response
             m_lastCommandAPDU = cmd; m_lastResponseAPDU = null;
-            ResponseAPDU response = pcsc.transmit(channel, cmd);
+            ResponseAPDUWrapper response = pcsc.transmit(cardHandle, channel, cmd);
             m_lastResponseAPDU = response;
 
             //Check for Successful execution status word
-            if(response.getSW() != APDUConstants.SUCCESSFUL_EXEC) {
+            if(response.getSw() != APDUConstants.SUCCESSFUL_EXEC) {
 
-                if(response.getSW() == APDUConstants.APP_NOT_FOUND){
+                if(response.getSw() == APDUConstants.APP_NOT_FOUND){
                     s_logger.info("Data object not found");
                     return MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND;
                 }
-                else if(response.getSW() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
+                else if(response.getSw() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
                     s_logger.info("Security status not satisfied");
                     return MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
                 }
 
-                s_logger.error("Error getting object {}, failed with error: {}", OID, Integer.toHexString(response.getSW()));
+                s_logger.error("Error getting object {}, failed with error: {}", OID, Integer.toHexString(response.getSw()));
                 return MiddlewareStatus.PIV_CONNECTION_FAILURE;
             }
 
@@ -412,35 +390,36 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             s_logger.info("GENERAL AUTHENTICATE APDU: {}", Hex.encodeHexString(rawAPDU));
             
             
-            CommandAPDU cmd = new CommandAPDU(rawAPDU);
+            RequestAPDUWrapper cmd = new RequestAPDUWrapper(rawAPDU);
+            PCSCWrapper pcsc = PCSCWrapper.getInstance();
             // Transmit command and get response
             m_lastCommandAPDU = cmd; m_lastResponseAPDU = null;
-            ResponseAPDU response = channel.transmit(cmd);
+            ResponseAPDUWrapper response = pcsc.transmit(cardHandle, channel, cmd);
             m_lastResponseAPDU = response;
             
-            s_logger.debug("Response to GENERAL AUTHENTICATE command: {} {}", String.format("0x%02X", response.getSW1()), String.format("0x%02X", response.getSW2()));
+            s_logger.debug("Response to GENERAL AUTHENTICATE command: {} {}", String.format("0x%02X", response.getSw1()), String.format("0x%02X", response.getSw2()));
 
             //Check for Successful execution status word
-            if(response.getSW() != APDUConstants.SUCCESSFUL_EXEC) {
+            if(response.getSw() != APDUConstants.SUCCESSFUL_EXEC) {
 
-                if(response.getSW() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
+                if(response.getSw() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
                     s_logger.error("Security condition not satisfied");
                     return MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
                 }
-                else if(response.getSW() == APDUConstants.INCORREECT_PARAMETER){
+                else if(response.getSw() == APDUConstants.INCORREECT_PARAMETER){
                     s_logger.error("Incorrect parameter in command data field");
                     return MiddlewareStatus.PIV_UNSUPPORTED_CRYPTOGRAPHIC_MECHANISM;
                 }
-                else if(response.getSW() == APDUConstants.FUNCTION_NOT_SUPPORTED){
+                else if(response.getSw() == APDUConstants.FUNCTION_NOT_SUPPORTED){
                     s_logger.error("Function not supported");
                     return MiddlewareStatus.PIV_FUNCTION_NOT_SUPPORTED;
                 }
-                else if(response.getSW() == APDUConstants.INCORREECT_PARAMETER_P2){
+                else if(response.getSw() == APDUConstants.INCORREECT_PARAMETER_P2){
                     s_logger.error("Invalid key or key algorithm combination");
                     return MiddlewareStatus.PIV_INVALID_KEY_OR_KEYALG_COMBINATION;
                 }
                 else {
-                    s_logger.error("Error in GENERAL AUTHENTICATE command, failed with error: {}", Integer.toHexString(response.getSW()));
+                    s_logger.error("Error in GENERAL AUTHENTICATE command, failed with error: {}", Integer.toHexString(response.getSw()));
                     return MiddlewareStatus.PIV_CONNECTION_FAILURE;
                 }
             }
@@ -478,37 +457,37 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             byte[] rawAPDU = APDUUtils.PIVGenerateKeyPairAPDU(keyReference, cryptographicMechanism, null);
             s_logger.info("GENERATE APDU: {}", Hex.encodeHexString(rawAPDU));
 
-            CommandAPDU cmd = new CommandAPDU(rawAPDU);
+            RequestAPDUWrapper cmd = new RequestAPDUWrapper(rawAPDU);
 
             PCSCWrapper pcsc = PCSCWrapper.getInstance();
             // Transmit command and get response
             m_lastCommandAPDU = cmd; m_lastResponseAPDU = null;
-            ResponseAPDU response = pcsc.transmit(channel, cmd);
+            ResponseAPDUWrapper response = pcsc.transmit(cardHandle, channel, cmd);
             m_lastResponseAPDU = response;
             
-            s_logger.debug("Response to GENERATE command: {} {}", String.format("0x%02X", response.getSW1()), String.format("0x%02X", response.getSW2()));
+            s_logger.debug("Response to GENERATE command: {} {}", String.format("0x%02X", response.getSw1()), String.format("0x%02X", response.getSw2()));
 
             //Check for Successful execution status word
-            if(response.getSW() != APDUConstants.SUCCESSFUL_EXEC) {
+            if(response.getSw() != APDUConstants.SUCCESSFUL_EXEC) {
 
-                if(response.getSW() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
+                if(response.getSw() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED){
                     s_logger.error("Security condition not satisfied");
                     return MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
                 }
-                else if(response.getSW() == APDUConstants.INCORREECT_PARAMETER){
+                else if(response.getSw() == APDUConstants.INCORREECT_PARAMETER){
                     s_logger.error("Incorrect parameter in command data field");
                     return MiddlewareStatus.PIV_UNSUPPORTED_CRYPTOGRAPHIC_MECHANISM;
                 }
-                else if(response.getSW() == APDUConstants.FUNCTION_NOT_SUPPORTED){
+                else if(response.getSw() == APDUConstants.FUNCTION_NOT_SUPPORTED){
                     s_logger.error("Function not supported");
                     return MiddlewareStatus.PIV_FUNCTION_NOT_SUPPORTED;
                 }
-                else if(response.getSW() == APDUConstants.INCORREECT_PARAMETER_P2){
+                else if(response.getSw() == APDUConstants.INCORREECT_PARAMETER_P2){
                     s_logger.error("Invalid key or key algorithm combination");
                     return MiddlewareStatus.PIV_INVALID_KEY_OR_KEYALG_COMBINATION;
                 }
                 else {
-                    s_logger.error("Error generating key pair, failed with error: {}", Integer.toHexString(response.getSW()));
+                    s_logger.error("Error generating key pair, failed with error: {}", Integer.toHexString(response.getSw()));
                     return MiddlewareStatus.PIV_CONNECTION_FAILURE;
                 }
             }
@@ -560,18 +539,18 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             byte[] rawAPDU = baos.toByteArray();
             s_logger.info("SM APDU: {}", Hex.encodeHexString(rawAPDU));
             CardChannel channel = cardHandle.getCurrentChannel();
-            CommandAPDU smApdu = new CommandAPDU(rawAPDU);
-            ResponseAPDU resp = null;
+            RequestAPDUWrapper smApdu = new RequestAPDUWrapper(rawAPDU);
+            ResponseAPDUWrapper resp = null;
             try {
             	PCSCWrapper pcsc = PCSCWrapper.getInstance();
             	m_lastCommandAPDU = smApdu; m_lastResponseAPDU = null;
-                resp = pcsc.transmit(channel, smApdu);
+                resp = pcsc.transmit(cardHandle, channel, smApdu);
                 m_lastResponseAPDU = resp;
-            } catch (CardException e) {
+            } catch (CardException | CardClientException e) {
                 s_logger.error("Failed to transmit SM APDU to card", e);
                 return MiddlewareStatus.PIV_CARD_READER_ERROR;
             }
-            if(resp.getSW() == 0x9000) {
+            if(resp.getSw() == 0x9000) {
                 cardHandle.setCurrentChannel(channel);
                 s_logger.info("Successfully established secure messaging");
             } else {
@@ -640,27 +619,27 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
             byte[] rawAPDU = baos.toByteArray();
             s_logger.info("PUT DATA APDU: {}", Hex.encodeHexString(rawAPDU));
             CardChannel channel = cardHandle.getCurrentChannel();
-            CommandAPDU smApdu = new CommandAPDU(rawAPDU);
-            ResponseAPDU resp = null;
+            RequestAPDUWrapper smApdu = new RequestAPDUWrapper(rawAPDU);
+            ResponseAPDUWrapper resp = null;
             try {
             	PCSCWrapper pcsc = PCSCWrapper.getInstance();
             	m_lastCommandAPDU = smApdu; m_lastResponseAPDU = null;
-                resp = pcsc.transmit(channel, smApdu);
+                resp = pcsc.transmit(cardHandle, channel, smApdu);
                 m_lastResponseAPDU = resp;
-            } catch (CardException e) {
+            } catch (CardException | CardClientException e) {
                 s_logger.error("Failed to transmit PUT DATA APDU to card", e);
                 return MiddlewareStatus.PIV_CARD_READER_ERROR;
             }
-            if(resp.getSW() == 0x9000) {
+            if(resp.getSw() == 0x9000) {
                 cardHandle.setCurrentChannel(channel);
                 s_logger.info("Successfully wrote data object to the card.");
-            } else if(resp.getSW() == 0x6A82){
+            } else if(resp.getSw() == 0x6A82){
                 s_logger.error("Failed to write object to the card, security condition not satisfied: {}", Hex.encodeHexString(resp.getBytes()));
                 return MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
-            } else if(resp.getSW() == 0x6A81){
+            } else if(resp.getSw() == 0x6A81){
                 s_logger.error("Failed to write object to the card, function is not supported: {}", Hex.encodeHexString(resp.getBytes()));
                 return MiddlewareStatus.PIV_FUNCTION_NOT_SUPPORTED;
-            } else if(resp.getSW() == 0x6A84){
+            } else if(resp.getSw() == 0x6A84){
                 s_logger.error("Failed to write object to the card, not enough memory: {}", Hex.encodeHexString(resp.getBytes()));
                 return MiddlewareStatus.PIV_INSUFFICIENT_CARD_RESOURCE;
             } else {
@@ -678,6 +657,110 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
         return MiddlewareStatus.PIV_OK;
     }
     
+    /**
+     *
+     * Sends GET DATA for one data object, as an extended-length APDU if the length mode and the card
+     * allow it. In AUTO mode the first GET DATA sent to a card is the probe: if the extended APDU is
+     * rejected and the same command as a short APDU is not, the card is marked as not accepting
+     * extended APDUs and short APDUs are used from then on.
+     *
+     * @param cardHandle CardHandle object that encapsulates connection to a card
+     * @param channel the current channel
+     * @param oidBytes tag of the data object
+     * @return the complete response
+     */
+    private ResponseAPDUWrapper transmitGetData(CardHandle cardHandle, CardChannel channel, String OID, byte[] oidBytes) throws CardException, CardClientException {
+        PCSCWrapper pcsc = PCSCWrapper.getInstance();
+        boolean extended = useExtendedLength(cardHandle);
+        boolean probe = extended && m_lengthMode == APDULengthMode.AUTO && cardHandle.getExtendedLengthSupported() == null;
+        String digestAlgorithm = cardHandle.getValueDigestAlgorithm(OID);
+
+        RequestAPDUWrapper cmd = new RequestAPDUWrapper(APDUUtils.PIVGetDataAPDU(oidBytes, extended));
+        cmd.setValueDigestAlgorithm(digestAlgorithm);
+        m_lastCommandAPDU = cmd; m_lastResponseAPDU = null;
+        ResponseAPDUWrapper response = null;
+        try {
+            response = pcsc.transmit(cardHandle, channel, cmd);
+        } catch (CardException e) {
+            if (!probe) {
+                throw e;
+            }
+            s_logger.debug("Extended-length GET DATA failed: {}", e.getMessage());
+        }
+        m_lastResponseAPDU = response;
+        if (!probe) {
+            return response;
+        }
+
+        if (response != null && (response.getSw() == APDUConstants.SUCCESSFUL_EXEC || response.getSw() == APDUConstants.APP_NOT_FOUND
+                || response.getSw() == APDUConstants.SECURITY_STATUS_NOT_SATISFIED)) {
+            s_logger.debug("Card accepts extended-length APDUs");
+            cardHandle.setExtendedLengthSupported(Boolean.TRUE);
+            return response;
+        }
+        RequestAPDUWrapper shortCmd = new RequestAPDUWrapper(APDUUtils.PIVGetDataAPDU(oidBytes, false));
+        shortCmd.setValueDigestAlgorithm(digestAlgorithm);
+        m_lastCommandAPDU = shortCmd; m_lastResponseAPDU = null;
+        ResponseAPDUWrapper shortResponse = pcsc.transmit(cardHandle, channel, shortCmd);
+        m_lastResponseAPDU = shortResponse;
+        if (response == null || response.getSw() != shortResponse.getSw()) {
+            s_logger.info("Card or reader does not accept extended-length APDUs ({}), using short APDUs",
+                    response != null ? response.getSwString() : "transmit failed");
+            cardHandle.setExtendedLengthSupported(Boolean.FALSE);
+        }
+        return shortResponse;
+    }
+
+    /**
+     *
+     * Decides whether to send GET DATA as an extended-length APDU
+     *
+     * @param cardHandle CardHandle object that encapsulates connection to a card
+     * @return true unless the length mode, or what is known of the card, rules it out, or there is
+     * no card
+     */
+    private boolean useExtendedLength(CardHandle cardHandle) {
+        if (m_lengthMode != APDULengthMode.AUTO) {
+            return m_lengthMode == APDULengthMode.EXTENDED;
+        }
+        Boolean supported = cardHandle.getExtendedLengthSupported();
+        if (supported == null) {
+            Card card = cardHandle.getCard();
+            if (card == null) {
+                return false;
+            }
+            // javax.smartcardio does not send extended APDUs over T=0
+            if ("T=0".equals(card.getProtocol())
+                    || Boolean.FALSE.equals(APDUUtils.extendedLengthFromHistoricalBytes(card.getATR().getHistoricalBytes()))) {
+                s_logger.debug("Card does not accept extended-length APDUs according to its ATR and protocol");
+                supported = Boolean.FALSE;
+                cardHandle.setExtendedLengthSupported(supported);
+            }
+        }
+        return supported == null || supported;
+    }
+
+    /**
+     *
+     * Get how GET DATA commands are encoded
+     *
+     * @return APDULengthMode value
+     */
+    public APDULengthMode getLengthMode() {
+        return m_lengthMode;
+    }
+
+    /**
+     *
+     * Set how GET DATA commands are encoded. AUTO, the default, uses extended-length APDUs if the
+     * card and reader accept them.
+     *
+     * @param lengthMode APDULengthMode value
+     */
+    public void setLengthMode(APDULengthMode lengthMode) {
+        m_lengthMode = lengthMode;
+    }
+
     public byte[] getLastCommandAPDUBytes()
     {
     	byte[] apduBytes = null;
@@ -699,4 +782,27 @@ abstract public class AbstractPIVApplication implements IPIVApplication {
     	apduBytes = m_lastResponseAPDU.getBytes();
     	return apduBytes;
     }
+
+    /**
+     * Records the tag of the first top-level TLV of a response and skips over every value
+     */
+    private static class FirstTagVisitor implements IBerTlvVisitor {
+        private BerTag tag;
+
+        @Override
+        public Action onTagStart(BerTag aTag, int aDepth, int aOffset, int aLength) {
+            if(tag == null) {
+                tag = aTag;
+            }
+            return Action.SKIP;
+        }
+
+        @Override
+        public void onPrimitive(BerTag aTag, int aDepth, byte[] aBuf, int aOffset, int aLength) {
+        }
+
+        @Override
+        public void onTagEnd(BerTag aTag, int aDepth) {
+        }
+    }
 }
@@ -98,6 +98,9 @@ public class BiometricInformationTemplatesGroupTemplate extends PIVDataObject {
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
 
         try{
             byte[] rawBytes = this.getBytes();
@@ -140,6 +143,7 @@ public class BiometricInformationTemplatesGroupTemplate extends PIVDataObject {
 
         dump(this.getClass())
 ;
+        setDecoded(true);
         return true;
     }
 }
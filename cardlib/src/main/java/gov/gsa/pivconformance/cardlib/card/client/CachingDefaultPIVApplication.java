@@ -1,7 +1,5 @@
 package gov.gsa.pivconformance.cardlib.card.client;
 
-import java.util.HashMap;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -9,18 +7,22 @@ import static gov.gsa.pivconformance.cardlib.card.client.APDUConstants.getFileNa
 
 public class CachingDefaultPIVApplication extends DefaultPIVApplication {
     private static final Logger s_logger = LoggerFactory.getLogger(CachingDefaultPIVApplication.class);
-    
-    static HashMap<String, byte[]> m_containerMap = new HashMap<String, byte[]>();
-    
+
+    // Marks a card handle whose card could not be identified, so its containers are not cached
+    private static final String UNIDENTIFIED = "";
+
+    static final ContainerCache s_containerCache = new ContainerCache();
+
     // Cache the buffers coming back from pivGetData to minimize churn
 	@Override
 	public MiddlewareStatus pivGetData(CardHandle cardHandle, String OID, PIVDataObject data) {
     	MiddlewareStatus result = MiddlewareStatus.PIV_OK;
-    	byte[] dataBytes = m_containerMap.get(OID);
+    	String cardIdentity = identifyCard(cardHandle);
+    	byte[] dataBytes = !cardIdentity.isEmpty() ? s_containerCache.get(cardIdentity, OID) : null;
     	if(dataBytes == null) {  // Not cached
 			result = super.pivGetData(cardHandle, OID, data);
-			if (result == MiddlewareStatus.PIV_OK) {
-				m_containerMap.put(OID, data.getBytes());
+			if (result == MiddlewareStatus.PIV_OK && !cardIdentity.isEmpty()) {
+				s_containerCache.put(cardIdentity, OID, data.getBytes());
 			}
 		} else {
 			data.setBytes(dataBytes);
@@ -31,11 +33,64 @@ public class CachingDefaultPIVApplication extends DefaultPIVApplication {
 
     	return result;
     }
-	
+
+	/**
+	 * Identifies the card behind a handle from its ATR and CHUID the first time the handle is used.
+	 * The CHUID read to do so is cached.
+	 *
+	 * @param cardHandle card handle
+	 * @return card identity, or UNIDENTIFIED if the card has no readable CHUID
+	 */
+	private String identifyCard(CardHandle cardHandle) {
+		String cardIdentity = cardHandle.getCardIdentity();
+		if (cardIdentity != null) {
+			return cardIdentity;
+		}
+		cardIdentity = UNIDENTIFIED;
+		PIVDataObject chuid = new PIVDataObject();
+		if (super.pivGetData(cardHandle, APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID, chuid) == MiddlewareStatus.PIV_OK) {
+			byte[] atr = cardHandle.getCard() != null ? cardHandle.getCard().getATR().getBytes() : null;
+			String identity = ContainerCache.identify(atr, chuid.getBytes());
+			if (identity != null) {
+				cardIdentity = identity;
+				s_containerCache.put(cardIdentity, APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID, chuid.getBytes());
+			}
+		}
+		if (cardIdentity.isEmpty()) {
+			s_logger.warn("Unable to identify card from its CHUID, containers will not be cached");
+		}
+		cardHandle.setCardIdentity(cardIdentity);
+		return cardIdentity;
+	}
+
+	/**
+	 * Gets the container cache shared by all card handles
+	 *
+	 * @return the cache, including its hit and miss counts
+	 */
+	public static ContainerCache getContainerCache() {
+		return s_containerCache;
+	}
+
 	/**
-	 * Clear cache
+	 * Clear cache, and the objects decoded from it
 	 */
     public void clearCache() {
-    	m_containerMap.clear();
-    }    
+    	s_containerCache.clear();
+    	DecodedObjectCache.getInstance().clear();
+    }
+
+	/**
+	 * Clear the cached containers, and the objects decoded from them, of one card
+	 *
+	 * @param cardHandle card handle
+	 */
+    public void clearCache(CardHandle cardHandle) {
+    	String cardIdentity = cardHandle.getCardIdentity();
+    	if (cardIdentity != null) {
+    		s_containerCache.invalidate(cardIdentity);
+    		DecodedObjectCache.getInstance().invalidate(cardIdentity);
+    	}
+    	cardHandle.setCardIdentity(null);
+    }
 }
@@ -245,6 +245,9 @@ public class CardCapabilityContainer extends PIVDataObject {
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
 
         try{
             byte [] raw = super.getBytes();
@@ -402,6 +405,7 @@ public class CardCapabilityContainer extends PIVDataObject {
         }
         
         dump(this.getClass());
+        setDecoded(true);
         return true;
     }
 }
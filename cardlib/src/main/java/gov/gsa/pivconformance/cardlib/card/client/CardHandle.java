@@ -4,6 +4,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.smartcardio.Card;
 import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardTerminal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A class that serves the function of the handle objects passed around that encapsulate a connection to a card
@@ -41,6 +47,11 @@ public class CardHandle {
      */
     public void setCard(Card card) {
         m_card = card;
+        m_cardIdentity = null;
+        m_transmitter = null;
+        m_extendedLengthSupported = null;
+        m_valueDigestAlgorithm = null;
+        m_valueDigestOids = Collections.emptySet();
     }
 
     /**
@@ -104,9 +115,96 @@ public class CardHandle {
         m_valid = valid;
     }
 
+    /**
+     *
+     * Get the identity of the card, as computed by ContainerCache.identify()
+     *
+     * @return card identity, or null if the card has not been identified
+     */
+    public String getCardIdentity() {
+        return m_cardIdentity;
+    }
+
+    /**
+     *
+     * Set the identity of the card. It is cleared when a new Card object is set.
+     *
+     * @param cardIdentity card identity
+     */
+    public void setCardIdentity(String cardIdentity) {
+        m_cardIdentity = cardIdentity;
+    }
+
+    /**
+     *
+     * Get whether the card and reader accept extended-length APDUs
+     *
+     * @return TRUE or FALSE once known, or null if not yet known
+     */
+    public Boolean getExtendedLengthSupported() {
+        return m_extendedLengthSupported;
+    }
+
+    /**
+     *
+     * Set whether the card and reader accept extended-length APDUs. It is cleared when a new Card
+     * object is set.
+     *
+     * @param extendedLengthSupported TRUE or FALSE, or null if not known
+     */
+    public void setExtendedLengthSupported(Boolean extendedLengthSupported) {
+        m_extendedLengthSupported = extendedLengthSupported;
+    }
+
+    /**
+     *
+     * Get the algorithm the value of a container is digested with as it is read
+     *
+     * @param oid container OID
+     * @return the digest algorithm of the Security Object if it covers the container, or null
+     */
+    public String getValueDigestAlgorithm(String oid) {
+        String algorithm = m_valueDigestAlgorithm;
+        return algorithm != null && m_valueDigestOids.contains(oid) ? algorithm : null;
+    }
+
+    /**
+     *
+     * Set the containers whose values are digested as they are read, so that the Security Object
+     * hashes need not be computed again. It is cleared when a new Card object is set.
+     *
+     * @param algorithm digest algorithm of the Security Object, or null to digest nothing
+     * @param oids OIDs of the containers the Security Object covers
+     */
+    public void setValueDigests(String algorithm, Collection<String> oids) {
+        m_valueDigestOids = oids != null ? new HashSet<String>(oids) : Collections.<String>emptySet();
+        m_valueDigestAlgorithm = algorithm;
+    }
+
+    /**
+     *
+     * Get the transmitter for a channel of the card. The transmitter, and the APDU buffers it
+     * holds, are kept and reused for as long as the same channel is used.
+     *
+     * @param channel CardChannel object, normally the current channel
+     * @return ChainingAPDUTransmitter for the channel
+     */
+    public synchronized ChainingAPDUTransmitter getTransmitter(CardChannel channel) {
+        if (m_transmitter == null || m_transmitter.getChannel() != channel) {
+            CardTerminal reader = m_connectionDescription != null ? m_connectionDescription.getTerminal() : null;
+            m_transmitter = new ChainingAPDUTransmitter(channel, reader != null ? reader.getName() : null);
+        }
+        return m_transmitter;
+    }
+
     private ConnectionDescription m_connectionDescription;
     private boolean m_valid = false;
     private Card m_card;
+    private String m_cardIdentity;
+    private ChainingAPDUTransmitter m_transmitter;
+    private volatile Boolean m_extendedLengthSupported;
+    private volatile String m_valueDigestAlgorithm;
+    private volatile Set<String> m_valueDigestOids = Collections.emptySet();
 
 
     private CardChannel m_currentChannel;
@@ -6,7 +6,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -220,22 +219,27 @@ public class CardHolderBiometricData extends SignedPIVDataObject {
      */
     @Override
 	public boolean decode() {
+    	if (isDecoded()) {
+    		return true;
+    	}
 
     	boolean certFound = false;        
-        ByteArrayOutputStream signedContentOutputStream = new ByteArrayOutputStream();
+        BerTlvBufferBuilder cbeffBuilder = null;
         SignerInformationStore signers = null;
         SignerInformation signer = null;
         try {
             byte[] rawBytes = this.getBytes();
 
-            s_logger.trace("rawBytes: {}", Hex.encodeHexString(rawBytes));
-
             if(rawBytes == null){
                 s_logger.error("No buffer to decode for {}.", APDUConstants.oidNameMap.get(super.getOID()));
                 return false;
             }
 
-            BerTlvParser tlvp = new BerTlvParser(new CCTTlvLogger(this.getClass()));
+            if (s_logger.isTraceEnabled())
+                s_logger.trace("rawBytes: {}", Hex.encodeHexString(rawBytes));
+
+            // Biometric containers are large, so parse views over the raw bytes rather than copying each value
+            BerTlvParser tlvp = new BerTlvParser(new CCTTlvLogger(this.getClass()), true);
             BerTlvs outer = tlvp.parse(rawBytes);
 
             if(outer == null){
@@ -246,19 +250,25 @@ public class CardHolderBiometricData extends SignedPIVDataObject {
             List<BerTlv> values = outer.getList();
             for(BerTlv tlv : values) {
                 if(tlv.isPrimitive()) {
-                    s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv.getTag().bytes), Hex.encodeHexString(tlv.getBytesValue()));
+                    if (s_logger.isTraceEnabled())
+                        s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv.getTag().bytes), tlv.getHexValue());
 
-                    BerTlvs outer2 = tlvp.parse(tlv.getBytesValue());
+                    BerTlvs outer2 = tlvp.parseValue(tlv);
 
                     if (outer2 == null) {
                         s_logger.error("Error parsing {}, unable to parse TLV value.", APDUConstants.oidNameMap.get(super.getOID()));
                         return false;
                     }
 
+                    // Size the rebuilt container from the value it is rebuilt from
+                    if (cbeffBuilder == null)
+                        cbeffBuilder = new BerTlvBufferBuilder(tlv.getValueLength());
+                    boolean cbeffTagSeen = false;
                     List<BerTlv> values2 = outer2.getList();
                     for (BerTlv tlv2 : values2) {
                         if (tlv2.isPrimitive()) {
-                            s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv2.getTag().bytes), Hex.encodeHexString(tlv2.getBytesValue()));
+                            if (s_logger.isTraceEnabled())
+                                s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv2.getTag().bytes), tlv2.getHexValue());
                         } else {
                         	BerTag tag = tlv2.getTag();
                         	byte[] value = tlv2.getBytesValue();
@@ -270,7 +280,7 @@ public class CardHolderBiometricData extends SignedPIVDataObject {
                                 m_biometricData = value;
                                 m_content.put(tag, value);
                                 if (m_biometricData != null)
-                                	signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.FINGERPRINT_I_AND_II_TAG, m_biometricData));
+                                	APDUUtils.putTLV(cbeffBuilder, TagConstants.FINGERPRINT_I_AND_II_TAG, m_biometricData, 0, m_biometricData.length);
 
                             } else if (Arrays.equals(tag.bytes, TagConstants.IMAGE_FOR_VISUAL_VERIFICATION_TAG) && getOID().compareTo(APDUConstants.CARDHOLDER_FACIAL_IMAGE_OID) == 0) {
 
@@ -278,7 +288,7 @@ public class CardHolderBiometricData extends SignedPIVDataObject {
                                 m_biometricData = value;
                                 m_content.put(tag, value);
                                if (m_biometricData != null)
-                            	   signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.IMAGE_FOR_VISUAL_VERIFICATION_TAG, m_biometricData));
+                            	   APDUUtils.putTLV(cbeffBuilder, TagConstants.IMAGE_FOR_VISUAL_VERIFICATION_TAG, m_biometricData, 0, m_biometricData.length);
 
                             } else if (Arrays.equals(tag.bytes, TagConstants.IMAGES_FOR_IRIS_TAG) && getOID().compareTo(APDUConstants.CARDHOLDER_IRIS_IMAGES_OID) == 0) {
 
@@ -286,21 +296,23 @@ public class CardHolderBiometricData extends SignedPIVDataObject {
                                 m_biometricData = value;
                                 m_content.put(tag, value);
                                 if (m_biometricData != null)
-                                	signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.IMAGES_FOR_IRIS_TAG, m_biometricData));
+                                	APDUUtils.putTLV(cbeffBuilder, TagConstants.IMAGES_FOR_IRIS_TAG, m_biometricData, 0, m_biometricData.length);
 
                             } else if (Arrays.equals(tag.bytes, TagConstants.ERROR_DETECTION_CODE_TAG)) {
 
                                 m_errorDetectionCode = true;
                                 m_content.put(tag, value);
                                 if (m_biometricData != null)
-                                	signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.ERROR_DETECTION_CODE_TAG, value));
+                                	APDUUtils.putTLV(cbeffBuilder, TagConstants.ERROR_DETECTION_CODE_TAG, value, 0, value.length);
 
                             } else {
                                 s_logger.warn("Unexpected tag: {} with value: {}", Hex.encodeHexString(tag.bytes), Hex.encodeHexString(tlv2.getBytesValue()));
                             }
-                            m_cbeffContainer = signedContentOutputStream.toByteArray();
+                            cbeffTagSeen = true;
                         }
                     }
+                    if (cbeffTagSeen)
+                        m_cbeffContainer = cbeffBuilder.toByteArray();
 
                     // Break BC tag into Patron CBEFF header + BDB + SB
                     if (m_biometricData != null) {
@@ -400,6 +412,7 @@ public class CardHolderBiometricData extends SignedPIVDataObject {
             return false;
 
         dump(this.getClass());
+        setDecoded(true);
         return true;
     }
     
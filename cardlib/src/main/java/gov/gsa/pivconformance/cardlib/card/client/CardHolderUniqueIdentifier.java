@@ -13,6 +13,7 @@ import gov.gsa.pivconformance.cardlib.card.client.Algorithm;
 import gov.gsa.pivconformance.cardlib.card.client.SignedPIVDataObject;
 import gov.gsa.pivconformance.cardlib.tlv.BerTag;
 import gov.gsa.pivconformance.cardlib.tlv.BerTlv;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvBufferBuilder;
 import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
 import gov.gsa.pivconformance.cardlib.tlv.BerTlvs;
 import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
@@ -21,7 +22,6 @@ import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
 import org.apache.commons.codec.binary.Hex;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.security.cert.X509Certificate;
 import java.util.*;
 import java.text.SimpleDateFormat;
@@ -261,6 +261,9 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 	 */
 	@Override
 	public boolean decode() {
+		if (isDecoded()) {
+			return true;
+		}
 
 		SignerInformationStore signers = null;
 		SignerInformation signer = null;
@@ -285,8 +288,8 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 			}
 
 			boolean ecAdded = false;
-			ByteArrayOutputStream signedContentOutputStream = new ByteArrayOutputStream();
-			ByteArrayOutputStream containerOutputStream = new ByteArrayOutputStream();
+			// The container is rebuilt as the signed content, then the signature and error detection code
+			BerTlvBufferBuilder containerBuilder = new BerTlvBufferBuilder(rawBytes.length);
 			byte[] issuerAsymmetricSignature = null;
 			setContainerName("CardHolderUniqueIdentifier");
 			List<BerTlv> values = outer.getList();
@@ -325,14 +328,14 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 								s_logger.warn("Deprecated tag: {} with value: {}", Hex.encodeHexString(tag.bytes),
 										Hex.encodeHexString(value));
 								m_tagList.add(tag); // TODO: Re-visit this strategy
-								signedContentOutputStream.write(APDUUtils.getTLV(tag.bytes, value));
+								APDUUtils.putTLV(containerBuilder, tag.bytes, value, 0, value.length);
 							} else if (Arrays.equals(tag.bytes, TagConstants.FASC_N_TAG)) {
 
 								m_fASCN = value;
 								m_content.put(tag, value);
 								m_tagList.add(tag);
 								if (m_fASCN != null)
-									signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.FASC_N_TAG, m_fASCN));
+									APDUUtils.putTLV(containerBuilder, TagConstants.FASC_N_TAG, m_fASCN, 0, m_fASCN.length);
 
 							} else if (Arrays.equals(tag.bytes, TagConstants.ORGANIZATIONAL_IDENTIFIER_TAG)) {
 
@@ -340,8 +343,7 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 								m_content.put(tag, value);
 								m_tagList.add(tag);
 								if (m_organizationalIdentifier != null)
-									signedContentOutputStream.write(APDUUtils.getTLV(
-											TagConstants.ORGANIZATIONAL_IDENTIFIER_TAG, m_organizationalIdentifier));
+									APDUUtils.putTLV(containerBuilder, TagConstants.ORGANIZATIONAL_IDENTIFIER_TAG, m_organizationalIdentifier, 0, m_organizationalIdentifier.length);
 
 							} else if (Arrays.equals(tag.bytes, TagConstants.DUNS_TAG)) {
 
@@ -349,7 +351,7 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 								m_content.put(tag, value);
 								m_tagList.add(tag);
 								if (m_dUNS != null)
-									signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.DUNS_TAG, m_dUNS));
+									APDUUtils.putTLV(containerBuilder, TagConstants.DUNS_TAG, m_dUNS, 0, m_dUNS.length);
 
 							} else if (Arrays.equals(tag.bytes, TagConstants.GUID_TAG)) {
 
@@ -357,7 +359,7 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 								m_content.put(tag, value);
 								m_tagList.add(tag);
 								if (m_gUID != null)
-									signedContentOutputStream.write(APDUUtils.getTLV(TagConstants.GUID_TAG, m_gUID));
+									APDUUtils.putTLV(containerBuilder, TagConstants.GUID_TAG, m_gUID, 0, m_gUID.length);
 
 							} else if (Arrays.equals(tag.bytes, TagConstants.CHUID_EXPIRATION_DATE_TAG)) {
 
@@ -367,8 +369,7 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 								m_expirationDate = date;
 								m_tagList.add(tag);
 								if (m_expirationDate != null)
-									signedContentOutputStream
-											.write(APDUUtils.getTLV(TagConstants.CHUID_EXPIRATION_DATE_TAG, value));
+									APDUUtils.putTLV(containerBuilder, TagConstants.CHUID_EXPIRATION_DATE_TAG, value, 0, value.length);
 
 							} else if (Arrays.equals(tag.bytes, TagConstants.CARDHOLDER_UUID_TAG)) {
 
@@ -376,8 +377,7 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 								m_content.put(tag, value);
 								m_tagList.add(tag);
 								if (m_cardholderUUID != null) {
-									signedContentOutputStream
-											.write(APDUUtils.getTLV(TagConstants.CARDHOLDER_UUID_TAG, value));
+									APDUUtils.putTLV(containerBuilder, TagConstants.CARDHOLDER_UUID_TAG, value, 0, value.length);
 								}
 
 							} else if (Arrays.equals(tag.bytes, TagConstants.ISSUER_ASYMMETRIC_SIGNATURE_TAG)) {
@@ -446,39 +446,41 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 										Hex.encodeHexString(value));
 								// Unexpected tags (for future) - we could simply ignore
 								m_tagList.add(tag);
-								signedContentOutputStream.write(APDUUtils.getTLV(tag.bytes, value));
+								APDUUtils.putTLV(containerBuilder, tag.bytes, value, 0, value.length);
 							}
 						}
 					}
 				}
 			}
 
-			// Write all tags except signature to the container buffer (noting the signature
-			// and error detection code
-			// may still need to be appended).
-			containerOutputStream.write(signedContentOutputStream.toByteArray());
+			// Everything written so far is signed; the signature itself is not
+			int signedLength = containerBuilder.length();
 
 			// Append signature to full container output
 			if (issuerAsymmetricSignature != null)
-				containerOutputStream.write(
-						APDUUtils.getTLV(TagConstants.ISSUER_ASYMMETRIC_SIGNATURE_TAG, issuerAsymmetricSignature));
+				APDUUtils.putTLV(containerBuilder, TagConstants.ISSUER_ASYMMETRIC_SIGNATURE_TAG, issuerAsymmetricSignature, 0, issuerAsymmetricSignature.length);
 
 			// Append EC if in the original
 			if (ecAdded) {
-				containerOutputStream.write(TagConstants.ERROR_DETECTION_CODE_TAG);
-				signedContentOutputStream.write(TagConstants.ERROR_DETECTION_CODE_TAG);
-				containerOutputStream.write((byte) 0x00);
-				signedContentOutputStream.write((byte) 0x00);
+				containerBuilder.putHeader(TagConstants.ERROR_DETECTION_CODE_TAG, 0, 1);
+			}
+			byte[] container = containerBuilder.toByteArray();
+
+			// Signed content is the signed tags followed by the error detection code, if any
+			byte[] signedContent = Arrays.copyOf(container, signedLength + (ecAdded ? 2 : 0));
+			if (ecAdded) {
+				signedContent[signedLength] = TagConstants.ERROR_DETECTION_CODE_TAG[0];
+				signedContent[signedLength + 1] = 0x00;
 			}
 
 			setSigned(true);
-			setSignedContent(signedContentOutputStream.toByteArray());
+			setSignedContent(signedContent);
 			// Grab signed digest
 			setSignedAttrsDigest(signers);
 			// Precompute digest but don't compare -- let consumers do that
 			setComputedDigest(signer, getSignedContent());
 
-			m_chuidContainer = containerOutputStream.toByteArray();
+			m_chuidContainer = container;
 
 		} catch (Exception ex) {
 			s_logger.error("Error parsing {}: {}", APDUConstants.oidNameMap.get(super.getOID()), ex.getMessage());
@@ -489,6 +491,7 @@ public class CardHolderUniqueIdentifier extends SignedPIVDataObject {
 		}
 
 		dump(this.getClass());
+		setDecoded(true);
 		return true;
 	}
 }
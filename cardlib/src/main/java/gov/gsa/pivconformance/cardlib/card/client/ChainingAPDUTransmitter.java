@@ -1,35 +1,95 @@
 package gov.gsa.pivconformance.cardlib.card.client;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
 
 import javax.smartcardio.CardChannel;
 import javax.smartcardio.CardException;
-import javax.smartcardio.CommandAPDU;
-import javax.smartcardio.ResponseAPDU;
 
-import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
-import gov.gsa.pivconformance.cardlib.utils.ITransmitCounter;
-import gov.gsa.pivconformance.cardlib.utils.PCSCWrapper;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.utils.ChannelMetrics;
+import gov.gsa.pivconformance.cardlib.utils.TransmitMetrics;
 
 // based on logic from the intarsys PCSC wrapper library, adapted to run directly on top of
 // javax.smartcardio.pcsc
+/**
+ * Sends APDUs on a channel, retrieving long responses with GET RESPONSE.
+ * <p>
+ * The transmitter only sees the 61xx status words, and so only sizes the response from the 53
+ * header and digests it a chunk at a time, when the JDK's own GET RESPONSE handling is turned
+ * off with the system properties sun.security.smartcardio.t0GetResponse and t1GetResponse set to
+ * false before the first card is connected. The GUI, ConformanceTestRunner, CardAuthTest and
+ * ContainerDump do so unless told otherwise. With the JDK default, the JDK follows 61xx itself
+ * and the transmitter receives the joined response in one piece.
+ */
 public class ChainingAPDUTransmitter {
 	
+	// Largest short and extended responses, including SW1 SW2
+	private static final int SHORT_RESPONSE_SIZE = 256 + 2;
+	private static final int EXTENDED_RESPONSE_SIZE = 65536 + 2;
+	// Largest extended command: header, 3 byte Lc, data and 2 byte Le
+	private static final int EXTENDED_COMMAND_SIZE = 4 + 3 + 65535 + 2;
+	// Largest response buffer allocated up front from the length a card announces
+	private static final int MAX_PRESIZED_RESPONSE = 1024 * 1024;
+
 	private CardChannel m_channel = null;
     private static final Logger s_logger = LoggerFactory.getLogger(ChainingAPDUTransmitter.class);
     private static final Logger s_apduLogger = LoggerFactory.getLogger("gov.gsa.pivconformance.cardlib.apdu");
-	private ITransmitCounter m_counter;
+	private final ChannelMetrics m_metrics;
+	// Reused for APDU trace lines
+	private final StringBuilder m_trace = new StringBuilder(64);
+	// Command and response buffers, reused for every APDU sent on the channel. The command buffer
+	// starts out large enough for short APDUs and grows the first time an extended APDU is sent.
+	// The response buffer always takes the largest response: unless its GET RESPONSE handling is
+	// turned off, the JDK follows 61xx itself and returns the joined chunks of a short APDU's
+	// response, up to 256 of them, in one piece.
+	private byte[] m_command = new byte[SHORT_RESPONSE_SIZE + 5];
+	private ByteBuffer m_commandBuffer = ByteBuffer.wrap(m_command);
+	private final byte[] m_response = new byte[EXTENDED_RESPONSE_SIZE];
+	private final ByteBuffer m_responseBuffer = ByteBuffer.wrap(m_response);
+	// Digests the containers returned by GET DATA as they arrive, created on first use and again
+	// whenever another algorithm is asked for
+	private ContainerDigest m_digest;
 	
+	/**
+	 * Creates a transmitter whose metrics are counted under "Unknown reader". Transmitters for
+	 * cards in a reader are obtained from {@link CardHandle#getTransmitter(CardChannel)} instead,
+	 * so that each APDU is counted under the name of its reader.
+	 * 
+	 * @param c the channel
+	 */
 	public ChainingAPDUTransmitter(CardChannel c) {
+		this(c, null);
+	}
+
+	/**
+	 * @param c the channel
+	 * @param readerName name of the reader holding the card, used to name the channel's metrics
+	 */
+	public ChainingAPDUTransmitter(CardChannel c, String readerName) {
 		m_channel = c;
-		m_counter = PCSCWrapper.getInstance();
+		m_metrics = TransmitMetrics.getInstance().getChannel(channelName(readerName, c));
+	}
+
+	// Name of a channel in the transmit metrics
+	static String channelName(String readerName, CardChannel c) {
+		return (readerName != null ? readerName : "Unknown reader") + " channel " + c.getChannelNumber();
+	}
+
+	public ChannelMetrics getMetrics() {
+		return m_metrics;
 	}
 	
+	public CardChannel getChannel() {
+		return m_channel;
+	}
+
 	protected RequestAPDUWrapper fixLengthExpected(RequestAPDUWrapper request, int correctLE) {
 		int cla = request.getCla();
 		int ins = request.getIns();
@@ -44,34 +104,99 @@ public class ChainingAPDUTransmitter {
 	}
 	
 	ResponseAPDUWrapper nativeTransmit(RequestAPDUWrapper request) throws CardException, CardClientException {
-		CommandAPDU cmd = new CommandAPDU(request.getBytes());
-    	ResponseAPDU rsp = null;
-    	try {
-    		
-			String apduTrace;
-			// Mask PIN
-	    	if (cmd.getINS() == APDUConstants.VERIFY) {
-	    		byte[] maskedPin = cmd.getBytes();
-	    		for (int i = 5, end = i + cmd.getNc(); i < end; i++) {
-	    			maskedPin[i] = (byte) 0xAA;
-	    		}
-	    		apduTrace = String.format("Sending Command APDU %s", Hex.encodeHexString(maskedPin).replaceAll("..(?=.)", "$0 "));
-	    	}
-	    	else {
-	    		apduTrace = String.format("Sending Command APDU %s", Hex.encodeHexString((cmd.getBytes())).replaceAll("..(?=.)", "$0 "));
-	    	}
-    		s_apduLogger.debug(apduTrace);
-    		
-    		m_counter.incrementTransmitCount();
-			rsp = m_channel.transmit(cmd);
+		int length = request.getLength();
+		ensureCapacity(length);
+		request.encode(m_command, 0);
+		int received = exchange(length);
+		if (received < 2) {
+			throw new CardClientException("Invalid response received from card reader");
+		}
+		return new ResponseAPDUWrapper(Arrays.copyOf(m_response, received - 2),
+				m_response[received - 2], m_response[received - 1]);
+	}
 
+	/**
+	 * Sends the command in the command buffer and receives the response into the response buffer
+	 * 
+	 * @param length length of the command
+	 * @return length of the response, including SW1 SW2
+	 */
+	private int exchange(int length) throws CardException {
+		if (s_apduLogger.isDebugEnabled()) {
+			s_apduLogger.debug(formatTrace(m_command, length));
+		}
+		m_commandBuffer.clear();
+		m_commandBuffer.limit(length);
+		m_responseBuffer.clear();
+		long start = System.nanoTime();
+		try {
+			int received = m_channel.transmit(m_commandBuffer, m_responseBuffer);
+			m_metrics.record(m_command[1], length, received, System.nanoTime() - start);
+			return received;
 		} catch (CardException e) {
+			m_metrics.recordError(m_command[1], length);
 			s_logger.error("Caught CardException {} transmitting APDU.", e.getMessage(), e);
 			throw e;
 		}
-		return new ResponseAPDUWrapper(rsp.getBytes());
 	}
-	
+
+	private void ensureCapacity(int commandLength) {
+		if (commandLength > m_command.length) {
+			m_command = new byte[Math.max(commandLength, EXTENDED_COMMAND_SIZE)];
+			m_commandBuffer = ByteBuffer.wrap(m_command);
+		}
+	}
+
+	/**
+	 * Formats a command APDU for the APDU log, masking the PIN in VERIFY commands
+	 * 
+	 * @param apdu buffer holding the command
+	 * @param length length of the command
+	 * @return the trace line
+	 */
+	private String formatTrace(byte[] apdu, int length) {
+		if (length > 5 && apdu[1] == APDUConstants.VERIFY) {
+			apdu = Arrays.copyOf(apdu, length);
+			for (int i = 5, end = Math.min(length, i + (apdu[4] & 0xFF)); i < end; i++) {
+				apdu[i] = (byte) 0xAA;
+			}
+		}
+		StringBuilder sb = m_trace;
+		sb.setLength(0);
+		sb.append("Sending Command APDU ");
+		return HexUtil.appendHex(sb, apdu, 0, length, true, true).toString();
+	}
+
+	// Number of bytes announced by SW2 of a 61xx response
+	private static int chunkLength(int sw2) {
+		return sw2 == 0 ? 256 : sw2;
+	}
+
+	/**
+	 * Gets the total length of a response from the header of the 53 TLV it starts with
+	 * 
+	 * @param data first part of the response
+	 * @return length of the 53 TLV, including its header, or -1 if the header is not there
+	 */
+	static int expectedLength(byte[] data) {
+		if (data.length < 2 || data[0] != APDUConstants.DATA[0]) {
+			return -1;
+		}
+		int first = data[1] & 0xFF;
+		if (first < 0x80) {
+			return 2 + first;
+		}
+		int count = first & 0x7F;
+		if (count > 3 || data.length < 2 + count) {
+			return -1;
+		}
+		int length = 0;
+		for (int i = 0; i < count; i++) {
+			length = (length << 8) | (data[2 + i] & 0xFF);
+		}
+		return 2 + count + length;
+	}
+
 	protected ResponseAPDUWrapper basicTransmit(RequestAPDUWrapper request)
 			throws CardClientException, CardException {
 		RequestAPDUWrapper encodedRequest = encodeRequest(request);
@@ -85,12 +210,33 @@ public class ChainingAPDUTransmitter {
 		return response;
 	}
 
+	// The reusable digest for an algorithm, or null if the algorithm is not supported
+	private ContainerDigest getDigest(String algorithm) {
+		if (m_digest == null || !m_digest.getAlgorithm().equals(algorithm)) {
+			try {
+				m_digest = new ContainerDigest(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				s_logger.debug("Not digesting containers as they are read: {}", e.getMessage());
+				return null;
+			}
+		}
+		return m_digest;
+	}
+
 	protected RequestAPDUWrapper encodeRequest(RequestAPDUWrapper request)
 			throws CardException {
 		return request;
 	}
 
-	public ResponseAPDUWrapper transmit(RequestAPDUWrapper request) throws CardClientException, CardException {
+	/**
+	 * Sends a request, retrieving the rest of the response with GET RESPONSE while the card
+	 * returns 61xx. The transmitter owns one set of buffers, so requests on the same channel are
+	 * sent one at a time.
+	 * 
+	 * @param request the request
+	 * @return the complete response
+	 */
+	public synchronized ResponseAPDUWrapper transmit(RequestAPDUWrapper request) throws CardClientException, CardException {
 		ResponseAPDUWrapper response = this.basicTransmit(request);
 		if (response.getSw1() == 0x6C) {
 			// wrong LengthExpected field: happens e.g. on ReinerSCT e-com in
@@ -99,39 +245,66 @@ public class ChainingAPDUTransmitter {
 			RequestAPDUWrapper fixedRequest = fixLengthExpected(request, le);
 			response = this.basicTransmit(fixedRequest);
 		}
+		// the command buffer still holds the request, whichever way it was built
+		ContainerDigest digest = null;
+		String algorithm = request.getValueDigestAlgorithm();
+		if (algorithm != null && m_command[1] == APDUConstants.GET
+				&& (response.getSw() == APDUConstants.SUCCESSFUL_EXEC || response.getSw1() == 0x61)) {
+			digest = getDigest(algorithm);
+			if (digest != null) {
+				digest.update(response.sharedData(), 0, response.sharedData().length);
+			}
+		}
 		if (response.getSw1() == 0x61) {
 			s_logger.debug("Using GET RESPONSE to retrieve large object");
-			ByteArrayOutputStream dataBaos = new ByteArrayOutputStream();
-			try {
-				dataBaos.write(response.getData());
-			} catch (IOException e) {
-				s_logger.error("Failed to write data to byte array.", e);
-				throw new CardClientException("Failed to write data to byte array.", e);
-			}
+			byte[] data = response.sharedData();
+			int sw1 = response.getSw1();
+			int sw2 = response.getSw2();
+			// Size the buffer from the length of the 53 TLV, or failing that from SW2, so that the
+			// chunks are copied into it once and it is handed over as it is
+			int expected = expectedLength(data);
+			boolean presized = expected >= data.length && expected <= MAX_PRESIZED_RESPONSE;
+			byte[] dataBytes = new byte[presized ? expected : data.length + chunkLength(sw2)];
+			System.arraycopy(data, 0, dataBytes, 0, data.length);
+			int length = data.length;
 			do {
-				// "GET RESPONSE" command
-				RequestAPDUWrapper fixedRequest = new RequestAPDUWrapper(0, 0xC0, 0, 0,
-						response.getSw2());
-				response = this.basicTransmit(fixedRequest);
-				try {
-					dataBaos.write(response.getData());
-				} catch (IOException e) {
-					s_logger.error("Caught exception appending to byte array", e);
-					throw new CardClientException("Unable to append to byte array", e);
+				// "GET RESPONSE" command, written straight into the command buffer, with its
+				// response copied straight from the response buffer
+				m_command[0] = 0x00;
+				m_command[1] = (byte) 0xC0;
+				m_command[2] = 0x00;
+				m_command[3] = 0x00;
+				m_command[4] = (byte) sw2;
+				int received = exchange(5);
+				if (received < 2) {
+					throw new CardClientException("Invalid response received from card reader");
 				}
-			} while(response.getSw1() == 0x61);
+				sw1 = m_response[received - 2] & 0xFF;
+				sw2 = m_response[received - 1] & 0xFF;
+				int needed = length + received - 2 + (sw1 == 0x61 ? chunkLength(sw2) : 0);
+				if (needed > dataBytes.length) {
+					s_logger.debug("GET RESPONSE: {} bytes expected, growing buffer to {}", dataBytes.length, needed);
+					dataBytes = Arrays.copyOf(dataBytes, Math.max(needed, dataBytes.length * 2));
+				}
+				System.arraycopy(m_response, 0, dataBytes, length, received - 2);
+				if (digest != null) {
+					digest.update(m_response, 0, received - 2);
+				}
+				length += received - 2;
+			} while(sw1 == 0x61);
 
-			try {
-				dataBaos.flush();
-			} catch (IOException e) {
-				s_logger.error("Unable to flush byte array output stream", e);
-				throw new CardClientException("Unable to flush byte array output stream for GET RESPONSE handling.", e);
+			if (length != dataBytes.length) {
+				dataBytes = Arrays.copyOf(dataBytes, length);
 			}
-			byte[] dataBytes = dataBaos.toByteArray();
 			s_logger.debug("GET RESPONSE: final size: {}", dataBytes.length);
-			ResponseAPDUWrapper fixedResponse = new ResponseAPDUWrapper(dataBytes, response.getSw1(), response.getSw2());
-			s_logger.debug("Returning status {} following GET RESPONSE", String.format("%1$02X %2$02X", response.getSw1(), response.getSw2()));
-			response = fixedResponse;
+			response = new ResponseAPDUWrapper(dataBytes, sw1, sw2);
+			s_logger.debug("Returning status {} following GET RESPONSE", String.format("%1$02X %2$02X", sw1, sw2));
+		}
+		if (digest != null) {
+			Map<String, byte[]> digests = digest.finish();
+			if (response.getSw() == APDUConstants.SUCCESSFUL_EXEC) {
+				response.setValueDigests(digests);
+			}
 		}
 		if (request.isChainedRequest() && request.getNextRequest() != null) {
 			response = transmit(request.getNextRequest());
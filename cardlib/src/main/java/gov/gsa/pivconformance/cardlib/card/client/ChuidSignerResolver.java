@@ -0,0 +1,58 @@
+package gov.gsa.pivconformance.cardlib.card.client;
+
+import java.security.cert.X509Certificate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the content signer of a card from its CHUID, once per card and before any other signed
+ * object is read, so that signed objects find it in the run's {@link DataModelSingleton} whatever
+ * order they are read in. The signer is kept along with the card it belongs to and is resolved
+ * again when another card is used.
+ */
+public final class ChuidSignerResolver {
+	private static final Logger s_logger = LoggerFactory.getLogger(ChuidSignerResolver.class);
+
+	private ChuidSignerResolver() {
+	}
+
+	/**
+	 * Gets the CHUID signer of a card, reading and decoding the CHUID the first time it is asked for
+	 *
+	 * @param piv PIV application, already selected
+	 * @param ch card handle
+	 * @return the CHUID signer certificate, or null if the card has none
+	 */
+	public static X509Certificate resolve(AbstractPIVApplication piv, CardHandle ch) {
+		DataModelSingleton dataModel = DataModelSingleton.getInstance();
+		synchronized (dataModel) {
+			if (dataModel.isChuidSignerResolved(cardKey(ch))) {
+				return dataModel.getChuidSignerCert();
+			}
+			X509Certificate cert = null;
+			PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID);
+			MiddlewareStatus status = piv.pivGetData(ch, APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID, o);
+			if (status == MiddlewareStatus.PIV_OK) {
+				o = DecodedObjectCache.getInstance().decode(ch.getCardIdentity(), o);
+				if (o.isDecoded() && o instanceof CardHolderUniqueIdentifier && ((SignedPIVDataObject) o).hasOwnSignerCert()) {
+					cert = ((SignedPIVDataObject) o).getSignerCert();
+				}
+			}
+			if (cert != null) {
+				s_logger.debug("CHUID signer: {}", cert.getSubjectX500Principal());
+			} else {
+				s_logger.warn("Unable to resolve the CHUID signer certificate: {}", status);
+			}
+			// the card may only have been identified by reading its CHUID
+			dataModel.setChuidSigner(cardKey(ch), cert);
+			return cert;
+		}
+	}
+
+	// Identifies the card of a handle, or the handle itself if the card could not be identified
+	private static String cardKey(CardHandle ch) {
+		String identity = ch.getCardIdentity();
+		return identity != null && !identity.isEmpty() ? identity : "handle " + System.identityHashCode(ch);
+	}
+}
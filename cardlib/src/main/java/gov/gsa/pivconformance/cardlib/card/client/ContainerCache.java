@@ -0,0 +1,229 @@
+package gov.gsa.pivconformance.cardlib.card.client;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
+import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.tlv.IBerTlvVisitor;
+
+/**
+ * A cache of raw containers, as returned by GET DATA, keyed by card and OID. Cards are identified
+ * by {@link #identify(byte[], byte[])}, so containers read from one card are never served for
+ * another, and several readers can share one cache.
+ *
+ * The cache is bounded by the total size of the cached containers; the least recently used
+ * containers are evicted first. All methods are thread safe.
+ */
+public class ContainerCache {
+	private static final Logger s_logger = LoggerFactory.getLogger(ContainerCache.class);
+
+	/** Default bound, enough for the containers of a few hundred cards */
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+	private final long m_maxBytes;
+	private final LinkedHashMap<Key, byte[]> m_entries = new LinkedHashMap<Key, byte[]>(64, 0.75f, true);
+	private long m_bytes;
+	private long m_hits;
+	private long m_misses;
+	private long m_evictions;
+
+	public ContainerCache() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxBytes upper bound on the total size of the cached containers
+	 */
+	public ContainerCache(long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+		}
+		m_maxBytes = maxBytes;
+	}
+
+	/**
+	 * Computes the identity of a card from its ATR and the FASC-N and GUID of its CHUID
+	 *
+	 * @param atr the card's ATR, may be null
+	 * @param chuid the raw CHUID container
+	 * @return hex SHA-256 of the ATR, FASC-N and GUID, or null if the CHUID has neither
+	 */
+	public static String identify(byte[] atr, byte[] chuid) {
+		if (chuid == null) {
+			return null;
+		}
+		final MessageDigest md;
+		try {
+			md = ContainerDigest.getMessageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		if (atr != null) {
+			md.update(atr);
+		}
+		final boolean[] found = { false };
+		try {
+			new BerTlvParser(new CCTTlvLogger(ContainerCache.class)).walk(chuid, new IBerTlvVisitor() {
+				@Override
+				public Action onTagStart(BerTag aTag, int aDepth, int aOffset, int aLength) {
+					if (aDepth == 0) {
+						return aTag.bytes.length == 1 && aTag.bytes[0] == APDUConstants.DATA[0] ? Action.DESCEND : Action.SKIP;
+					}
+					if (aDepth == 1 && aTag.bytes.length == 1 && (aTag.bytes[0] == 0x30 || aTag.bytes[0] == 0x34)) {
+						return Action.VALUE;
+					}
+					return Action.SKIP;
+				}
+
+				@Override
+				public void onPrimitive(BerTag aTag, int aDepth, byte[] aBuf, int aOffset, int aLength) {
+					md.update(aTag.bytes);
+					md.update(aBuf, aOffset, aLength);
+					found[0] = true;
+				}
+
+				@Override
+				public void onTagEnd(BerTag aTag, int aDepth) {
+				}
+			});
+		} catch (Exception e) {
+			s_logger.warn("Unable to identify card from CHUID: {}", e.getMessage());
+			return null;
+		}
+		return found[0] ? HexUtil.toLowerHexString(md.digest()) : null;
+	}
+
+	/**
+	 * Gets a cached container
+	 *
+	 * @param cardIdentity card identity from {@link #identify(byte[], byte[])}
+	 * @param oid container OID
+	 * @return the container, or null if it is not cached
+	 */
+	public synchronized byte[] get(String cardIdentity, String oid) {
+		byte[] rv = m_entries.get(new Key(cardIdentity, oid));
+		if (rv == null) {
+			m_misses++;
+		} else {
+			m_hits++;
+		}
+		return rv;
+	}
+
+	/**
+	 * Caches a container, evicting the least recently used containers to stay within bounds.
+	 * Containers larger than the bound are not cached.
+	 *
+	 * @param cardIdentity card identity from {@link #identify(byte[], byte[])}
+	 * @param oid container OID
+	 * @param container the container
+	 */
+	public synchronized void put(String cardIdentity, String oid, byte[] container) {
+		if (container == null || container.length > m_maxBytes) {
+			return;
+		}
+		byte[] previous = m_entries.put(new Key(cardIdentity, oid), container);
+		if (previous != null) {
+			m_bytes -= previous.length;
+		}
+		m_bytes += container.length;
+		Iterator<byte[]> it = m_entries.values().iterator();
+		while (m_bytes > m_maxBytes && it.hasNext()) {
+			m_bytes -= it.next().length;
+			it.remove();
+			m_evictions++;
+		}
+	}
+
+	/**
+	 * Removes every container of a card
+	 *
+	 * @param cardIdentity card identity from {@link #identify(byte[], byte[])}
+	 */
+	public synchronized void invalidate(String cardIdentity) {
+		Iterator<Map.Entry<Key, byte[]>> it = m_entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, byte[]> e = it.next();
+			if (e.getKey().m_cardIdentity.equals(cardIdentity)) {
+				m_bytes -= e.getValue().length;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes every container. Statistics are kept.
+	 */
+	public synchronized void clear() {
+		m_entries.clear();
+		m_bytes = 0;
+	}
+
+	public long getMaxBytes() {
+		return m_maxBytes;
+	}
+
+	public synchronized int getSize() {
+		return m_entries.size();
+	}
+
+	/**
+	 * Gets the total size of the cached containers
+	 *
+	 * @return number of bytes
+	 */
+	public synchronized long getBytes() {
+		return m_bytes;
+	}
+
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return m_evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("ContainerCache: %d containers, %d of %d bytes, %d hits, %d misses, %d evictions",
+				m_entries.size(), m_bytes, m_maxBytes, m_hits, m_misses, m_evictions);
+	}
+
+	private static final class Key {
+		private final String m_cardIdentity;
+		private final String m_oid;
+
+		Key(String cardIdentity, String oid) {
+			m_cardIdentity = cardIdentity;
+			m_oid = oid;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * m_cardIdentity.hashCode() + m_oid.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return m_cardIdentity.equals(k.m_cardIdentity) && m_oid.equals(k.m_oid);
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package gov.gsa.pivconformance.cardlib.card.client;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+
+/**
+ * Digests of container content. Message digests are looked up once per thread and algorithm and
+ * reused, and an instance digests the value of a 53 TLV a chunk at a time, as GET RESPONSE
+ * returns it, with the digest algorithm of the Security Object, so the Security Object hash of a
+ * container it covers need not be computed from it again once it is read.
+ *
+ * Instances are not thread safe; the static methods are.
+ */
+public final class ContainerDigest {
+
+	private static final Provider s_provider;
+	static {
+		Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+		s_provider = provider != null ? provider : new BouncyCastleProvider();
+	}
+
+	private static final ThreadLocal<Map<String, MessageDigest>> s_digests = new ThreadLocal<Map<String, MessageDigest>>() {
+		@Override
+		protected Map<String, MessageDigest> initialValue() {
+			return new HashMap<String, MessageDigest>();
+		}
+	};
+
+	private final String m_algorithm;
+	private final MessageDigest m_digest;
+	// The start of the container, gathered until its 53 header is complete
+	private final byte[] m_header;
+	private int m_headerLength;
+	private boolean m_headerSeen;
+
+	/**
+	 * @param algorithm algorithm name or OID
+	 * @throws NoSuchAlgorithmException if the algorithm is not supported
+	 */
+	public ContainerDigest(String algorithm) throws NoSuchAlgorithmException {
+		m_algorithm = algorithm;
+		m_digest = MessageDigest.getInstance(algorithm, s_provider);
+		m_header = new byte[5];
+		reset();
+	}
+
+	public String getAlgorithm() {
+		return m_algorithm;
+	}
+
+	/**
+	 * Gets this thread's message digest for an algorithm, reset and ready for use. It must not be
+	 * held across calls that may use the same algorithm.
+	 *
+	 * @param algorithm algorithm name or OID
+	 * @return the message digest
+	 * @throws NoSuchAlgorithmException if the algorithm is not supported
+	 */
+	public static MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+		Map<String, MessageDigest> digests = s_digests.get();
+		MessageDigest md = digests.get(algorithm);
+		if (md == null) {
+			md = MessageDigest.getInstance(algorithm, s_provider);
+			digests.put(algorithm, md);
+		} else {
+			md.reset();
+		}
+		return md;
+	}
+
+	/**
+	 * Digests a buffer with this thread's message digest for an algorithm
+	 *
+	 * @param algorithm algorithm name or OID
+	 * @param data the data
+	 * @return the digest
+	 * @throws NoSuchAlgorithmException if the algorithm is not supported
+	 */
+	public static byte[] digest(String algorithm, byte[] data) throws NoSuchAlgorithmException {
+		return getMessageDigest(algorithm).digest(data);
+	}
+
+	/**
+	 * Gets the length of the 53 header a container starts with
+	 *
+	 * @param container buffer holding the start of the container
+	 * @param length number of bytes of the container in the buffer
+	 * @return length of the tag and length fields, or -1 if the buffer does not start with a
+	 *         complete 53 header
+	 */
+	static int headerLength(byte[] container, int length) {
+		if (length < 2 || container[0] != APDUConstants.DATA[0]) {
+			return -1;
+		}
+		int first = container[1] & 0xFF;
+		if (first < 0x80) {
+			return 2;
+		}
+		int count = first & 0x7F;
+		return count <= 3 && length >= 2 + count ? 2 + count : -1;
+	}
+
+	/**
+	 * Indicates whether content is exactly the value of a container's 53 TLV, in which case the
+	 * digest streamed while the container was read is the digest of the content
+	 *
+	 * @param content the content
+	 * @param container the container, 53 TLV included
+	 * @return true if the content is the value of the container
+	 */
+	public static boolean isValueOf(byte[] content, byte[] container) {
+		if (content == null || container == null) {
+			return false;
+		}
+		int offset = headerLength(container, container.length);
+		return offset > 0 && Arrays.equals(content, 0, content.length, container, offset, container.length);
+	}
+
+	/**
+	 * Digests content a Security Object hashes. The digest of the container's value streamed
+	 * while it was read is reused only if the content is byte for byte that value; content
+	 * re-encoded from the container's TLVs is digested as it is.
+	 *
+	 * @param algorithm algorithm name or OID
+	 * @param content the hashed content
+	 * @param o the container the content was taken from
+	 * @return the digest, the same array as o.getValueDigest(algorithm) if it was reused
+	 * @throws NoSuchAlgorithmException if the algorithm is not supported
+	 */
+	public static byte[] digestContent(String algorithm, byte[] content, PIVDataObject o) throws NoSuchAlgorithmException {
+		byte[] streamed = o.getValueDigest(algorithm);
+		if (streamed != null && isValueOf(content, o.getBytes())) {
+			return streamed;
+		}
+		return digest(algorithm, content);
+	}
+
+	/**
+	 * Starts digesting a new container
+	 */
+	public void reset() {
+		m_digest.reset();
+		m_headerLength = 0;
+		m_headerSeen = false;
+	}
+
+	/**
+	 * Digests the next part of the container. The 53 header is left out of the digest.
+	 *
+	 * @param buf buffer holding the next part
+	 * @param offset offset of the part in the buffer
+	 * @param length length of the part
+	 */
+	public void update(byte[] buf, int offset, int length) {
+		if (!m_headerSeen) {
+			// gather enough of the start of the container to read its header
+			int n = Math.min(length, m_header.length - m_headerLength);
+			System.arraycopy(buf, offset, m_header, m_headerLength, n);
+			m_headerLength += n;
+			if (headerLength(m_header, m_headerLength) < 0 && m_headerLength < m_header.length
+					&& (m_headerLength == 0 || m_header[0] == APDUConstants.DATA[0])) {
+				return;
+			}
+			updateFromHeader();
+			offset += n;
+			length -= n;
+		}
+		m_digest.update(buf, offset, length);
+	}
+
+	// Digests what was gathered after the 53 header, or all of it if there is no header
+	private void updateFromHeader() {
+		int header = Math.max(headerLength(m_header, m_headerLength), 0);
+		m_digest.update(m_header, header, m_headerLength - header);
+		m_headerSeen = true;
+	}
+
+	/**
+	 * Completes the digest of the container and starts on a new one
+	 *
+	 * @return the digest, keyed by the algorithm name
+	 */
+	public Map<String, byte[]> finish() {
+		if (!m_headerSeen) {
+			updateFromHeader();
+		}
+		Map<String, byte[]> digests = Collections.singletonMap(m_algorithm, m_digest.digest());
+		reset();
+		return digests;
+	}
+}
@@ -22,6 +22,8 @@ public class DataModelSingleton {
 
 	TagBoundaryManager m_tagLengthRules;
     X509Certificate m_chuidSignerCert;
+    // The card the CHUID signer was resolved for, see ChuidSignerResolver
+    String m_chuidSignerCard;
 	
     private DataModelSingleton() {
     	reset();
@@ -40,7 +42,39 @@ public class DataModelSingleton {
      */
     
     public static DataModelSingleton getInstance() {
-        return INSTANCE;
+        DataModelSingleton bound = s_bound.get();
+        return bound != null ? bound : INSTANCE;
+    }
+    
+    /*
+     * The instance of the run on the current thread, when several cards are tested at once
+     */
+    
+    private static final ThreadLocal<DataModelSingleton> s_bound = new ThreadLocal<DataModelSingleton>();
+    
+    /**
+     * Creates a data model for one run, so that the signer certificate of one card is not
+     * used for another
+     * 
+     * @return a new data model
+     */
+    
+    public static DataModelSingleton newInstance() {
+        return new DataModelSingleton();
+    }
+    
+    /**
+     * Binds a data model to the current thread, so that getInstance() returns it until it is unbound
+     * 
+     * @param dataModel the data model of the run, or null to go back to the shared instance
+     */
+    
+    public static void bind(DataModelSingleton dataModel) {
+        if (dataModel == null) {
+            s_bound.remove();
+        } else {
+            s_bound.set(dataModel);
+        }
     }
     
     /**
@@ -48,9 +82,10 @@ public class DataModelSingleton {
      */
     
     public void reset() {
-    	m_tagLengthRules = null;
-    	m_tagLengthRules = new TagBoundaryManager();
+    	// The length rules are immutable and shared, so there is nothing to rebuild
+    	m_tagLengthRules = TagBoundaryManager.getInstance();
     	m_chuidSignerCert = null;
+    	m_chuidSignerCard = null;
     }
     
     /**
@@ -59,7 +94,7 @@ public class DataModelSingleton {
  
 	public void loadLengthRules() {
 		if (m_tagLengthRules == null)
-			m_tagLengthRules = new TagBoundaryManager();
+			m_tagLengthRules = TagBoundaryManager.getInstance();
 	}
 	
 	/**
@@ -104,4 +139,27 @@ public class DataModelSingleton {
 		if (m_chuidSignerCert == null && cert != null) // Set once and protect
 			m_chuidSignerCert = cert;
 	}
+	
+	/**
+	 * Sets the CHUID signer cert resolved for a card, replacing that of any other card
+	 * 
+	 * @param card identifies the card
+	 * @param cert the CHUID signer cert, or null if the card has none
+	 */
+	
+	public synchronized void setChuidSigner(String card, X509Certificate cert) {
+		m_chuidSignerCard = card;
+		m_chuidSignerCert = cert;
+	}
+	
+	/**
+	 * Indicates whether the CHUID signer cert has been resolved for a card
+	 * 
+	 * @param card identifies the card
+	 * @return true if the cached CHUID signer cert is that card's
+	 */
+	
+	public synchronized boolean isChuidSignerResolved(String card) {
+		return card != null && card.equals(m_chuidSignerCard);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package gov.gsa.pivconformance.cardlib.card.client;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+/**
+ * Decoded data objects, keyed by card identity, OID and a digest of the raw container, so that a
+ * container is decoded once however many times it is read. Cached objects are shared, and are
+ * frozen so that their setters throw; their decode() returns true without decoding again. Objects
+ * of a card that has not been identified are not cached, and the objects of a card are dropped
+ * with {@link #invalidate(String)} when it is taken out or its run is reset.
+ *
+ * The cache holds a bounded number of objects and evicts the least recently used first. All
+ * methods are thread safe.
+ */
+public class DecodedObjectCache {
+	private static final Logger s_logger = LoggerFactory.getLogger(DecodedObjectCache.class);
+
+	/** Default bound, the containers of about ten cards */
+	public static final int DEFAULT_MAX_ENTRIES = 384;
+
+	private static final DecodedObjectCache INSTANCE = new DecodedObjectCache(DEFAULT_MAX_ENTRIES);
+
+	private final LinkedHashMap<String, PIVDataObject> m_entries;
+	private long m_hits;
+	private long m_misses;
+
+	/**
+	 * @param maxEntries number of decoded objects to keep
+	 */
+	public DecodedObjectCache(final int maxEntries) {
+		m_entries = new LinkedHashMap<String, PIVDataObject>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PIVDataObject> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static DecodedObjectCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets the decoded object for a container. If the same container of the same card has been
+	 * decoded before, that object is returned; otherwise the object passed in is decoded, and
+	 * cached if it decodes.
+	 *
+	 * @param cardIdentity card identity (see {@link CardHandle#getCardIdentity()}), null or empty if
+	 *        the card has not been identified, in which case the object is decoded and not cached
+	 * @param o data object holding the raw container
+	 * @return a decoded object, or the object passed in if it does not decode (see
+	 *         {@link PIVDataObject#isDecoded()})
+	 */
+	public PIVDataObject decode(String cardIdentity, PIVDataObject o) {
+		byte[] raw = o.getBytes();
+		if (raw == null || o.getOID() == null || cardIdentity == null || cardIdentity.isEmpty()) {
+			o.decode();
+			return o;
+		}
+		String key = key(cardIdentity, o.getOID(), raw);
+		PIVDataObject cached;
+		synchronized (this) {
+			cached = m_entries.get(key);
+			if (cached != null) {
+				m_hits++;
+			} else {
+				m_misses++;
+			}
+		}
+		if (cached != null) {
+			// The CHUID signer is per card state, cleared between runs
+			if (cached instanceof CardHolderUniqueIdentifier && ((SignedPIVDataObject) cached).hasOwnSignerCert()) {
+				((SignedPIVDataObject) cached).setChuidSignerCert(((SignedPIVDataObject) cached).getSignerCert());
+			}
+			return cached;
+		}
+		if (o.decode()) {
+			synchronized (this) {
+				cached = m_entries.get(key);
+				if (cached != null) {
+					return cached;
+				}
+				o.freeze();
+				m_entries.put(key, o);
+			}
+		} else {
+			s_logger.debug("{} did not decode, not caching it", APDUConstants.oidNameMap.get(o.getOID()));
+		}
+		return o;
+	}
+
+	/**
+	 * Removes the objects of one card
+	 *
+	 * @param cardIdentity card identity
+	 */
+	public synchronized void invalidate(String cardIdentity) {
+		String prefix = cardIdentity + '|';
+		m_entries.keySet().removeIf(k -> k.startsWith(prefix));
+	}
+
+	/**
+	 * Removes every object
+	 */
+	public synchronized void clear() {
+		m_entries.clear();
+	}
+
+	public synchronized int getSize() {
+		return m_entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	private static String key(String cardIdentity, String oid, byte[] raw) {
+		MessageDigest md;
+		try {
+			md = ContainerDigest.getMessageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		return cardIdentity + '|' + oid + '|' + HexUtil.toLowerHexString(md.digest(raw));
+	}
+}
@@ -201,6 +201,10 @@ public class DiscoveryObject extends PIVDataObject {
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
+
         byte[] rawBytes = this.getBytes();
         s_logger.trace("rawBytes: {}", Hex.encodeHexString(rawBytes));
         if(rawBytes.length == 0) {
@@ -268,6 +272,7 @@ public class DiscoveryObject extends PIVDataObject {
 
         dump(this.getClass())
 ;
+        setDecoded(true);
         return true;
     }
 }
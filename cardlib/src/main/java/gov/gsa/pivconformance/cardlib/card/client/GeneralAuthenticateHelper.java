@@ -82,7 +82,7 @@ public class GeneralAuthenticateHelper {
 		
 		try {
 			PCSCWrapper pcsc = PCSCWrapper.getInstance();
-			resp = pcsc.transmit(channel, generalAuthApdu);
+			resp = pcsc.transmit(ch, channel, generalAuthApdu);
 		} catch (CardException e) {
 			s_logger.error("Failed to transmit GENERAL AUTHENTICATE APDU to card", e);
 			return null;
@@ -107,7 +107,7 @@ public class GeneralAuthenticateHelper {
 				try {
 					CommandAPDU chainedGeneralAuthApdu = new CommandAPDU(ccBaos.toByteArray());
 					PCSCWrapper pcsc = PCSCWrapper.getInstance();
-					resp = pcsc.transmit(channel, chainedGeneralAuthApdu);
+					resp = pcsc.transmit(ch, channel, chainedGeneralAuthApdu);
 				} catch (CardException e) {
 					s_logger.error("Failed to transmit GENERAL AUTHENTICATE APDU to card", e);
 					return null;
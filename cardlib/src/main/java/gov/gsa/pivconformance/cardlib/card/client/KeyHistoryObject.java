@@ -102,6 +102,10 @@ public class KeyHistoryObject extends PIVDataObject {
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
+
         byte[] rawBytes = this.getBytes();
         BerTlvParser tlvp = new BerTlvParser(new CCTTlvLogger(this.getClass()));
         BerTlvs outer = tlvp.parse(rawBytes);
@@ -133,6 +137,7 @@ public class KeyHistoryObject extends PIVDataObject {
 
         dump(this.getClass())
 ;
+        setDecoded(true);
         return true;
     }
 }
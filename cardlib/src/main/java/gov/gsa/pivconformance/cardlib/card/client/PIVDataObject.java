@@ -8,11 +8,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.ContainerLengthReport;
 import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
 import gov.gsa.pivconformance.cardlib.tlv.TagBoundaryManager;
 import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
@@ -35,6 +35,11 @@ public class PIVDataObject {
 	private boolean m_error_Detection_Code_Has_Data;
 	private TagBoundaryManager m_tagLengthRules = DataModelSingleton.getInstance().getLengthRules();
 	private boolean m_lengthOk;
+	private ContainerLengthReport m_lengthReport;
+	// Digests of the container's value, computed as it was read from the card
+	private Map<String, byte[]> m_valueDigests;
+	private volatile boolean m_decoded;
+	private volatile boolean m_frozen;
 	// TODO: Cache these tags
 	protected HashMap<BerTag, byte[]> m_content;
 	private String m_name;
@@ -88,7 +93,34 @@ public class PIVDataObject {
 	 * @param dataBytes Byte array containing raw PIV data object value
 	 */
 	public void setBytes(byte[] dataBytes) {
+		checkNotFrozen();
 		m_dataBytes = dataBytes;
+		m_lengthReport = null;
+		m_valueDigests = null;
+		m_decoded = false;
+	}
+
+	/**
+	 *
+	 * Returns a digest of the value of the container's 53 TLV computed as the container was read
+	 *
+	 * @param algorithm digest algorithm name, as set by {@link CardHandle#setValueDigests}
+	 * @return the digest, or null if it was not computed when the container was read
+	 */
+	public byte[] getValueDigest(String algorithm) {
+		Map<String, byte[]> digests = m_valueDigests;
+		return digests != null ? digests.get(algorithm) : null;
+	}
+
+	/**
+	 *
+	 * Sets the digests of the value of the container's 53 TLV, after setBytes()
+	 *
+	 * @param valueDigests digests keyed by algorithm name, or null
+	 */
+	public void setValueDigests(Map<String, byte[]> valueDigests) {
+		checkNotFrozen();
+		m_valueDigests = valueDigests;
 	}
 
 	/**
@@ -118,6 +150,7 @@ public class PIVDataObject {
 	 * @param OID String containing the OID that identifies PIV data object
 	 */
 	public void setOID(String OID) {
+		checkNotFrozen();
 		m_OID = OID;
 	}
 
@@ -184,9 +217,9 @@ public class PIVDataObject {
 	 * @throws Exception
 	 */
 
-	private boolean inBounds(String name, BerTag tag, int valueLen) throws Exception {
+	private boolean inBounds(int containerId, BerTag tag, int valueLen) throws Exception {
 		try {
-			int diff = m_tagLengthRules.lengthDelta(name, tag, valueLen);
+			int diff = m_tagLengthRules.lengthDelta(containerId, tag, valueLen);
 			if (diff != 0) {
 				String tagString = HexUtil.toHexString(tag.bytes);
 				String errStr = (String.format("Tag %s length was %d bytes, differs from 800-73 spec by %d", tagString,
@@ -216,6 +249,10 @@ public class PIVDataObject {
 		if (name == null) {
 			return false;
 		}
+		int containerId = TagBoundaryManager.getContainerId(name);
+		if (containerId < 0) {
+			throw new NullPointerException("Rules for container " + name + " are null");
+		}
 		// Iterate over each tag and corresponding value
 		Iterator<Map.Entry<BerTag, byte[]>> it = m_content.entrySet().iterator();
 		while (it.hasNext()) {
@@ -223,13 +260,29 @@ public class PIVDataObject {
 			BerTag tag = pair.getKey();
 			byte value[] = pair.getValue();
 			// Check length
-			if (!(this.m_lengthOk = this.inBounds(name, tag, value.length))) {
+			if (!(this.m_lengthOk = this.inBounds(containerId, tag, value.length))) {
 				return false;
 			}
 		}
 		return true;
 	}
 
+	/**
+	 * Checks the length of every tag in the raw container against the SP 800-73-4 length rules.
+	 * The report is computed on first use and kept until the raw bytes change.
+	 * 
+	 * @return the report, or null if there are no raw bytes or no rules for the container
+	 */
+	public synchronized ContainerLengthReport getLengthReport() {
+		if (m_lengthReport == null && m_dataBytes != null) {
+			int containerId = TagBoundaryManager.getContainerId(m_OID);
+			if (containerId >= 0) {
+				m_lengthReport = TagBoundaryManager.validate(containerId, m_dataBytes);
+			}
+		}
+		return m_lengthReport;
+	}
+
 	/**
 	 * Dumps the raw container into a file and logs the ascii hex representation of the tags to a file
 	 * @param clazz the name of the class dumping the container
@@ -244,8 +297,10 @@ public class PIVDataObject {
 			m_artifactCache.saveObject("piv-artifacts", this.getContainerName() + ".dat", m_dataBytes);
 
 			Logger s_containerLogger = LoggerFactory.getLogger(fqContainerName);
-			s_containerLogger.debug("Container: {}", fqContainerName);
-			s_containerLogger.debug("Raw bytes: {}", Hex.encodeHexString(m_dataBytes));
+			if (s_containerLogger.isDebugEnabled()) {
+				s_containerLogger.debug("Container: {}", fqContainerName);
+				s_containerLogger.debug("Raw bytes: {}", HexUtil.toLowerHexString(m_dataBytes));
+			}
 
 			for (int i = 0; i < m_tagList.size(); i++) {
 				BerTag tag = m_tagList.get(i);
@@ -254,10 +309,10 @@ public class PIVDataObject {
 						s_containerLogger.debug("Certificate tag");
 					}
 					if (m_content.get(tag) == null) {
-						s_containerLogger.warn("Tag[{}] ({}) is null", i, Hex.encodeHexString(tag.bytes));
-					} else {
-						s_containerLogger.debug("Tag {}: {}", Hex.encodeHexString(tag.bytes),
-								Hex.encodeHexString(m_content.get(tag)));
+						s_containerLogger.warn("Tag[{}] ({}) is null", i, HexUtil.toLowerHexString(tag.bytes));
+					} else if (s_containerLogger.isDebugEnabled()) {
+						s_containerLogger.debug("Tag {}: {}", HexUtil.toLowerHexString(tag.bytes),
+								HexUtil.toLowerHexString(m_content.get(tag)));
 					}
 				} else {
 					s_containerLogger.warn("Tag[{}] is null", i);
@@ -288,6 +343,59 @@ public class PIVDataObject {
 		return false;
 	}
 
+	/**
+	 *
+	 * Indicates whether decode() has succeeded since the raw bytes were last set.
+	 * Once it has, decode() returns true without decoding again.
+	 *
+	 * @return true if the object is decoded
+	 */
+	public boolean isDecoded() {
+		return m_decoded;
+	}
+
+	/**
+	 *
+	 * Records a successful decode, called by decode() implementations
+	 *
+	 * @param decoded true if the object is decoded
+	 */
+	protected void setDecoded(boolean decoded) {
+		m_decoded = decoded;
+	}
+
+	/**
+	 *
+	 * Indicates whether the object is shared through {@link DecodedObjectCache}, in which case
+	 * its setters throw IllegalStateException
+	 *
+	 * @return true if the object is read-only
+	 */
+	public boolean isFrozen() {
+		return m_frozen;
+	}
+
+	/**
+	 *
+	 * Makes the object read-only, called by {@link DecodedObjectCache} once it is decoded and
+	 * about to be shared
+	 */
+	void freeze() {
+		m_frozen = true;
+	}
+
+	/**
+	 *
+	 * Called by setters that change what the object was decoded from or into
+	 *
+	 * @throws IllegalStateException if the object is frozen
+	 */
+	protected void checkNotFrozen() {
+		if (m_frozen) {
+			throw new IllegalStateException(getFriendlyName() + " is shared by the decoded object cache and cannot be modified");
+		}
+	}
+
 	/**
 	 *
 	 * Returns the length of all containers was found to be okay, false otherwise
@@ -308,7 +416,7 @@ public class PIVDataObject {
 	 *         object
 	 */
 	public String toRawHexString() {
-		return Hex.encodeHexString(m_dataBytes);
+		return HexUtil.toLowerHexString(m_dataBytes);
 	}
 
 	/**
@@ -80,6 +80,9 @@ public class PairingCodeReferenceDataContainer extends PIVDataObject {
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
 
         try{
             byte[] rawBytes = this.getBytes();
@@ -144,6 +147,7 @@ public class PairingCodeReferenceDataContainer extends PIVDataObject {
 
         dump(this.getClass())
 ;
+        setDecoded(true);
         return true;
     }
 }
@@ -238,6 +238,9 @@ public class PrintedInformation extends PIVDataObject {
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
 
         try{
             byte[] rawBytes = this.getBytes();
@@ -351,6 +354,7 @@ public class PrintedInformation extends PIVDataObject {
         
         dump(this.getClass())
 ;
+        setDecoded(true);
         return true;
     }
 }
@@ -1,9 +1,10 @@
 package gov.gsa.pivconformance.cardlib.card.client;
 
-import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
 // derived from the intarsys ReqeuestAPDU class
 public class RequestAPDUWrapper {
     private static final Logger s_logger = LoggerFactory.getLogger(RequestAPDUWrapper.class);
@@ -33,6 +34,9 @@ public class RequestAPDUWrapper {
 
 	private boolean chainedRequest = false;
 
+	// Algorithm the container returned by GET DATA is digested with as it arrives, or null
+	private String valueDigestAlgorithm = null;
+
 	public RequestAPDUWrapper(byte[] bytes) {
 		super();
 		this.bytes = bytes;
@@ -84,12 +88,28 @@ public class RequestAPDUWrapper {
 			return bytes;
 		}
 		byte[] buffer = new byte[getLength()];
+		encode(buffer, 0);
+		return buffer;
+	}
 
-		buffer[0] = (byte) getCla();
-		buffer[1] = (byte) getIns();
-		buffer[2] = (byte) getP1();
-		buffer[3] = (byte) getP2();
-		int index = 4;
+	/**
+	 * Encodes the complete request into a buffer, which must have room for
+	 * {@link #getLength()} bytes.
+	 * 
+	 * @param buffer destination
+	 * @param offset offset of the first byte
+	 * @return number of bytes written
+	 */
+	public int encode(byte[] buffer, int offset) {
+		if (bytes != null) {
+			System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+			return bytes.length;
+		}
+		buffer[offset] = (byte) getCla();
+		buffer[offset + 1] = (byte) getIns();
+		buffer[offset + 2] = (byte) getP1();
+		buffer[offset + 3] = (byte) getP2();
+		int index = offset + 4;
 		boolean markExtended = true;
 		if (data != null) {
 			if (isExtendedApdu()) {
@@ -113,11 +133,13 @@ public class RequestAPDUWrapper {
 				}
 				buffer[index] = (byte) ((le >> 8) & 0xFF);
 				buffer[index + 1] = (byte) (le & 0xff);
+				index = index + 2;
 			} else {
 				buffer[index] = (byte) (le & 0xff);
+				index = index + 1;
 			}
 		}
-		return buffer;
+		return index - offset;
 	}
 
 	/**
@@ -249,10 +271,24 @@ public class RequestAPDUWrapper {
 	}
 
 	public boolean isExtendedApdu() {
+		if (bytes != null) {
+			// pre-encoded: extended if the first length byte is 0 and more follow
+			return extendedApdu || (bytes.length >= 7 && bytes[4] == 0);
+		}
 		return extendedApdu || (data != null && data.length > 255)
 				|| (le > 255);
 	}
 
+	/**
+	 * Gets the algorithm the value of the container returned by this GET DATA is digested with
+	 * as it arrives
+	 * 
+	 * @return the algorithm, or null if the response is not digested
+	 */
+	public String getValueDigestAlgorithm() {
+		return valueDigestAlgorithm;
+	}
+
 	public boolean isSensitiveContent() {
 		return sensitiveContent;
 	}
@@ -269,13 +305,17 @@ public class RequestAPDUWrapper {
 		this.nextRequest = chainedRequest;
 	}
 
+	public void setValueDigestAlgorithm(String valueDigestAlgorithm) {
+		this.valueDigestAlgorithm = valueDigestAlgorithm;
+	}
+
 	public void setSensitiveContent(boolean sensitiveContent) {
 		this.sensitiveContent = sensitiveContent;
 	}
 
 	@Override
 	public String toString() {
-		return Hex.encodeHexString(getBytes()).replaceAll("..(?=.)", "$0 ");
+		return HexUtil.toSpacedHexString(getBytes());
 		//return HexTools.bytesToHexString(getBytes());
 	}
 
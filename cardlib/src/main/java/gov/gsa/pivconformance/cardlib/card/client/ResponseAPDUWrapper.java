@@ -2,17 +2,27 @@ package gov.gsa.pivconformance.cardlib.card.client;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
 
-import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
 
 // derived from the intarsys ResponseAPDU class
 public class ResponseAPDUWrapper {
     private static final Logger s_logger = LoggerFactory.getLogger(ResponseAPDUWrapper.class);
 
-	private final byte[] bytes;
+	// The encoded response, data followed by SW1 SW2. Responses assembled by the transmitter keep
+	// the data and status words apart instead, and only encode the response if it is asked for.
+	private byte[] bytes;
+	private byte[] data;
+	private final int sw1;
+	private final int sw2;
+	// Digests of the value of the container returned by GET DATA, computed as it was received
+	private Map<String, byte[]> valueDigests;
 
 	public ResponseAPDUWrapper(byte[] response) throws CardClientException {
 		assert (response != null);
@@ -21,62 +31,97 @@ public class ResponseAPDUWrapper {
 					"Invalid response received from card reader");
 		}
 		this.bytes = response;
+		this.sw1 = response[response.length - 2] & 0xFF;
+		this.sw2 = response[response.length - 1] & 0xFF;
 	}
 
 	public ResponseAPDUWrapper(byte[] data, int sw) {
-		if (data == null) {
-			data = new byte[0];
-		}
-		bytes = new byte[data.length + 2];
-		System.arraycopy(data, 0, bytes, 0, data.length);
-		bytes[data.length] = (byte) ((sw >> 8) & 0xff);
-		bytes[data.length + 1] = (byte) (sw & 0xff);
+		this(data, (sw >> 8) & 0xff, sw & 0xff);
 	}
 
+	/**
+	 * Creates a response from its data and status words. The data array is not copied.
+	 * 
+	 * @param data response data, may be null
+	 * @param sw1 SW1
+	 * @param sw2 SW2
+	 */
 	public ResponseAPDUWrapper(byte[] data, int sw1, int sw2) {
-		if (data == null) {
-			data = new byte[0];
-		}
-		bytes = new byte[data.length + 2];
-		System.arraycopy(data, 0, bytes, 0, data.length);
-		bytes[data.length] = (byte) sw1;
-		bytes[data.length + 1] = (byte) sw2;
+		this.data = data != null ? data : new byte[0];
+		this.sw1 = sw1 & 0xff;
+		this.sw2 = sw2 & 0xff;
+	}
+
+	/**
+	 * Gets the digests of the value of the container returned by GET DATA
+	 * 
+	 * @return digests keyed by algorithm name, or null if none were computed
+	 */
+	public Map<String, byte[]> getValueDigests() {
+		return valueDigests;
+	}
+
+	void setValueDigests(Map<String, byte[]> valueDigests) {
+		this.valueDigests = valueDigests;
 	}
 
 	public byte[] getBytes() {
+		if (bytes == null) {
+			byte[] encoded = new byte[data.length + 2];
+			System.arraycopy(data, 0, encoded, 0, data.length);
+			encoded[data.length] = (byte) sw1;
+			encoded[data.length + 1] = (byte) sw2;
+			bytes = encoded;
+		}
 		return bytes;
 	}
 
+	/**
+	 * The response data, without the status words
+	 * 
+	 * @return a copy of the response data
+	 */
 	public byte[] getData() {
-		byte[] data = new byte[bytes.length - 2];
-		System.arraycopy(bytes, 0, data, 0, data.length);
+		return sharedData().clone();
+	}
+
+	/**
+	 * The response data, without the status words. The array is shared, not copied, and must not
+	 * be modified.
+	 * 
+	 * @return response data
+	 */
+	byte[] sharedData() {
+		if (data == null) {
+			data = Arrays.copyOf(bytes, bytes.length - 2);
+		}
 		return data;
 	}
 
 	public int getData(byte[] pBytes, int offset, int length) {
-		int count = bytes.length - 2;
+		byte[] d = sharedData();
+		int count = d.length;
 		if (length < count) {
 			count = length;
 		}
-		System.arraycopy(bytes, 0, pBytes, offset, count);
+		System.arraycopy(d, 0, pBytes, offset, count);
 		return count;
 	}
 
 	public InputStream getInputStream() {
-		return new ByteArrayInputStream(bytes, 0, bytes.length - 2);
+		return new ByteArrayInputStream(sharedData());
 	}
 
 	public int getSw() {
-		return ((bytes[bytes.length - 2] & 0xFF) << 8)
-				+ (bytes[bytes.length - 1] & 0xFF);
+		return (sw1 << 8) + sw2;
 	}
 
 	public int getSw1() {
-		return bytes[bytes.length - 2] & 0xFF;
+		return sw1;
 	}
 
 	public int getSw2() {
-		return bytes[bytes.length - 1] & 0xFF;
+		return sw2;
 	}
 
 	public String getSwString() {
@@ -85,7 +130,7 @@ public class ResponseAPDUWrapper {
 	}
 
 	public boolean hasData() {
-		return bytes.length > 2;
+		return data != null ? data.length > 0 : bytes.length > 2;
 	}
 
 	public boolean isOk() {
@@ -94,7 +139,7 @@ public class ResponseAPDUWrapper {
 
 	@Override
 	public String toString() {
-		return Hex.encodeHexString(getBytes()).replaceAll("..(?=.)", "$0 ");
+		return HexUtil.toSpacedHexString(getBytes());
 	}
 
 }
@@ -87,6 +87,9 @@ public class SecureMessagingCertificateSigner extends PIVDataObject {    // slf4
      */
     @Override
 	public boolean decode() {
+        if (isDecoded()) {
+            return true;
+        }
 
         if(m_pivAuthCert == null){
 
@@ -171,6 +174,7 @@ public class SecureMessagingCertificateSigner extends PIVDataObject {    // slf4
         
         dump(this.getClass())
 ;
+        setDecoded(true);
         return true;
     }
 }
@@ -13,7 +13,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
 import java.util.*;
@@ -66,6 +65,7 @@ public class SecurityObject extends SignedPIVDataObject {
 	}
 
 	public void setMapOfDataElements(HashMap<String, byte[]> mapOfDataElements) {
+		checkNotFrozen();
 		m_mapOfDataElements = mapOfDataElements;
 	}
 
@@ -161,6 +161,10 @@ public class SecurityObject extends SignedPIVDataObject {
 	 */
 	@Override
 	public boolean decode() {
+		if (isDecoded()) {
+			return true;
+		}
+
 		SignerInformationStore signers = null;
 		SignerInformation signer = null;
 		boolean certFound = false;
@@ -296,27 +300,89 @@ public class SecurityObject extends SignedPIVDataObject {
 			return false;
 
 		dump(this.getClass());
+		setDecoded(true);
 		return true;
 	}
 
 	/**
 	 *
-	 * Verifies all included hashes
+	 * Verifies all included hashes against the map of data elements set with
+	 * setMapOfDataElements()
 	 *
 	 * @return True if all hashes match, false otherwise
 	 */
 	public boolean verifyHashes() {
-		boolean rv_result = false;
+		if (m_mapOfDataElements == null) {
+			s_logger.error("Missing list of objects to hash");
+			return false;
+		}
+		return verifyHashes(m_mapOfDataElements);
+	}
 
-		if (m_dghList == null) {
-			if (m_mapOfDataElements == null) {
-				s_logger.error("Missing list of objects to hash");
-				return false;
+	/**
+	 *
+	 * Verifies all included hashes against the given data elements. The security
+	 * object is not modified, so several threads may verify it at once.
+	 *
+	 * @param dataElements the hashed content of each container, keyed by OID
+	 * @return True if all hashes match, false otherwise
+	 */
+	public boolean verifyHashes(Map<String, byte[]> dataElements) {
+		Map<String, byte[]> digests = new HashMap<String, byte[]>(dataElements.size() * 2);
+		try {
+			for (Map.Entry<String, byte[]> entry : dataElements.entrySet()) {
+				if (entry.getValue() != null) {
+					digests.put(entry.getKey(), ContainerDigest.digest(getDigestAlgorithmName(), entry.getValue()));
+				}
 			}
-			CMSSignedData signedData = null;
+		} catch (NoSuchAlgorithmException e) {
+			s_logger.error("Error creating message digest: {}", e.getMessage());
+			return false;
+		}
+		return verifyDigests(digests);
+	}
+
+	/**
+	 *
+	 * Verifies all included hashes against digests already computed with the
+	 * digest algorithm of the security object, such as those computed as the
+	 * containers were read.
+	 *
+	 * @param digests the digest of the hashed content of each container, keyed by OID
+	 * @return True if all hashes match, false otherwise
+	 */
+	public boolean verifyDigests(Map<String, byte[]> digests) {
+		Map<Integer, byte[]> dghList = getDataGroupHashes();
+		if (dghList == null) {
+			return false;
+		}
+
+		int dgIdx = 0;
+		for (Map.Entry<Integer, byte[]> entry : dghList.entrySet()) {
+
+			String oid = m_containerIDList.get(entry.getKey());
+			s_logger.debug("Checking digest for {} (0x{})", APDUConstants.containerOidToNameMap.get(oid), Integer.toHexString(entry.getKey()));
+
+			byte[] digest = oid != null ? digests.get(oid) : null;
+			if (digest == null) {
+				s_logger.error("Missing object to hash for id {}: ", entry.getKey());
+			} else if (!Arrays.equals(entry.getValue(), digest)) {
+				s_logger.error("Digest mismatch for {}", APDUConstants.containerOidToNameMap.get(oid));
+				s_logger.error("Reference digest: {}", Hex.encodeHexString(entry.getValue()));
+				s_logger.error("Computed digest:  {}", Hex.encodeHexString(digest));
+			} else {
+				dgIdx++;
+			}
+		}
+		return dgIdx == dghList.size();
+	}
+
+	// The data group hashes of the LDS security object, parsed on first use
+	private synchronized Map<Integer, byte[]> getDataGroupHashes() {
+		if (m_dghList == null) {
 			LDSSecurityObject ldsso = null;
 			try {
-				signedData = new CMSSignedData(m_so);
+				CMSSignedData signedData = new CMSSignedData(m_so);
 				ASN1Sequence seq = ASN1Sequence.getInstance(signedData.getSignedContent().getContent());
 				ldsso = LDSSecurityObject.getInstance(seq);
 			} catch (CMSException ex) {
@@ -325,54 +391,22 @@ public class SecurityObject extends SignedPIVDataObject {
 				s_logger.error(ex.getMessage());
 			}
 
-			if (ldsso != null) {
-				DataGroupHash[] dghList = ldsso.getDatagroupHash();
-
-				m_dghList = new HashMap<Integer, byte[]>();
-				if (dghList != null) {
-					for (DataGroupHash entry : dghList) {
-						m_dghList.put(entry.getDataGroupNumber(), entry.getDataGroupHashValue().getOctets());
-					}
-
-					int dgIdx = 0;
-					for (Map.Entry<Integer, byte[]> entry : m_dghList.entrySet()) {
-
-						String oid = m_containerIDList.get(entry.getKey());
-						s_logger.debug("Checking digest for {} (0x{})", APDUConstants.containerOidToNameMap.get(oid), Integer.toHexString(entry.getKey()));
-
-						if (oid != null) {
-							byte[] content = m_mapOfDataElements.get(oid);
-							MessageDigest md = null;
-							try {
-								md = MessageDigest.getInstance(getDigestAlgorithmName(), "BC");
-								if (md != null) {
-									md.update(content);
-									byte[] digest = md.digest();
-									if (!Arrays.equals(entry.getValue(), digest)) {
-										s_logger.error("Content: {}", Hex.encodeHexString(content));
-										s_logger.error("Reference digest: {}", Hex.encodeHexString(entry.getValue()));
-										s_logger.error("Computed digest:  {}", Hex.encodeHexString(digest));
-									} else {
-										dgIdx++;
-									}
-								}
-							} catch (NoSuchAlgorithmException | java.security.NoSuchProviderException e) {
-								s_logger.error("Error creating message digest: {}", e.getMessage());
-							}
-						} else {
-							s_logger.error("Missing object to hash for id {}: ", entry.getKey());
-						}
-					}
-					rv_result = (dgIdx == m_dghList.entrySet().size()) ? true : false;
-				} else {
-					s_logger.error("Data Group object was null");
-				}
-			} else {
+			if (ldsso == null) {
 				s_logger.error("LDSSecurityObject was null");
+				return null;
+			}
+			DataGroupHash[] dghList = ldsso.getDatagroupHash();
+			if (dghList == null) {
+				s_logger.error("Data Group object was null");
+				return null;
+			}
+			HashMap<Integer, byte[]> hashes = new HashMap<Integer, byte[]>();
+			for (DataGroupHash entry : dghList) {
+				hashes.put(entry.getDataGroupNumber(), entry.getDataGroupHashValue().getOctets());
 			}
+			m_dghList = hashes;
 		}
-
-		return rv_result;
+		return m_dghList;
 	}
 
 	/**
@@ -425,9 +459,7 @@ public class SecurityObject extends SignedPIVDataObject {
 				break;
 			}
 
-			MessageDigest md = MessageDigest.getInstance(aName);
-			md.update(bytesToHash);
-			byte[] digest = md.digest();
+			byte[] digest = ContainerDigest.digest(aName, bytesToHash);
 
 			if (!Arrays.equals(m_dghList.get(id), digest)) {
 				rv_result = false;
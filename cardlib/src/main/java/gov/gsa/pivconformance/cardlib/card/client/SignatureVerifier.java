@@ -0,0 +1,318 @@
+package gov.gsa.pivconformance.cardlib.card.client;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.cms.CMSAttributes;
+import org.bouncycastle.asn1.cms.ContentInfo;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.util.Store;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+/**
+ * Verifies the CMS signatures of signed data objects. The provider, certificate converter,
+ * verifier builder and allowed digest algorithms are set up once, the parsed SignedData of the
+ * object is used as it is, and verdicts are memoized by OID, a digest of the raw container and the
+ * CHUID signer certificate, so that a container's signature is verified once however many tests
+ * check it.
+ *
+ * The memo holds a bounded number of verdicts and evicts the least recently used first. All methods
+ * are thread safe.
+ */
+public class SignatureVerifier {
+	private static final Logger s_logger = LoggerFactory.getLogger(SignatureVerifier.class);
+
+	/** Default bound, the signed containers of about twenty cards */
+	public static final int DEFAULT_MAX_ENTRIES = 128;
+
+	// SHA-256 and SHA-384, the digest algorithms allowed for PIV and PIV-I
+	private static final Set<String> ALLOWED_DIGEST_ALGORITHM_OIDS = Collections
+			.unmodifiableSet(new HashSet<String>(Arrays.asList("2.16.840.1.101.3.4.2.1", "2.16.840.1.101.3.4.2.2")));
+	private static final ASN1ObjectIdentifier MESSAGE_DIGEST = CMSAttributes.messageDigest;
+	private static final ASN1ObjectIdentifier CONTENT_TYPE = CMSAttributes.contentType;
+
+	private static final SignatureVerifier INSTANCE = new SignatureVerifier(DEFAULT_MAX_ENTRIES);
+
+	/**
+	 * A verdict, and the signer certificate embedded in the object if it has one
+	 */
+	public static final class Verdict {
+		final boolean m_valid;
+		final X509Certificate m_signerCert;
+
+		Verdict(boolean valid, X509Certificate signerCert) {
+			m_valid = valid;
+			m_signerCert = signerCert;
+		}
+
+		public boolean isValid() {
+			return m_valid;
+		}
+
+		/**
+		 * @return the signer certificate embedded in the object, or null if it has none
+		 */
+		public X509Certificate getSignerCert() {
+			return m_signerCert;
+		}
+
+		/**
+		 * Records the embedded signer certificate, if any, on the object that was verified. A frozen
+		 * object is shared by the decoded object cache and already holds the certificate its decode
+		 * found, so it is left alone; the certificate stays available from {@link #getSignerCert()}.
+		 *
+		 * @param o the object the verdict is on
+		 * @return true if the signature verifies, false otherwise
+		 */
+		public boolean applyTo(SignedPIVDataObject o) {
+			// Housekeeping
+			if (m_signerCert != null && !o.isFrozen()) {
+				o.setSignerCert(m_signerCert);
+			}
+			return m_valid;
+		}
+	}
+
+	private final JcaX509CertificateConverter m_converter;
+	private final JcaSimpleSignerInfoVerifierBuilder m_verifierBuilder;
+	private final LinkedHashMap<String, Verdict> m_verdicts;
+	private long m_hits;
+	private long m_misses;
+
+	/**
+	 * @param maxEntries number of verdicts to keep
+	 */
+	public SignatureVerifier(final int maxEntries) {
+		Provider provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+		if (provider == null) {
+			provider = new BouncyCastleProvider();
+		}
+		m_converter = new JcaX509CertificateConverter().setProvider(provider);
+		m_verifierBuilder = new JcaSimpleSignerInfoVerifierBuilder().setProvider(provider);
+		m_verdicts = new LinkedHashMap<String, Verdict>(32, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static SignatureVerifier getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Verifies the signature on an object, or returns the verdict of an earlier verification of the
+	 * same container with the same CHUID signer
+	 *
+	 * @param o the decoded signed object
+	 * @return true if the signature verifies, false otherwise
+	 */
+	public boolean verify(SignedPIVDataObject o) {
+		return verify(o, o.getChuidSignerCert());
+	}
+
+	/**
+	 * Verifies the signature on an object against a given CHUID signer certificate. Unlike
+	 * {@link #verify(SignedPIVDataObject)} it does not look up the card's data model.
+	 *
+	 * @param o the decoded signed object
+	 * @param chuidSignerCert the CHUID signer certificate of the card, or null if unknown
+	 * @return true if the signature verifies, false otherwise
+	 */
+	public boolean verify(SignedPIVDataObject o, X509Certificate chuidSignerCert) {
+		return check(o, chuidSignerCert).applyTo(o);
+	}
+
+	/**
+	 * Verifies the signature on an object against a given CHUID signer certificate without
+	 * modifying the object, so that it can be called from threads other than the one running the
+	 * card. The verdict is applied to the object with {@link Verdict#applyTo(SignedPIVDataObject)}.
+	 *
+	 * @param o the decoded signed object
+	 * @param chuidSignerCert the CHUID signer certificate of the card, or null if unknown
+	 * @return the verdict
+	 */
+	public Verdict check(SignedPIVDataObject o, X509Certificate chuidSignerCert) {
+		String key = key(o, chuidSignerCert);
+		Verdict verdict = null;
+		if (key != null) {
+			synchronized (this) {
+				verdict = m_verdicts.get(key);
+				if (verdict != null) {
+					m_hits++;
+				} else {
+					m_misses++;
+				}
+			}
+		}
+		if (verdict == null) {
+			verdict = doVerify(o, chuidSignerCert);
+			if (key != null) {
+				synchronized (this) {
+					m_verdicts.put(key, verdict);
+				}
+			}
+		}
+		return verdict;
+	}
+
+	private Verdict doVerify(SignedPIVDataObject o, X509Certificate chuidSignerCert) {
+		String name = APDUConstants.oidNameMap.get(o.getOID());
+		ContentInfo contentInfo = o.getContentInfo();
+		if (contentInfo == null) {
+			s_logger.error("No signature to verify on {}", name);
+			return new Verdict(false, null);
+		}
+		X509Certificate signerCert = null;
+		try {
+			CMSSignedData s = o.getAsymmetricSignature();
+			if (s == null) {
+				s = new CMSSignedData(contentInfo);
+			}
+			if (s.isDetachedSignature()) {
+				s = new CMSSignedData(new CMSProcessableByteArray(o.getSignedContent()), contentInfo);
+			}
+
+			SignerInformationStore signers = s.getSignerInfos();
+			if (signers.size() != 1) {
+				s_logger.error("There were {} signers", signers.size());
+				return new Verdict(false, null);
+			}
+			Iterator<AlgorithmIdentifier> dai = s.getDigestAlgorithmIDs().iterator();
+			if (dai.hasNext()) {
+				// Check against allowed signing algorithms
+				// TODO: Should we handle multiple?
+				String daOid = dai.next().getAlgorithm().getId();
+				if (!ALLOWED_DIGEST_ALGORITHM_OIDS.contains(daOid)) {
+					s_logger.error("Unsupported digest algorithm for PIV/PIV-I: {}", daOid);
+					return new Verdict(false, null);
+				}
+			}
+
+			SignerInformation signer = new DLSignerInformation(signers.getSigners().iterator().next());
+			AttributeTable at = signer.getSignedAttributes();
+			if (at == null) {
+				s_logger.error("Null signed attribute set");
+				return new Verdict(false, null);
+			}
+			s_logger.info("There are {} signed attributes", at.size());
+			if (at.get(MESSAGE_DIGEST) == null) {
+				s_logger.error("Required messageDigest attribute is missing");
+				return new Verdict(false, null);
+			}
+			if (at.get(CONTENT_TYPE) == null) {
+				s_logger.error("Required contentType attribute is missing");
+				return new Verdict(false, null);
+			}
+
+			// Ensure there is a content signer certificate
+			if (chuidSignerCert == null) {
+				s_logger.error("Unable to find CHUID signer certificate for {}", name);
+				return new Verdict(false, null);
+			}
+			Store<X509CertificateHolder> certs = s.getCertificates();
+			@SuppressWarnings("unchecked")
+			Collection<X509CertificateHolder> certCollection = certs.getMatches(signer.getSID());
+			Iterator<X509CertificateHolder> certIt = certCollection.iterator();
+			if (certIt.hasNext()) {
+				signerCert = m_converter.getCertificate(certIt.next());
+			}
+			boolean valid = signer.verify(m_verifierBuilder.build(signerCert != null ? signerCert : chuidSignerCert));
+			return new Verdict(valid, signerCert);
+		} catch (CertificateException e) {
+			s_logger.error("Error verifying signature on {}: {}", name, e.getMessage());
+		} catch (CMSException e) {
+			s_logger.error("CMS exception while verifying signature on {}: {}", name, e.getMessage());
+		} catch (OperatorCreationException e) {
+			s_logger.error("Operator exception while verifying signature on {}: {}", name, e.getMessage());
+		}
+		return new Verdict(false, signerCert);
+	}
+
+	/**
+	 * Removes every verdict
+	 */
+	public synchronized void clear() {
+		m_verdicts.clear();
+	}
+
+	public synchronized int getSize() {
+		return m_verdicts.size();
+	}
+
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+
+	// null if the object has no raw container to identify it by
+	private static String key(SignedPIVDataObject o, X509Certificate chuidSignerCert) {
+		byte[] raw = o.getBytes();
+		if (raw == null || o.getOID() == null) {
+			return null;
+		}
+		MessageDigest md;
+		try {
+			md = ContainerDigest.getMessageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		String signer = "";
+		if (chuidSignerCert != null) {
+			try {
+				signer = HexUtil.toLowerHexString(md.digest(chuidSignerCert.getEncoded()));
+			} catch (CertificateEncodingException e) {
+				return null;
+			}
+		}
+		return o.getOID() + '|' + HexUtil.toLowerHexString(md.digest(raw)) + '|' + signer;
+	}
+
+	// Signer information whose signed attributes are verified in the DL encoding they were read in
+	private static class DLSignerInformation extends SignerInformation {
+		DLSignerInformation(SignerInformation baseSignerInfo) {
+			super(baseSignerInfo);
+		}
+
+		@Override
+		public byte[] getEncodedSignedAttributes() throws IOException {
+			return signedAttributeSet.getEncoded(ASN1Encoding.DL);
+		}
+	}
+}
@@ -3,19 +3,13 @@
  */
 package gov.gsa.pivconformance.cardlib.card.client;
 
-import java.io.IOException;
-import java.security.MessageDigest;
 import java.security.Security;
 
-import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
 
 import org.apache.commons.codec.binary.Hex;
-import org.bouncycastle.asn1.ASN1Encoding;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.DEROctetString;
 import org.bouncycastle.asn1.cms.Attribute;
@@ -23,19 +17,11 @@ import org.bouncycastle.asn1.cms.AttributeTable;
 import org.bouncycastle.asn1.cms.CMSAttributes;
 import org.bouncycastle.asn1.cms.ContentInfo;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
-import org.bouncycastle.cert.X509CertificateHolder;
-import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
-import org.bouncycastle.cms.CMSException;
-import org.bouncycastle.cms.CMSProcessable;
-import org.bouncycastle.cms.CMSProcessableByteArray;
 import org.bouncycastle.cms.CMSSignedData;
 import org.bouncycastle.cms.SignerInformation;
 import org.bouncycastle.cms.SignerInformationStore;
-import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
 import org.bouncycastle.jcajce.util.MessageDigestUtils;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.operator.OperatorCreationException;
-import org.bouncycastle.util.Store;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -136,6 +122,7 @@ public class SignedPIVDataObject extends PIVDataObject {
 	 *                           certificate
 	 */
 	public void setSignerCert(X509Certificate signerCert) {
+		checkNotFrozen();
 		m_signerCert = signerCert;
 	}
 
@@ -146,13 +133,12 @@ public class SignedPIVDataObject extends PIVDataObject {
 	 * @return X509Certificate object containing the CHUID signer cert for this card
 	 */
 	public X509Certificate getChuidSignerCert() {
-		// Cache if not already cached
-		if (DataModelSingleton.getInstance().getChuidSignerCert() == null) {
-			CardHolderUniqueIdentifier o = (CardHolderUniqueIdentifier) new PIVDataObject(
-					APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID);
-			o.decode(); // Caches it
+		// Resolved once per card by ChuidSignerResolver, before signed objects are read
+		X509Certificate cert = DataModelSingleton.getInstance().getChuidSignerCert();
+		if (cert == null) {
+			s_logger.debug("The CHUID signer certificate has not been resolved");
 		}
-		return DataModelSingleton.getInstance().getChuidSignerCert();
+		return cert;
 	}
 
 	/**
@@ -381,9 +367,7 @@ public class SignedPIVDataObject extends PIVDataObject {
 							s_logger.info("Signed content bytes: " + Hex.encodeHexString(signedContentBytes));
 							String aName = MessageDigestUtils
 									.getDigestName(new ASN1ObjectIdentifier(signer.getDigestAlgOID()));
-							MessageDigest md = MessageDigest.getInstance(aName, "BC");
-							md.update(signedContentBytes);
-							byte[] digest = md.digest();
+							byte[] digest = ContainerDigest.digest(aName, signedContentBytes);
 							if (digest != null) {
 								setComputedDigest(digest);
 								s_logger.info("Computed digest: {} ", Hex.encodeHexString(digest));
@@ -446,106 +430,11 @@ public class SignedPIVDataObject extends PIVDataObject {
 
 	/**
      *
-     * Verifies the signature on the object.
+     * Verifies the signature on the object. Verdicts are memoized by {@link SignatureVerifier}.
      *
      * @return True if signature successfully verified, false otherwise
      */
 	public boolean verifySignature() {
-        boolean rv_result = false;
-
-        CMSSignedData s;
-        try {
-            s = new CMSSignedData(m_contentInfo);
-
-            if (m_asymmetricSignature.isDetachedSignature()) {
-                CMSProcessable procesableContentBytes = new CMSProcessableByteArray(m_signedContent);
-                s = new CMSSignedData(procesableContentBytes, m_contentInfo);
-            }
-            
-            SignerInformationStore signers = s.getSignerInfos();
-            if (signers.size() != 1) {
-            	s_logger.error("There were {} signers", signers.size());
-            	return rv_result;
-            }
-            Store<X509CertificateHolder> certs = s.getCertificates();
-            Set<AlgorithmIdentifier> digAlgSet = s.getDigestAlgorithmIDs();
-            Iterator<AlgorithmIdentifier> dai = digAlgSet.iterator();
-            
-            ArrayList<String> allowedDigestAlgOids = new ArrayList<String>();
-            allowedDigestAlgOids.add("2.16.840.1.101.3.4.2.1");
-            allowedDigestAlgOids.add("2.16.840.1.101.3.4.2.2");
-        	String daOid = null;
-
-        	while (dai.hasNext()) {
-            	// Check against allowed signing algorithms
-            	AlgorithmIdentifier ai = dai.next();
-            	daOid = ai.getAlgorithm().getId();
-            	if (!allowedDigestAlgOids.contains(daOid)) {
-            		s_logger.error("Unsupported digest algorithm for PIV/PIV-I: {}", daOid);
-            		return rv_result; 
-            	}
-            	break; // TODO: Should we handle multiple?
-            }
-            
-            for (Iterator<SignerInformation> i = signers.getSigners().iterator(); i.hasNext();) {
-                SignerInformation signer = i.next();
-        		signer = new _SignerInformation(signer);
-
-				AttributeTable at = signer.getSignedAttributes();
-
-                s_logger.info("There are {} signed attributes", at.size());
-				// Message digest
-				if (at.get(new ASN1ObjectIdentifier("1.2.840.113549.1.9.4")) == null) {
-					s_logger.error("Required messageDigest attribute is missing");
-					return rv_result;
-				}
-              
-				// Content type
-				if (at.get(new ASN1ObjectIdentifier("1.2.840.113549.1.9.3")) == null) {
-					s_logger.error("Required contentType attribute is missing");
-					return rv_result;
-				}
-
-				// Ensure there is a content signer certificate
-                X509Certificate signerCert = getChuidSignerCert();
-
-                if (signerCert == null) {
-                    s_logger.error("Unable to find CHUID signer certificate for {}", APDUConstants.oidNameMap.get(super.getOID()));
-                   return rv_result;
-                }
-
-                @SuppressWarnings("unchecked")
-				Collection<X509CertificateHolder> certCollection = certs.getMatches(signer.getSID());
-                Iterator<X509CertificateHolder> certIt = certCollection.iterator();
-                if (certIt.hasNext()) {
-                    X509CertificateHolder certHolder = certIt.next();
-                    signerCert = new JcaX509CertificateConverter().setProvider("BC").getCertificate(certHolder);
-                    // Housekeeping
-                    if (signerCert != null)
-                    	setSignerCert(signerCert);
-                }
-
-                rv_result = signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider("BC").build(signerCert));
-            }
-        } catch (CertificateException e) {
-            s_logger.error("Error verifying signature on {}: {}", APDUConstants.oidNameMap.get(super.getOID()), e.getMessage());
-        } catch (CMSException e) {
-        	s_logger.error("CMS exception while verifying signature on {}: {}", APDUConstants.oidNameMap.get(super.getOID()), e.getMessage());
-		} catch (OperatorCreationException e) {
-        	s_logger.error("Operator exception while verifying signature on {}: {}", APDUConstants.oidNameMap.get(super.getOID()), e.getMessage());
-		}
-
-        return rv_result;
-    }
-	
-	private class _SignerInformation extends SignerInformation {
-		protected _SignerInformation(SignerInformation baseSignerInfo) {
-			super(baseSignerInfo);
-		}
-		
-		@Override
-		public byte[] getEncodedSignedAttributes() throws IOException {
-			return signedAttributeSet.getEncoded(ASN1Encoding.DL);
-		}
+		return SignatureVerifier.getInstance().verify(this);
 	}
 }
@@ -68,15 +68,20 @@ public class X509CertificateDataObject extends PIVDataObject {
 	 */
 	@Override
 	public boolean decode() {
+		if (isDecoded()) {
+			return true;
+		}
 
 		if (m_cert == null) {
 
 			try {
 				byte[] raw = super.getBytes();
 
-				s_logger.trace("rawBytes: {}", Hex.encodeHexString(raw));
+				if (s_logger.isTraceEnabled())
+					s_logger.trace("rawBytes: {}", Hex.encodeHexString(raw));
 
-				BerTlvParser tp = new BerTlvParser(new CCTTlvLogger(X509CertificateDataObject.class));
+				// Parse views over the raw bytes so only the certificate value itself gets copied
+				BerTlvParser tp = new BerTlvParser(new CCTTlvLogger(X509CertificateDataObject.class), true);
 				BerTlvs outer = tp.parse(raw);
 
 				if (outer == null) {
@@ -87,10 +92,10 @@ public class X509CertificateDataObject extends PIVDataObject {
 				List<BerTlv> values = outer.getList();
 				for (BerTlv tlv : values) {
 					if (tlv.isPrimitive()) {
-						s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv.getTag().bytes),
-								Hex.encodeHexString(tlv.getBytesValue()));
+						if (s_logger.isTraceEnabled())
+							s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv.getTag().bytes), tlv.getHexValue());
 
-						BerTlvs outer2 = tp.parse(tlv.getBytesValue());
+						BerTlvs outer2 = tp.parseValue(tlv);
 
 						if (outer2 == null) {
 							s_logger.error("Error parsing X.509 Certificate, unable to parse TLV value.");
@@ -102,16 +107,17 @@ public class X509CertificateDataObject extends PIVDataObject {
 						byte[] mSCUIDBuf = null;
 						for (BerTlv tlv2 : values2) {
 							if (tlv2.isPrimitive()) {
-								s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv2.getTag().bytes),
-										Hex.encodeHexString(tlv2.getBytesValue()));
+								if (s_logger.isTraceEnabled())
+									s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv2.getTag().bytes), tlv2.getHexValue());
 							} else {
 								super.m_tagList.add(tlv2.getTag());
 								if (Arrays.equals(tlv2.getTag().bytes, TagConstants.CERTIFICATE_TAG)) {
 									if (tlv2.hasRawValue()) {
 										m_rawCertBuf = tlv2.getBytesValue();
-										m_content.put(tlv2.getTag(), tlv2.getBytesValue());
-										s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv2.getTag().bytes),
-												Hex.encodeHexString(m_rawCertBuf));
+										m_content.put(tlv2.getTag(), m_rawCertBuf);
+										if (s_logger.isTraceEnabled())
+											s_logger.trace("Tag {}: {}", Hex.encodeHexString(tlv2.getTag().bytes),
+													Hex.encodeHexString(m_rawCertBuf));
 									}
 
 									String oid = getOID();
@@ -179,6 +185,7 @@ public class X509CertificateDataObject extends PIVDataObject {
 		}
 
 		dump(this.getClass());
+		setDecoded(true);
 		return true;
 	}
 
@@ -3,7 +3,14 @@ package gov.gsa.pivconformance.cardlib.tlv;
 import java.util.Arrays;
 
 public class BerTag {
+    /**
+     * Value of {@link #intValue()} for tags longer than four bytes
+     */
+    public static final int NOT_PACKED = -1;
+
     public final byte[] bytes;
+    private final int theKey;
+    private final int theHashCode;
 
     /**
      * Creates a new tag from given byte array. Similar {@link BerTag#BerTag(byte[], int, int)} but using
@@ -19,18 +26,73 @@ public class BerTag {
         byte[] temp = new byte[aLength];
         System.arraycopy(aBuf, aOffset, temp, 0, aLength);
         bytes = temp;
+        theKey = pack(bytes, 0, bytes.length);
+        theHashCode = Arrays.hashCode(bytes);
     }
 
     public BerTag(int aFirstByte, int aSecondByte) {
-        bytes = new byte[]{(byte) (aFirstByte), (byte) aSecondByte};
+        this(new byte[]{(byte) (aFirstByte), (byte) aSecondByte});
     }
 
     public BerTag(int aFirstByte, int aSecondByte, int aFirth) {
-        bytes = new byte[]{(byte) (aFirstByte), (byte) aSecondByte, (byte) aFirth};
+        this(new byte[]{(byte) (aFirstByte), (byte) aSecondByte, (byte) aFirth});
     }
 
     public BerTag(int aFirstByte) {
-        bytes = new byte[]{(byte) aFirstByte};
+        this(new byte[]{(byte) aFirstByte});
+    }
+
+    /**
+     * Returns the canonical tag for the given bytes. Single-byte tags and the tags
+     * in {@link TagConstants} are shared instances; other tags are created.
+     *
+     * @param aBuf    buffer holding the tag
+     * @param aOffset offset of the first tag byte
+     * @param aLength number of tag bytes
+     * @return the tag
+     */
+    public static BerTag valueOf(byte[] aBuf, int aOffset, int aLength) {
+        int key = pack(aBuf, aOffset, aLength);
+        if(key != NOT_PACKED) {
+            BerTag tag = INTERNED.get(key);
+            if(tag != null && tag.bytes.length == aLength) {
+                return tag;
+            }
+        }
+        return new BerTag(aBuf, aOffset, aLength);
+    }
+
+    public static BerTag valueOf(byte[] aBuf) {
+        return valueOf(aBuf, 0, aBuf.length);
+    }
+
+    /**
+     * Packs up to four tag bytes, big-endian, into an int
+     *
+     * @param aBuf    buffer holding the tag
+     * @param aOffset offset of the first tag byte
+     * @param aLength number of tag bytes
+     * @return the packed tag, or {@link #NOT_PACKED} if the tag is longer than four bytes
+     */
+    public static int pack(byte[] aBuf, int aOffset, int aLength) {
+        if(aLength < 1 || aLength > 4) {
+            return NOT_PACKED;
+        }
+        int key = 0;
+        for(int i=aOffset; i<aOffset+aLength; i++) {
+            key = (key << 8) | (aBuf[i] & 0xff);
+        }
+        return key;
+    }
+
+    /**
+     * Returns the tag bytes packed into an int, suitable as a key for {@link IntObjectMap}.
+     * A well-formed tag never packs to {@link #NOT_PACKED}, since its last byte has bit 8 clear.
+     *
+     * @return the packed tag, or {@link #NOT_PACKED} if the tag is longer than four bytes
+     */
+    public int intValue() {
+        return theKey;
     }
 
     public boolean isConstructed() {
@@ -44,18 +106,42 @@ public class BerTag {
 
         BerTag berTag = (BerTag) o;
 
+        if (theKey != NOT_PACKED || berTag.theKey != NOT_PACKED) {
+            return theKey == berTag.theKey && bytes.length == berTag.bytes.length;
+        }
         return Arrays.equals(bytes, berTag.bytes);
 
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(bytes);
+        return theHashCode;
     }
 
     @Override
     public String toString() {
         return (isConstructed() ? "+ " : "- ") + HexUtil.toHexString(bytes, 0, bytes.length);
     }
-}
 
+    private static final IntObjectMap<BerTag> INTERNED = new IntObjectMap<BerTag>(384);
+
+    private static void intern(byte[] aBytes) {
+        BerTag tag = new BerTag(aBytes);
+        if(tag.theKey != NOT_PACKED && INTERNED.get(tag.theKey) == null) {
+            INTERNED.put(tag.theKey, tag);
+        }
+    }
+
+    static {
+        for(int i=0; i<0x100; i++) {
+            intern(new byte[]{(byte) i});
+        }
+        for(byte[] tag : TagConstants.Allx509Tags()) {
+            intern(tag);
+        }
+        intern(TagConstants.INTERMEDIATE_CVC_TAG);
+        intern(TagConstants.PIN_USAGE_POLICY_TAG);
+        intern(TagConstants.BIT_FOR_FIRST_FINGER_TAG);
+        intern(TagConstants.BIT_FOR_SECOND_FINGER_TAG);
+    }
+}
@@ -0,0 +1,71 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Tag index over a TLV tree, giving the same results as a depth-first scan:
+ * for each tag, the TLVs carrying it in document order, excluding those nested
+ * inside a TLV with the same tag.
+ */
+class BerTagIndex {
+
+    private final IntObjectMap<List<BerTlv>> thePacked = new IntObjectMap<List<BerTlv>>();
+    private final HashMap<BerTag, List<BerTlv>> theUnpacked = new HashMap<BerTag, List<BerTlv>>();
+
+    BerTagIndex(List<BerTlv> aRoots) {
+        List<BerTag> ancestors = new ArrayList<BerTag>();
+        List<BerTlv> pending = new ArrayList<BerTlv>();
+        int[] depths = new int[16];
+        for(int i=aRoots.size()-1; i>=0; i--) {
+            pending.add(aRoots.get(i));
+        }
+        while(!pending.isEmpty()) {
+            int depth = depths[pending.size()-1];
+            BerTlv tlv = pending.remove(pending.size()-1);
+            while(ancestors.size() > depth) {
+                ancestors.remove(ancestors.size()-1);
+            }
+
+            BerTag tag = tlv.getTag();
+            if(!ancestors.contains(tag)) {
+                listFor(tag).add(tlv);
+            }
+            if(tlv.isConstructed() && tlv.theList != null) {
+                ancestors.add(tag);
+                for(int i=tlv.theList.size()-1; i>=0; i--) {
+                    if(pending.size() == depths.length) {
+                        depths = Arrays.copyOf(depths, depths.length * 2);
+                    }
+                    depths[pending.size()] = depth + 1;
+                    pending.add(tlv.theList.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param aTag tag
+     * @return the TLVs with the tag, or an empty list
+     */
+    List<BerTlv> get(BerTag aTag) {
+        List<BerTlv> list = aTag.intValue() != BerTag.NOT_PACKED ? thePacked.get(aTag.intValue()) : theUnpacked.get(aTag);
+        return list != null ? list : Collections.<BerTlv>emptyList();
+    }
+
+    private List<BerTlv> listFor(BerTag aTag) {
+        List<BerTlv> list = aTag.intValue() != BerTag.NOT_PACKED ? thePacked.get(aTag.intValue()) : theUnpacked.get(aTag);
+        if(list == null) {
+            list = new ArrayList<BerTlv>(2);
+            if(aTag.intValue() != BerTag.NOT_PACKED) {
+                thePacked.put(aTag.intValue(), list);
+            } else {
+                theUnpacked.put(aTag, list);
+            }
+        }
+        return list;
+    }
+}
@@ -13,9 +13,18 @@ public class BerTlv {
     private final static Charset ASCII = Charset.forName("US-ASCII");
 
     private final BerTag theTag;
-    private final byte[] theValue;
+    private byte[] theValue;
     protected final List<BerTlv> theList;
 
+    // Backing buffer and value position. For TLVs created over a copied value the
+    // buffer is the value itself; for views it is the buffer that was parsed.
+    private final byte[] theBuffer;
+    private final int theValueOffset;
+    private final int theValueLength;
+
+    // index of nested TLVs, built on the first lookup
+    private volatile BerTagIndex theIndex;
+
     /**
      * Creates constructed TLV
      *
@@ -23,15 +32,39 @@ public class BerTlv {
      * @param aList  set of nested TLVs
      */
     public BerTlv(BerTag aTag, List<BerTlv> aList) {
-        theTag = aTag;
-        theList = aList;
-        theValue = null;
+        this(aTag, aList, null);
     }
 
     public BerTlv(BerTag aTag, List<BerTlv> aList, byte[] aValue) {
         theTag = aTag;
         theList = aList;
         theValue = aValue;
+        theBuffer = aValue;
+        theValueOffset = 0;
+        theValueLength = aValue != null ? aValue.length : 0;
+    }
+
+    /**
+     * Creates a TLV view over a region of a backing buffer. The value bytes are
+     * not copied until {@link #getBytesValue()} is called, so the backing buffer
+     * must not be modified while the view is in use.
+     *
+     * @param aTag          tag
+     * @param aList         set of nested TLVs, or null if the value was not parsed
+     * @param aBuffer       backing buffer
+     * @param aValueOffset  offset of the first value byte in the backing buffer
+     * @param aValueLength  value length
+     */
+    public BerTlv(BerTag aTag, List<BerTlv> aList, byte[] aBuffer, int aValueOffset, int aValueLength) {
+        if(aValueOffset < 0 || aValueLength < 0 || aValueOffset + aValueLength > aBuffer.length) {
+            throw new IllegalStateException("Value is out of the range [offset="+aValueOffset+", len="+aValueLength+", array.length="+aBuffer.length+"]");
+        }
+        theTag = aTag;
+        theList = aList;
+        theValue = null;
+        theBuffer = aBuffer;
+        theValueOffset = aValueOffset;
+        theValueLength = aValueLength;
     }
 
     /**
@@ -41,9 +74,7 @@ public class BerTlv {
      * @param aValue value as byte[]
      */
     public BerTlv(BerTag aTag, byte[] aValue) {
-        theTag = aTag;
-        theValue = aValue;
-        theList = null;
+        this(aTag, null, aValue);
     }
 
     //
@@ -59,7 +90,17 @@ public class BerTlv {
     }
 
     public boolean hasRawValue() {
-        return theValue != null;
+        return theBuffer != null;
+    }
+
+    /**
+     * Indicates whether this TLV is a view over a parsed buffer whose value has
+     * not been copied yet
+     *
+     * @return true if the value still lives only in the backing buffer
+     */
+    public boolean isView() {
+        return theValue == null && theBuffer != null;
     }
 
     public boolean isConstructed() {
@@ -74,44 +115,50 @@ public class BerTlv {
     // find
     //
 
+    /**
+     * Finds this TLV or the first nested TLV with the tag, depth first. The first
+     * lookup indexes the tree, so it must not be modified afterwards.
+     *
+     * @param aTag tag
+     * @return the TLV, or null if there is none
+     */
     public BerTlv find(BerTag aTag) {
         if(aTag.equals(getTag())) {
             return this;
         }
-
-        if(isConstructed()) {
-        	if(theList == null) return null;
-            for (BerTlv tlv : theList) {
-                BerTlv ret = tlv.find(aTag);
-                if(ret!=null) {
-                    return ret;
-                }
-            }
+        if(!isConstructed() || theList == null) {
             return null;
         }
-        return null;
+        List<BerTlv> found = getIndex().get(aTag);
+        return found.isEmpty() ? null : found.get(0);
     }
 
     public List<BerTlv> findAll(BerTag aTag) {
         List<BerTlv> list = new ArrayList<BerTlv>();
         if(aTag.equals(getTag())) {
             list.add(this);
-            return list;
-        } else if(isConstructed()) {
-            for (BerTlv tlv : theList) {
-                list.addAll(tlv.findAll(aTag));
-            }
+        } else if(isConstructed() && theList != null) {
+            list.addAll(getIndex().get(aTag));
         }
         return list;
     }
 
+    private BerTagIndex getIndex() {
+        BerTagIndex index = theIndex;
+        if(index == null) {
+            index = new BerTagIndex(theList);
+            theIndex = index;
+        }
+        return index;
+    }
+
     //
     // getters
     //
 
     public String getHexValue() {
-        if(isConstructed() && theValue == null) throw new IllegalStateException("Tag is CONSTRUCTED "+ HexUtil.toHexString(theTag.bytes));
-        return HexUtil.toHexString(theValue);
+        if(isConstructed() && theBuffer == null) throw new IllegalStateException("Tag is CONSTRUCTED "+ HexUtil.toHexString(theTag.bytes));
+        return HexUtil.toHexString(theBuffer, theValueOffset, theValueLength);
     }
 
     /**
@@ -126,23 +173,50 @@ public class BerTlv {
         if(isConstructed()) {
             throw new IllegalStateException("TLV is constructed");
         }
-        return new String(theValue, aCharset);
+        return new String(theBuffer, theValueOffset, theValueLength, aCharset);
     }
 
+    /**
+     * Gets the value. For views the value is copied out of the backing buffer
+     * on the first call and the copy is returned thereafter.
+     *
+     * @return value bytes
+     */
     public byte[] getBytesValue() {
-        if(isConstructed() && theValue == null) {
+        if(isConstructed() && theBuffer == null) {
             throw new IllegalStateException("TLV ["+theTag+"]is constructed");
         }
+        if(theValue == null && theBuffer != null) {
+            theValue = Arrays.copyOfRange(theBuffer, theValueOffset, theValueOffset + theValueLength);
+        }
         return theValue;
     }
 
+    /**
+     * Gets the buffer holding the value without copying it. Use together with
+     * {@link #getValueOffset()} and {@link #getValueLength()}.
+     *
+     * @return backing buffer, or null if this TLV has no raw value
+     */
+    public byte[] getValueBuffer() {
+        return theBuffer;
+    }
+
+    public int getValueOffset() {
+        return theValueOffset;
+    }
+
+    public int getValueLength() {
+        return theValueLength;
+    }
+
     public int getIntValue() {
         int i=0;
         int j=0;
         int number = 0;
 
-        for (i = 0; i < theValue.length; i++) {
-            j=theValue[i];
+        for (i = theValueOffset; i < theValueOffset + theValueLength; i++) {
+            j=theBuffer[i];
             number = number * 256 + ( j<0 ? j+=256 : j);
         }
         return number;
@@ -161,24 +235,39 @@ public class BerTlv {
         BerTlv berTlv = (BerTlv) o;
 
         if (theTag != null ? !theTag.equals(berTlv.theTag) : berTlv.theTag != null) return false;
-        if (!Arrays.equals(theValue, berTlv.theValue)) return false;
+        if (theBuffer == null || berTlv.theBuffer == null) {
+            if (theBuffer != berTlv.theBuffer) return false;
+        } else if (!Arrays.equals(theBuffer, theValueOffset, theValueOffset + theValueLength,
+                berTlv.theBuffer, berTlv.theValueOffset, berTlv.theValueOffset + berTlv.theValueLength)) {
+            return false;
+        }
         return theList != null ? theList.equals(berTlv.theList) : berTlv.theList == null;
     }
 
     @Override
     public int hashCode() {
         int result = theTag != null ? theTag.hashCode() : 0;
-        result = 31 * result + Arrays.hashCode(theValue);
+        result = 31 * result + valueHashCode();
         result = 31 * result + (theList != null ? theList.hashCode() : 0);
         return result;
     }
 
+    // Same as Arrays.hashCode() of the value, computed in place
+    private int valueHashCode() {
+        if (theBuffer == null) return 0;
+        int result = 1;
+        for (int i = theValueOffset; i < theValueOffset + theValueLength; i++) {
+            result = 31 * result + theBuffer[i];
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
 
         return "BerTlv{" +
                 "theTag=" + theTag +
-                ", theValue=" + Arrays.toString(theValue) +
+                ", theValue=" + (theBuffer == null ? "null" : Arrays.toString(Arrays.copyOfRange(theBuffer, theValueOffset, theValueOffset + theValueLength))) +
                 ", theList=" + theList +
                 '}';
     }
@@ -0,0 +1,210 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Encodes TLVs directly into a {@link ByteBuffer}, starting at its current position.
+ * When the buffer is full it is replaced by a larger one of the same kind (heap or
+ * direct), so callers should use {@link #getBuffer()} once encoding is done.
+ *
+ * Lengths of constructed TLVs are computed before anything is written (see
+ * {@link #encodedLength(BerTlv)}), so every header is written once, in place.
+ */
+public class BerTlvBufferBuilder {
+
+    private ByteBuffer theBuffer;
+    private final int theStart;
+
+    public BerTlvBufferBuilder(int aCapacity) {
+        this(ByteBuffer.allocate(aCapacity));
+    }
+
+    /**
+     * @param aBuffer buffer to encode into, from its current position
+     */
+    public BerTlvBufferBuilder(ByteBuffer aBuffer) {
+        theBuffer = aBuffer;
+        theStart = aBuffer.position();
+    }
+
+    /**
+     * Returns the number of bytes needed for a length field
+     *
+     * @param aLength value length
+     * @return 1 to 4
+     */
+    public static int getLengthBytesCount(int aLength) {
+        if(aLength < 0) {
+            throw new IllegalStateException("length ["+aLength+"] is negative");
+        } else if(aLength < 0x80) {
+            return 1;
+        } else if(aLength < 0x100) {
+            return 2;
+        } else if(aLength < 0x10000) {
+            return 3;
+        } else if(aLength < 0x1000000) {
+            return 4;
+        }
+        throw new IllegalStateException("length ["+aLength+"] out of range (0x1000000)");
+    }
+
+    /**
+     * Returns the encoded size of a TLV
+     *
+     * @param aTagLength   number of tag bytes
+     * @param aValueLength value length
+     * @return number of bytes
+     */
+    public static int encodedLength(int aTagLength, int aValueLength) {
+        return aTagLength + getLengthBytesCount(aValueLength) + aValueLength;
+    }
+
+    /**
+     * Returns the encoded size of a TLV as {@link #addBerTlv(BerTlv)} writes it.
+     * Constructed TLVs with nested TLVs are sized from their children.
+     *
+     * @param aTlv TLV
+     * @return number of bytes
+     */
+    public static int encodedLength(BerTlv aTlv) {
+        return encodedLength(aTlv.getTag().bytes.length, valueLength(aTlv));
+    }
+
+    private static int valueLength(BerTlv aTlv) {
+        List<BerTlv> children = aTlv.isConstructed() ? aTlv.theList : null;
+        if(children == null) {
+            return aTlv.getValueLength();
+        }
+        int length = 0;
+        for(BerTlv child : children) {
+            length += encodedLength(child);
+        }
+        return length;
+    }
+
+    /**
+     * Writes a tag and a length field of a given size. Use a size larger than
+     * {@link #getLengthBytesCount(int)} to reproduce a non-minimal encoding.
+     *
+     * @param aTag              tag bytes
+     * @param aLength           value length
+     * @param aLengthBytesCount size of the length field, 1 to 4
+     * @return builder
+     */
+    public BerTlvBufferBuilder putHeader(byte[] aTag, int aLength, int aLengthBytesCount) {
+        if(aLengthBytesCount < getLengthBytesCount(aLength) || aLengthBytesCount > 4) {
+            throw new IllegalStateException("length ["+aLength+"] does not fit in "+aLengthBytesCount+" bytes");
+        }
+        ensureCapacity(aTag.length + aLengthBytesCount);
+        theBuffer.put(aTag);
+        if(aLengthBytesCount == 1) {
+            theBuffer.put((byte) aLength);
+        } else {
+            theBuffer.put((byte) (0x80 | (aLengthBytesCount - 1)));
+            for(int shift=(aLengthBytesCount - 2) * 8; shift>=0; shift-=8) {
+                theBuffer.put((byte) (aLength >>> shift));
+            }
+        }
+        return this;
+    }
+
+    public BerTlvBufferBuilder putHeader(byte[] aTag, int aLength) {
+        return putHeader(aTag, aLength, getLengthBytesCount(aLength));
+    }
+
+    /**
+     * Writes raw bytes, such as the value following a header
+     *
+     * @param aBytes  source
+     * @param aOffset offset in the source
+     * @param aLength number of bytes
+     * @return builder
+     */
+    public BerTlvBufferBuilder put(byte[] aBytes, int aOffset, int aLength) {
+        ensureCapacity(aLength);
+        theBuffer.put(aBytes, aOffset, aLength);
+        return this;
+    }
+
+    public BerTlvBufferBuilder addBytes(byte[] aTag, byte[] aBytes, int aOffset, int aLength) {
+        putHeader(aTag, aLength);
+        return put(aBytes, aOffset, aLength);
+    }
+
+    public BerTlvBufferBuilder addBytes(BerTag aTag, byte[] aBytes) {
+        return addBytes(aTag.bytes, aBytes, 0, aBytes.length);
+    }
+
+    public BerTlvBufferBuilder addEmpty(BerTag aTag) {
+        return putHeader(aTag.bytes, 0, 1);
+    }
+
+    /**
+     * Writes a TLV. Values of primitive TLVs, and of constructed TLVs that were
+     * not parsed into children, are written from their backing buffers without
+     * copying; constructed TLVs with children are re-encoded from the children.
+     *
+     * @param aTlv TLV
+     * @return builder
+     */
+    public BerTlvBufferBuilder addBerTlv(BerTlv aTlv) {
+        List<BerTlv> children = aTlv.isConstructed() ? aTlv.theList : null;
+        if(children == null) {
+            putHeader(aTlv.getTag().bytes, aTlv.getValueLength());
+            if(aTlv.getValueLength() > 0) {
+                put(aTlv.getValueBuffer(), aTlv.getValueOffset(), aTlv.getValueLength());
+            }
+            return this;
+        }
+        putHeader(aTlv.getTag().bytes, valueLength(aTlv));
+        for(BerTlv child : children) {
+            addBerTlv(child);
+        }
+        return this;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    public int length() {
+        return theBuffer.position() - theStart;
+    }
+
+    /**
+     * @return the buffer holding the encoded bytes, positioned after the last one
+     */
+    public ByteBuffer getBuffer() {
+        return theBuffer;
+    }
+
+    /**
+     * @return a copy of the bytes written
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length()];
+        ByteBuffer view = theBuffer.duplicate();
+        view.position(theStart);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Discards everything written so far, keeping the buffer for reuse
+     */
+    public void reset() {
+        theBuffer.position(theStart);
+    }
+
+    private void ensureCapacity(int aCount) {
+        if(theBuffer.remaining() >= aCount) {
+            return;
+        }
+        int capacity = Math.max(theBuffer.capacity() * 2, theBuffer.position() + aCount);
+        ByteBuffer grown = theBuffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        grown.order(theBuffer.order());
+        theBuffer.flip();
+        grown.put(theBuffer);
+        theBuffer = grown;
+    }
+}
@@ -0,0 +1,57 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+/**
+ * Thrown when a parse or walk exceeds one of its {@link BerTlvParseLimits}.
+ * Nothing parsed before the limit was reached is returned.
+ */
+public class BerTlvLimitException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Limit {
+        TLV_COUNT,
+        DEPTH,
+        TOTAL_BYTES
+    }
+
+    private final Limit theLimit;
+    private final int theMaximum;
+    private final int theOffset;
+    private final int theDepth;
+
+    public BerTlvLimitException(Limit aLimit, int aMaximum, int aOffset, int aDepth) {
+        super("TLV limit exceeded [limit="+aLimit+", max="+aMaximum+", offset="+aOffset+", depth="+aDepth+"]");
+        theLimit = aLimit;
+        theMaximum = aMaximum;
+        theOffset = aOffset;
+        theDepth = aDepth;
+    }
+
+    /**
+     * @return the limit that was exceeded
+     */
+    public Limit getLimit() {
+        return theLimit;
+    }
+
+    /**
+     * @return the configured value of the exceeded limit
+     */
+    public int getMaximum() {
+        return theMaximum;
+    }
+
+    /**
+     * @return offset of the TLV, or of the first byte, at which the limit was exceeded
+     */
+    public int getOffset() {
+        return theOffset;
+    }
+
+    /**
+     * @return nesting depth at which the limit was exceeded
+     */
+    public int getDepth() {
+        return theDepth;
+    }
+}
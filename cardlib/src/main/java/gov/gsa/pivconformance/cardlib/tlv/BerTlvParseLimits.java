@@ -0,0 +1,51 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+/**
+ * Upper bounds applied by {@link BerTlvParser} while parsing or walking TLVs
+ */
+public class BerTlvParseLimits {
+
+    /**
+     * Limits well above anything a PIV card returns
+     */
+    public static final BerTlvParseLimits DEFAULT = new BerTlvParseLimits(65536, 64, 32 * 1024 * 1024);
+
+    private final int theMaxTlvCount;
+    private final int theMaxDepth;
+    private final int theMaxTotalBytes;
+
+    /**
+     * @param aMaxTlvCount   maximum number of TLVs, at any depth, in one parse
+     * @param aMaxDepth      maximum nesting depth; 1 allows top-level TLVs only
+     * @param aMaxTotalBytes maximum number of bytes in one parse
+     */
+    public BerTlvParseLimits(int aMaxTlvCount, int aMaxDepth, int aMaxTotalBytes) {
+        if(aMaxTlvCount < 1 || aMaxDepth < 1 || aMaxTotalBytes < 0) {
+            throw new IllegalStateException("Invalid limits [maxTlvCount="+aMaxTlvCount+", maxDepth="+aMaxDepth+", maxTotalBytes="+aMaxTotalBytes+"]");
+        }
+        theMaxTlvCount = aMaxTlvCount;
+        theMaxDepth = aMaxDepth;
+        theMaxTotalBytes = aMaxTotalBytes;
+    }
+
+    public int getMaxTlvCount() {
+        return theMaxTlvCount;
+    }
+
+    public int getMaxDepth() {
+        return theMaxDepth;
+    }
+
+    public int getMaxTotalBytes() {
+        return theMaxTotalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "BerTlvParseLimits{" +
+                "maxTlvCount=" + theMaxTlvCount +
+                ", maxDepth=" + theMaxDepth +
+                ", maxTotalBytes=" + theMaxTotalBytes +
+                '}';
+    }
+}
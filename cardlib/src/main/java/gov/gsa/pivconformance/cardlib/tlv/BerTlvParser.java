@@ -1,142 +1,382 @@
 package gov.gsa.pivconformance.cardlib.tlv;
 
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
- *
+ * Parses BER-TLV data iteratively, using an explicit stack for nested TLVs.
+ * Every parse and walk is bounded by the parser's {@link BerTlvParseLimits};
+ * exceeding one raises a {@link BerTlvLimitException}.
  */
 public class BerTlvParser {
 
     private final IBerTlvLogger log;
+    private final boolean theViewMode;
+    private final BerTlvParseLimits theLimits;
 
     public BerTlvParser() {
         this(EMPTY_LOGGER);
     }
 
     public BerTlvParser(IBerTlvLogger aLogger) {
+        this(aLogger, false);
+    }
+
+    /**
+     * Creates a parser that optionally returns TLV views instead of copying values.
+     * In view mode each {@link BerTlv} references the parsed buffer by offset and
+     * length, and copies its value only when {@link BerTlv#getBytesValue()} is called.
+     *
+     * @param aLogger    logger
+     * @param aViewMode  true to return views over the parsed buffer
+     */
+    public BerTlvParser(IBerTlvLogger aLogger, boolean aViewMode) {
+        this(aLogger, aViewMode, BerTlvParseLimits.DEFAULT);
+    }
+
+    /**
+     * @param aLogger    logger
+     * @param aViewMode  true to return views over the parsed buffer
+     * @param aLimits    limits applied to every parse and walk
+     */
+    public BerTlvParser(IBerTlvLogger aLogger, boolean aViewMode, BerTlvParseLimits aLimits) {
         log = aLogger;
+        theViewMode = aViewMode;
+        theLimits = aLimits;
+    }
+
+    public boolean isViewMode() {
+        return theViewMode;
+    }
+
+    public BerTlvParseLimits getLimits() {
+        return theLimits;
     }
 
     public BerTlv parseConstructed(byte[] aBuf) {
         return parseConstructed(aBuf, 0, aBuf.length);
     }
 
+    /**
+     * Parses the first TLV in the range, including all nested constructed TLVs
+     *
+     * @param aBuf    buffer
+     * @param aOffset offset of the TLV
+     * @param aLen    number of bytes available
+     * @return the TLV, or null if the range is empty
+     */
     public BerTlv parseConstructed(byte[] aBuf, int aOffset, int aLen) {
-        ParseResult result =  parseWithResult(0, aBuf, aOffset, aLen, true);
-        return result.tlv;
+        List<BerTlv> tlvs = parseTlvs(aBuf, aOffset, aLen, true, true);
+        return tlvs.isEmpty() ? null : tlvs.get(0);
     }
 
     public BerTlvs parse(byte[] aBuf) {
         return parse(aBuf, 0, aBuf.length);
     }
 
+    /**
+     * Parses all top-level TLVs in the range. Values of constructed TLVs are not
+     * parsed.
+     *
+     * @param aBuf    buffer
+     * @param aOffset offset of the first TLV
+     * @param aLen    number of bytes to parse
+     * @return the TLVs
+     */
     public BerTlvs parse(byte[] aBuf, final int aOffset, int aLen) {
-        List<BerTlv> tlvs = new ArrayList<BerTlv>();
-        if(aLen==0) return new BerTlvs(tlvs);
+        return new BerTlvs(parseTlvs(aBuf, aOffset, aLen, false, false));
+    }
 
-        int offset = aOffset;
-        for(int i=0; i<100; i++) {
-            ParseResult result =  parseWithResult(0, aBuf, offset, aLen-offset, false);
-            tlvs.add(result.tlv);
+    /**
+     * Parses the value of a TLV in place, without copying it out of its backing buffer
+     *
+     * @param aTlv TLV whose value holds the TLVs to parse
+     * @return the nested TLVs
+     */
+    public BerTlvs parseValue(BerTlv aTlv) {
+        if(!aTlv.hasRawValue()) {
+            throw new IllegalStateException("TLV ["+aTlv.getTag()+"] has no value");
+        }
+        return parse(aTlv.getValueBuffer(), aTlv.getValueOffset(), aTlv.getValueLength());
+    }
 
-            if(result.offset>=aOffset+aLen) {
+    public void walk(byte[] aBuf, IBerTlvVisitor aVisitor) {
+        walk(aBuf, 0, aBuf.length, aVisitor);
+    }
+
+    /**
+     * Walks the TLVs in a buffer and reports them to a visitor without building
+     * {@link BerTlv} objects. Values passed to {@link IBerTlvVisitor#onPrimitive}
+     * reference the walked buffer.
+     *
+     * @param aBuf     buffer
+     * @param aOffset  offset of the first TLV
+     * @param aLen     number of bytes to walk
+     * @param aVisitor visitor
+     */
+    public void walk(byte[] aBuf, int aOffset, int aLen, IBerTlvVisitor aVisitor) {
+        checkRange(aBuf, aOffset, aLen);
+        TlvStack stack = new TlvStack(false);
+        Header header = new Header();
+        int end = aOffset + aLen;
+        int offset = aOffset;
+        int count = 0;
+        while(true) {
+            while(stack.depth > 0 && offset >= stack.peekEnd()) {
+                BerTag tag = stack.pop();
+                aVisitor.onTagEnd(tag, stack.depth);
+            }
+            if(offset >= end) {
                 break;
             }
 
-            offset = result.offset;
-
+            readHeader(aBuf, offset, stack.depth > 0 ? stack.peekEnd() : end, header);
+            count = countTlv(count, offset, stack.depth);
+            int valueEnd = header.valueOffset + header.valueLength;
+
+            IBerTlvVisitor.Action action = aVisitor.onTagStart(header.tag, stack.depth, offset, header.valueLength);
+            if(action == IBerTlvVisitor.Action.DESCEND) {
+                checkDepth(offset, stack.depth);
+                stack.push(header.tag, header.valueOffset, valueEnd);
+                offset = header.valueOffset;
+            } else {
+                if(action == IBerTlvVisitor.Action.VALUE) {
+                    aVisitor.onPrimitive(header.tag, stack.depth, aBuf, header.valueOffset, header.valueLength);
+                }
+                aVisitor.onTagEnd(header.tag, stack.depth);
+                offset = valueEnd;
+            }
         }
-
-        return new BerTlvs(tlvs);
     }
 
-    private ParseResult parseWithResult(int aLevel, byte[] aBuf, int aOffset, int aLen) {
-        return parseWithResult(aLevel, aBuf, aOffset, aLen, true);
-    }
-    private ParseResult parseWithResult(int aLevel, byte[] aBuf, int aOffset, int aLen, boolean recurse) {
-        String levelPadding = createLevelPadding(aLevel);
-        if(aOffset+aLen > aBuf.length) {
-            throw new IllegalStateException("Length is out of the range [offset="+aOffset+",  len="+aLen+", array.length="+aBuf.length+", level="+aLevel+"]");
-        }
-        if(log.isDebugEnabled()) {
-            log.debug("{}parseWithResult(level={}, offset={}, len={}, buf={})", levelPadding, aLevel, aOffset, aLen, HexUtil.toFormattedHexString(aBuf, aOffset, aLen));
-        }
+    /**
+     * Walks the TLVs read from a stream until it is exhausted. Only the values
+     * requested with {@link IBerTlvVisitor.Action#VALUE} are held in memory, one at
+     * a time, in a buffer that is reused between calls to
+     * {@link IBerTlvVisitor#onPrimitive}. Offsets are relative to the first byte read.
+     *
+     * @param aIn      stream positioned at the first TLV
+     * @param aVisitor visitor
+     * @throws IOException if the stream fails or ends inside a TLV
+     */
+    public void walk(InputStream aIn, IBerTlvVisitor aVisitor) throws IOException {
+        TlvStack stack = new TlvStack(false);
+        byte[] header = new byte[14];
+        byte[] value = new byte[0];
+        int offset = 0;
+        int count = 0;
+        while(true) {
+            while(stack.depth > 0 && offset >= stack.peekEnd()) {
+                BerTag tag = stack.pop();
+                aVisitor.onTagEnd(tag, stack.depth);
+            }
 
-        // tag
-        int tagBytesCount = getTagBytesCount(aBuf, aOffset);
-        BerTag tag        = createTag(levelPadding, aBuf, aOffset, tagBytesCount);
-        if(log.isDebugEnabled()) {
-            log.debug("{}tag = {}, tagBytesCount={}, tagBuf={}", levelPadding, tag, tagBytesCount, HexUtil.toFormattedHexString(aBuf, aOffset, tagBytesCount));
-        }
+            int first = aIn.read();
+            if(first < 0) {
+                if(stack.depth > 0) {
+                    throw new EOFException("Stream ended inside TLV [offset="+offset+", depth="+stack.depth+"]");
+                }
+                break;
+            }
+            header[0] = (byte) first;
+            int tagBytesCount = 1;
+            if((first & 0x1F) == 0x1F) {
+                do {
+                    if(tagBytesCount == 10) {
+                        throw new IllegalStateException("Tag is too long at position "+offset);
+                    }
+                    header[tagBytesCount++] = (byte) readByte(aIn, offset);
+                } while((header[tagBytesCount-1] & 0x80) == 0x80);
+            }
+            header[tagBytesCount] = (byte) readByte(aIn, offset);
+            int lengthBytesCount = getLengthBytesCount(header, tagBytesCount);
+            if(lengthBytesCount > 4) {
+                throw new IllegalStateException(String.format("At position %d the len is more then 3 [%d]", offset + tagBytesCount, lengthBytesCount - 1));
+            }
+            for(int i=1; i<lengthBytesCount; i++) {
+                header[tagBytesCount+i] = (byte) readByte(aIn, offset);
+            }
 
-        // length
-        int lengthBytesCount  = getLengthBytesCount(aBuf, aOffset + tagBytesCount);
-        int valueLength       = getDataLength(aBuf, aOffset + tagBytesCount);
+            BerTag tag = createTag("", header, 0, tagBytesCount);
+            int valueLength = getDataLength(header, tagBytesCount);
+            int valueOffset = offset + tagBytesCount + lengthBytesCount;
+            if(stack.depth > 0 && valueOffset + valueLength > stack.peekEnd()) {
+                throw new IllegalStateException("Length is out of the range [offset="+valueOffset+",  len="+valueLength+", limit="+stack.peekEnd()+", tag="+tag+"]");
+            }
+            if(valueOffset + valueLength > theLimits.getMaxTotalBytes()) {
+                throw new BerTlvLimitException(BerTlvLimitException.Limit.TOTAL_BYTES, theLimits.getMaxTotalBytes(), offset, stack.depth);
+            }
+            count = countTlv(count, offset, stack.depth);
+
+            IBerTlvVisitor.Action action = aVisitor.onTagStart(tag, stack.depth, offset, valueLength);
+            if(action == IBerTlvVisitor.Action.DESCEND) {
+                checkDepth(offset, stack.depth);
+                stack.push(tag, valueOffset, valueOffset + valueLength);
+            } else {
+                if(action == IBerTlvVisitor.Action.VALUE) {
+                    if(value.length < valueLength) {
+                        value = new byte[valueLength];
+                    }
+                    readFully(aIn, value, valueLength, valueOffset);
+                    aVisitor.onPrimitive(tag, stack.depth, value, 0, valueLength);
+                } else {
+                    skipFully(aIn, valueLength, valueOffset);
+                }
+                aVisitor.onTagEnd(tag, stack.depth);
+                valueOffset += valueLength;
+            }
+            offset = valueOffset;
+        }
+    }
 
+    /**
+     * Builds the TLVs of a range without recursion. Constructed TLVs stay on the
+     * stack until their last child has been parsed.
+     *
+     * @param aBuf       buffer
+     * @param aOffset    offset of the first TLV
+     * @param aLen       number of bytes to parse
+     * @param aRecurse   true to parse the values of constructed TLVs
+     * @param aFirstOnly true to stop after the first top-level TLV
+     * @return the top-level TLVs
+     */
+    private List<BerTlv> parseTlvs(byte[] aBuf, int aOffset, int aLen, boolean aRecurse, boolean aFirstOnly) {
+        checkRange(aBuf, aOffset, aLen);
         if(log.isDebugEnabled()) {
-            log.debug("{}lenBytesCount = {}, len = {}, lenBuf = {}"
-                    , levelPadding, lengthBytesCount, valueLength, HexUtil.toFormattedHexString(aBuf, aOffset + tagBytesCount, lengthBytesCount));
+            log.debug("parseTlvs(offset={}, len={}, recurse={}, buf={})", aOffset, aLen, aRecurse, HexUtil.toFormattedHexString(aBuf, aOffset, aLen));
         }
 
-        // value
-        if(tag.isConstructed() && recurse) {
-
-            ArrayList<BerTlv> list = new ArrayList<BerTlv>();
-            addChildren(aLevel, aBuf, aOffset, levelPadding, tagBytesCount, lengthBytesCount, valueLength, list);
+        List<BerTlv> tlvs = new ArrayList<BerTlv>();
+        TlvStack stack = new TlvStack(true);
+        Header header = new Header();
+        int end = aOffset + aLen;
+        int offset = aOffset;
+        int count = 0;
+        while(true) {
+            while(stack.depth > 0 && offset >= stack.peekEnd()) {
+                int valueOffset = stack.peekValueOffset();
+                int valueLength = stack.peekEnd() - valueOffset;
+                List<BerTlv> children = stack.peekChildren();
+                BerTag tag = stack.pop();
+                BerTlv tlv = createTlv(tag, children, aBuf, valueOffset, valueLength);
+                (stack.depth > 0 ? stack.peekChildren() : tlvs).add(tlv);
+            }
+            if(offset >= end || (aFirstOnly && !tlvs.isEmpty())) {
+                break;
+            }
 
-            int resultOffset = aOffset + tagBytesCount + lengthBytesCount + valueLength;
+            readHeader(aBuf, offset, stack.depth > 0 ? stack.peekEnd() : end, header);
+            count = countTlv(count, offset, stack.depth);
+            int valueEnd = header.valueOffset + header.valueLength;
             if(log.isDebugEnabled()) {
-                log.debug("{}returning constructed offset = {}", levelPadding, resultOffset);
+                log.debug("{}tag = {}, offset = {}, len = {}", createLevelPadding(stack.depth), header.tag, offset, header.valueLength);
             }
-            byte[] value = new byte[valueLength];
-            System.arraycopy(aBuf, aOffset+tagBytesCount+lengthBytesCount, value, 0, valueLength);
-            return new ParseResult(new BerTlv(tag, list, value), resultOffset);
-        } else {
-            // value
-            byte[] value = new byte[valueLength];
-            log.debug("src.length={}, srcPos={}, value.length={}, valueLength={}",
-                    aBuf.length, aOffset+tagBytesCount+lengthBytesCount, value.length, valueLength);
-            System.arraycopy(aBuf, aOffset+tagBytesCount+lengthBytesCount, value, 0, valueLength);
-            int resultOffset = aOffset + tagBytesCount + lengthBytesCount + valueLength;
-            if(log.isDebugEnabled()) {
-                log.debug("{}value = {}", levelPadding, HexUtil.toFormattedHexString(value));
-                log.debug("{}returning primitive offset = {}", levelPadding, resultOffset);
+
+            if(aRecurse && header.tag.isConstructed()) {
+                checkDepth(offset, stack.depth);
+                stack.push(header.tag, header.valueOffset, valueEnd);
+                offset = header.valueOffset;
+            } else {
+                BerTlv tlv = createTlv(header.tag, null, aBuf, header.valueOffset, header.valueLength);
+                (stack.depth > 0 ? stack.peekChildren() : tlvs).add(tlv);
+                offset = valueEnd;
             }
-            return new ParseResult(new BerTlv(tag, value), resultOffset);
         }
-
+        return tlvs;
     }
 
     /**
-     *
-     * @param aLevel          level for debug
-     * @param aBuf            buffer
-     * @param aOffset         offset (first byte)
-     * @param levelPadding    level padding (for debug)
-     * @param aTagBytesCount  tag bytes count
-     * @param aDataBytesCount data bytes count
-     * @param valueLength     length
-     * @param list            list to add
+     * Reads the tag and length at an offset and checks that the TLV ends at or before a limit
      */
-    private void addChildren(int aLevel, byte[] aBuf, int aOffset, String levelPadding, int aTagBytesCount, int aDataBytesCount, int valueLength, ArrayList<BerTlv> list) {
-        int startPosition = aOffset + aTagBytesCount + aDataBytesCount;
-        int len = valueLength;
-        while (startPosition <= aOffset + valueLength) {
-            ParseResult result = parseWithResult(aLevel+1, aBuf, startPosition, len);
-            list.add(result.tlv);
+    private void readHeader(byte[] aBuf, int aOffset, int aLimit, Header aHeader) {
+        int tagBytesCount = getTagBytesCount(aBuf, aOffset);
+        if(aOffset + tagBytesCount >= aLimit) {
+            throw new IllegalStateException("TLV header is out of the range [offset="+aOffset+", limit="+aLimit+"]");
+        }
+        BerTag tag = createTag("", aBuf, aOffset, tagBytesCount);
+        int lengthBytesCount = getLengthBytesCount(aBuf, aOffset + tagBytesCount);
+        if(aOffset + tagBytesCount + lengthBytesCount > aLimit) {
+            throw new IllegalStateException("TLV header is out of the range [offset="+aOffset+", limit="+aLimit+"]");
+        }
+        int valueLength = getDataLength(aBuf, aOffset + tagBytesCount);
+        int valueOffset = aOffset + tagBytesCount + lengthBytesCount;
+        if(valueOffset + valueLength > aLimit) {
+            throw new IllegalStateException("Length is out of the range [offset="+valueOffset+",  len="+valueLength+", limit="+aLimit+", tag="+tag+"]");
+        }
+        aHeader.tag = tag;
+        aHeader.valueOffset = valueOffset;
+        aHeader.valueLength = valueLength;
+    }
 
-            startPosition = result.offset;
-            len           = valueLength - startPosition;
+    private void checkRange(byte[] aBuf, int aOffset, int aLen) {
+        if(aOffset < 0 || aLen < 0 || aOffset+aLen > aBuf.length) {
+            throw new IllegalStateException("Length is out of the range [offset="+aOffset+",  len="+aLen+", array.length="+aBuf.length+"]");
+        }
+        if(aLen > theLimits.getMaxTotalBytes()) {
+            throw new BerTlvLimitException(BerTlvLimitException.Limit.TOTAL_BYTES, theLimits.getMaxTotalBytes(), aOffset, 0);
+        }
+    }
 
-            if(log.isDebugEnabled()) {
-                log.debug("{}level {}: adding {} with offset {}, startPosition={}, aDataBytesCount={}, valueLength={}"
-                        , levelPadding, aLevel, result.tlv.getTag(), result.offset, startPosition, aDataBytesCount, valueLength);
+    private int countTlv(int aCount, int aOffset, int aDepth) {
+        if(aCount >= theLimits.getMaxTlvCount()) {
+            throw new BerTlvLimitException(BerTlvLimitException.Limit.TLV_COUNT, theLimits.getMaxTlvCount(), aOffset, aDepth);
+        }
+        return aCount + 1;
+    }
+
+    private void checkDepth(int aOffset, int aDepth) {
+        if(aDepth + 1 >= theLimits.getMaxDepth()) {
+            throw new BerTlvLimitException(BerTlvLimitException.Limit.DEPTH, theLimits.getMaxDepth(), aOffset, aDepth + 1);
+        }
+    }
+
+    private static int readByte(InputStream aIn, int aOffset) throws IOException {
+        int b = aIn.read();
+        if(b < 0) {
+            throw new EOFException("Stream ended inside TLV header at position "+aOffset);
+        }
+        return b;
+    }
+
+    private static void readFully(InputStream aIn, byte[] aBuf, int aLen, int aOffset) throws IOException {
+        int read = 0;
+        while(read < aLen) {
+            int count = aIn.read(aBuf, read, aLen - read);
+            if(count < 0) {
+                throw new EOFException("Stream ended inside TLV value at position "+(aOffset+read));
             }
+            read += count;
         }
     }
 
+    private static void skipFully(InputStream aIn, int aLen, int aOffset) throws IOException {
+        int skipped = 0;
+        while(skipped < aLen) {
+            long count = aIn.skip(aLen - skipped);
+            if(count <= 0) {
+                if(aIn.read() < 0) {
+                    throw new EOFException("Stream ended inside TLV value at position "+(aOffset+skipped));
+                }
+                count = 1;
+            }
+            skipped += count;
+        }
+    }
+
+    private BerTlv createTlv(BerTag aTag, List<BerTlv> aList, byte[] aBuf, int aValueOffset, int aValueLength) {
+        if(theViewMode) {
+            return new BerTlv(aTag, aList, aBuf, aValueOffset, aValueLength);
+        }
+        byte[] value = new byte[aValueLength];
+        System.arraycopy(aBuf, aValueOffset, value, 0, aValueLength);
+        return new BerTlv(aTag, aList, value);
+    }
+
     private String createLevelPadding(int aLevel) {
         if(!log.isDebugEnabled()) {
             return "";
@@ -149,22 +389,66 @@ public class BerTlvParser {
         return sb.toString();
     }
 
-    private static class ParseResult {
-        public ParseResult(BerTlv aTlv, int aOffset) {
-            tlv = aTlv;
-            offset = aOffset;
+    /**
+     * Tag and value position of the TLV most recently read from a buffer
+     */
+    private static class Header {
+        private BerTag tag;
+        private int valueOffset;
+        private int valueLength;
+    }
+
+    /**
+     * Open constructed TLVs, with the range of each value and, when building a
+     * tree, the children parsed so far
+     */
+    private static class TlvStack {
+        private BerTag[] tags = new BerTag[8];
+        private int[] valueOffsets = new int[8];
+        private int[] ends = new int[8];
+        private final List<List<BerTlv>> children;
+        private int depth;
+
+        TlvStack(boolean aCollectChildren) {
+            children = aCollectChildren ? new ArrayList<List<BerTlv>>() : null;
         }
 
-        @Override
-        public String toString() {
-            return "ParseResult{" +
-                    "tlv=" + tlv +
-                    ", offset=" + offset +
-                    '}';
+        void push(BerTag aTag, int aValueOffset, int aEnd) {
+            if(depth == tags.length) {
+                tags = Arrays.copyOf(tags, depth * 2);
+                valueOffsets = Arrays.copyOf(valueOffsets, depth * 2);
+                ends = Arrays.copyOf(ends, depth * 2);
+            }
+            tags[depth] = aTag;
+            valueOffsets[depth] = aValueOffset;
+            ends[depth] = aEnd;
+            if(children != null) {
+                children.add(new ArrayList<BerTlv>());
+            }
+            depth++;
+        }
+
+        int peekEnd() {
+            return ends[depth-1];
+        }
+
+        int peekValueOffset() {
+            return valueOffsets[depth-1];
         }
 
-        private final BerTlv tlv;
-        private final int offset;
+        List<BerTlv> peekChildren() {
+            return children.get(depth-1);
+        }
+
+        BerTag pop() {
+            depth--;
+            BerTag tag = tags[depth];
+            tags[depth] = null;
+            if(children != null) {
+                children.remove(depth);
+            }
+            return tag;
+        }
     }
 
 
@@ -172,13 +456,13 @@ public class BerTlvParser {
         if(log.isDebugEnabled()) {
             log.debug("{}Creating tag {}...", aLevelPadding, HexUtil.toFormattedHexString(aBuf, aOffset, aLength));
         }
-        return new BerTag(aBuf, aOffset, aLength);
+        return BerTag.valueOf(aBuf, aOffset, aLength);
     }
 
     public int getTagBytesCount(byte[] aBuf, int aOffset) {
         if((aBuf[aOffset] & 0x1F) == 0x1F) { // see subsequent bytes
             int len = 2;
-            for(int i=aOffset+1; i<aOffset+10; i++) {
+            for(int i=aOffset+1; i<aOffset+10 && i<aBuf.length; i++) {
                 if( (aBuf[i] & 0x80) != 0x80) {
                     break;
                 }
@@ -233,4 +517,4 @@ public class BerTlvParser {
     };
 
 
-}
\ No newline at end of file
+}
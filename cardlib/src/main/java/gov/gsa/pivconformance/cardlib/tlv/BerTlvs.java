@@ -9,22 +9,35 @@ public class BerTlvs {
         tlvs = aTlvs;
     }
 
+    /**
+     * Finds the first TLV with the tag, searching nested TLVs depth first. The
+     * first lookup indexes the tree, so it must not be modified afterwards.
+     *
+     * @param aTag tag
+     * @return the TLV, or null if there is none
+     */
     public BerTlv find(BerTag aTag) {
-        for (BerTlv tlv : tlvs) {
-            BerTlv found = tlv.find(aTag);
-            if(found!=null) {
-                return found;
-            }
-        }
-        return null;
+        List<BerTlv> found = getIndex().get(aTag);
+        return found.isEmpty() ? null : found.get(0);
     }
 
+    /**
+     * Finds all TLVs with the tag, not counting those nested in a TLV with the same tag
+     *
+     * @param aTag tag
+     * @return the TLVs in document order
+     */
     public List<BerTlv> findAll(BerTag aTag) {
-        List<BerTlv> list = new ArrayList<BerTlv>();
-        for (BerTlv tlv : tlvs) {
-            list.addAll(tlv.findAll(aTag));
+        return new ArrayList<BerTlv>(getIndex().get(aTag));
+    }
+
+    private BerTagIndex getIndex() {
+        BerTagIndex index = theIndex;
+        if(index == null) {
+            index = new BerTagIndex(tlvs);
+            theIndex = index;
         }
-        return list;
+        return index;
     }
 
 
@@ -33,6 +46,8 @@ public class BerTlvs {
     }
 
     private final List<BerTlv> tlvs;
+    // built on the first lookup; a racing thread at worst builds an identical index
+    private volatile BerTagIndex theIndex;
 
     @Override
     public boolean equals(Object o) {
@@ -12,7 +12,8 @@ public class CCTTlvLogger implements IBerTlvLogger {
 
     @Override
     public boolean isDebugEnabled() {
-        return m_logger != null && m_logger.isDebugEnabled();
+        // debug() below is disabled, so don't let the parser format hex dumps for it
+        return false;
     }
 
     @Override
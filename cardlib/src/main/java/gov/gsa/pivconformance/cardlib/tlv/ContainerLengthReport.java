@@ -0,0 +1,206 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result of checking every tag of a container against the SP 800-73-4 length rules in one pass
+ * (see {@link TagBoundaryManager#validate(int, byte[], int, int)}). Tags with a rule are reported by
+ * rule index, in the order of {@link #getTag(int)}; tags without a rule are reported as extra tags.
+ *
+ * Nothing is formatted until {@link #getFailures()} or {@link #toString()} is called.
+ */
+public class ContainerLengthReport {
+	private final int m_containerId;
+	private final int[] m_tags;
+	private final boolean[] m_soft;
+	private final int[] m_counts;
+	private final int[] m_lengths;
+	private final int[] m_deltas;
+	private final List<BerTag> m_extraTags = new ArrayList<BerTag>(0);
+	private int[] m_extraLengths = new int[0];
+
+	ContainerLengthReport(int containerId, int[] tags, boolean[] soft) {
+		m_containerId = containerId;
+		m_tags = tags;
+		m_soft = soft;
+		m_counts = new int[tags.length];
+		m_lengths = new int[tags.length];
+		m_deltas = new int[tags.length];
+	}
+
+	/**
+	 * Records an occurrence of a tag with a rule. The first out-of-bounds occurrence is kept.
+	 */
+	void record(int ruleIndex, int length, int delta) {
+		if (m_counts[ruleIndex]++ == 0 || (m_deltas[ruleIndex] == 0 && delta != 0)) {
+			m_lengths[ruleIndex] = length;
+			m_deltas[ruleIndex] = delta;
+		}
+	}
+
+	void recordExtra(BerTag tag, int length) {
+		int n = m_extraTags.size();
+		if (n == m_extraLengths.length) {
+			m_extraLengths = Arrays.copyOf(m_extraLengths, Math.max(4, n * 2));
+		}
+		m_extraTags.add(tag);
+		m_extraLengths[n] = length;
+	}
+
+	/**
+	 * Gets the container id
+	 *
+	 * @return container id from {@link TagBoundaryManager#getContainerId(String)}
+	 */
+	public int getContainerId() {
+		return m_containerId;
+	}
+
+	public String getContainerName() {
+		return TagBoundaryManager.getContainerName(m_containerId);
+	}
+
+	/**
+	 * Gets the number of rules in the container
+	 *
+	 * @return number of rules
+	 */
+	public int getRuleCount() {
+		return m_tags.length;
+	}
+
+	/**
+	 * Gets the tag a rule applies to
+	 *
+	 * @param ruleIndex rule index
+	 * @return the packed tag (see {@link BerTag#intValue()})
+	 */
+	public int getTag(int ruleIndex) {
+		return m_tags[ruleIndex];
+	}
+
+	/**
+	 * Gets the number of times a tag occurred
+	 *
+	 * @param ruleIndex rule index
+	 * @return number of occurrences, 0 if the tag is missing
+	 */
+	public int getCount(int ruleIndex) {
+		return m_counts[ruleIndex];
+	}
+
+	public boolean isMissing(int ruleIndex) {
+		return m_counts[ruleIndex] == 0;
+	}
+
+	/**
+	 * Gets the value length of the first out-of-bounds occurrence of a tag, or of its first occurrence
+	 *
+	 * @param ruleIndex rule index
+	 * @return value length
+	 */
+	public int getLength(int ruleIndex) {
+		return m_lengths[ruleIndex];
+	}
+
+	/**
+	 * Gets the difference between the prescribed lengths and the value length, as computed by
+	 * {@link TagBoundaryManager#lengthDelta(int, BerTag, int)} before soft upper bounds are applied
+	 *
+	 * @param ruleIndex rule index
+	 * @return the delta, 0 if the tag is in bounds or missing
+	 */
+	public int getDelta(int ruleIndex) {
+		return m_deltas[ruleIndex];
+	}
+
+	/**
+	 * Indicates whether the rule for a tag has a soft upper bound, so that a non-zero delta is tolerated
+	 *
+	 * @param ruleIndex rule index
+	 * @return true if the upper bound is soft
+	 */
+	public boolean hasSoftUpperBound(int ruleIndex) {
+		return m_soft[ruleIndex];
+	}
+
+	/**
+	 * Indicates whether a tag is present and out of bounds
+	 *
+	 * @param ruleIndex rule index
+	 * @return true if the tag failed its length rule
+	 */
+	public boolean isOutOfBounds(int ruleIndex) {
+		return m_deltas[ruleIndex] != 0 && !m_soft[ruleIndex];
+	}
+
+	/**
+	 * Gets the number of tags that have no rule in the container
+	 *
+	 * @return number of extra tags
+	 */
+	public int getExtraCount() {
+		return m_extraTags.size();
+	}
+
+	public BerTag getExtraTag(int index) {
+		return m_extraTags.get(index);
+	}
+
+	public int getExtraLength(int index) {
+		return m_extraLengths[index];
+	}
+
+	/**
+	 * Indicates whether every tag with a rule is within its length boundaries. Missing and
+	 * extra tags are reported but do not affect the result.
+	 *
+	 * @return true if no tag is out of bounds
+	 */
+	public boolean isInBounds() {
+		for (int i = 0; i < m_deltas.length; i++) {
+			if (isOutOfBounds(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Describes each out-of-bounds tag
+	 *
+	 * @return one message per out-of-bounds tag, empty if the container is in bounds
+	 */
+	public List<String> getFailures() {
+		List<String> failures = new ArrayList<String>();
+		for (int i = 0; i < m_tags.length; i++) {
+			if (isOutOfBounds(i)) {
+				failures.add(String.format("Container %s, Tag %s length was %d bytes, varies from SP 800-73-4 table by %d",
+						getContainerName(), Integer.toHexString(m_tags[i]).toUpperCase(), m_lengths[i], m_deltas[i]));
+			}
+		}
+		return failures;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(getContainerName()).append(':');
+		for (int i = 0; i < m_tags.length; i++) {
+			sb.append(' ').append(Integer.toHexString(m_tags[i]).toUpperCase());
+			if (isMissing(i)) {
+				sb.append("=missing");
+			} else {
+				sb.append('=').append(m_lengths[i]);
+				if (m_deltas[i] != 0) {
+					sb.append(isOutOfBounds(i) ? "!" : "~").append(m_deltas[i]);
+				}
+			}
+		}
+		for (int i = 0; i < m_extraTags.size(); i++) {
+			sb.append(" extra ").append(HexUtil.toHexString(m_extraTags.get(i).bytes)).append('=').append(m_extraLengths[i]);
+		}
+		return sb.toString();
+	}
+}
@@ -3,6 +3,7 @@ package gov.gsa.pivconformance.cardlib.tlv;
 public class HexUtil {
 
     private static final char[] CHARS_TABLES = "0123456789ABCDEF".toCharArray();
+    private static final char[] LOWER_CHARS_TABLES = "0123456789abcdef".toCharArray();
     static final byte[] BYTES = new byte[128];
 
     static {
@@ -26,20 +27,36 @@ public class HexUtil {
     }
 
     public static byte[] parseHex(String aHexString) {
-        char[] src = aHexString.replace("\n", "").replace(" ", "").toUpperCase().toCharArray();
-        byte[] dst = new byte[src.length / 2];
+        int digits = 0;
+        for (int i = 0; i < aHexString.length(); i++) {
+            char c = aHexString.charAt(i);
+            if (c != '\n' && c != ' ') {
+                digits++;
+            }
+        }
+        byte[] dst = new byte[digits / 2];
 
         for (int si = 0, di = 0; di < dst.length; di++) {
-            byte high = BYTES[src[si++] & 0x7f];
-            byte low  = BYTES[src[si++] & 0x7f];
+            si = skipSeparators(aHexString, si);
+            byte high = BYTES[aHexString.charAt(si++) & 0x7f];
+            si = skipSeparators(aHexString, si);
+            byte low  = BYTES[aHexString.charAt(si++) & 0x7f];
             dst[di] = (byte) ((high << 4) + low);
         }
 
         return dst;
     }
 
+    private static int skipSeparators(String aHexString, int aIndex) {
+        char c;
+        while ((c = aHexString.charAt(aIndex)) == '\n' || c == ' ') {
+            aIndex++;
+        }
+        return aIndex;
+    }
+
     public static String toFormattedHexString(byte[] aBytes, int aOffset, int aLength) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(16 + aLength * 3 + aLength / 4 * 2);
         sb.append("[");
         sb.append(aLength);
         sb.append("] :");
@@ -60,15 +77,107 @@ public class HexUtil {
     }
 
     public static String toHexString(byte[] aBytes, int aOffset, int aLength) {
-        char[] dst   = new char[aLength * 2];
+        char[] dst = new char[aLength * 2];
+        encode(aBytes, aOffset, aLength, dst, 0, CHARS_TABLES, false);
+        return new String(dst);
+    }
+
+    /**
+     * Encodes bytes as lower-case hex, in the form used by the APDU and container logs
+     *
+     * @param aBytes bytes to encode
+     * @return lower-case hex
+     */
+    public static String toLowerHexString(byte[] aBytes) {
+        char[] dst = new char[aBytes.length * 2];
+        encode(aBytes, 0, aBytes.length, dst, 0, LOWER_CHARS_TABLES, false);
+        return new String(dst);
+    }
+
+    /**
+     * Encodes bytes as lower-case hex with a space between bytes ("00 a4 04 00")
+     *
+     * @param aBytes  bytes to encode
+     * @param aOffset offset of the first byte
+     * @param aLength number of bytes
+     * @return lower-case spaced hex
+     */
+    public static String toSpacedHexString(byte[] aBytes, int aOffset, int aLength) {
+        char[] dst = new char[getEncodedLength(aLength, true)];
+        encode(aBytes, aOffset, aLength, dst, 0, LOWER_CHARS_TABLES, true);
+        return new String(dst);
+    }
 
-        for (int si = aOffset, di = 0; si < aOffset+aLength; si++) {
+    public static String toSpacedHexString(byte[] aBytes) {
+        return toSpacedHexString(aBytes, 0, aBytes.length);
+    }
+
+    /**
+     * Returns the number of chars needed to encode bytes
+     *
+     * @param aLength number of bytes
+     * @param aSpaced whether bytes are separated by a space
+     * @return number of chars
+     */
+    public static int getEncodedLength(int aLength, boolean aSpaced) {
+        if (aLength == 0) {
+            return 0;
+        }
+        return aSpaced ? aLength * 3 - 1 : aLength * 2;
+    }
+
+    /**
+     * Encodes bytes as hex into a caller-supplied array
+     *
+     * @param aBytes     bytes to encode
+     * @param aOffset    offset of the first byte
+     * @param aLength    number of bytes
+     * @param aDst       destination, with room for {@link #getEncodedLength(int, boolean)} chars
+     * @param aDstOffset offset of the first char
+     * @param aSpaced    whether to separate bytes with a space
+     * @param aLowerCase whether to use lower-case digits
+     * @return number of chars written
+     */
+    public static int encode(byte[] aBytes, int aOffset, int aLength, char[] aDst, int aDstOffset, boolean aSpaced, boolean aLowerCase) {
+        return encode(aBytes, aOffset, aLength, aDst, aDstOffset, aLowerCase ? LOWER_CHARS_TABLES : CHARS_TABLES, aSpaced);
+    }
+
+    /**
+     * Appends bytes as hex to a builder, which can be reused across calls
+     *
+     * @param aSb        builder
+     * @param aBytes     bytes to encode
+     * @param aOffset    offset of the first byte
+     * @param aLength    number of bytes
+     * @param aSpaced    whether to separate bytes with a space
+     * @param aLowerCase whether to use lower-case digits
+     * @return the builder
+     */
+    public static StringBuilder appendHex(StringBuilder aSb, byte[] aBytes, int aOffset, int aLength, boolean aSpaced, boolean aLowerCase) {
+        char[] table = aLowerCase ? LOWER_CHARS_TABLES : CHARS_TABLES;
+        aSb.ensureCapacity(aSb.length() + getEncodedLength(aLength, aSpaced));
+        for (int si = aOffset; si < aOffset+aLength; si++) {
             byte b = aBytes[si];
-            dst[di++] = CHARS_TABLES[(b & 0xf0) >>> 4];
-            dst[di++] = CHARS_TABLES[(b & 0x0f)];
+            if (aSpaced && si != aOffset) {
+                aSb.append(' ');
+            }
+            aSb.append(table[(b & 0xf0) >>> 4]);
+            aSb.append(table[(b & 0x0f)]);
         }
+        return aSb;
+    }
 
-        return new String(dst);
+    private static int encode(byte[] aBytes, int aOffset, int aLength, char[] aDst, int aDstOffset, char[] aTable, boolean aSpaced) {
+        int di = aDstOffset;
+        for (int si = aOffset; si < aOffset+aLength; si++) {
+            byte b = aBytes[si];
+            if (aSpaced && si != aOffset) {
+                aDst[di++] = ' ';
+            }
+            aDst[di++] = aTable[(b & 0xf0) >>> 4];
+            aDst[di++] = aTable[(b & 0x0f)];
+        }
+        return di - aDstOffset;
     }
 
 }
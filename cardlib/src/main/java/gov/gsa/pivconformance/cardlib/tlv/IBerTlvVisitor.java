@@ -0,0 +1,51 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+/**
+ * Receives TLV events from {@link BerTlvParser#walk(byte[], IBerTlvVisitor)} without
+ * a {@link BerTlv} tree being built.
+ */
+public interface IBerTlvVisitor {
+
+    /**
+     * What the walker should do with the value of the TLV that was just started
+     */
+    enum Action {
+        /** parse the value as nested TLVs */
+        DESCEND,
+        /** pass the value to {@link IBerTlvVisitor#onPrimitive} */
+        VALUE,
+        /** skip over the value */
+        SKIP
+    }
+
+    /**
+     * Called when a TLV header has been read
+     *
+     * @param aTag    tag
+     * @param aDepth  nesting depth, 0 for top-level TLVs
+     * @param aOffset offset of the first tag byte
+     * @param aLength length of the value
+     * @return what to do with the value
+     */
+    Action onTagStart(BerTag aTag, int aDepth, int aOffset, int aLength);
+
+    /**
+     * Called with the value of a TLV for which {@link Action#VALUE} was returned.
+     * The buffer may be reused by the walker once this method returns.
+     *
+     * @param aTag    tag
+     * @param aDepth  nesting depth
+     * @param aBuf    buffer holding the value
+     * @param aOffset offset of the value in the buffer
+     * @param aLength length of the value
+     */
+    void onPrimitive(BerTag aTag, int aDepth, byte[] aBuf, int aOffset, int aLength);
+
+    /**
+     * Called after the value of a TLV, including all nested TLVs, has been walked
+     *
+     * @param aTag   tag
+     * @param aDepth nesting depth
+     */
+    void onTagEnd(BerTag aTag, int aDepth);
+}
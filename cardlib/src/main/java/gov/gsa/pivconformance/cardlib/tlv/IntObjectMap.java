@@ -0,0 +1,109 @@
+package gov.gsa.pivconformance.cardlib.tlv;
+
+/**
+ * Open-addressing map from primitive int keys to objects, used for lookups by
+ * packed tag ({@link BerTag#intValue()}) without boxing or hashing byte arrays.
+ * Not synchronized; maps that are shared between threads must not be modified
+ * after they are published.
+ *
+ * @param <V> value type
+ */
+public final class IntObjectMap<V> {
+
+    private int[] theKeys;
+    private Object[] theValues;
+    private int theSize;
+
+    public IntObjectMap() {
+        this(8);
+    }
+
+    /**
+     * @param aExpectedSize number of entries the map should hold without resizing
+     */
+    public IntObjectMap(int aExpectedSize) {
+        int capacity = 16;
+        while(capacity < aExpectedSize * 2) {
+            capacity <<= 1;
+        }
+        theKeys = new int[capacity];
+        theValues = new Object[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int aKey) {
+        int mask = theKeys.length - 1;
+        int i = mix(aKey) & mask;
+        while(theValues[i] != null) {
+            if(theKeys[i] == aKey) {
+                return (V) theValues[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int aKey) {
+        return get(aKey) != null;
+    }
+
+    /**
+     * @param aKey   key
+     * @param aValue value, not null
+     * @return the previous value for the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int aKey, V aValue) {
+        if(aValue == null) {
+            throw new IllegalStateException("Null values are not supported [key="+aKey+"]");
+        }
+        int mask = theKeys.length - 1;
+        int i = mix(aKey) & mask;
+        while(theValues[i] != null) {
+            if(theKeys[i] == aKey) {
+                V previous = (V) theValues[i];
+                theValues[i] = aValue;
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+        theKeys[i] = aKey;
+        theValues[i] = aValue;
+        if(++theSize * 2 > theKeys.length) {
+            resize();
+        }
+        return null;
+    }
+
+    public int size() {
+        return theSize;
+    }
+
+    private void resize() {
+        int[] keys = theKeys;
+        Object[] values = theValues;
+        theKeys = new int[keys.length * 2];
+        theValues = new Object[values.length * 2];
+        int mask = theKeys.length - 1;
+        for(int j=0; j<keys.length; j++) {
+            if(values[j] != null) {
+                int i = mix(keys[j]) & mask;
+                while(theValues[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                theKeys[i] = keys[j];
+                theValues[i] = values[j];
+            }
+        }
+    }
+
+    private static int mix(int aKey) {
+        int h = aKey * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        return "IntObjectMap{size=" + theSize + "}";
+    }
+}
@@ -1,7 +1,10 @@
 package gov.gsa.pivconformance.cardlib.tlv;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
@@ -23,16 +26,26 @@ import gov.gsa.pivconformance.cardlib.tlv.ContainerRuleset;
  * determined when the container is loaded and we've determined that there is or is not a cert.  Whether the tool looks
  * for that needs to be flushed out.
  *
+ * The rules are compiled once, when the class is loaded, into immutable per-container arrays of
+ * packed tags and rules, so all instances share them and they are safe to use from any thread.
+ * Callers checking many tags should resolve the container once with {@link #getContainerId(String)}
+ * and use {@link #lengthDelta(int, BerTag, int)}.
+ *
  */
 public class TagBoundaryManager {
 	private static final Logger s_logger = LoggerFactory.getLogger(TagBoundaryManager.class);
-	private static final HashMap<String, ContainerRuleset> m_maxLenMap = new HashMap<String, ContainerRuleset>();
+	private static final TagBoundaryManager INSTANCE = new TagBoundaryManager();
+
+	// Compiled rules: container id -> name, sorted packed tags and the rules in the same order
+	private static final String[] m_containerNames;
+	private static final int[][] m_containerTags;
+	private static final TagLengthRule[][] m_containerRules;
+	private static final boolean[][] m_containerSoft;
+	// Container name or OID -> container id, only used to resolve ids
+	private static final HashMap<String, Integer> m_containerIds = new HashMap<String, Integer>();
 
-	private void initCache() {
-		/*
-		 * This cache gets hung from the gov.gsa.pivconformance.card.client.DataModelSingleton object
-		 * with a public accessor getLengthRules() method.
-		 */
+	private static List<ContainerRuleset> buildRulesets() {
+		ArrayList<ContainerRuleset> rulesets = new ArrayList<ContainerRuleset>();
 		// Handle cert containers from Table 10, 15, 16, 17, 20-39, 42 of SP 800-73-4
 		ArrayList<String> certNames = new ArrayList<String>();
 		certNames.add(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_NAME);
@@ -78,7 +91,7 @@ public class TagBoundaryManager {
 		crs.add(new BerTag(TagConstants.EXTENDED_APPLICATION_CARDURL_TAG), new TagLengthRule(CONSTRAINT.FIXED, 48, 48));
 		crs.add(new BerTag(TagConstants.SECURITY_OBJECT_BUFFER_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 48));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP800-73-4 Part 1, Table 9. Card Holder Unique Identifier tags
 		crs = new ContainerRuleset(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_NAME);
@@ -91,7 +104,7 @@ public class TagBoundaryManager {
 		crs.add(new BerTag(TagConstants.CARDHOLDER_UUID_TAG), new TagLengthRule(CONSTRAINT.FIXED, 16, 16));
 		crs.add(new BerTag(TagConstants.ISSUER_ASYMMETRIC_SIGNATURE_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 3200, true));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// Handle cert containers from Table 10, 15, 16, 17, 20-39, 42 of SP 800-73-4
 
@@ -101,27 +114,27 @@ public class TagBoundaryManager {
 			crs.add(new BerTag(TagConstants.CERTINFO_TAG), new TagLengthRule(CONSTRAINT.FIXED, 1, 1));
 			crs.add(new BerTag(TagConstants.MSCUID_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 38));
 			crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-			m_maxLenMap.put(crs.getContainerName(), crs);
+			rulesets.add(crs);
 		}
 
 		// SP 800-73-4 Part 1, Table 11. Cardholder Fingerprints
 		crs = new ContainerRuleset(APDUConstants.CARDHOLDER_FINGERPRINTS_NAME);
 		crs.add(new BerTag(TagConstants.FINGERPRINT_I_AND_II_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 88, 4000, true));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 12. Security Object
 		crs = new ContainerRuleset(APDUConstants.SECURITY_OBJECT_NAME);
 		crs.add(new BerTag(TagConstants.MAPPING_OF_DG_TO_CONTAINER_ID_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 30));
 		crs.add(new BerTag(TagConstants.SECURITY_OBJECT_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 1298));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 13. Cardholder Facial Image
 		crs = new ContainerRuleset(APDUConstants.CARDHOLDER_FACIAL_IMAGE_NAME);
 		crs.add(new BerTag(TagConstants.IMAGE_FOR_VISUAL_VERIFICATION_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 12704, true));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 14. Printed Information tags
 		crs = new ContainerRuleset(APDUConstants.PRINTED_INFORMATION_NAME);
@@ -133,13 +146,13 @@ public class TagBoundaryManager {
 		crs.add(new BerTag(TagConstants.ORGANIZATIONAL_AFFILIATION_L1_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 20));
 		crs.add(new BerTag(TagConstants.ORGANIZATIONAL_AFFILIATION_L2_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 20));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 18. Discovery Object
 		crs = new ContainerRuleset(APDUConstants.DISCOVERY_OBJECT_NAME);
 		crs.add(new BerTag(TagConstants.PIN_USAGE_POLICY_TAG), new TagLengthRule(CONSTRAINT.FIXED, 2, 2));
 		crs.add(new BerTag(TagConstants.PIV_CARD_APPLICATION_AID_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 10, 12));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 19. Key History
 		crs = new ContainerRuleset(APDUConstants.KEY_HISTORY_OBJECT_NAME);
@@ -148,13 +161,13 @@ public class TagBoundaryManager {
 		// TODO: Handle conditional hmmm...
 		crs.add(new BerTag(TagConstants.OFF_CARD_CERT_URL_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 118));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 40. Cardholder Iris Images
 		crs = new ContainerRuleset(APDUConstants.CARDHOLDER_IRIS_IMAGES_NAME);
 		crs.add(new BerTag(TagConstants.IMAGES_FOR_IRIS_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 7100, true));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 41. Biometric Information Templates Group Template
 		crs = new ContainerRuleset(APDUConstants.BIOMETRIC_INFORMATION_TEMPLATES_GROUP_TEMPLATE_NAME);
@@ -162,40 +175,108 @@ public class TagBoundaryManager {
 		crs.add(new BerTag(TagConstants.BIT_FOR_FIRST_FINGER_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 28));
 		crs.add(new BerTag(TagConstants.BIT_FOR_SECOND_FINGER_TAG), new TagLengthRule(CONSTRAINT.VARIABLE, 0, 28));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
 
 		// SP 800-73-4 Part 1, Table 43. Pairing Code Reference Data
 		crs = new ContainerRuleset(APDUConstants.PAIRING_CODE_REFERENCE_DATA_CONTAINER_NAME);
 		crs.add(new BerTag(TagConstants.PAIRING_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 1, 1));
 		crs.add(new BerTag(TagConstants.ERROR_DETECTION_CODE_TAG), new TagLengthRule(CONSTRAINT.FIXED, 0, 0));
-		m_maxLenMap.put(crs.getContainerName(), crs);
+		rulesets.add(crs);
+		return rulesets;
+	}
+
+	static {
+		List<ContainerRuleset> rulesets = buildRulesets();
+		m_containerNames = new String[rulesets.size()];
+		m_containerTags = new int[rulesets.size()][];
+		m_containerRules = new TagLengthRule[rulesets.size()][];
+		m_containerSoft = new boolean[rulesets.size()][];
+		HashMap<String, String> nameToOid = new HashMap<String, String>();
+		for (Map.Entry<String, String> e : APDUConstants.oidNameMap.entrySet()) {
+			nameToOid.put(e.getValue(), e.getKey());
+		}
+		for (int id = 0; id < rulesets.size(); id++) {
+			ContainerRuleset crs = rulesets.get(id);
+			List<Map.Entry<BerTag, TagLengthRule>> entries = new ArrayList<Map.Entry<BerTag, TagLengthRule>>(crs.getTagRuleset().entrySet());
+			entries.sort((a, b) -> Integer.compare(a.getKey().intValue(), b.getKey().intValue()));
+			int[] tags = new int[entries.size()];
+			TagLengthRule[] rules = new TagLengthRule[entries.size()];
+			boolean[] soft = new boolean[entries.size()];
+			for (int t = 0; t < tags.length; t++) {
+				tags[t] = entries.get(t).getKey().intValue();
+				rules[t] = entries.get(t).getValue();
+				soft[t] = rules[t].hasSoftUpperBound();
+			}
+			m_containerNames[id] = crs.getContainerName();
+			m_containerTags[id] = tags;
+			m_containerRules[id] = rules;
+			m_containerSoft[id] = soft;
+			m_containerIds.put(crs.getContainerName(), id);
+			String oid = nameToOid.get(crs.getContainerName());
+			if (oid != null) {
+				m_containerIds.put(oid, id);
+			}
+		}
 	}
 
 	/*
-	 * Public constructor
+	 * Public constructor. The rules are shared, so this is cheap, but {@link #getInstance()} avoids even that.
 	 */
 
 	public TagBoundaryManager() {
-		initCache();
 	}
 
 	/**
-	 * Gets the tag length rules
+	 * Gets the shared instance
 	 * 
-	 * @param name container name
-	 * @return HashMap of TagLengthRule objects, one for each tag
+	 * @return the shared instance
 	 */
-	private HashMap<BerTag, TagLengthRule> getTagLengthRules(String name) {
-		ContainerRuleset cr = m_maxLenMap.get(name);
-		HashMap<BerTag, TagLengthRule> tlr = null;
-		tlr = cr.getTagRuleset();
-		return tlr;
+	public static TagBoundaryManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Resolves a container to the id used by {@link #lengthDelta(int, BerTag, int)}. Ids are indexes
+	 * into the compiled rule tables, not the container ids in {@link APDUConstants}.
+	 * 
+	 * @param container container name or OID
+	 * @return the container id, or -1 if there are no rules for the container
+	 */
+	public static int getContainerId(String container) {
+		Integer id = m_containerIds.get(container);
+		return id != null ? id.intValue() : -1;
+	}
+
+	/**
+	 * Gets the name of a container
+	 * 
+	 * @param containerId container id from {@link #getContainerId(String)}
+	 * @return the container name
+	 */
+	public static String getContainerName(int containerId) {
+		return m_containerNames[containerId];
+	}
+
+	/**
+	 * Gets the index of a tag's rule within a container's rules
+	 * 
+	 * @param containerId container id from {@link #getContainerId(String)}
+	 * @param tag         the element's tag
+	 * @return the index, or a negative value if the container has no rule for the tag
+	 */
+	static int getRuleIndex(int containerId, BerTag tag) {
+		int key = tag.intValue();
+		if (key == BerTag.NOT_PACKED) {
+			return -1;
+		}
+		return Arrays.binarySearch(m_containerTags[containerId], key);
 	}
 
 	/**
 	 * Determines whether the length of the byte array corresponding to the tag
 	 * falls within the length boundaries for that container
 	 * 
+	 * @param containerName the container name
 	 * @param tag        the element's tag
 	 * @param byteLength computed by adding value lengths from the value length
 	 *                   under test
@@ -205,15 +286,50 @@ public class TagBoundaryManager {
 	 * @throws CardClientException 
 	 */
 	public int lengthDelta(String containerName, BerTag tag, int bytesLength) throws NullPointerException, CardClientException, SoftTagBoundaryException {
-		int rv = -1;
-		HashMap<BerTag, TagLengthRule> tlRules = getTagLengthRules(containerName);
-		if (tlRules == null) {
-			String errStr = (String.format("Rules for container %s, tag 0x%02x is null", containerName, Hex.toHexString(tag.bytes)));
+		int containerId = getContainerId(containerName);
+		if (containerId < 0) {
+			String errStr = (String.format("Rules for container %s, tag 0x%s is null", containerName, Hex.toHexString(tag.bytes)));
 			s_logger.error(errStr);
 			NullPointerException e = new NullPointerException(errStr);
 			throw (e);
 		}
-		TagLengthRule tlr = tlRules.get(tag);
+		return lengthDelta(containerId, tag, bytesLength);
+	}
+
+	/**
+	 * Determines whether the length of the byte array corresponding to the tag
+	 * falls within the length boundaries for that container
+	 * 
+	 * @param containerId container id from {@link #getContainerId(String)}
+	 * @param tag        the element's tag
+	 * @param byteLength computed by adding value lengths from the value length
+	 *                   under test
+	 * @return the difference between the prescribed lengths and the value length,
+	 *         hopefully all bits clear
+	 * @throws NullPointerException if the container has no rule for the tag
+	 * @throws CardClientException 
+	 */
+	public int lengthDelta(int containerId, BerTag tag, int bytesLength) throws NullPointerException, CardClientException, SoftTagBoundaryException {
+		int index = getRuleIndex(containerId, tag);
+		if (index < 0) {
+			String errStr = (String.format("Rule for container %s, tag 0x%s is null", m_containerNames[containerId], Hex.toHexString(tag.bytes)));
+			s_logger.error(errStr);
+			NullPointerException e = new NullPointerException(errStr);
+			throw (e);
+		}
+		return lengthDelta(containerId, m_containerRules[containerId][index], tag, bytesLength);
+	}
+
+	/**
+	 * Computes the difference between the prescribed lengths and a value length, without
+	 * applying soft upper bounds
+	 * 
+	 * @param tlr         the rule
+	 * @param bytesLength the value length
+	 * @return the difference, zero if the length is in bounds
+	 */
+	static int rawDelta(TagLengthRule tlr, int bytesLength) {
+		int rv = -1;
 		int hi = tlr.getHighVal();
 		int lo = tlr.getLowVal();
 		CONSTRAINT rule = tlr.getRule();
@@ -246,15 +362,20 @@ public class TagBoundaryManager {
 				}
 				break;
 			default: // Let's fail the programmer
-				String errStr = String.format("Rule for %s, container %s has unknown rule", Hex.toHexString(tag.bytes));
+				String errStr = String.format("Rule %s is unknown", rule);
 				s_logger.error(errStr);
 				break;
 			}
 		}
+		return rv;
+	}
+
+	private static int lengthDelta(int containerId, TagLengthRule tlr, BerTag tag, int bytesLength) throws CardClientException {
+		int rv = rawDelta(tlr, bytesLength);
 		if (rv != 0) {
 			if (tlr.hasSoftUpperBound()) {
 				String errStr = String.format("Container %s, Tag %s varies from SP 800-73-4 table by %d",
-				containerName, Hex.toHexString(tag.bytes), rv); 
+				m_containerNames[containerId], Hex.toHexString(tag.bytes), rv); 
 				try {
 					rv = 0; // TODO: Here, we should *really* be checking a boolean m_signerCertEmbedded flag.
 					errStr += " (ignored due to tag container rule)";
@@ -264,10 +385,73 @@ public class TagBoundaryManager {
 				}
 			} else {
 			  String errStr = String.format("Container %s, Tag %s varies from SP 800-73-4 table by %d",
-			  containerName, Hex.toHexString(tag.bytes), rv); s_logger.error(errStr);
+			  m_containerNames[containerId], Hex.toHexString(tag.bytes), rv); s_logger.error(errStr);
 			  throw new CardClientException(errStr);
 			}
 		}
 		return rv;
 	}
+
+	/**
+	 * Checks every tag of a container against the container's length rules in one pass over the
+	 * raw container. The container may be wrapped in a 0x53 (or, for the Discovery Object and
+	 * BIT Group Template, its own) tag, which is descended into; values are not copied.
+	 * 
+	 * @param containerId container id from {@link #getContainerId(String)}
+	 * @param buf         buffer holding the container
+	 * @param offset      offset of the container
+	 * @param length      length of the container
+	 * @return the report
+	 * @throws IllegalStateException if the container is not well-formed BER-TLV
+	 */
+	public static ContainerLengthReport validate(int containerId, byte[] buf, int offset, int length) {
+		ContainerLengthReport report = new ContainerLengthReport(containerId, m_containerTags[containerId], m_containerSoft[containerId]);
+		s_parser.walk(buf, offset, length, new ReportingVisitor(containerId, report));
+		return report;
+	}
+
+	public static ContainerLengthReport validate(int containerId, byte[] buf) {
+		return validate(containerId, buf, 0, buf.length);
+	}
+
+	private static final BerTlvParser s_parser = new BerTlvParser(new CCTTlvLogger(TagBoundaryManager.class));
+	private static final int DATA_TAG = 0x53;
+	private static final int DISCOVERY_OBJECT_TAG = 0x7E;
+	private static final int BIT_GROUP_TEMPLATE_TAG = 0x7F61;
+
+	/**
+	 * Records each tag's length, descending only into wrapper tags the container has no rule for
+	 */
+	private static class ReportingVisitor implements IBerTlvVisitor {
+		private final int m_containerId;
+		private final ContainerLengthReport m_report;
+
+		ReportingVisitor(int containerId, ContainerLengthReport report) {
+			m_containerId = containerId;
+			m_report = report;
+		}
+
+		@Override
+		public Action onTagStart(BerTag aTag, int aDepth, int aOffset, int aLength) {
+			int index = getRuleIndex(m_containerId, aTag);
+			if (index >= 0) {
+				m_report.record(index, aLength, rawDelta(m_containerRules[m_containerId][index], aLength));
+				return Action.SKIP;
+			}
+			int key = aTag.intValue();
+			if (key == DATA_TAG || key == DISCOVERY_OBJECT_TAG || key == BIT_GROUP_TEMPLATE_TAG) {
+				return Action.DESCEND;
+			}
+			m_report.recordExtra(aTag, aLength);
+			return Action.SKIP;
+		}
+
+		@Override
+		public void onPrimitive(BerTag aTag, int aDepth, byte[] aBuf, int aOffset, int aLength) {
+		}
+
+		@Override
+		public void onTagEnd(BerTag aTag, int aDepth) {
+		}
+	}
 }
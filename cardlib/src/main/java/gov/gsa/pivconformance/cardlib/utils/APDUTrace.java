@@ -0,0 +1,162 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A trace of the APDUs exchanged with a card, as written by {@link APDUTraceWriter}.
+ *
+ * The trace file starts with the magic bytes "PIVT" and a version byte, followed by records. Each
+ * record is a type byte and its fields, with lengths and numbers written as unsigned LEB128
+ * varints:
+ * <ul>
+ * <li>connect: ATR length, ATR, protocol length, protocol in ASCII</li>
+ * <li>exchange: channel number, command length, command, response length, response including SW1
+ * SW2, latency in microseconds</li>
+ * </ul>
+ */
+public class APDUTrace {
+	static final byte[] MAGIC = { 'P', 'I', 'V', 'T' };
+	static final int VERSION = 1;
+	static final int RECORD_CONNECT = 1;
+	static final int RECORD_EXCHANGE = 2;
+
+	/**
+	 * A command sent to the card and the response it returned
+	 */
+	public static class Exchange {
+		private final int m_channel;
+		private final byte[] m_command;
+		private final byte[] m_response;
+		private final long m_micros;
+
+		Exchange(int channel, byte[] command, byte[] response, long micros) {
+			m_channel = channel;
+			m_command = command;
+			m_response = response;
+			m_micros = micros;
+		}
+
+		public int getChannel() {
+			return m_channel;
+		}
+
+		public byte[] getCommand() {
+			return m_command;
+		}
+
+		public byte[] getResponse() {
+			return m_response;
+		}
+
+		public long getMicros() {
+			return m_micros;
+		}
+	}
+
+	private final List<byte[]> m_atrs = new ArrayList<byte[]>();
+	private final List<Exchange> m_exchanges = new ArrayList<Exchange>();
+
+	private APDUTrace() {
+	}
+
+	/**
+	 * Reads a trace file
+	 *
+	 * @param file the file
+	 * @return the trace
+	 * @throws IOException if the file cannot be read or is not a trace
+	 */
+	public static APDUTrace read(Path file) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			return read(in);
+		}
+	}
+
+	/**
+	 * Reads a trace
+	 *
+	 * @param in stream positioned at the start of the trace
+	 * @return the trace
+	 * @throws IOException if the stream cannot be read or does not hold a trace
+	 */
+	public static APDUTrace read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+		byte[] magic = new byte[MAGIC.length];
+		data.readFully(magic);
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw new IOException("Not an APDU trace");
+		}
+		int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported APDU trace version " + version);
+		}
+		APDUTrace trace = new APDUTrace();
+		int type;
+		while ((type = data.read()) != -1) {
+			switch (type) {
+			case RECORD_CONNECT:
+				trace.m_atrs.add(readBytes(data));
+				readBytes(data);
+				break;
+			case RECORD_EXCHANGE:
+				int channel = (int) readVarint(data);
+				byte[] command = readBytes(data);
+				byte[] response = readBytes(data);
+				trace.m_exchanges.add(new Exchange(channel, command, response, readVarint(data)));
+				break;
+			default:
+				throw new IOException("Unknown APDU trace record " + type);
+			}
+		}
+		return trace;
+	}
+
+	static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.read();
+			if (b == -1) {
+				throw new EOFException("Truncated APDU trace");
+			}
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid length in APDU trace");
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		long length = readVarint(in);
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Invalid length in APDU trace");
+		}
+		byte[] bytes = new byte[(int) length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * @return the ATR of the first connection, or null if the trace has none
+	 */
+	public byte[] getAtr() {
+		return m_atrs.isEmpty() ? null : m_atrs.get(0);
+	}
+
+	/**
+	 * @return the exchanges, in the order they took place
+	 */
+	public List<Exchange> getExchanges() {
+		return Collections.unmodifiableList(m_exchanges);
+	}
+}
@@ -0,0 +1,89 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes an {@link APDUTrace}. Records can be written from several threads.
+ */
+public class APDUTraceWriter implements Closeable {
+	private final DataOutputStream m_out;
+
+	/**
+	 * @param out stream to write the trace to
+	 * @throws IOException if the header cannot be written
+	 */
+	public APDUTraceWriter(OutputStream out) throws IOException {
+		m_out = new DataOutputStream(new BufferedOutputStream(out));
+		m_out.write(APDUTrace.MAGIC);
+		m_out.writeByte(APDUTrace.VERSION);
+	}
+
+	/**
+	 * Creates a trace file, replacing any existing one
+	 *
+	 * @param file the file
+	 * @return the writer
+	 * @throws IOException if the file cannot be created
+	 */
+	public static APDUTraceWriter create(Path file) throws IOException {
+		return new APDUTraceWriter(Files.newOutputStream(file));
+	}
+
+	/**
+	 * Records a connection to the card
+	 *
+	 * @param atr the card's ATR
+	 * @param protocol the protocol in use
+	 */
+	public synchronized void writeConnect(byte[] atr, String protocol) throws IOException {
+		m_out.writeByte(APDUTrace.RECORD_CONNECT);
+		writeBytes(atr, 0, atr.length);
+		byte[] p = protocol.getBytes(StandardCharsets.US_ASCII);
+		writeBytes(p, 0, p.length);
+	}
+
+	/**
+	 * Records a command and its response
+	 *
+	 * @param channel channel number
+	 * @param command the command
+	 * @param response the response, including SW1 SW2
+	 * @param micros time taken by the card and reader to respond
+	 */
+	public synchronized void writeExchange(int channel, byte[] command, byte[] response, long micros) throws IOException {
+		m_out.writeByte(APDUTrace.RECORD_EXCHANGE);
+		writeVarint(channel);
+		writeBytes(command, 0, command.length);
+		writeBytes(response, 0, response.length);
+		writeVarint(micros);
+	}
+
+	private void writeBytes(byte[] b, int offset, int length) throws IOException {
+		writeVarint(length);
+		m_out.write(b, offset, length);
+	}
+
+	private void writeVarint(long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			m_out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		m_out.writeByte((int) value);
+	}
+
+	public synchronized void flush() throws IOException {
+		m_out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		m_out.close();
+	}
+}
@@ -0,0 +1,108 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import gov.gsa.pivconformance.cardlib.utils.TransmitMetrics.CommandClass;
+
+/**
+ * Counters for the APDUs exchanged on one channel of a card: per instruction, bytes sent and
+ * received, failed exchanges, and the latency of each class of command. The counters can be
+ * updated from several threads.
+ */
+public class ChannelMetrics {
+	private final String m_name;
+	private final AtomicLongArray m_insCounts = new AtomicLongArray(256);
+	private final AtomicLong m_bytesSent = new AtomicLong();
+	private final AtomicLong m_bytesReceived = new AtomicLong();
+	private final AtomicLong m_errors = new AtomicLong();
+	private final Map<CommandClass, LatencyHistogram> m_latency = new EnumMap<CommandClass, LatencyHistogram>(CommandClass.class);
+
+	ChannelMetrics(String name) {
+		m_name = name;
+		for (CommandClass c : CommandClass.values()) {
+			m_latency.put(c, new LatencyHistogram());
+		}
+	}
+
+	public String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Records one exchange with the card
+	 *
+	 * @param ins instruction byte of the command
+	 * @param sent length of the command
+	 * @param received length of the response, including SW1 SW2
+	 * @param nanos time from sending the command to receiving the response
+	 */
+	public void record(int ins, int sent, int received, long nanos) {
+		m_insCounts.incrementAndGet(ins & 0xFF);
+		m_bytesSent.addAndGet(sent);
+		m_bytesReceived.addAndGet(received);
+		m_latency.get(CommandClass.forIns(ins)).record(nanos / 1000);
+	}
+
+	/**
+	 * Records an exchange that failed before a response was received
+	 *
+	 * @param ins instruction byte of the command
+	 * @param sent length of the command
+	 */
+	public void recordError(int ins, int sent) {
+		m_insCounts.incrementAndGet(ins & 0xFF);
+		m_bytesSent.addAndGet(sent);
+		m_errors.incrementAndGet();
+	}
+
+	public long getTransmitCount() {
+		long count = 0;
+		for (int i = 0; i < m_insCounts.length(); i++) {
+			count += m_insCounts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * @param ins instruction byte
+	 * @return number of commands sent with that instruction
+	 */
+	public long getTransmitCount(int ins) {
+		return m_insCounts.get(ins & 0xFF);
+	}
+
+	public long getBytesSent() {
+		return m_bytesSent.get();
+	}
+
+	public long getBytesReceived() {
+		return m_bytesReceived.get();
+	}
+
+	public long getErrorCount() {
+		return m_errors.get();
+	}
+
+	/**
+	 * @param commandClass class of command
+	 * @return latencies of the commands of that class
+	 */
+	public LatencyHistogram getLatency(CommandClass commandClass) {
+		return m_latency.get(commandClass);
+	}
+
+	public void reset() {
+		for (int i = 0; i < m_insCounts.length(); i++) {
+			m_insCounts.set(i, 0);
+		}
+		m_bytesSent.set(0);
+		m_bytesReceived.set(0);
+		m_errors.set(0);
+		for (LatencyHistogram h : m_latency.values()) {
+			h.reset();
+		}
+	}
+}
@@ -1,5 +0,0 @@
-package gov.gsa.pivconformance.cardlib.utils;
-
-public interface ITransmitCounter {
-	public void incrementTransmitCount();
-}
@@ -0,0 +1,101 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in microseconds that can be updated from several threads without locking.
+ * As in an HDR histogram, every power of two is split into a fixed number of linear sub-buckets, so
+ * values are kept with a relative error of at most 1/8 over the whole range of a long.
+ */
+public class LatencyHistogram {
+	// sub-buckets per power of two, as a number of bits
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final AtomicLongArray m_counts = new AtomicLongArray(64 * SUB_BUCKETS);
+	private final AtomicLong m_count = new AtomicLong();
+	private final AtomicLong m_total = new AtomicLong();
+	private final AtomicLong m_max = new AtomicLong();
+
+	// Index of the bucket holding a value
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	// Highest value held by a bucket
+	static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/**
+	 * Records one latency
+	 *
+	 * @param micros the latency in microseconds
+	 */
+	public void record(long micros) {
+		long value = Math.max(0, micros);
+		m_counts.incrementAndGet(bucket(value));
+		m_count.incrementAndGet();
+		m_total.addAndGet(value);
+		m_max.accumulateAndGet(value, Math::max);
+	}
+
+	public long getCount() {
+		return m_count.get();
+	}
+
+	public long getMax() {
+		return m_max.get();
+	}
+
+	/**
+	 * @return the mean latency in microseconds, or 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long count = m_count.get();
+		return count == 0 ? 0 : (double) m_total.get() / count;
+	}
+
+	/**
+	 * Gets a percentile of the recorded latencies
+	 *
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the highest value of the bucket holding the percentile, no more than the maximum, in
+	 *         microseconds, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double percentile) {
+		long count = m_count.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (int i = 0; i < m_counts.length(); i++) {
+			seen += m_counts.get(i);
+			if (seen >= rank) {
+				return Math.min(highestValue(i), m_max.get());
+			}
+		}
+		return m_max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < m_counts.length(); i++) {
+			m_counts.set(i, 0);
+		}
+		m_count.set(0);
+		m_total.set(0);
+		m_max.set(0);
+	}
+}
@@ -11,16 +11,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import gov.gsa.pivconformance.cardlib.card.client.CardClientException;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
 import gov.gsa.pivconformance.cardlib.card.client.ChainingAPDUTransmitter;
 import gov.gsa.pivconformance.cardlib.card.client.RequestAPDUWrapper;
 import gov.gsa.pivconformance.cardlib.card.client.ResponseAPDUWrapper;
 
-public class PCSCWrapper implements ITransmitCounter{
+public class PCSCWrapper {
     private static final Logger s_logger = LoggerFactory.getLogger(PCSCWrapper.class);
     private static PCSCWrapper INSTANCE = new PCSCWrapper();
     
-    private int m_connectCount = 0;
-    private int m_transmitCount = 0;
+    // APDUs are counted where ChainingAPDUTransmitter sends them, so that each is counted once
+    private final TransmitMetrics m_metrics = TransmitMetrics.getInstance();
     
     public Card connect(CardTerminal t) throws CardException {
     	s_logger.debug("Connecting to card in {} using the default protocol", t.getName());
@@ -29,7 +30,7 @@ public class PCSCWrapper implements ITransmitCounter{
     
     public Card connect(CardTerminal t, String protocol) throws CardException {
     	s_logger.debug("Connecting to card in {} using protocol: \"{}\"", t.getName(), protocol);
-    	m_connectCount++;
+    	m_metrics.incrementConnectCount();
     	Card rv = null;
     	try {
 			rv = t.connect(protocol);
@@ -43,9 +44,19 @@ public class PCSCWrapper implements ITransmitCounter{
     	
     }
     
+    /**
+     * Transmits a command on a channel through a transmitter of its own, which is not reused
+     * and whose metrics are not named after the reader
+     * 
+     * @param channel the channel
+     * @param cmd the command
+     * @return the complete response, after any GET RESPONSE
+     * @deprecated use {@link #transmit(CardHandle, CardChannel, CommandAPDU)}, which reuses the
+     * transmitter the card handle keeps for the channel
+     */
+    @Deprecated
     public ResponseAPDU transmit(CardChannel channel, CommandAPDU cmd) throws CardException {
     	s_logger.debug("transmit() wrapper called");
-    	m_transmitCount++;
     	/*
     	ResponseAPDU rsp = null;
     	s_apduLogger.info("Sending Command APDU: {}", Hex.encodeHexString(cmd.getBytes()).replaceAll("..(?=.)", "$0 "));
@@ -70,6 +81,43 @@ public class PCSCWrapper implements ITransmitCounter{
     	return new ResponseAPDU(rsp.getBytes());
     }
     
+    /**
+     * Transmits a command on a channel of a card, reusing the transmitter the card handle keeps
+     * for that channel. The command and the response are copied in and out of the wrappers the
+     * transmitter works with; callers that build the APDU themselves should use the
+     * RequestAPDUWrapper overload instead.
+     * 
+     * @param cardHandle card handle
+     * @param channel the channel, normally the handle's current channel
+     * @param cmd the command
+     * @return the complete response, after any GET RESPONSE
+     */
+    public ResponseAPDU transmit(CardHandle cardHandle, CardChannel channel, CommandAPDU cmd) throws CardException {
+    	RequestAPDUWrapper req = new RequestAPDUWrapper(cmd.getBytes());
+    	ResponseAPDUWrapper rsp = null;
+    	try {
+    		rsp = transmit(cardHandle, channel, req);
+    	} catch (CardClientException e) {
+    		s_logger.error("Failed to receive response APDU", e);
+    		return null;
+    	}
+    	return new ResponseAPDU(rsp.getBytes());
+    }
+    
+    /**
+     * Transmits a request on a channel of a card without copying it into a CommandAPDU or the
+     * response into a ResponseAPDU, reusing the transmitter the card handle keeps for that channel
+     * 
+     * @param cardHandle card handle
+     * @param channel the channel, normally the handle's current channel
+     * @param request the request
+     * @return the complete response, after any GET RESPONSE
+     */
+    public ResponseAPDUWrapper transmit(CardHandle cardHandle, CardChannel channel, RequestAPDUWrapper request) throws CardException, CardClientException {
+    	s_logger.debug("transmit() wrapper called");
+    	return cardHandle.getTransmitter(channel).transmit(request);
+    }
+    
     private PCSCWrapper() {
     	
     }
@@ -78,22 +126,23 @@ public class PCSCWrapper implements ITransmitCounter{
     	return INSTANCE;
     }
 
+	/**
+	 * @return number of APDUs sent since the counters were reset, GET RESPONSE included
+	 */
 	public int getTransmitCount() {
-		return m_transmitCount;
+		return (int) m_metrics.getTransmitCount();
 	}
 
 	public int getConnectCount() {
-		return m_connectCount;
+		return (int) m_metrics.getConnectCount();
 	}
 	
 	public void resetCounters() {
-		m_connectCount = 0;
-		m_transmitCount = 0;
+		m_metrics.reset();
 	}
-	
-	@Override
-	public void incrementTransmitCount() {
-		m_transmitCount++;
+
+	public TransmitMetrics getMetrics() {
+		return m_metrics;
 	}
 
 }
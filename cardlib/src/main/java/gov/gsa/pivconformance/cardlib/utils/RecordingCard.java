@@ -0,0 +1,67 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+
+/**
+ * A card whose channels record the APDUs sent on them, see {@link RecordingCardTerminal}
+ */
+class RecordingCard extends Card {
+	private final Card m_card;
+	private final APDUTraceWriter m_writer;
+	private final RecordingCardChannel m_basicChannel;
+
+	RecordingCard(Card card, APDUTraceWriter writer) {
+		m_card = card;
+		m_writer = writer;
+		// the same channel object is returned every time, so that transmitters are reused
+		m_basicChannel = new RecordingCardChannel(this, card.getBasicChannel(), writer);
+	}
+
+	@Override
+	public ATR getATR() {
+		return m_card.getATR();
+	}
+
+	@Override
+	public String getProtocol() {
+		return m_card.getProtocol();
+	}
+
+	@Override
+	public CardChannel getBasicChannel() {
+		return m_basicChannel;
+	}
+
+	@Override
+	public CardChannel openLogicalChannel() throws CardException {
+		return new RecordingCardChannel(this, m_card.openLogicalChannel(), m_writer);
+	}
+
+	@Override
+	public void beginExclusive() throws CardException {
+		m_card.beginExclusive();
+	}
+
+	@Override
+	public void endExclusive() throws CardException {
+		m_card.endExclusive();
+	}
+
+	@Override
+	public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+		return m_card.transmitControlCommand(controlCode, command);
+	}
+
+	@Override
+	public void disconnect(boolean reset) throws CardException {
+		m_card.disconnect(reset);
+	}
+
+	@Override
+	public String toString() {
+		return "Recording " + m_card;
+	}
+}
@@ -0,0 +1,86 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+
+/**
+ * A channel that records the APDUs sent on it, see {@link RecordingCardTerminal}
+ */
+class RecordingCardChannel extends CardChannel {
+	private static final Logger s_logger = LoggerFactory.getLogger(RecordingCardChannel.class);
+
+	private final Card m_card;
+	private final CardChannel m_channel;
+	private final APDUTraceWriter m_writer;
+
+	RecordingCardChannel(Card card, CardChannel channel, APDUTraceWriter writer) {
+		m_card = card;
+		m_channel = channel;
+		m_writer = writer;
+	}
+
+	@Override
+	public Card getCard() {
+		return m_card;
+	}
+
+	@Override
+	public int getChannelNumber() {
+		return m_channel.getChannelNumber();
+	}
+
+	@Override
+	public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+		long start = System.nanoTime();
+		ResponseAPDU response = m_channel.transmit(command);
+		record(command.getBytes(), response.getBytes(), start);
+		return response;
+	}
+
+	@Override
+	public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+		byte[] cmd = new byte[command.remaining()];
+		command.duplicate().get(cmd);
+		int offset = response.position();
+		long start = System.nanoTime();
+		int length = m_channel.transmit(command, response);
+		byte[] rsp = new byte[length];
+		ByteBuffer received = response.duplicate();
+		received.position(offset);
+		received.get(rsp);
+		record(cmd, rsp, start);
+		return length;
+	}
+
+	private void record(byte[] command, byte[] response, long start) {
+		long micros = (System.nanoTime() - start) / 1000;
+		if (command.length > 5 && command[1] == APDUConstants.VERIFY) {
+			// the PIN is not written to the trace; VERIFY is matched on its header when replayed
+			command = command.clone();
+			for (int i = 5, end = Math.min(command.length, i + (command[4] & 0xFF)); i < end; i++) {
+				command[i] = (byte) 0xAA;
+			}
+		}
+		try {
+			m_writer.writeExchange(getChannelNumber(), command, response, micros);
+		} catch (IOException e) {
+			s_logger.error("Unable to record APDU", e);
+		}
+	}
+
+	@Override
+	public void close() throws CardException {
+		m_channel.close();
+	}
+}
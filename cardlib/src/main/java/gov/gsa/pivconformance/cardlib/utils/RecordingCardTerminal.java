@@ -0,0 +1,72 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.IOException;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A reader that records every APDU exchanged with the card in it to an {@link APDUTraceWriter},
+ * so that the session can be replayed later with a {@link ReplayCardTerminal}. The recording is
+ * done on the card's channels, underneath ChainingAPDUTransmitter, so it also holds the GET
+ * RESPONSE commands and any APDU sent without the transmitter.
+ */
+public class RecordingCardTerminal extends CardTerminal {
+	private static final Logger s_logger = LoggerFactory.getLogger(RecordingCardTerminal.class);
+
+	private final CardTerminal m_terminal;
+	private final APDUTraceWriter m_writer;
+
+	/**
+	 * @param terminal the reader to record
+	 * @param writer where the trace is written
+	 */
+	public RecordingCardTerminal(CardTerminal terminal, APDUTraceWriter writer) {
+		m_terminal = terminal;
+		m_writer = writer;
+	}
+
+	public APDUTraceWriter getWriter() {
+		return m_writer;
+	}
+
+	@Override
+	public String getName() {
+		return m_terminal.getName();
+	}
+
+	@Override
+	public Card connect(String protocol) throws CardException {
+		Card card = m_terminal.connect(protocol);
+		try {
+			m_writer.writeConnect(card.getATR().getBytes(), card.getProtocol());
+		} catch (IOException e) {
+			s_logger.error("Unable to record connection to {}", getName(), e);
+		}
+		return new RecordingCard(card, m_writer);
+	}
+
+	@Override
+	public boolean isCardPresent() throws CardException {
+		return m_terminal.isCardPresent();
+	}
+
+	@Override
+	public boolean waitForCardPresent(long timeout) throws CardException {
+		return m_terminal.waitForCardPresent(timeout);
+	}
+
+	@Override
+	public boolean waitForCardAbsent(long timeout) throws CardException {
+		return m_terminal.waitForCardAbsent(timeout);
+	}
+
+	@Override
+	public String toString() {
+		return "RecordingCardTerminal: " + m_terminal;
+	}
+}
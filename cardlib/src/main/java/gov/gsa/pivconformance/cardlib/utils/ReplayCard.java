@@ -0,0 +1,65 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+
+/**
+ * The card in a {@link ReplayCardTerminal}
+ */
+class ReplayCard extends Card {
+	private final ATR m_atr;
+	private final ReplayCardChannel m_channel;
+
+	ReplayCard(APDUTrace trace) {
+		byte[] atr = trace.getAtr();
+		m_atr = new ATR(atr != null ? atr : SimulatedCard.DEFAULT_ATR);
+		m_channel = new ReplayCardChannel(this, trace);
+	}
+
+	// a new connection: any response left for GET RESPONSE is dropped, the position in the trace kept
+	void reset() {
+		m_channel.reset();
+	}
+
+	@Override
+	public ATR getATR() {
+		return m_atr;
+	}
+
+	@Override
+	public String getProtocol() {
+		return "T=1";
+	}
+
+	@Override
+	public CardChannel getBasicChannel() {
+		return m_channel;
+	}
+
+	@Override
+	public CardChannel openLogicalChannel() throws CardException {
+		throw new CardException("Logical channels are not supported by the replayed card");
+	}
+
+	@Override
+	public void beginExclusive() throws CardException {
+	}
+
+	@Override
+	public void endExclusive() throws CardException {
+	}
+
+	@Override
+	public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+		throw new CardException("Control commands are not supported by the replayed card");
+	}
+
+	@Override
+	public void disconnect(boolean reset) throws CardException {
+		if (reset) {
+			reset();
+		}
+	}
+}
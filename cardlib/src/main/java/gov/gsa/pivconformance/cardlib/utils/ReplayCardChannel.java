@@ -0,0 +1,187 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+/**
+ * The channel of a {@link ReplayCard}. Each command is answered with the response recorded for the
+ * same command, and GET RESPONSE with the rest of that response as it was recorded.
+ *
+ * Commands are matched in this order:
+ * <ol>
+ * <li>the first unused recording of the same command, from the position reached in the trace, then
+ * from its start, so a run that sends the same commands in the same order replays the trace
+ * exactly</li>
+ * <li>for commands whose data is expected to change between runs, GENERAL AUTHENTICATE with its
+ * challenge, VERIFY, whose PIN is not recorded, and chained commands, the first unused recording
+ * with the same header and length</li>
+ * <li>the last recording of the command, once they have all been used, as the card's state is then
+ * the same as at the end of the recorded run</li>
+ * </ol>
+ * Commands that were never recorded are answered with 6F 00.
+ */
+class ReplayCardChannel extends CardChannel {
+	private static final Logger s_logger = LoggerFactory.getLogger(ReplayCardChannel.class);
+
+	private static final int INS_GET_RESPONSE = 0xC0;
+	private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+	private static final int SW_NO_PRECISE_DIAGNOSIS = 0x6F00;
+
+	// A recorded command, its response, and the responses to the GET RESPONSE commands that followed
+	private static class Recording {
+		final byte[] m_response;
+		final List<byte[]> m_followUps = new ArrayList<byte[]>();
+		boolean m_used;
+
+		Recording(byte[] response) {
+			m_response = response;
+		}
+	}
+
+	private final Card m_card;
+	private final List<Recording> m_recordings = new ArrayList<Recording>();
+	// indexes of recordings by command, and by header and length
+	private final Map<String, List<Integer>> m_byCommand = new HashMap<String, List<Integer>>();
+	private final Map<String, List<Integer>> m_byHeader = new HashMap<String, List<Integer>>();
+	private int m_position;
+	private Recording m_pending;
+	private int m_pendingIndex;
+
+	ReplayCardChannel(Card card, APDUTrace trace) {
+		m_card = card;
+		Recording last = null;
+		for (APDUTrace.Exchange e : trace.getExchanges()) {
+			byte[] command = e.getCommand();
+			if (isGetResponse(command) && last != null) {
+				last.m_followUps.add(e.getResponse());
+				continue;
+			}
+			last = new Recording(e.getResponse());
+			int index = m_recordings.size();
+			m_recordings.add(last);
+			m_byCommand.computeIfAbsent(HexUtil.toHexString(command), k -> new ArrayList<Integer>()).add(index);
+			if (isVariable(command)) {
+				m_byHeader.computeIfAbsent(headerKey(command), k -> new ArrayList<Integer>()).add(index);
+			}
+		}
+		s_logger.debug("Loaded {} recorded commands", m_recordings.size());
+	}
+
+	private static boolean isGetResponse(byte[] command) {
+		return command.length >= 4 && (command[1] & 0xFF) == INS_GET_RESPONSE;
+	}
+
+	// Commands whose data is expected to differ from one run to the next
+	private static boolean isVariable(byte[] command) {
+		if (command.length < 4) {
+			return false;
+		}
+		return command[1] == APDUConstants.GENERAL_AUTHENTICATE || command[1] == APDUConstants.VERIFY
+				|| (command[0] & 0x10) != 0;
+	}
+
+	private static String headerKey(byte[] command) {
+		return HexUtil.toHexString(command, 0, 4) + "/" + command.length;
+	}
+
+	synchronized void reset() {
+		m_pending = null;
+	}
+
+	@Override
+	public Card getCard() {
+		return m_card;
+	}
+
+	@Override
+	public int getChannelNumber() {
+		return 0;
+	}
+
+	@Override
+	public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+		return new ResponseAPDU(process(command.getBytes()));
+	}
+
+	@Override
+	public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+		byte[] apdu = new byte[command.remaining()];
+		command.get(apdu);
+		byte[] rsp = process(apdu);
+		if (response.remaining() < rsp.length) {
+			throw new IllegalArgumentException("Insufficient space in response buffer");
+		}
+		response.put(rsp);
+		return rsp.length;
+	}
+
+	@Override
+	public void close() throws CardException {
+		throw new IllegalStateException("Cannot close basic channel");
+	}
+
+	synchronized byte[] process(byte[] command) {
+		if (isGetResponse(command)) {
+			if (m_pending == null || m_pendingIndex >= m_pending.m_followUps.size()) {
+				return status(SW_CONDITIONS_NOT_SATISFIED);
+			}
+			return m_pending.m_followUps.get(m_pendingIndex++);
+		}
+		Recording r = find(m_byCommand.get(HexUtil.toHexString(command)));
+		if (r == null && isVariable(command)) {
+			r = find(m_byHeader.get(headerKey(command)));
+		}
+		if (r == null) {
+			s_logger.warn("No recorded response for {}", HexUtil.toHexString(command));
+			m_pending = null;
+			return status(SW_NO_PRECISE_DIAGNOSIS);
+		}
+		m_pending = r;
+		m_pendingIndex = 0;
+		return r.m_response;
+	}
+
+	private Recording find(List<Integer> candidates) {
+		if (candidates == null) {
+			return null;
+		}
+		int found = -1;
+		for (int index : candidates) {
+			if (!m_recordings.get(index).m_used) {
+				if (index >= m_position) {
+					found = index;
+					break;
+				}
+				if (found == -1) {
+					found = index;
+				}
+			}
+		}
+		if (found == -1) {
+			return m_recordings.get(candidates.get(candidates.size() - 1));
+		}
+		Recording r = m_recordings.get(found);
+		r.m_used = true;
+		m_position = found + 1;
+		return r;
+	}
+
+	private static byte[] status(int sw) {
+		return new byte[] { (byte) (sw >> 8), (byte) sw };
+	}
+}
@@ -0,0 +1,69 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+/**
+ * A reader holding a card that replays an {@link APDUTrace} recorded with a
+ * {@link RecordingCardTerminal}, so that a card evaluation can be run again without the card. The
+ * card answers each command with the response recorded for it, see {@link ReplayCardChannel}.
+ */
+public class ReplayCardTerminal extends CardTerminal {
+	private final String m_name;
+	private final ReplayCard m_card;
+
+	/**
+	 * @param name reader name
+	 * @param trace the trace to replay
+	 */
+	public ReplayCardTerminal(String name, APDUTrace trace) {
+		m_name = name;
+		m_card = new ReplayCard(trace);
+	}
+
+	/**
+	 * Creates a reader replaying a trace file
+	 *
+	 * @param file the trace file
+	 * @return the reader
+	 * @throws IOException if the trace cannot be read
+	 */
+	public static ReplayCardTerminal fromFile(Path file) throws IOException {
+		return new ReplayCardTerminal("Replay of " + file.getFileName(), APDUTrace.read(file));
+	}
+
+	@Override
+	public String getName() {
+		return m_name;
+	}
+
+	@Override
+	public Card connect(String protocol) throws CardException {
+		m_card.reset();
+		return m_card;
+	}
+
+	@Override
+	public boolean isCardPresent() throws CardException {
+		return true;
+	}
+
+	@Override
+	public boolean waitForCardPresent(long timeout) throws CardException {
+		return true;
+	}
+
+	@Override
+	public boolean waitForCardAbsent(long timeout) throws CardException {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "ReplayCardTerminal: " + m_name;
+	}
+}
@@ -0,0 +1,242 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+/**
+ * A PIV card simulated in software from container dumps, for running the conformance tests without
+ * a reader. The card answers SELECT, GET DATA, GET RESPONSE, VERIFY and GENERAL AUTHENTICATE through
+ * {@link SimulatedCardChannel}, always in the same way for the same commands.
+ *
+ * A card is loaded from a directory holding:
+ * <ul>
+ * <li>containers, named &lt;OID&gt;.bin as written by ContainerDump -o, or &lt;container name&gt;.dat
+ * as written to piv-artifacts</li>
+ * <li>optionally, private keys as PKCS#8 DER, named by key reference, such as 9A.pk8, used for
+ * GENERAL AUTHENTICATE</li>
+ * <li>optionally, the ATR in atr.bin</li>
+ * </ul>
+ */
+public class SimulatedCard extends Card {
+	private static final Logger s_logger = LoggerFactory.getLogger(SimulatedCard.class);
+
+	/** ATR used when the directory has none: T=1, with card capabilities that allow extended Lc and Le */
+	public static final byte[] DEFAULT_ATR = HexUtil.parseHex("3B8880018031C073C021C0002A");
+	/** Application PIN used unless another one is set */
+	public static final String DEFAULT_PIN = "123456";
+	/** Number of wrong PINs after which the PIN is blocked */
+	public static final int PIN_TRIES = 5;
+
+	private final ATR m_atr;
+	// Containers keyed by the hex of the tag in APDUConstants.oidMAP
+	private final Map<String, byte[]> m_containers;
+	private final Map<String, String> m_oids;
+	private final Map<Integer, PrivateKey> m_keys;
+	private byte[] m_pin = pad(DEFAULT_PIN);
+	private int m_pinTries = PIN_TRIES;
+	private boolean m_extendedLength = true;
+	private volatile SimulatedCardChannel m_channel;
+
+	/**
+	 * @param atr the card's ATR
+	 * @param containers raw containers, keyed by OID
+	 * @param keys private keys, keyed by key reference
+	 */
+	public SimulatedCard(byte[] atr, Map<String, byte[]> containers, Map<Integer, PrivateKey> keys) {
+		m_atr = new ATR(atr != null ? atr : DEFAULT_ATR);
+		m_containers = new HashMap<String, byte[]>();
+		m_oids = new HashMap<String, String>();
+		for (Map.Entry<String, byte[]> e : containers.entrySet()) {
+			byte[] tag = APDUConstants.oidMAP.get(e.getKey());
+			if (tag == null) {
+				s_logger.warn("Ignoring container with unknown OID {}", e.getKey());
+				continue;
+			}
+			m_containers.put(HexUtil.toHexString(tag), e.getValue());
+			m_oids.put(HexUtil.toHexString(tag), e.getKey());
+		}
+		m_keys = new HashMap<Integer, PrivateKey>(keys);
+		m_channel = new SimulatedCardChannel(this);
+	}
+
+	/**
+	 * Loads a card from a directory of container dumps
+	 *
+	 * @param dir the directory
+	 * @return the card
+	 * @throws IOException if the directory cannot be read or holds no containers
+	 */
+	public static SimulatedCard fromDirectory(Path dir) throws IOException {
+		Map<String, byte[]> containers = new HashMap<String, byte[]>();
+		for (String oid : APDUConstants.AllContainers()) {
+			Path bin = dir.resolve(oid + ".bin");
+			Path dat = dir.resolve(APDUConstants.getFileNameForOid(oid) + ".dat");
+			if (Files.isRegularFile(bin)) {
+				containers.put(oid, Files.readAllBytes(bin));
+			} else if (Files.isRegularFile(dat)) {
+				containers.put(oid, Files.readAllBytes(dat));
+			}
+		}
+		if (containers.isEmpty()) {
+			throw new IOException("No containers found in " + dir);
+		}
+		Map<Integer, PrivateKey> keys = new HashMap<Integer, PrivateKey>();
+		for (int keyRef : new int[] { 0x9A, 0x9C, 0x9D, 0x9E }) {
+			Path pk8 = dir.resolve(String.format("%02X.pk8", keyRef));
+			if (Files.isRegularFile(pk8)) {
+				keys.put(keyRef, readPrivateKey(Files.readAllBytes(pk8)));
+			}
+		}
+		Path atr = dir.resolve("atr.bin");
+		SimulatedCard card = new SimulatedCard(Files.isRegularFile(atr) ? Files.readAllBytes(atr) : null, containers, keys);
+		s_logger.debug("Loaded simulated card from {}: {} containers, {} keys", dir, containers.size(), keys.size());
+		return card;
+	}
+
+	private static PrivateKey readPrivateKey(byte[] encoded) throws IOException {
+		PKCS8EncodedKeySpec spec = new PKCS8EncodedKeySpec(encoded);
+		for (String algorithm : new String[] { "RSA", "EC" }) {
+			try {
+				return KeyFactory.getInstance(algorithm).generatePrivate(spec);
+			} catch (GeneralSecurityException e) {
+				// try the next algorithm
+			}
+		}
+		throw new IOException("Unable to read PKCS#8 private key");
+	}
+
+	// PIN padded to 8 bytes with FF, as sent in VERIFY
+	static byte[] pad(String pin) {
+		byte[] padded = new byte[8];
+		Arrays.fill(padded, (byte) 0xFF);
+		byte[] digits = pin.getBytes(StandardCharsets.US_ASCII);
+		System.arraycopy(digits, 0, padded, 0, Math.min(digits.length, padded.length));
+		return padded;
+	}
+
+	/**
+	 * Sets the application PIN
+	 *
+	 * @param pin the PIN, up to 8 digits
+	 */
+	public synchronized void setPin(String pin) {
+		m_pin = pad(pin);
+		m_pinTries = PIN_TRIES;
+	}
+
+	/**
+	 * Checks a PIN presented in VERIFY. The retry counter belongs to the card, so it is kept across
+	 * sessions.
+	 *
+	 * @param padded PIN padded to 8 bytes with FF
+	 * @return 90 00 if it matches, 63 Cx with the tries left if not, or 69 83 once blocked
+	 */
+	synchronized int checkPin(byte[] padded) {
+		if (m_pinTries == 0) {
+			return 0x6983;
+		}
+		if (Arrays.equals(m_pin, padded)) {
+			m_pinTries = PIN_TRIES;
+			return APDUConstants.SUCCESSFUL_EXEC;
+		}
+		m_pinTries--;
+		return m_pinTries == 0 ? 0x6983 : 0x63C0 | m_pinTries;
+	}
+
+	synchronized int getPinTries() {
+		return m_pinTries;
+	}
+
+	/**
+	 * Sets whether the card accepts extended-length APDUs. If it does not, they are rejected with
+	 * 67 00.
+	 *
+	 * @param extendedLength true to accept extended-length APDUs
+	 */
+	public void setExtendedLength(boolean extendedLength) {
+		m_extendedLength = extendedLength;
+	}
+
+	public boolean isExtendedLength() {
+		return m_extendedLength;
+	}
+
+	byte[] getContainer(String tagHex) {
+		return m_containers.get(tagHex);
+	}
+
+	String getOid(String tagHex) {
+		return m_oids.get(tagHex);
+	}
+
+	PrivateKey getKey(int keyRef) {
+		return m_keys.get(keyRef);
+	}
+
+	/**
+	 * Starts a new session, as when the card is inserted: the PIN is no longer verified
+	 */
+	void reset() {
+		m_channel = new SimulatedCardChannel(this);
+	}
+
+	@Override
+	public ATR getATR() {
+		return m_atr;
+	}
+
+	@Override
+	public String getProtocol() {
+		return "T=1";
+	}
+
+	@Override
+	public CardChannel getBasicChannel() {
+		return m_channel;
+	}
+
+	@Override
+	public CardChannel openLogicalChannel() throws CardException {
+		throw new CardException("Logical channels are not supported by the simulated card");
+	}
+
+	@Override
+	public void beginExclusive() throws CardException {
+	}
+
+	@Override
+	public void endExclusive() throws CardException {
+	}
+
+	@Override
+	public byte[] transmitControlCommand(int controlCode, byte[] command) throws CardException {
+		throw new CardException("Control commands are not supported by the simulated card");
+	}
+
+	@Override
+	public void disconnect(boolean reset) throws CardException {
+		if (reset) {
+			reset();
+		}
+	}
+}
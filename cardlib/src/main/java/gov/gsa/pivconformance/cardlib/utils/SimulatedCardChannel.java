@@ -0,0 +1,283 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.GeneralAuthenticateHelper;
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlv;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvBuilder;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
+import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
+
+/**
+ * The basic channel of a {@link SimulatedCard}. It keeps the state of one card session: whether the
+ * PIN has been verified, the rest of a response still to be retrieved with GET RESPONSE, and the data
+ * of a command chain.
+ */
+public class SimulatedCardChannel extends CardChannel {
+	private static final Logger s_logger = LoggerFactory.getLogger(SimulatedCardChannel.class);
+
+	private static final int SW_WRONG_LENGTH = 0x6700;
+	private static final int SW_PIN_BLOCKED = 0x6983;
+	private static final int SW_CONDITIONS_NOT_SATISFIED = 0x6985;
+	private static final int SW_INCORRECT_P1P2 = 0x6A86;
+	private static final int SW_REFERENCE_NOT_FOUND = 0x6A88;
+	private static final int SW_INS_NOT_SUPPORTED = 0x6D00;
+	private static final int SW_CLA_NOT_SUPPORTED = 0x6E00;
+	private static final int INS_GET_RESPONSE = 0xC0;
+	private static final int APPLICATION_PIN = 0x80;
+	// Application property template returned by SELECT
+	private static final byte[] APT = HexUtil.parseHex("61114F0600001000010079074F05A000000308");
+
+	private final SimulatedCard m_card;
+	private boolean m_pinVerified;
+	private byte[] m_pending;
+	private int m_pendingOffset;
+	private ByteArrayOutputStream m_chain;
+	private int m_chainIns;
+
+	SimulatedCardChannel(SimulatedCard card) {
+		m_card = card;
+	}
+
+	@Override
+	public Card getCard() {
+		return m_card;
+	}
+
+	@Override
+	public int getChannelNumber() {
+		return 0;
+	}
+
+	@Override
+	public synchronized ResponseAPDU transmit(CommandAPDU command) throws CardException {
+		return new ResponseAPDU(process(command.getBytes()));
+	}
+
+	@Override
+	public synchronized int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+		byte[] apdu = new byte[command.remaining()];
+		command.get(apdu);
+		byte[] rsp = process(apdu);
+		if (response.remaining() < rsp.length) {
+			throw new IllegalArgumentException("Insufficient space in response buffer");
+		}
+		response.put(rsp);
+		return rsp.length;
+	}
+
+	@Override
+	public void close() throws CardException {
+		throw new IllegalStateException("Cannot close basic channel");
+	}
+
+	/**
+	 * Processes one command APDU
+	 *
+	 * @param apdu the command
+	 * @return the response, data followed by SW1 SW2
+	 */
+	byte[] process(byte[] apdu) throws CardException {
+		CommandAPDU cmd;
+		try {
+			cmd = new CommandAPDU(apdu);
+		} catch (IllegalArgumentException e) {
+			return status(SW_WRONG_LENGTH);
+		}
+		boolean extended = apdu.length >= 7 && apdu[4] == 0;
+		if (extended && !m_card.isExtendedLength()) {
+			return status(SW_WRONG_LENGTH);
+		}
+		int cla = cmd.getCLA();
+		int ins = cmd.getINS();
+		if ((cla & ~0x10) != 0) {
+			return status(SW_CLA_NOT_SUPPORTED);
+		}
+		if (ins != INS_GET_RESPONSE) {
+			m_pending = null;
+		}
+		byte[] data = cmd.getData();
+		if ((cla & 0x10) != 0) {
+			// a command chain continues: keep the data until the last command
+			if (m_chain == null || m_chainIns != ins) {
+				m_chain = new ByteArrayOutputStream();
+				m_chainIns = ins;
+			}
+			m_chain.write(data, 0, data.length);
+			return status(APDUConstants.SUCCESSFUL_EXEC);
+		}
+		if (m_chain != null) {
+			if (m_chainIns == ins) {
+				m_chain.write(data, 0, data.length);
+				data = m_chain.toByteArray();
+			}
+			m_chain = null;
+		}
+		int ne = cmd.getNe() == 0 ? 256 : cmd.getNe();
+
+		switch (ins) {
+		case APDUConstants.SELECT & 0xFF:
+			return select(cmd.getP1(), data, ne);
+		case APDUConstants.GET & 0xFF:
+			return getData(cmd.getP1(), cmd.getP2(), data, ne);
+		case INS_GET_RESPONSE:
+			return getResponse(ne);
+		case APDUConstants.VERIFY:
+			return verify(cmd.getP1(), cmd.getP2(), data);
+		case APDUConstants.GENERAL_AUTHENTICATE & 0xFF:
+			return generalAuthenticate(cmd.getP2(), data, ne);
+		default:
+			s_logger.debug("Unsupported command {}", HexUtil.toHexString(apdu));
+			return status(SW_INS_NOT_SUPPORTED);
+		}
+	}
+
+	private byte[] select(int p1, byte[] aid, int ne) {
+		byte[] piv = APDUConstants.PIV_APPID;
+		if (p1 != 0x04 || aid.length == 0 || aid.length > piv.length || !Arrays.equals(aid, Arrays.copyOf(piv, aid.length))) {
+			return status(APDUConstants.APP_NOT_FOUND);
+		}
+		return respond(APT, ne);
+	}
+
+	private byte[] getData(int p1, int p2, byte[] data, int ne) {
+		if (p1 != 0x3F || p2 != 0xFF) {
+			return status(SW_INCORRECT_P1P2);
+		}
+		if (data.length < 2 || data[0] != TagConstants.DATA_FIELD_TAG || data.length != 2 + (data[1] & 0xFF)) {
+			return status(APDUConstants.INCORREECT_PARAMETER);
+		}
+		String tag = HexUtil.toHexString(data, 2, data.length - 2);
+		byte[] container = m_card.getContainer(tag);
+		if (container == null) {
+			return status(APDUConstants.APP_NOT_FOUND);
+		}
+		if (!m_pinVerified && APDUConstants.isProtectedContainer(m_card.getOid(tag))) {
+			return status(APDUConstants.SECURITY_STATUS_NOT_SATISFIED);
+		}
+		return respond(container, ne);
+	}
+
+	private byte[] getResponse(int ne) {
+		if (m_pending == null) {
+			return status(SW_CONDITIONS_NOT_SATISFIED);
+		}
+		byte[] pending = m_pending;
+		int offset = m_pendingOffset;
+		m_pending = null;
+		return respond(pending, offset, ne);
+	}
+
+	private byte[] verify(int p1, int p2, byte[] pin) {
+		if (p1 != 0x00 || p2 != APPLICATION_PIN) {
+			return status(SW_REFERENCE_NOT_FOUND);
+		}
+		if (pin.length == 0) {
+			// status of the PIN
+			if (m_pinVerified) {
+				return status(APDUConstants.SUCCESSFUL_EXEC);
+			}
+			int tries = m_card.getPinTries();
+			return status(tries == 0 ? SW_PIN_BLOCKED : 0x63C0 | tries);
+		}
+		if (pin.length != 8) {
+			return status(SW_WRONG_LENGTH);
+		}
+		int sw = m_card.checkPin(pin);
+		m_pinVerified = sw == APDUConstants.SUCCESSFUL_EXEC;
+		return status(sw);
+	}
+
+	private byte[] generalAuthenticate(int keyRef, byte[] data, int ne) {
+		PrivateKey key = m_card.getKey(keyRef);
+		if (key == null) {
+			return status(SW_INCORRECT_P1P2);
+		}
+		// The card authentication key can be used without the PIN
+		if (keyRef != 0x9E && !m_pinVerified) {
+			return status(APDUConstants.SECURITY_STATUS_NOT_SATISFIED);
+		}
+		byte[] challenge = null;
+		try {
+			BerTlv template = new BerTlvParser(new CCTTlvLogger(SimulatedCardChannel.class)).parseConstructed(data);
+			BerTlv c = template.find(new BerTag(GeneralAuthenticateHelper.GA_CHALLENGE));
+			if (template.getTag().equals(new BerTag(GeneralAuthenticateHelper.DYNAMIC_AUTHENTICATION_TEMPLATE)) && c != null) {
+				challenge = c.getBytesValue();
+			}
+		} catch (RuntimeException e) {
+			s_logger.debug("Unable to parse GENERAL AUTHENTICATE data: {}", e.getMessage());
+		}
+		if (challenge == null) {
+			return status(APDUConstants.INCORREECT_PARAMETER);
+		}
+		byte[] signature;
+		try {
+			if (key instanceof RSAPrivateKey) {
+				// the challenge is already padded: raw RSA
+				Cipher rsa = Cipher.getInstance("RSA/ECB/NoPadding");
+				rsa.init(Cipher.DECRYPT_MODE, key);
+				signature = rsa.doFinal(challenge);
+			} else {
+				// the challenge is the digest to sign
+				Signature ecdsa = Signature.getInstance("NONEwithECDSA");
+				ecdsa.initSign(key);
+				ecdsa.update(challenge);
+				signature = ecdsa.sign();
+			}
+		} catch (GeneralSecurityException e) {
+			s_logger.debug("Unable to sign GENERAL AUTHENTICATE challenge: {}", e.getMessage());
+			return status(APDUConstants.INCORREECT_PARAMETER);
+		}
+		BerTlvBuilder inner = new BerTlvBuilder();
+		inner.addBytes(new BerTag(GeneralAuthenticateHelper.GA_RESPONSE), signature);
+		BerTlvBuilder outer = new BerTlvBuilder();
+		outer.addBytes(new BerTag(GeneralAuthenticateHelper.DYNAMIC_AUTHENTICATION_TEMPLATE), inner.buildArray());
+		return respond(outer.buildArray(), ne);
+	}
+
+	private byte[] respond(byte[] data, int ne) {
+		return respond(data, 0, ne);
+	}
+
+	// Returns up to ne bytes of data from offset, keeping the rest for GET RESPONSE
+	private byte[] respond(byte[] data, int offset, int ne) {
+		int remaining = data.length - offset;
+		int length = Math.min(remaining, ne);
+		byte[] rsp = new byte[length + 2];
+		System.arraycopy(data, offset, rsp, 0, length);
+		int left = remaining - length;
+		int sw = APDUConstants.SUCCESSFUL_EXEC;
+		if (left > 0) {
+			m_pending = data;
+			m_pendingOffset = offset + length;
+			sw = 0x6100 | (left >= 256 ? 0 : left);
+		}
+		rsp[length] = (byte) (sw >> 8);
+		rsp[length + 1] = (byte) sw;
+		return rsp;
+	}
+
+	private static byte[] status(int sw) {
+		return new byte[] { (byte) (sw >> 8), (byte) sw };
+	}
+}
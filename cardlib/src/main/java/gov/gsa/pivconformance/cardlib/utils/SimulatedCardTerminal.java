@@ -0,0 +1,84 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A reader that always holds a {@link SimulatedCard}. It can be used wherever a PC/SC
+ * terminal is, for example set in CardSettingsSingleton before the PIV application is selected.
+ */
+public class SimulatedCardTerminal extends CardTerminal {
+	private static final Logger s_logger = LoggerFactory.getLogger(SimulatedCardTerminal.class);
+
+	private final String m_name;
+	private final SimulatedCard m_card;
+
+	/**
+	 * @param name reader name
+	 * @param card the card in the reader
+	 */
+	public SimulatedCardTerminal(String name, SimulatedCard card) {
+		m_name = name;
+		m_card = card;
+	}
+
+	/**
+	 * Creates a reader holding a card loaded from a directory of container dumps
+	 *
+	 * @param dir the directory, see {@link SimulatedCard#fromDirectory(Path)}
+	 * @return the reader
+	 * @throws IOException if the card cannot be loaded
+	 */
+	public static SimulatedCardTerminal fromDirectory(Path dir) throws IOException {
+		return new SimulatedCardTerminal("Simulated reader " + dir.getFileName(), SimulatedCard.fromDirectory(dir));
+	}
+
+	public SimulatedCard getSimulatedCard() {
+		return m_card;
+	}
+
+	@Override
+	public String getName() {
+		return m_name;
+	}
+
+	/**
+	 * Connects to the card, starting a new session
+	 */
+	@Override
+	public Card connect(String protocol) throws CardException {
+		if (!"*".equals(protocol) && !"T=1".equalsIgnoreCase(protocol)) {
+			throw new CardException("Unsupported protocol " + protocol);
+		}
+		s_logger.debug("Connecting to simulated card in {}", m_name);
+		m_card.reset();
+		return m_card;
+	}
+
+	@Override
+	public boolean isCardPresent() throws CardException {
+		return true;
+	}
+
+	@Override
+	public boolean waitForCardPresent(long timeout) throws CardException {
+		return true;
+	}
+
+	@Override
+	public boolean waitForCardAbsent(long timeout) throws CardException {
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "SimulatedCardTerminal: " + m_name;
+	}
+}
@@ -0,0 +1,46 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+/**
+ * Synthetic containers for loading a {@link SimulatedCard} in tests, shared so that the
+ * cardlib and conformancelib tests build the same bytes.
+ */
+public final class SimulatedContainers {
+
+	private static final byte[] DISCOVERY = HexUtil.parseHex("7E125F2F0240104F0BA000000308000010000100");
+
+	private SimulatedContainers() {
+	}
+
+	/**
+	 * Gets a discovery object with the PIV AID and PIN usage policy 4010
+	 *
+	 * @return a new copy of the container
+	 */
+	public static byte[] discovery() {
+		return DISCOVERY.clone();
+	}
+
+	/**
+	 * Gets a 53 TLV with a three byte length (53 82 LL LL) around a value that need not decode. The
+	 * value is the same for the same length, so containers can be compared with what is read back.
+	 *
+	 * @param length length of the value, 256 to 65535
+	 * @return a new container of length + 4 bytes
+	 */
+	public static byte[] container(int length) {
+		if (length < 0x100 || length > 0xFFFF) {
+			throw new IllegalArgumentException("Value length " + length + " does not take a three byte length");
+		}
+		byte[] c = new byte[4 + length];
+		c[0] = 0x53;
+		c[1] = (byte) 0x82;
+		c[2] = (byte) (length >> 8);
+		c[3] = (byte) length;
+		for (int i = 4; i < c.length; i++) {
+			c[i] = (byte) i;
+		}
+		return c;
+	}
+}
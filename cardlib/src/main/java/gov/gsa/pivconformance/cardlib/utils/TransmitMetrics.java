@@ -0,0 +1,190 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+
+/**
+ * Counts connections and APDU exchanges, per channel, so that slow cards can be told apart from slow
+ * readers. Every APDU sent to a card is recorded once, where ChainingAPDUTransmitter sends it,
+ * GET RESPONSE included.
+ *
+ * The metrics are registered with the platform MBean server as {@value #OBJECT_NAME} and can be
+ * printed with {@link #getReport()} at the end of a run.
+ */
+public class TransmitMetrics implements TransmitMetricsMXBean {
+	private static final Logger s_logger = LoggerFactory.getLogger(TransmitMetrics.class);
+
+	public static final String OBJECT_NAME = "gov.gsa.pivconformance:type=TransmitMetrics";
+
+	/**
+	 * Classes of commands whose latencies are kept apart
+	 */
+	public enum CommandClass {
+		SELECT,
+		GET_DATA,
+		VERIFY,
+		GENERAL_AUTHENTICATE,
+		GET_RESPONSE,
+		OTHER;
+
+		/**
+		 * @param ins instruction byte of a command
+		 * @return the class of the command
+		 */
+		public static CommandClass forIns(int ins) {
+			switch (ins & 0xFF) {
+			case APDUConstants.SELECT & 0xFF:
+				return SELECT;
+			case APDUConstants.GET & 0xFF:
+				return GET_DATA;
+			case APDUConstants.VERIFY:
+				return VERIFY;
+			case APDUConstants.GENERAL_AUTHENTICATE & 0xFF:
+				return GENERAL_AUTHENTICATE;
+			case 0xC0:
+				return GET_RESPONSE;
+			default:
+				return OTHER;
+			}
+		}
+	}
+
+	private static final TransmitMetrics INSTANCE = new TransmitMetrics();
+
+	static {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+		} catch (JMException | RuntimeException e) {
+			s_logger.debug("Unable to register {}: {}", OBJECT_NAME, e.getMessage());
+		}
+	}
+
+	private final AtomicLong m_connectCount = new AtomicLong();
+	private final ConcurrentMap<String, ChannelMetrics> m_channels = new ConcurrentHashMap<String, ChannelMetrics>();
+
+	private TransmitMetrics() {
+	}
+
+	public static TransmitMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets the metrics of a channel, creating them the first time
+	 *
+	 * @param name name of the channel, normally the reader name and channel number
+	 * @return the channel's metrics
+	 */
+	public ChannelMetrics getChannel(String name) {
+		return m_channels.computeIfAbsent(name, ChannelMetrics::new);
+	}
+
+	public void incrementConnectCount() {
+		m_connectCount.incrementAndGet();
+	}
+
+	@Override
+	public long getConnectCount() {
+		return m_connectCount.get();
+	}
+
+	@Override
+	public long getTransmitCount() {
+		long count = 0;
+		for (ChannelMetrics c : m_channels.values()) {
+			count += c.getTransmitCount();
+		}
+		return count;
+	}
+
+	@Override
+	public long getBytesSent() {
+		long count = 0;
+		for (ChannelMetrics c : m_channels.values()) {
+			count += c.getBytesSent();
+		}
+		return count;
+	}
+
+	@Override
+	public long getBytesReceived() {
+		long count = 0;
+		for (ChannelMetrics c : m_channels.values()) {
+			count += c.getBytesReceived();
+		}
+		return count;
+	}
+
+	@Override
+	public long getErrorCount() {
+		long count = 0;
+		for (ChannelMetrics c : m_channels.values()) {
+			count += c.getErrorCount();
+		}
+		return count;
+	}
+
+	@Override
+	public String[] getChannelNames() {
+		return new TreeMap<String, ChannelMetrics>(m_channels).keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public Map<String, Long> getTransmitCountsByIns() {
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (int ins = 0; ins < 256; ins++) {
+			long count = 0;
+			for (ChannelMetrics c : m_channels.values()) {
+				count += c.getTransmitCount(ins);
+			}
+			if (count > 0) {
+				counts.put(String.format("%02X", ins), count);
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public String getReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("APDU metrics: %d connections, %d APDUs, %d bytes sent, %d bytes received, %d errors%n",
+				getConnectCount(), getTransmitCount(), getBytesSent(), getBytesReceived(), getErrorCount()));
+		for (ChannelMetrics c : new TreeMap<String, ChannelMetrics>(m_channels).values()) {
+			sb.append(String.format("%s: %d APDUs, %d bytes sent, %d bytes received, %d errors%n", c.getName(),
+					c.getTransmitCount(), c.getBytesSent(), c.getBytesReceived(), c.getErrorCount()));
+			for (CommandClass commandClass : CommandClass.values()) {
+				LatencyHistogram h = c.getLatency(commandClass);
+				if (h.getCount() == 0) {
+					continue;
+				}
+				sb.append(String.format("  %-20s %6d  mean %9.3f ms  p50 %9.3f ms  p90 %9.3f ms  p99 %9.3f ms  max %9.3f ms%n",
+						commandClass, h.getCount(), h.getMean() / 1000, h.getPercentile(50) / 1000.0,
+						h.getPercentile(90) / 1000.0, h.getPercentile(99) / 1000.0, h.getMax() / 1000.0));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Clears all the counters. Channels stay registered, as transmitters keep their metrics.
+	 */
+	@Override
+	public void reset() {
+		m_connectCount.set(0);
+		for (ChannelMetrics c : m_channels.values()) {
+			c.reset();
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package gov.gsa.pivconformance.cardlib.utils;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link TransmitMetrics}, registered with the platform MBean server as
+ * {@value TransmitMetrics#OBJECT_NAME}
+ */
+public interface TransmitMetricsMXBean {
+	long getConnectCount();
+
+	long getTransmitCount();
+
+	long getBytesSent();
+
+	long getBytesReceived();
+
+	long getErrorCount();
+
+	String[] getChannelNames();
+
+	/**
+	 * @return number of commands sent, keyed by instruction byte in hex
+	 */
+	Map<String, Long> getTransmitCountsByIns();
+
+	/**
+	 * @return the counters and latencies of every channel, as printed at the end of a run
+	 */
+	String getReport();
+
+	void reset();
+}
@@ -4,6 +4,7 @@ module gov.gsa.pivconformance.cardlib {
 	exports gov.gsa.pivconformance.cardlib.utils;
 	exports gov.gsa.pivconformance.cardlib.tlv;
 
+	requires java.management;
 	requires java.smartcardio;
 	requires java.sql;
 	requires org.apache.commons.cli;
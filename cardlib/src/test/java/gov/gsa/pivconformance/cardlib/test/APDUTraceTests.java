@@ -0,0 +1,102 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationAID;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationProperties;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.ConnectionDescription;
+import gov.gsa.pivconformance.cardlib.card.client.DefaultPIVApplication;
+import gov.gsa.pivconformance.cardlib.card.client.GeneralAuthenticateHelper;
+import gov.gsa.pivconformance.cardlib.card.client.MiddlewareStatus;
+import gov.gsa.pivconformance.cardlib.card.client.PIVAuthenticators;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVMiddleware;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.utils.APDUTrace;
+import gov.gsa.pivconformance.cardlib.utils.APDUTraceWriter;
+import gov.gsa.pivconformance.cardlib.utils.RecordingCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.ReplayCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCard;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedContainers;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.smartcardio.CardTerminal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class APDUTraceTests {
+
+    @BeforeAll
+    static void addProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    // Reads the discovery object and fingerprints, logging in between, and signs a fresh challenge
+    private static void session(CardTerminal t, byte[] fingerprints) throws Exception {
+        DefaultPIVApplication piv = new DefaultPIVApplication();
+        CardHandle ch = new CardHandle();
+        assertEquals(MiddlewareStatus.PIV_OK, PIVMiddleware.pivConnect(false, ConnectionDescription.createFromTerminal(t), ch));
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivSelectCardApplication(ch, new ApplicationAID(), new ApplicationProperties()));
+
+        PIVDataObject discovery = new PIVDataObject();
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivGetData(ch, APDUConstants.DISCOVERY_OBJECT_OID, discovery));
+        assertArrayEquals(SimulatedContainers.discovery(), discovery.getBytes());
+        assertEquals(MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED,
+                piv.pivGetData(ch, APDUConstants.CARDHOLDER_FINGERPRINTS_OID, new PIVDataObject()));
+
+        PIVAuthenticators pin = new PIVAuthenticators();
+        pin.addApplicationPin(SimulatedCard.DEFAULT_PIN);
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivLogIntoCardApplication(ch, pin.getBytes()));
+        PIVDataObject fp = new PIVDataObject();
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivGetData(ch, APDUConstants.CARDHOLDER_FINGERPRINTS_OID, fp));
+        assertArrayEquals(fingerprints, fp.getBytes());
+
+        byte[] challenge = GeneralAuthenticateHelper.preparePKCS1Challenge(
+                GeneralAuthenticateHelper.generateChallenge(32), "2.16.840.1.101.3.4.2.1", 256);
+        byte[] request = GeneralAuthenticateHelper.generateRequest(APDUConstants.X509_CERTIFICATE_FOR_CARD_AUTHENTICATION_OID, challenge);
+        assertEquals(0x9000, GeneralAuthenticateHelper.sendRequest(ch, 0x07, 0x9E, request).getSW());
+    }
+
+    @DisplayName("A recorded session is replayed, with new challenges, without the card")
+    @Test
+    void recordAndReplay() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        Map<Integer, PrivateKey> keys = new HashMap<>();
+        keys.put(0x9E, kpg.generateKeyPair().getPrivate());
+        byte[] fingerprints = SimulatedContainers.container(3000);
+        Map<String, byte[]> containers = new HashMap<>();
+        containers.put(APDUConstants.DISCOVERY_OBJECT_OID, SimulatedContainers.discovery());
+        containers.put(APDUConstants.CARDHOLDER_FINGERPRINTS_OID, fingerprints);
+        SimulatedCard card = new SimulatedCard(null, containers, keys);
+        card.setExtendedLength(false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        APDUTraceWriter writer = new APDUTraceWriter(out);
+        session(new RecordingCardTerminal(new SimulatedCardTerminal("Simulated", card), writer), fingerprints);
+        writer.close();
+
+        APDUTrace trace = APDUTrace.read(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals(SimulatedCard.DEFAULT_ATR, trace.getAtr());
+        for (APDUTrace.Exchange e : trace.getExchanges()) {
+            assertFalse(HexUtil.toHexString(e.getCommand()).contains("313233343536"), "PIN recorded");
+        }
+
+        session(new ReplayCardTerminal("Replay", trace), fingerprints);
+    }
+}
@@ -0,0 +1,62 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUUtils;
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlv;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvBufferBuilder;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
+import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BerTlvBufferBuilderTests {
+
+    @DisplayName("Nested TLVs are re-encoded byte for byte with precomputed lengths")
+    @Test
+    void addBerTlvRoundTrips() {
+        byte[] value = new byte[300];
+        for(int i=0; i<value.length; i++) {
+            value[i] = (byte) i;
+        }
+        byte[] encoded = new BerTlvBufferBuilder(16)
+                .putHeader(new byte[]{(byte) 0xA1}, BerTlvBufferBuilder.encodedLength(1, value.length) + 2 + 3)
+                .addBytes(new BerTag(0x80), value)
+                .addEmpty(new BerTag(0x81))
+                .addBytes(new BerTag(0x82), new byte[]{0x05})
+                .toByteArray();
+        assertEquals("A18201358082012C", HexUtil.toHexString(encoded, 0, 8));
+
+        BerTlv tlv = new BerTlvParser(new CCTTlvLogger(BerTlvBufferBuilderTests.class), true).parseConstructed(encoded);
+        assertEquals(encoded.length, BerTlvBufferBuilder.encodedLength(tlv));
+        BerTlvBufferBuilder builder = new BerTlvBufferBuilder(ByteBuffer.allocateDirect(8));
+        builder.addBerTlv(tlv);
+        assertTrue(builder.getBuffer().isDirect());
+        assertArrayEquals(encoded, builder.toByteArray());
+    }
+
+    @DisplayName("getTLV keeps its two-byte long-form length")
+    @Test
+    void getTlvEncoding() {
+        byte[] value = new byte[200];
+        byte[] tlv = APDUUtils.getTLV(TagConstants.FINGERPRINT_I_AND_II_TAG, value);
+        assertEquals(APDUUtils.getTLVLength(1, value.length), tlv.length);
+        assertEquals("BC8200C8", HexUtil.toHexString(tlv, 0, 4));
+        assertArrayEquals(HexUtil.parseHex("300100"), APDUUtils.getTLV(TagConstants.FASC_N_TAG, new byte[]{0}));
+
+        ByteBuffer start = ByteBuffer.allocate(4);
+        BerTlvBufferBuilder builder = new BerTlvBufferBuilder(start);
+        APDUUtils.putTLV(builder, TagConstants.FINGERPRINT_I_AND_II_TAG, value, 0, value.length);
+        assertNotSame(start, builder.getBuffer());
+        assertArrayEquals(tlv, builder.toByteArray());
+    }
+}
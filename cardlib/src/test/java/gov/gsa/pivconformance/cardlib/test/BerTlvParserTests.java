@@ -0,0 +1,236 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlv;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvLimitException;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvParseLimits;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvParser;
+import gov.gsa.pivconformance.cardlib.tlv.BerTlvs;
+import gov.gsa.pivconformance.cardlib.tlv.CCTTlvLogger;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.tlv.IBerTlvVisitor;
+import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BerTlvParserTests {
+
+    // 53 container holding a FASC-N (30), GUID (34) and an empty error detection code (FE)
+    private static final byte[] FASCN = HexUtil.parseHex("D4E739DA739CED39CE739D836858210842108421C84210C3EB");
+    private static final byte[] GUID = HexUtil.parseHex("3D3A4A2B0E9A47FA9B2C1B6F2E8E6D01");
+    private static final byte[] CONTAINER = HexUtil.parseHex(
+            "532F"
+            + "3019" + "D4E739DA739CED39CE739D836858210842108421C84210C3EB"
+            + "3410" + "3D3A4A2B0E9A47FA9B2C1B6F2E8E6D01"
+            + "FE00");
+
+    @DisplayName("View mode returns the same TLVs as copy mode")
+    @Test
+    void viewModeMatchesCopyMode() {
+        BerTlvParser copying = new BerTlvParser();
+        BerTlvParser viewing = new BerTlvParser(new CCTTlvLogger(BerTlvParserTests.class), true);
+
+        BerTlvs copied = copying.parse(copying.parse(CONTAINER).getList().get(0).getBytesValue());
+        BerTlvs viewed = viewing.parseValue(viewing.parse(CONTAINER).getList().get(0));
+
+        assertEquals(copied, viewed);
+        assertEquals(copied.hashCode(), viewed.hashCode());
+        assertEquals(3, viewed.getList().size());
+    }
+
+    @DisplayName("View mode copies a value only when asked for it")
+    @Test
+    void viewModeCopiesOnDemand() {
+        BerTlvParser parser = new BerTlvParser(new CCTTlvLogger(BerTlvParserTests.class), true);
+        BerTlv outer = parser.parse(CONTAINER).getList().get(0);
+        assertTrue(outer.isView());
+        assertSame(CONTAINER, outer.getValueBuffer());
+        assertEquals(2, outer.getValueOffset());
+        assertEquals(0x2F, outer.getValueLength());
+
+        List<BerTlv> inner = parser.parseValue(outer).getList();
+        BerTlv fascn = inner.get(0);
+        assertTrue(fascn.isTag(new BerTag(TagConstants.FASC_N_TAG)));
+        assertSame(CONTAINER, fascn.getValueBuffer());
+        assertTrue(fascn.isView());
+        assertEquals(HexUtil.toHexString(FASCN), fascn.getHexValue());
+
+        byte[] value = fascn.getBytesValue();
+        assertArrayEquals(FASCN, value);
+        assertFalse(fascn.isView());
+        assertSame(value, fascn.getBytesValue());
+
+        assertArrayEquals(GUID, inner.get(1).getBytesValue());
+        assertNotNull(inner.get(2).getBytesValue());
+        assertEquals(0, inner.get(2).getValueLength());
+        assertTrue(outer.isView());
+    }
+
+    @DisplayName("Walking a buffer reports every tag with its depth, offset and length")
+    @Test
+    void walkReportsEvents() {
+        List<String> events = new ArrayList<>();
+        new BerTlvParser().walk(CONTAINER, new RecordingVisitor(events));
+
+        assertEquals(Arrays.asList(
+                "start 53 0 0 47",
+                "start 30 1 2 25",
+                "value 30 " + HexUtil.toHexString(FASCN),
+                "end 30 1",
+                "start 34 1 29 16",
+                "value 34 " + HexUtil.toHexString(GUID),
+                "end 34 1",
+                "start FE 1 47 0",
+                "value FE ",
+                "end FE 1",
+                "end 53 0"), events);
+    }
+
+    @DisplayName("Walking a stream reports the same events as walking a buffer")
+    @Test
+    void walkStreamMatchesBuffer() throws IOException {
+        List<String> fromBuffer = new ArrayList<>();
+        List<String> fromStream = new ArrayList<>();
+        BerTlvParser parser = new BerTlvParser();
+        parser.walk(CONTAINER, new RecordingVisitor(fromBuffer));
+        parser.walk(new ByteArrayInputStream(CONTAINER), new RecordingVisitor(fromStream));
+        assertEquals(fromBuffer, fromStream);
+    }
+
+    @DisplayName("Walking rejects a TLV that overruns its parent")
+    @Test
+    void walkRejectsOverrun() {
+        byte[] truncated = Arrays.copyOf(CONTAINER, CONTAINER.length - 3);
+        BerTlvParser parser = new BerTlvParser();
+        assertThrows(IllegalStateException.class, () -> parser.walk(truncated, new RecordingVisitor(new ArrayList<>())));
+        assertThrows(IOException.class, () -> parser.walk(new ByteArrayInputStream(truncated), new RecordingVisitor(new ArrayList<>())));
+    }
+
+    @DisplayName("Parsing returns every top-level TLV")
+    @Test
+    void parseHasNoTlvCap() {
+        byte[] buf = new byte[300 * 3];
+        for(int i=0; i<300; i++) {
+            buf[i*3] = (byte) 0x80;
+            buf[i*3+1] = 0x01;
+            buf[i*3+2] = (byte) i;
+        }
+        List<BerTlv> tlvs = new BerTlvParser().parse(buf).getList();
+        assertEquals(300, tlvs.size());
+        assertEquals(299 & 0xFF, tlvs.get(299).getBytesValue()[0] & 0xFF);
+    }
+
+    @DisplayName("Constructed parsing keeps short trailing children")
+    @Test
+    void parseConstructedKeepsAllChildren() {
+        // 7F61 with a long-form length, holding 02 01 05 followed by an empty 03
+        byte[] buf = HexUtil.parseHex("7F61810502010503" + "00");
+        BerTlv outer = new BerTlvParser().parseConstructed(buf);
+        assertEquals(2, outer.getValues().size());
+        assertEquals(5, outer.getValues().get(0).getIntValue());
+        assertEquals(0, outer.getValues().get(1).getValueLength());
+    }
+
+    @DisplayName("Exceeding a limit raises a structured error")
+    @Test
+    void limitsRaiseErrors() {
+        BerTlvParseLimits limits = new BerTlvParseLimits(3, 2, 48);
+        BerTlvParser parser = new BerTlvParser(new CCTTlvLogger(BerTlvParserTests.class), false, limits);
+
+        BerTlvLimitException count = assertThrows(BerTlvLimitException.class, () -> parser.parse(HexUtil.parseHex("800100800100800100800100")));
+        assertEquals(BerTlvLimitException.Limit.TLV_COUNT, count.getLimit());
+        assertEquals(9, count.getOffset());
+
+        BerTlvLimitException depth = assertThrows(BerTlvLimitException.class, () -> parser.parseConstructed(HexUtil.parseHex("A104A1028000")));
+        assertEquals(BerTlvLimitException.Limit.DEPTH, depth.getLimit());
+        assertEquals(2, depth.getDepth());
+
+        BerTlvLimitException bytes = assertThrows(BerTlvLimitException.class, () -> parser.parse(CONTAINER));
+        assertEquals(BerTlvLimitException.Limit.TOTAL_BYTES, bytes.getLimit());
+        assertEquals(48, bytes.getMaximum());
+    }
+
+    @DisplayName("Parsed tags are interned and compare by packed value")
+    @Test
+    void tagsAreInterned() {
+        BerTlvParser parser = new BerTlvParser();
+        BerTag first = parser.parse(CONTAINER).getList().get(0).getTag();
+        BerTag second = parser.parse(CONTAINER).getList().get(0).getTag();
+        assertSame(first, second);
+        assertSame(BerTag.valueOf(TagConstants.PIN_USAGE_POLICY_TAG), BerTag.valueOf(new byte[]{0x5F, 0x2F}));
+
+        BerTag created = new BerTag(TagConstants.PIN_USAGE_POLICY_TAG);
+        assertEquals(0x5F2F, created.intValue());
+        assertEquals(created, BerTag.valueOf(TagConstants.PIN_USAGE_POLICY_TAG));
+        assertEquals(created.hashCode(), BerTag.valueOf(TagConstants.PIN_USAGE_POLICY_TAG).hashCode());
+        assertFalse(new BerTag(0x5F).equals(new BerTag(0x00, 0x5F)));
+        assertEquals(BerTag.NOT_PACKED, new BerTag(new byte[]{0x5F, (byte) 0x81, (byte) 0x82, (byte) 0x83, 0x04}).intValue());
+    }
+
+    @DisplayName("Indexed lookups return the same TLVs as a depth-first scan")
+    @Test
+    void findUsesIndex() {
+        // A1 { 80 01 01, A2 { 80 01 02, A1 { 80 01 03 } }, 81 00 }, 80 01 04
+        byte[] buf = HexUtil.parseHex("A10F800101A208800102A1038001038100" + "800104");
+        BerTlvParser parser = new BerTlvParser();
+        BerTlv outer = parser.parseConstructed(buf);
+        BerTag tag80 = new BerTag(0x80);
+
+        assertEquals(1, outer.find(tag80).getIntValue());
+        assertEquals(1, outer.find(tag80).getIntValue());
+        assertSame(outer, outer.find(new BerTag(0xA1)));
+        assertEquals(1, outer.findAll(new BerTag(0xA1)).size());
+        assertEquals(3, outer.findAll(tag80).size());
+        assertEquals(3, outer.findAll(tag80).get(2).getIntValue());
+        assertEquals(0, outer.find(new BerTag(0x81)).getValueLength());
+        assertEquals(null, outer.find(new BerTag(0x82)));
+
+        BerTlvs top = parser.parse(buf);
+        assertEquals(4, top.find(tag80).getIntValue());
+        assertEquals(1, top.findAll(tag80).size());
+        assertEquals(0, top.findAll(new BerTag(0x82)).size());
+    }
+
+    /**
+     * Descends into the 53 container and records every other value
+     */
+    private static class RecordingVisitor implements IBerTlvVisitor {
+        private final List<String> events;
+
+        RecordingVisitor(List<String> aEvents) {
+            events = aEvents;
+        }
+
+        @Override
+        public Action onTagStart(BerTag aTag, int aDepth, int aOffset, int aLength) {
+            events.add("start " + HexUtil.toHexString(aTag.bytes) + " " + aDepth + " " + aOffset + " " + aLength);
+            return aTag.equals(new BerTag(APDUConstants.DATA)) ? Action.DESCEND : Action.VALUE;
+        }
+
+        @Override
+        public void onPrimitive(BerTag aTag, int aDepth, byte[] aBuf, int aOffset, int aLength) {
+            events.add("value " + HexUtil.toHexString(aTag.bytes) + " " + HexUtil.toHexString(aBuf, aOffset, aLength));
+        }
+
+        @Override
+        public void onTagEnd(BerTag aTag, int aDepth) {
+            events.add("end " + HexUtil.toHexString(aTag.bytes) + " " + aDepth);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.APDUUtils;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.ChainingAPDUTransmitter;
+import gov.gsa.pivconformance.cardlib.card.client.GeneralAuthenticateHelper;
+import gov.gsa.pivconformance.cardlib.card.client.RequestAPDUWrapper;
+import gov.gsa.pivconformance.cardlib.card.client.ResponseAPDUWrapper;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.utils.ChannelMetrics;
+import gov.gsa.pivconformance.cardlib.utils.TransmitMetrics.CommandClass;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChainingAPDUTransmitterTests {
+
+    // Answers every command with the next scripted response and records the commands
+    private static class ScriptedChannel extends CardChannel {
+        final List<byte[]> responses = new ArrayList<>();
+        final List<byte[]> commands = new ArrayList<>();
+
+        ScriptedChannel respond(byte[] data, int sw1, int sw2) {
+            byte[] r = Arrays.copyOf(data, data.length + 2);
+            r[data.length] = (byte) sw1;
+            r[data.length + 1] = (byte) sw2;
+            responses.add(r);
+            return this;
+        }
+
+        @Override
+        public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+            if (response.remaining() < 258) {
+                throw new IllegalArgumentException("Insufficient space in response buffer");
+            }
+            byte[] c = new byte[command.remaining()];
+            command.get(c);
+            commands.add(c);
+            byte[] r = responses.remove(0);
+            response.put(r);
+            return r.length;
+        }
+
+        @Override
+        public ResponseAPDU transmit(CommandAPDU command) throws CardException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Card getCard() {
+            return null;
+        }
+
+        @Override
+        public int getChannelNumber() {
+            return 0;
+        }
+
+        @Override
+        public void close() throws CardException {
+        }
+    }
+
+    // Follows 61xx itself and puts the joined chunks into the response buffer in one go, as the
+    // JDK's PC/SC channel does with its default GET RESPONSE handling
+    private static class PcscChannel extends ScriptedChannel {
+        // Commands seen by the card, the GET RESPONSE commands sent by the channel included
+        private final List<byte[]> cardCommands = new ArrayList<>();
+
+        @Override
+        PcscChannel respond(byte[] data, int sw1, int sw2) {
+            super.respond(data, sw1, sw2);
+            return this;
+        }
+
+        @Override
+        public int transmit(ByteBuffer command, ByteBuffer response) throws CardException {
+            if (response.remaining() < 258) {
+                throw new IllegalArgumentException("Insufficient space in response buffer");
+            }
+            byte[] c = new byte[command.remaining()];
+            command.get(c);
+            commands.add(c);
+            byte[] result = new byte[0];
+            while (true) {
+                cardCommands.add(c);
+                byte[] r = responses.remove(0);
+                if (r[r.length - 2] == 0x61) {
+                    result = concat(result, r, r.length - 2);
+                    c = new byte[] { c[0], (byte) 0xC0, 0x00, 0x00, r[r.length - 1] };
+                    continue;
+                }
+                result = concat(result, r, r.length);
+                break;
+            }
+            response.put(result);
+            return result.length;
+        }
+
+        private static byte[] concat(byte[] b1, byte[] b2, int n2) {
+            byte[] res = Arrays.copyOf(b1, b1.length + n2);
+            System.arraycopy(b2, 0, res, b1.length, n2);
+            return res;
+        }
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] b = new byte[length];
+        Arrays.fill(b, (byte) value);
+        return b;
+    }
+
+    @DisplayName("Responses retrieved with GET RESPONSE are reassembled")
+    @Test
+    void getResponseReassembly() throws Exception {
+        ScriptedChannel channel = new ScriptedChannel()
+                .respond(filled(256, 1), 0x61, 0x00)
+                .respond(filled(256, 2), 0x61, 0x58)
+                .respond(filled(0x58, 3), 0x90, 0x00);
+        byte[] getData = HexUtil.parseHex("00CB3FFF055C035FC10200");
+        ResponseAPDUWrapper rsp = new ChainingAPDUTransmitter(channel).transmit(new RequestAPDUWrapper(getData));
+
+        assertEquals(0x9000, rsp.getSw());
+        assertEquals(256 + 256 + 0x58, rsp.getData().length);
+        assertEquals(1, rsp.getData()[0]);
+        assertEquals(2, rsp.getData()[256]);
+        assertEquals(3, rsp.getData()[512 + 0x57]);
+        assertEquals(3, channel.commands.size());
+        assertArrayEquals(getData, channel.commands.get(0));
+        assertArrayEquals(HexUtil.parseHex("00C0000000"), channel.commands.get(1));
+        assertArrayEquals(HexUtil.parseHex("00C0000058"), channel.commands.get(2));
+    }
+
+    @DisplayName("Short APDU responses joined by the channel are received whole")
+    @Test
+    void getResponseJoinedByChannel() throws Exception {
+        PcscChannel channel = new PcscChannel()
+                .respond(filled(256, 1), 0x61, 0x00)
+                .respond(filled(256, 2), 0x61, 0x58)
+                .respond(filled(0x58, 3), 0x90, 0x00);
+        ResponseAPDUWrapper rsp = new ChainingAPDUTransmitter(channel)
+                .transmit(new RequestAPDUWrapper(HexUtil.parseHex("00CB3FFF055C035FC10200")));
+
+        assertEquals(0x9000, rsp.getSw());
+        assertEquals(256 + 256 + 0x58, rsp.getData().length);
+        assertEquals(3, rsp.getData()[512 + 0x57]);
+        assertNotSame(rsp.getData(), rsp.getData());
+        assertEquals(1, channel.commands.size());
+        assertEquals(3, channel.cardCommands.size());
+    }
+
+    @DisplayName("GENERAL AUTHENTICATE responses longer than a short APDU are received whole")
+    @Test
+    void generalAuthenticateJoinedByChannel() throws Exception {
+        // 7C 82 0104 82 82 0100: RSA 2048 signature
+        byte[] signature = filled(264, 6);
+        System.arraycopy(HexUtil.parseHex("7C82010482820100"), 0, signature, 0, 8);
+        PcscChannel channel = new PcscChannel()
+                .respond(new byte[0], 0x90, 0x00)
+                .respond(Arrays.copyOf(signature, 256), 0x61, 0x08)
+                .respond(Arrays.copyOfRange(signature, 256, 264), 0x90, 0x00);
+        CardHandle ch = new CardHandle();
+        ch.setCurrentChannel(channel);
+        byte[] request = GeneralAuthenticateHelper.generateRequest(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID,
+                filled(256, 7));
+        ResponseAPDU rsp = GeneralAuthenticateHelper.sendRequest(ch, 0x07, 0x9A, request);
+
+        assertEquals(0x9000, rsp.getSW());
+        assertArrayEquals(signature, rsp.getData());
+        assertArrayEquals(filled(256, 6), GeneralAuthenticateHelper.getChallengeResponseFromData(rsp.getData()));
+        assertEquals(2, channel.commands.size());
+    }
+
+    @DisplayName("Responses are reassembled into a buffer sized from the 53 length")
+    @Test
+    void getResponseSizedFromContainerLength() throws Exception {
+        // 53 82 0300: 4 byte header and 768 bytes of value
+        byte[] first = filled(256, 1);
+        first[0] = 0x53;
+        first[1] = (byte) 0x82;
+        first[2] = 0x03;
+        first[3] = 0x00;
+        ScriptedChannel channel = new ScriptedChannel()
+                .respond(first, 0x61, 0x00)
+                .respond(filled(256, 2), 0x61, 0x00)
+                .respond(filled(256, 3), 0x61, 0x04)
+                .respond(filled(4, 4), 0x90, 0x00);
+        ResponseAPDUWrapper rsp = new ChainingAPDUTransmitter(channel)
+                .transmit(new RequestAPDUWrapper(HexUtil.parseHex("00CB3FFF055C035FC10800")));
+
+        assertEquals(0x9000, rsp.getSw());
+        assertEquals(4 + 768, rsp.getData().length);
+        assertEquals(4, rsp.getData()[4 + 767]);
+        assertEquals(4 + 768 + 2, rsp.getBytes().length);
+    }
+
+    @DisplayName("Extended-length GET DATA returns a container in one exchange")
+    @Test
+    void extendedLengthGetData() throws Exception {
+        byte[] tag = HexUtil.parseHex("5FC108");
+        byte[] getData = APDUUtils.PIVGetDataAPDU(tag, true);
+        assertArrayEquals(HexUtil.parseHex("00CB3FFF0000055C035FC1080000"), getData);
+        assertArrayEquals(APDUUtils.PIVGetDataAPDU(HexUtil.parseHex("5C035FC108")), APDUUtils.PIVGetDataAPDU(tag, false));
+
+        ScriptedChannel channel = new ScriptedChannel().respond(filled(3000, 5), 0x90, 0x00);
+        ResponseAPDUWrapper rsp = new ChainingAPDUTransmitter(channel).transmit(new RequestAPDUWrapper(getData));
+        assertEquals(0x9000, rsp.getSw());
+        assertEquals(3000, rsp.getData().length);
+        assertEquals(1, channel.commands.size());
+    }
+
+    @DisplayName("Extended-length support is read from the ATR card capabilities")
+    @Test
+    void extendedLengthFromAtr() {
+        // 80 73 C0 21 C0: card capabilities with extended Lc and Le
+        assertTrue(APDUUtils.extendedLengthFromHistoricalBytes(HexUtil.parseHex("8031C073C021C0")));
+        assertFalse(APDUUtils.extendedLengthFromHistoricalBytes(HexUtil.parseHex("8073C08100")));
+        assertNull(APDUUtils.extendedLengthFromHistoricalBytes(HexUtil.parseHex("8031C0")));
+        assertNull(APDUUtils.extendedLengthFromHistoricalBytes(HexUtil.parseHex("0031C073C021C0")));
+    }
+
+    @DisplayName("Card handles keep one transmitter per channel")
+    @Test
+    void transmitterReuse() throws Exception {
+        CardHandle ch = new CardHandle();
+        ScriptedChannel channel = new ScriptedChannel()
+                .respond(new byte[] { 0x53, 0x00 }, 0x90, 0x00)
+                .respond(new byte[0], 0x6A, 0x82);
+        ChainingAPDUTransmitter ct = ch.getTransmitter(channel);
+        assertSame(ct, ch.getTransmitter(channel));
+        assertEquals(0x9000, ct.transmit(new RequestAPDUWrapper(0x00, 0xCB, 0x3F, 0xFF, HexUtil.parseHex("5C017E"), 0)).getSw());
+        assertEquals(0x6A82, ch.getTransmitter(channel).transmit(new RequestAPDUWrapper(0x00, 0xCB, 0x3F, 0xFF, HexUtil.parseHex("5C017E"), 0)).getSw());
+        assertArrayEquals(HexUtil.parseHex("00CB3FFF035C017E00"), channel.commands.get(1));
+        assertNotSame(ct, ch.getTransmitter(new ScriptedChannel()));
+    }
+
+    @DisplayName("Every APDU sent, GET RESPONSE included, is counted once for its channel")
+    @Test
+    void metrics() throws Exception {
+        ScriptedChannel channel = new ScriptedChannel()
+                .respond(filled(256, 1), 0x61, 0x10)
+                .respond(filled(0x10, 2), 0x90, 0x00);
+        ChainingAPDUTransmitter ct = new ChainingAPDUTransmitter(channel, "Metrics test reader");
+        ChannelMetrics metrics = ct.getMetrics();
+        metrics.reset();
+        ct.transmit(new RequestAPDUWrapper(HexUtil.parseHex("00CB3FFF055C035FC10200")));
+
+        assertEquals(2, metrics.getTransmitCount());
+        assertEquals(1, metrics.getTransmitCount(0xCB));
+        assertEquals(1, metrics.getTransmitCount(0xC0));
+        assertEquals(11 + 5, metrics.getBytesSent());
+        assertEquals(258 + 0x12, metrics.getBytesReceived());
+        assertEquals(1, metrics.getLatency(CommandClass.GET_DATA).getCount());
+        assertEquals(1, metrics.getLatency(CommandClass.GET_RESPONSE).getCount());
+        assertEquals(0, metrics.getLatency(CommandClass.SELECT).getCount());
+    }
+}
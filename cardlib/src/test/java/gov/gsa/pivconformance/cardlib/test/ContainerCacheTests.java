@@ -0,0 +1,66 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.ContainerCache;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ContainerCacheTests {
+
+    private static final byte[] ATR = HexUtil.parseHex("3B8880010000000000000000");
+
+    private static byte[] chuid(String fascn) {
+        return HexUtil.parseHex("531E" + "3019" + fascn + "3401" + "00" + "FE00");
+    }
+
+    @DisplayName("Cards are identified by ATR, FASC-N and GUID")
+    @Test
+    void identifyCards() {
+        String fascn1 = "D4E739DA739CED39CE739D836858210842108421C84210C3EB";
+        String fascn2 = "D4E739DA739CED39CE739D836858210842108421C84210C3EC";
+        String id = ContainerCache.identify(ATR, chuid(fascn1));
+        assertNotNull(id);
+        assertEquals(id, ContainerCache.identify(ATR, chuid(fascn1)));
+        assertNotEquals(id, ContainerCache.identify(ATR, chuid(fascn2)));
+        assertNotEquals(id, ContainerCache.identify(null, chuid(fascn1)));
+        assertNull(ContainerCache.identify(ATR, HexUtil.parseHex("5302FE00")));
+    }
+
+    @DisplayName("Containers are cached per card and evicted least recently used first")
+    @Test
+    void boundedPerCardLru() {
+        ContainerCache cache = new ContainerCache(100);
+        String oid = APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID;
+        byte[] a = new byte[40];
+        byte[] b = new byte[40];
+        cache.put("card1", oid, a);
+        cache.put("card2", oid, b);
+        assertNull(cache.get("card3", oid));
+        assertArrayEquals(a, cache.get("card1", oid));
+
+        // card2 is least recently used
+        cache.put("card3", oid, new byte[40]);
+        assertNull(cache.get("card2", oid));
+        assertNotNull(cache.get("card1", oid));
+        assertEquals(80, cache.getBytes());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Too large to cache
+        cache.put("card4", oid, new byte[101]);
+        assertEquals(2, cache.getSize());
+
+        cache.invalidate("card1");
+        assertNull(cache.get("card1", oid));
+        assertEquals(40, cache.getBytes());
+    }
+}
@@ -0,0 +1,136 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.APDULengthMode;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationAID;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationProperties;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.ConnectionDescription;
+import gov.gsa.pivconformance.cardlib.card.client.ContainerDigest;
+import gov.gsa.pivconformance.cardlib.card.client.DefaultPIVApplication;
+import gov.gsa.pivconformance.cardlib.card.client.MiddlewareStatus;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVMiddleware;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCard;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedContainers;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContainerDigestTests {
+
+    @BeforeAll
+    static void addProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    private static byte[] valueDigest(String algorithm, byte[] container) throws Exception {
+        return MessageDigest.getInstance(algorithm).digest(Arrays.copyOfRange(container, 4, container.length));
+    }
+
+    @DisplayName("Container values are digested the same whichever way the container is split")
+    @Test
+    void streaming() throws Exception {
+        byte[] c = SimulatedContainers.container(3000);
+        for (String algorithm : new String[] { "SHA-256", "SHA-384" }) {
+            ContainerDigest digest = new ContainerDigest(algorithm);
+            for (int chunk : new int[] { 1, 3, 256, 3004 }) {
+                for (int offset = 0; offset < c.length; offset += chunk) {
+                    digest.update(c, offset, Math.min(chunk, c.length - offset));
+                }
+                Map<String, byte[]> digests = digest.finish();
+                assertEquals(1, digests.size());
+                assertArrayEquals(valueDigest(algorithm, c), digests.get(algorithm));
+            }
+        }
+
+        // a response that is not a 53 TLV is digested whole
+        ContainerDigest digest = new ContainerDigest("SHA-256");
+        byte[] other = { 0x7E, 0x01, 0x02 };
+        digest.update(other, 0, other.length);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(other), digest.finish().get("SHA-256"));
+
+        assertTrue(ContainerDigest.isValueOf(Arrays.copyOfRange(c, 4, c.length), c));
+        assertFalse(ContainerDigest.isValueOf(Arrays.copyOfRange(c, 4, c.length - 1), c));
+    }
+
+    @DisplayName("The streamed digest is only reused for content that is exactly the container's value")
+    @Test
+    void reencodedContent() throws Exception {
+        byte[] c = SimulatedContainers.container(300);
+        PIVDataObject o = new PIVDataObject();
+        o.setBytes(c);
+        byte[] streamed = valueDigest("SHA-256", c);
+        o.setValueDigests(Collections.singletonMap("SHA-256", streamed));
+
+        byte[] value = Arrays.copyOfRange(c, 4, c.length);
+        assertSame(streamed, ContainerDigest.digestContent("SHA-256", value, o));
+
+        // re-encoded content as long as the value, but with other bytes, is digested itself
+        byte[] reencoded = value.clone();
+        reencoded[10] ^= 0x01;
+        byte[] digest = ContainerDigest.digestContent("SHA-256", reencoded, o);
+        assertNotSame(streamed, digest);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(reencoded), digest);
+    }
+
+    @DisplayName("Message digests are reused by the thread that looked them up")
+    @Test
+    void threadLocalDigests() throws Exception {
+        MessageDigest md = ContainerDigest.getMessageDigest("SHA256");
+        md.update((byte) 1);
+        assertSame(md, ContainerDigest.getMessageDigest("SHA256"));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[] { 2 }),
+                ContainerDigest.digest("SHA256", new byte[] { 2 }));
+    }
+
+    @DisplayName("Containers covered by the Security Object carry the digest of their values once read")
+    @Test
+    void digestedWhileRead() throws Exception {
+        byte[] c = SimulatedContainers.container(2000);
+        Map<String, byte[]> containers = new HashMap<>();
+        containers.put(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, c);
+        SimulatedCardTerminal t = new SimulatedCardTerminal("Simulated", new SimulatedCard(null, containers, new HashMap<>()));
+        DefaultPIVApplication piv = new DefaultPIVApplication();
+        piv.setLengthMode(APDULengthMode.SHORT);
+        CardHandle ch = new CardHandle();
+        PIVMiddleware.pivConnect(false, ConnectionDescription.createFromTerminal(t), ch);
+        piv.pivSelectCardApplication(ch, new ApplicationAID(), new ApplicationProperties());
+
+        // nothing is digested until the Security Object algorithm and containers are known
+        PIVDataObject o = new PIVDataObject();
+        assertTrue(piv.pivGetData(ch, APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, o) == MiddlewareStatus.PIV_OK);
+        assertArrayEquals(c, o.getBytes());
+        assertNull(o.getValueDigest("SHA-256"));
+
+        ch.setValueDigests("SHA-384", Arrays.asList(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID));
+        assertTrue(piv.pivGetData(ch, APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, o) == MiddlewareStatus.PIV_OK);
+        assertNull(o.getValueDigest("SHA-384"));
+
+        ch.setValueDigests("SHA-384", Arrays.asList(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID));
+        assertTrue(piv.pivGetData(ch, APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, o) == MiddlewareStatus.PIV_OK);
+        assertArrayEquals(valueDigest("SHA-384", c), o.getValueDigest("SHA-384"));
+        assertNull(o.getValueDigest("SHA-256"));
+
+        o.setBytes(c);
+        assertNull(o.getValueDigest("SHA-384"));
+    }
+}
@@ -0,0 +1,84 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationAID;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationProperties;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.ChuidSignerResolver;
+import gov.gsa.pivconformance.cardlib.card.client.ConnectionDescription;
+import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
+import gov.gsa.pivconformance.cardlib.card.client.DefaultPIVApplication;
+import gov.gsa.pivconformance.cardlib.card.client.PIVMiddleware;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.utils.ChannelMetrics;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCard;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCardTerminal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataModelSingletonTests {
+
+    @DisplayName("A data model bound to a thread is used by that thread only")
+    @Test
+    void bind() throws Exception {
+        DataModelSingleton shared = DataModelSingleton.getInstance();
+        DataModelSingleton run = DataModelSingleton.newInstance();
+        assertNotSame(shared, run);
+
+        DataModelSingleton.bind(run);
+        try {
+            assertSame(run, DataModelSingleton.getInstance());
+            AtomicReference<DataModelSingleton> other = new AtomicReference<>();
+            Thread t = new Thread(() -> other.set(DataModelSingleton.getInstance()));
+            t.start();
+            t.join();
+            assertSame(shared, other.get());
+        } finally {
+            DataModelSingleton.bind(null);
+        }
+        assertSame(shared, DataModelSingleton.getInstance());
+    }
+
+    @DisplayName("The CHUID signer is resolved once per card")
+    @Test
+    void chuidSignerResolvedOnce() throws Exception {
+        Map<String, byte[]> containers = new HashMap<>();
+        containers.put(APDUConstants.DISCOVERY_OBJECT_OID, HexUtil.parseHex("7E125F2F0240104F0BA000000308000010000100"));
+        SimulatedCardTerminal t = new SimulatedCardTerminal("Unsigned card", new SimulatedCard(null, containers, new HashMap<>()));
+        DefaultPIVApplication piv = new DefaultPIVApplication();
+        CardHandle ch = new CardHandle();
+        PIVMiddleware.pivConnect(false, ConnectionDescription.createFromTerminal(t), ch);
+        piv.pivSelectCardApplication(ch, new ApplicationAID(), new ApplicationProperties());
+        ChannelMetrics metrics = ch.getTransmitter(ch.getCurrentChannel()).getMetrics();
+
+        DataModelSingleton.bind(DataModelSingleton.newInstance());
+        try {
+            long getData = metrics.getTransmitCount(0xCB);
+            // a card without a CHUID has no signer, and is not asked again
+            assertNull(ChuidSignerResolver.resolve(piv, ch));
+            assertNull(ChuidSignerResolver.resolve(piv, ch));
+            assertEquals(getData + 1, metrics.getTransmitCount(0xCB));
+
+            DataModelSingleton dataModel = DataModelSingleton.getInstance();
+            dataModel.setChuidSigner("another card", null);
+            assertTrue(dataModel.isChuidSignerResolved("another card"));
+            assertFalse(dataModel.isChuidSignerResolved(null));
+            dataModel.reset();
+            assertFalse(dataModel.isChuidSignerResolved("another card"));
+        } finally {
+            DataModelSingleton.bind(null);
+        }
+    }
+}
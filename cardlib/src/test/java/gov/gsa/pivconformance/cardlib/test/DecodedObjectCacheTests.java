@@ -0,0 +1,71 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.DecodedObjectCache;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObjectFactory;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedContainers;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DecodedObjectCacheTests {
+
+    private static PIVDataObject discoveryObject() {
+        String oid = APDUConstants.DISCOVERY_OBJECT_OID;
+        PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(oid);
+        o.setOID(oid);
+        o.setContainerName(APDUConstants.getFileNameForOid(oid));
+        o.setBytes(SimulatedContainers.discovery());
+        return o;
+    }
+
+    @DisplayName("The same container of the same card is decoded once")
+    @Test
+    void decodesOncePerCardAndContent() {
+        DecodedObjectCache cache = new DecodedObjectCache(8);
+        PIVDataObject first = cache.decode("card1", discoveryObject());
+        assertTrue(first.isDecoded());
+        assertSame(first, cache.decode("card1", discoveryObject()));
+        assertNotSame(first, cache.decode("card2", discoveryObject()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Cached objects are shared and cannot be modified
+        assertTrue(first.isFrozen());
+        assertThrows(IllegalStateException.class, () -> first.setBytes(first.getBytes()));
+        assertThrows(IllegalStateException.class, () -> first.setOID(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID));
+        assertEquals(APDUConstants.DISCOVERY_OBJECT_OID, first.getOID());
+
+        // New raw bytes must be decoded again
+        PIVDataObject uncached = cache.decode(null, discoveryObject());
+        assertFalse(uncached.isFrozen());
+        uncached.setBytes(uncached.getBytes());
+        assertFalse(uncached.isDecoded());
+    }
+
+    @DisplayName("Objects of unidentified cards are not cached, and a card's objects can be dropped")
+    @Test
+    void unidentifiedAndInvalidated() {
+        DecodedObjectCache cache = new DecodedObjectCache(8);
+        PIVDataObject unidentified = cache.decode(null, discoveryObject());
+        assertTrue(unidentified.isDecoded());
+        assertNotSame(unidentified, cache.decode(null, discoveryObject()));
+        assertNotSame(unidentified, cache.decode("", discoveryObject()));
+        assertEquals(0, cache.getSize());
+
+        PIVDataObject card1 = cache.decode("card1", discoveryObject());
+        PIVDataObject card2 = cache.decode("card2", discoveryObject());
+        cache.invalidate("card1");
+        assertEquals(1, cache.getSize());
+        assertNotSame(card1, cache.decode("card1", discoveryObject()));
+        assertSame(card2, cache.decode("card2", discoveryObject()));
+    }
+}
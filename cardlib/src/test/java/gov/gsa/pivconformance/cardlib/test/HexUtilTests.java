@@ -0,0 +1,39 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HexUtilTests {
+
+    private static final byte[] SELECT = {0x00, (byte) 0xA4, 0x04, 0x00, 0x09, (byte) 0xA0, 0x00, 0x00, 0x03, 0x08};
+
+    @DisplayName("Spaced and unspaced encoders match the regex-based formatting they replace")
+    @Test
+    void encodersMatchRegexFormatting() {
+        String lower = "00a4040009a000000308";
+        assertEquals(lower, HexUtil.toLowerHexString(SELECT));
+        assertEquals(lower.toUpperCase(), HexUtil.toHexString(SELECT));
+        assertEquals(lower.replaceAll("..(?=.)", "$0 "), HexUtil.toSpacedHexString(SELECT));
+        assertEquals("", HexUtil.toSpacedHexString(new byte[0]));
+
+        StringBuilder sb = new StringBuilder("APDU ");
+        HexUtil.appendHex(sb, SELECT, 1, 2, true, false);
+        assertEquals("APDU A4 04", sb.toString());
+
+        char[] dst = new char[HexUtil.getEncodedLength(3, true) + 1];
+        assertEquals(8, HexUtil.encode(SELECT, 0, 3, dst, 1, true, true));
+        assertEquals("00 a4 04", new String(dst, 1, 8));
+    }
+
+    @DisplayName("Parsing accepts either case and skips spaces and newlines")
+    @Test
+    void parseSkipsSeparators() {
+        assertArrayEquals(SELECT, HexUtil.parseHex("00 a4 04 00 09\nA0 00 00 03 08"));
+        assertArrayEquals(SELECT, HexUtil.parseHex("00A4040009A000000308"));
+    }
+}
@@ -0,0 +1,35 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.utils.LatencyHistogram;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTests {
+
+    @DisplayName("Percentiles are within an eighth of the recorded values")
+    @Test
+    void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getPercentile(50));
+        for (long v = 1; v <= 10000; v++) {
+            h.record(v);
+        }
+        assertEquals(10000, h.getCount());
+        assertEquals(10000, h.getMax());
+        assertEquals(5000.5, h.getMean(), 0.001);
+        long p50 = h.getPercentile(50);
+        long p99 = h.getPercentile(99);
+        assertTrue(p50 >= 5000 && p50 <= 5000 * 9 / 8, "p50 " + p50);
+        assertTrue(p99 >= 9900 && p99 <= 10000, "p99 " + p99);
+        assertEquals(10000, h.getPercentile(100));
+        assertEquals(1, h.getPercentile(0));
+
+        h.reset();
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+}
@@ -0,0 +1,138 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
+import gov.gsa.pivconformance.cardlib.card.client.SignatureVerifier;
+import gov.gsa.pivconformance.cardlib.card.client.SignedPIVDataObject;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SignatureVerifierTests {
+
+    private static KeyPair s_keyPair;
+    private static X509Certificate s_cert;
+
+    @BeforeAll
+    static void createSigner() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        s_keyPair = kpg.generateKeyPair();
+        X500Name name = new X500Name("CN=Test content signer");
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withRSA").build(s_keyPair.getPrivate());
+        s_cert = new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                new Date(System.currentTimeMillis() - 60000), new Date(System.currentTimeMillis() + 3600000), name,
+                s_keyPair.getPublic()).build(signer));
+    }
+
+    @BeforeEach
+    void bindDataModel() {
+        DataModelSingleton.bind(DataModelSingleton.newInstance());
+        DataModelSingleton.getInstance().setChuidSignerCert(s_cert);
+    }
+
+    @AfterEach
+    void unbindDataModel() {
+        DataModelSingleton.bind(null);
+    }
+
+    // A security object with a detached signature over its content, signed with the test signer
+    private static SignedPIVDataObject signedObject(byte[] content, byte[] signedContent) throws Exception {
+        CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+        gen.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(new JcaDigestCalculatorProviderBuilder().build())
+                .build(new JcaContentSignerBuilder("SHA256withRSA").build(s_keyPair.getPrivate()), s_cert));
+        gen.addCertificates(new JcaCertStore(Collections.singletonList(s_cert)));
+        CMSSignedData signedData = gen.generate(new CMSProcessableByteArray(signedContent), false);
+
+        SignedPIVDataObject o = new SignedPIVDataObject();
+        o.setOID(APDUConstants.SECURITY_OBJECT_OID);
+        byte[] signature = signedData.getEncoded();
+        byte[] raw = new byte[content.length + signature.length];
+        System.arraycopy(content, 0, raw, 0, content.length);
+        System.arraycopy(signature, 0, raw, content.length, signature.length);
+        o.setBytes(raw);
+        o.setContentInfo(signedData.toASN1Structure());
+        o.setAsymmetricSignature(signedData);
+        o.setSignedContent(content);
+        return o;
+    }
+
+    @DisplayName("Signatures are verified once per container and signer")
+    @Test
+    void memoizedVerdicts() throws Exception {
+        SignatureVerifier verifier = SignatureVerifier.getInstance();
+        byte[] content = "security object".getBytes();
+
+        long misses = verifier.getMissCount();
+        long hits = verifier.getHitCount();
+        SignedPIVDataObject o = signedObject(content, content);
+        assertTrue(o.verifySignature());
+        assertEquals(misses + 1, verifier.getMissCount());
+        assertEquals(s_cert, o.getSignerCert());
+
+        // the same container, read again
+        SignedPIVDataObject again = signedObject(content, content);
+        again.setBytes(o.getBytes());
+        assertTrue(again.verifySignature());
+        assertEquals(hits + 1, verifier.getHitCount());
+        assertEquals(s_cert, again.getSignerCert());
+
+        // content that does not match what was signed
+        SignedPIVDataObject tampered = signedObject("security object!".getBytes(), content);
+        assertFalse(tampered.verifySignature());
+        assertFalse(tampered.verifySignature());
+        assertSame(s_cert, DataModelSingleton.getInstance().getChuidSignerCert());
+    }
+
+    @DisplayName("Signatures can be verified off the card's thread with its CHUID signer")
+    @Test
+    void verifyOnWorkerThreads() throws Exception {
+        SignedPIVDataObject o = signedObject("worker".getBytes(), "worker".getBytes());
+        SignedPIVDataObject tampered = signedObject("worker!".getBytes(), "worker".getBytes());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // worker threads see the unbound data model, which has no CHUID signer, and leave the
+            // objects alone; the verdicts are applied on this thread
+            ForkJoinTask<SignatureVerifier.Verdict> valid = pool.submit(() -> SignatureVerifier.getInstance().check(o, s_cert));
+            ForkJoinTask<SignatureVerifier.Verdict> invalid = pool.submit(() -> SignatureVerifier.getInstance().check(tampered, s_cert));
+            SignatureVerifier.Verdict verdict = valid.join();
+            assertEquals(s_cert, verdict.getSignerCert());
+            assertTrue(verdict.applyTo(o));
+            assertEquals(s_cert, o.getSignerCert());
+            assertFalse(invalid.join().applyTo(tampered));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
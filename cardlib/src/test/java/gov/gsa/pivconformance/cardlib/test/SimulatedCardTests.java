@@ -0,0 +1,151 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.APDULengthMode;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationAID;
+import gov.gsa.pivconformance.cardlib.card.client.ApplicationProperties;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.ConnectionDescription;
+import gov.gsa.pivconformance.cardlib.card.client.DefaultPIVApplication;
+import gov.gsa.pivconformance.cardlib.card.client.GeneralAuthenticateHelper;
+import gov.gsa.pivconformance.cardlib.card.client.MiddlewareStatus;
+import gov.gsa.pivconformance.cardlib.card.client.PIVAuthenticators;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVMiddleware;
+import gov.gsa.pivconformance.cardlib.utils.ChannelMetrics;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCard;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedContainers;
+import gov.gsa.pivconformance.cardlib.utils.TransmitMetrics;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.smartcardio.ResponseAPDU;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SimulatedCardTests {
+
+    @BeforeAll
+    static void addProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    // A 53 TLV around 2000 bytes of value, longer than one short response
+    private static byte[] largeContainer() {
+        return SimulatedContainers.container(2000);
+    }
+
+    private static SimulatedCardTerminal terminal(Map<Integer, PrivateKey> keys) {
+        Map<String, byte[]> containers = new HashMap<>();
+        containers.put(APDUConstants.DISCOVERY_OBJECT_OID, SimulatedContainers.discovery());
+        containers.put(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, largeContainer());
+        containers.put(APDUConstants.CARDHOLDER_FINGERPRINTS_OID, largeContainer());
+        return new SimulatedCardTerminal("Simulated", new SimulatedCard(null, containers, keys));
+    }
+
+    private static CardHandle connect(SimulatedCardTerminal t, DefaultPIVApplication piv) {
+        CardHandle ch = new CardHandle();
+        assertEquals(MiddlewareStatus.PIV_OK, PIVMiddleware.pivConnect(false, ConnectionDescription.createFromTerminal(t), ch));
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivSelectCardApplication(ch, new ApplicationAID(), new ApplicationProperties()));
+        return ch;
+    }
+
+    @DisplayName("Containers are read from a simulated card with short and extended APDUs")
+    @Test
+    void getData() {
+        for (boolean extendedCard : new boolean[] { true, false }) {
+            SimulatedCardTerminal t = terminal(new HashMap<>());
+            t.getSimulatedCard().setExtendedLength(extendedCard);
+            DefaultPIVApplication piv = new DefaultPIVApplication();
+            CardHandle ch = connect(t, piv);
+
+            PIVDataObject discovery = new PIVDataObject();
+            assertEquals(MiddlewareStatus.PIV_OK, piv.pivGetData(ch, APDUConstants.DISCOVERY_OBJECT_OID, discovery));
+            assertArrayEquals(SimulatedContainers.discovery(), discovery.getBytes());
+            assertEquals(extendedCard, ch.getExtendedLengthSupported());
+
+            PIVDataObject cert = new PIVDataObject();
+            assertEquals(MiddlewareStatus.PIV_OK, piv.pivGetData(ch, APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, cert));
+            assertArrayEquals(largeContainer(), cert.getBytes());
+
+            PIVDataObject missing = new PIVDataObject();
+            assertEquals(MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND, piv.pivGetData(ch, APDUConstants.KEY_HISTORY_OBJECT_OID, missing));
+        }
+    }
+
+    @DisplayName("PIN-protected containers need VERIFY")
+    @Test
+    void verify() {
+        SimulatedCardTerminal t = terminal(new HashMap<>());
+        DefaultPIVApplication piv = new DefaultPIVApplication();
+        piv.setLengthMode(APDULengthMode.SHORT);
+        CardHandle ch = connect(t, piv);
+
+        PIVDataObject fingerprints = new PIVDataObject();
+        assertEquals(MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED,
+                piv.pivGetData(ch, APDUConstants.CARDHOLDER_FINGERPRINTS_OID, fingerprints));
+
+        PIVAuthenticators wrong = new PIVAuthenticators();
+        wrong.addApplicationPin("654321");
+        assertFalse(piv.pivLogIntoCardApplication(ch, wrong.getBytes()) == MiddlewareStatus.PIV_OK);
+
+        PIVAuthenticators right = new PIVAuthenticators();
+        right.addApplicationPin(SimulatedCard.DEFAULT_PIN);
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivLogIntoCardApplication(ch, right.getBytes()));
+        assertEquals(MiddlewareStatus.PIV_OK, piv.pivGetData(ch, APDUConstants.CARDHOLDER_FINGERPRINTS_OID, fingerprints));
+        assertArrayEquals(largeContainer(), fingerprints.getBytes());
+
+        // A new connection is a new session
+        CardHandle ch2 = connect(t, piv);
+        assertEquals(MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED,
+                piv.pivGetData(ch2, APDUConstants.CARDHOLDER_FINGERPRINTS_OID, new PIVDataObject()));
+    }
+
+    @DisplayName("GENERAL AUTHENTICATE signs with the software key, using command chaining")
+    @Test
+    void generalAuthenticate() throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair kp = kpg.generateKeyPair();
+        Map<Integer, PrivateKey> keys = new HashMap<>();
+        keys.put(0x9E, kp.getPrivate());
+        SimulatedCardTerminal t = terminal(keys);
+        CardHandle ch = connect(t, new DefaultPIVApplication());
+        ChannelMetrics metrics = TransmitMetrics.getInstance().getChannel("Simulated channel 0");
+        metrics.reset();
+
+        byte[] padded = GeneralAuthenticateHelper.preparePKCS1Challenge(
+                GeneralAuthenticateHelper.generateChallenge(32), "2.16.840.1.101.3.4.2.1", 256);
+        byte[] request = GeneralAuthenticateHelper.generateRequest(APDUConstants.X509_CERTIFICATE_FOR_CARD_AUTHENTICATION_OID, padded);
+        ResponseAPDU rsp = GeneralAuthenticateHelper.sendRequest(ch, 0x07, 0x9E, request);
+        assertEquals(0x9000, rsp.getSW());
+        // Both chained commands are counted under the reader that holds the card
+        assertEquals(2, metrics.getTransmitCount(APDUConstants.GENERAL_AUTHENTICATE));
+
+        byte[] signature = GeneralAuthenticateHelper.getChallengeResponseFromData(rsp.getData());
+        RSAPublicKey pub = (RSAPublicKey) kp.getPublic();
+        byte[] recovered = new BigInteger(1, signature).modPow(pub.getPublicExponent(), pub.getModulus()).toByteArray();
+        recovered = Arrays.copyOfRange(recovered, recovered.length - padded.length + 1, recovered.length);
+        assertArrayEquals(Arrays.copyOfRange(padded, 1, padded.length), recovered);
+
+        // Keys other than card authentication need the PIN
+        assertTrue(GeneralAuthenticateHelper.sendRequest(ch, 0x07, 0x9A, request).getSW() != 0x9000);
+    }
+}
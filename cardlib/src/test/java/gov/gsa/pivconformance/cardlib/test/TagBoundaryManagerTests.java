@@ -0,0 +1,91 @@
+package gov.gsa.pivconformance.cardlib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.CardClientException;
+import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
+import gov.gsa.pivconformance.cardlib.tlv.BerTag;
+import gov.gsa.pivconformance.cardlib.tlv.ContainerLengthReport;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+import gov.gsa.pivconformance.cardlib.tlv.TagBoundaryManager;
+import gov.gsa.pivconformance.cardlib.tlv.TagConstants;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TagBoundaryManagerTests {
+
+    @DisplayName("Containers resolve to the same id by name and by OID")
+    @Test
+    void containerIdsResolve() {
+        int byName = TagBoundaryManager.getContainerId(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_NAME);
+        assertTrue(byName >= 0);
+        assertEquals(byName, TagBoundaryManager.getContainerId(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID));
+        assertEquals(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_NAME, TagBoundaryManager.getContainerName(byName));
+        assertEquals(-1, TagBoundaryManager.getContainerId("no such container"));
+    }
+
+    @DisplayName("Length deltas are the same by container name and by container id")
+    @Test
+    void lengthDeltaByNameAndId() throws Exception {
+        TagBoundaryManager rules = TagBoundaryManager.getInstance();
+        String name = APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_NAME;
+        int id = TagBoundaryManager.getContainerId(name);
+        BerTag fascn = new BerTag(TagConstants.FASC_N_TAG);
+
+        assertEquals(0, rules.lengthDelta(name, fascn, 25));
+        assertEquals(0, rules.lengthDelta(id, fascn, 25));
+        assertThrows(CardClientException.class, () -> rules.lengthDelta(id, fascn, 24));
+        assertThrows(NullPointerException.class, () -> rules.lengthDelta(id, new BerTag(TagConstants.PIN_USAGE_POLICY_TAG), 2));
+
+        // Soft upper bound on the issuer signature
+        assertEquals(0, rules.lengthDelta(id, new BerTag(TagConstants.ISSUER_ASYMMETRIC_SIGNATURE_TAG), 4000));
+    }
+
+    @DisplayName("Validating a container reports out-of-bounds, missing and extra tags in one pass")
+    @Test
+    void validateReportsEveryTag() {
+        // 53 holding a 24-byte FASC-N (30), GUID (34), expiration date (35), deprecated 3D and an empty FE
+        byte[] container = HexUtil.parseHex("5336"
+                + "3018" + "D4E739DA739CED39CE739D836858210842108421C84210C3"
+                + "3410" + "3D3A4A2B0E9A47FA9B2C1B6F2E8E6D01"
+                + "3508" + "3230333030313031"
+                + "3D0100"
+                + "FE00");
+        int id = TagBoundaryManager.getContainerId(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID);
+        ContainerLengthReport report = TagBoundaryManager.validate(id, container);
+
+        assertFalse(report.isInBounds());
+        assertEquals(1, report.getFailures().size());
+        int fascn = ruleIndex(report, 0x30);
+        assertEquals(24, report.getLength(fascn));
+        assertTrue(report.isOutOfBounds(fascn));
+        assertFalse(report.isOutOfBounds(ruleIndex(report, 0x34)));
+        assertEquals(1, report.getCount(ruleIndex(report, 0xFE)));
+        assertTrue(report.isMissing(ruleIndex(report, 0x3E)));
+        assertEquals(1, report.getExtraCount());
+        assertEquals(new BerTag(0x3D), report.getExtraTag(0));
+        assertEquals(1, report.getExtraLength(0));
+    }
+
+    private static int ruleIndex(ContainerLengthReport report, int tag) {
+        for (int i = 0; i < report.getRuleCount(); i++) {
+            if (report.getTag(i) == tag) {
+                return i;
+            }
+        }
+        throw new AssertionError("no rule for " + Integer.toHexString(tag));
+    }
+
+    @DisplayName("Resetting the data model keeps the shared rules")
+    @Test
+    void resetSharesRules() {
+        DataModelSingleton.getInstance().reset();
+        assertSame(TagBoundaryManager.getInstance(), DataModelSingleton.getInstance().getLengthRules());
+    }
+}
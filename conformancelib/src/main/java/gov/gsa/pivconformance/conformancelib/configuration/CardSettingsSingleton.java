@@ -2,8 +2,11 @@ package gov.gsa.pivconformance.conformancelib.configuration;
 
 import javax.smartcardio.CardTerminal;
 
+import gov.gsa.pivconformance.cardlib.card.client.APDULengthMode;
 import gov.gsa.pivconformance.cardlib.card.client.AbstractPIVApplication;
 import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.DecodedObjectCache;
+import gov.gsa.pivconformance.conformancelib.utilities.ContainerSnapshot;
 
 public final class CardSettingsSingleton {
 
@@ -46,7 +49,32 @@ public final class CardSettingsSingleton {
 	}
 
 	public void setCardHandle(CardHandle cardHandle) {
+		if (cardHandle != m_cardHandle) {
+			forgetDecodedObjects();
+		}
 		m_cardHandle = cardHandle;
+		m_containerSnapshot = null;
+	}
+
+	// The objects decoded from the current card carry state from this run, such as their signer
+	private void forgetDecodedObjects() {
+		String cardIdentity = m_cardHandle != null ? m_cardHandle.getCardIdentity() : null;
+		if (cardIdentity != null && !cardIdentity.isEmpty()) {
+			DecodedObjectCache.getInstance().invalidate(cardIdentity);
+		}
+	}
+
+	/**
+	 * Gets the containers read from the current card
+	 *
+	 * @return the snapshot, or null if the containers have not been read yet
+	 */
+	public ContainerSnapshot getContainerSnapshot() {
+		return m_containerSnapshot;
+	}
+
+	public void setContainerSnapshot(ContainerSnapshot containerSnapshot) {
+		m_containerSnapshot = containerSnapshot;
 	}
 	
 	public LOGIN_STATUS getLastLoginStatus() {
@@ -65,6 +93,20 @@ public final class CardSettingsSingleton {
 		m_pivHandle = pivHandle;
 	}
 
+	/**
+	 * Gets how GET DATA commands are to be encoded for the card. Unlike the card status, it is
+	 * kept by reset().
+	 *
+	 * @return APDULengthMode value, AUTO unless set
+	 */
+	public APDULengthMode getLengthMode() {
+		return m_lengthMode;
+	}
+
+	public void setLengthMode(APDULengthMode lengthMode) {
+		m_lengthMode = lengthMode != null ? lengthMode : APDULengthMode.AUTO;
+	}
+
 	public enum LOGIN_STATUS {
 		LOGIN_SUCCESS,
 		LOGIN_FAIL,
@@ -77,6 +119,8 @@ public final class CardSettingsSingleton {
     private CardTerminal m_terminal = null;
     private CardHandle m_cardHandle = null;
     private AbstractPIVApplication m_pivHandle = null;
+    private volatile ContainerSnapshot m_containerSnapshot = null;
+    private APDULengthMode m_lengthMode = APDULengthMode.AUTO;
     
     private LOGIN_STATUS m_lastLoginStatus;
 
@@ -84,9 +128,41 @@ public final class CardSettingsSingleton {
     	reset();
     }
     private static final CardSettingsSingleton INSTANCE = new CardSettingsSingleton();
+    // settings of the run on the current thread, when several cards are tested at once
+    private static final ThreadLocal<CardSettingsSingleton> s_bound = new ThreadLocal<CardSettingsSingleton>();
+
+    /**
+     * Gets the settings of the current run: the ones bound to this thread, or the shared instance
+     *
+     * @return the card settings
+     */
     public static CardSettingsSingleton getInstance()
     {
-        return INSTANCE;
+        CardSettingsSingleton bound = s_bound.get();
+        return bound != null ? bound : INSTANCE;
+    }
+
+    /**
+     * Creates settings for one run, independent of the shared instance and of other runs
+     *
+     * @return new, empty card settings
+     */
+    public static CardSettingsSingleton newInstance() {
+    	return new CardSettingsSingleton();
+    }
+
+    /**
+     * Binds settings to the current thread, so that getInstance() returns them until they are unbound.
+     * Threads started by the run do not inherit them.
+     *
+     * @param settings the settings of the run, or null to go back to the shared instance
+     */
+    public static void bind(CardSettingsSingleton settings) {
+    	if (settings == null) {
+    		s_bound.remove();
+    	} else {
+    		s_bound.set(settings);
+    	}
     }
     
     // clear all saved status. should only be called when a card is changed
@@ -96,7 +172,9 @@ public final class CardSettingsSingleton {
     	m_globalPin = null;
     	m_terminal = null;
     	m_pivHandle = null;
+    	forgetDecodedObjects();
     	m_cardHandle = null;
+    	m_containerSnapshot = null;
     	m_lastLoginStatus = LOGIN_STATUS.LOGIN_NOT_TRIED;
     }
 
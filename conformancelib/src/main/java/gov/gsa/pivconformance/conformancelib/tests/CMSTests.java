@@ -447,7 +447,7 @@ public class CMSTests {
 
 		SignedPIVDataObject o = (SignedPIVDataObject) AtomHelper.getDataObject(oid);
 		assertNotNull(AtomHelper.getSignedDataForObject(o), "No signature found for OID " + oid);
-		assertTrue(o.verifySignature(), "Object signature does not verify");
+		assertTrue(AtomHelper.verifySignature(o), "Object signature does not verify");
 	}
 
 	// Confirm that signing certificate contains id-PIV-content-signing (or PIV-I
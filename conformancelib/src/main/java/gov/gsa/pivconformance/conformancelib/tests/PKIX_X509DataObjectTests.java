@@ -1185,7 +1185,8 @@ public class PKIX_X509DataObjectTests {
 				//s_logger.warn("pivGetData() for {} returned {}", oid, result);
 				rv.put(oid, null);
 			}
-			boolean  decoded = obj.decode();
+			obj = DecodedObjectCache.getInstance().decode(c.getCardIdentity(), obj);
+			boolean  decoded = obj.isDecoded();
 			assertTrue(decoded, "Failed to decode object for OID " + oid);
 			X509Certificate cert = null;
 			if(oid.equals(APDUConstants.CARD_HOLDER_UNIQUE_IDENTIFIER_OID)) {
@@ -38,7 +38,7 @@ public class SP800_73_4CHUIDTests {
 	void sp800_73_4_Test_8(String oid, TestReporter reporter) {
 		try {
 			PIVDataObject o = AtomHelper.getDataObject(oid);
-			if (!o.inBounds(oid)) {
+			if (!AtomHelper.isInBounds(o, oid)) {
 				String errStr = (String.format("Tag in " + o.getFriendlyName() + " failed length check"));
 				Exception e = new Exception(errStr);
 				throw (e);
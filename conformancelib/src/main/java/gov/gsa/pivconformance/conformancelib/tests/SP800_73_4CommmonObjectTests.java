@@ -65,7 +65,7 @@ public class SP800_73_4CommmonObjectTests {
     	// TODO: Since this could be caught, longer-term, consider Throwable
 		try {
 			PIVDataObject o = AtomHelper.getDataObject(oid);	
-			if (!o.inBounds(oid)) {
+			if (!AtomHelper.isInBounds(o, oid)) {
 				String errStr = (String.format("Tag in " + o.getFriendlyName() + " failed length check"));
 				Exception e = new Exception(errStr);
 				throw(e);
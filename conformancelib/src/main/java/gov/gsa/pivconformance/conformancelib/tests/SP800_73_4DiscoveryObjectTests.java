@@ -37,7 +37,7 @@ public class SP800_73_4DiscoveryObjectTests {
 	void sp800_73_4_Test_38(String oid, TestReporter reporter) {		
 		try {
 			PIVDataObject o = AtomHelper.getDataObject(oid);	
-			if (!o.inBounds(oid)) {
+			if (!AtomHelper.isInBounds(o, oid)) {
 				String errStr = (String.format("Tag in " + o.getFriendlyName() + " failed length check"));
 				Exception e = new Exception(errStr);
 				throw(e);
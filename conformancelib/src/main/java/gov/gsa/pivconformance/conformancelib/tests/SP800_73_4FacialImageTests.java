@@ -28,7 +28,7 @@ public class SP800_73_4FacialImageTests {
 	void sp800_73_4_Test_32(String oid, TestReporter reporter) {
 		try {
 			PIVDataObject o = AtomHelper.getDataObject(oid);	
-			if (!o.inBounds(oid)) {
+			if (!AtomHelper.isInBounds(o, oid)) {
 				String errStr = (String.format("Tag in " + o.getFriendlyName() + " failed length check"));
 				Exception e = new Exception(errStr);
 				throw(e);
@@ -42,7 +42,7 @@ public class SP800_73_4SecurityObjectTests {
 	void sp800_73_4_Test_33(String oid, TestReporter reporter) {
 		try {
 			PIVDataObject o = AtomHelper.getDataObject(oid);	
-			if (!o.inBounds(oid)) {
+			if (!AtomHelper.isInBounds(o, oid)) {
 				String errStr = (String.format("Tag in " + o.getFriendlyName() + " failed length check"));
 				Exception e = new Exception(errStr);
 				throw(e);
@@ -254,10 +254,8 @@ public class SP800_73_4SecurityObjectTests {
             }
 		}
 
-		((SecurityObject) o).setMapOfDataElements(soDataElements);
-		
 		//Confirm that message digest from signed attributes bag matches the digest over Fingerprint biometric data (excluding contents of digital signature field) 
-		boolean verified = ((SecurityObject) o).verifyHashes();
+		boolean verified = AtomHelper.verifyHashes((SecurityObject) o, soDataElements);
 		assertTrue(verified);
     }
 
@@ -11,7 +11,14 @@ import gov.gsa.pivconformance.conformancelib.junitoptions.ConformanceTestExecuti
 import gov.gsa.pivconformance.conformancelib.junitoptions.Theme;
 import gov.gsa.pivconformance.conformancelib.tests.ConformanceTestException;
 import gov.gsa.pivconformance.conformancelib.utilities.CardUtils;
+import gov.gsa.pivconformance.cardlib.card.client.APDULengthMode;
+import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
+import gov.gsa.pivconformance.cardlib.utils.APDUTraceWriter;
 import gov.gsa.pivconformance.cardlib.utils.PCSCUtils;
+import gov.gsa.pivconformance.cardlib.utils.RecordingCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.ReplayCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.TransmitMetrics;
 import gov.gsa.pivconformance.cardlib.utils.VersionUtils;
 
 import org.apache.commons.cli.*;
@@ -24,19 +31,32 @@ import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
 import org.junit.platform.launcher.listeners.TestExecutionSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 
 
 import java.io.Console;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.smartcardio.CardTerminal;
 
 import static org.junit.platform.engine.discovery.DiscoverySelectors.selectMethod;
 
@@ -47,6 +67,8 @@ public class ConformanceTestRunner {
 
     // slf4j will thunk this through to an appropriately configured logging library
     private static final Logger s_logger = LoggerFactory.getLogger(ConformanceTestRunner.class);
+    // MDC key holding the reader name while the cards in several readers are tested
+    public static final String READER_MDC_KEY = "reader";
     private static final Options s_options = new Options();
     static {
         s_options.addOption("h", "help", false, "Print this help and exit");
@@ -55,6 +77,12 @@ public class ConformanceTestRunner {
         s_options.addOption("a", "appPin", true, "applicationPin to use for testing");
         s_options.addOption("d", "parameterDebug", false, "enable junit parameter debugging");
         s_options.addOption("", "noTree", false, "hide the junit test tree output");
+        s_options.addOption("s", "simulate", true, "run against a simulated card, with application PIN 123456, loaded from a directory of container dumps instead of a reader. Repeat to test several simulated cards at the same time");
+        s_options.addOption("", "allReaders", false, "test the cards in all connected readers at the same time");
+        s_options.addOption("", "record", true, "record the APDUs exchanged with each card to a trace file in this directory");
+        s_options.addOption("r", "replay", true, "run against a card replaying an APDU trace file instead of a reader. Repeat to replay several traces at the same time");
+        s_options.addOption("", "defaultGetResponse", false, "Use default javax.scardio GET RESPONSE processing");
+        s_options.addOption("", "lengthMode", true, "how to send GET DATA: SHORT, EXTENDED or AUTO (the default), which uses extended length when the card and reader allow it");
     }
     private static void PrintHelpAndExit(int exitCode) {
         new HelpFormatter().printHelp("ConfigGenerator <options>", s_options);
@@ -65,7 +93,6 @@ public class ConformanceTestRunner {
 		s_logger.info("current directory: {}", location.getFile());
         s_logger.info("main class: {}", MethodHandles.lookup().lookupClass().getSimpleName());
         s_logger.info("package version: {}", VersionUtils.GetPackageVersionString());
-        PCSCUtils.ConfigureUserProperties();
         CommandLineParser p = new DefaultParser();
         CommandLine cmd = null;
         try {
@@ -78,6 +105,14 @@ public class ConformanceTestRunner {
         if(cmd.hasOption("help")) {
             PrintHelpAndExit(0);
         }
+        if(!cmd.hasOption("defaultGetResponse")) {
+            s_logger.info("Using cardlib GET RESPONSE instead of java default");
+            System.setProperty("sun.security.smartcardio.t0GetResponse", "false");
+            System.setProperty("sun.security.smartcardio.t1GetResponse", "false");
+        } else {
+            s_logger.info("Using java's default GET RESPONSE handling");
+        }
+        PCSCUtils.ConfigureUserProperties();
         boolean enableVerboseParameterDebugging = false;
         if(cmd.hasOption("parameterDebug")) {
         	enableVerboseParameterDebugging = true;
@@ -119,6 +154,15 @@ public class ConformanceTestRunner {
         }
         
         CardSettingsSingleton css = CardSettingsSingleton.getInstance();
+        if(cmd.hasOption("lengthMode")) {
+            String lengthMode = cmd.getOptionValue("lengthMode");
+            try {
+                css.setLengthMode(APDULengthMode.valueOf(lengthMode.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                s_logger.error("Unknown length mode: {}", lengthMode);
+                PrintHelpAndExit(1);
+            }
+        }
         if(cmd.hasOption("appPin")) {
         	String appPin = cmd.getOptionValue("appPin");
         	css.setApplicationPin(appPin);
@@ -130,6 +174,39 @@ public class ConformanceTestRunner {
           }
         }
 
+        List<CardTerminal> terminals = new ArrayList<CardTerminal>();
+        if(cmd.hasOption("simulate")) {
+            for(String dir : cmd.getOptionValues("simulate")) {
+                try {
+                    terminals.add(SimulatedCardTerminal.fromDirectory(Paths.get(dir)));
+                } catch (IOException e) {
+                    s_logger.error("Unable to load simulated card", e);
+                    System.exit(1);
+                }
+            }
+        } else if(cmd.hasOption("replay")) {
+            for(String file : cmd.getOptionValues("replay")) {
+                try {
+                    terminals.add(ReplayCardTerminal.fromFile(Paths.get(file)));
+                } catch (IOException e) {
+                    s_logger.error("Unable to load APDU trace", e);
+                    System.exit(1);
+                }
+            }
+        } else if(cmd.hasOption("allReaders")) {
+            for(String reader : PCSCUtils.GetConnectedReaders()) {
+                CardTerminal terminal = PCSCUtils.TerminalForReaderName(reader);
+                if(terminal != null) terminals.add(terminal);
+            }
+            if(terminals.isEmpty()) {
+                s_logger.error("No connected readers found");
+                System.exit(1);
+            }
+        }
+        if(terminals.size() == 1) {
+            css.setTerminal(terminals.get(0));
+        }
+
         try (Statement configStatement = conn.createStatement()) {
             ResultSet rs = configStatement.executeQuery(FIRST_CONFIG);
             rs.next();
@@ -139,7 +216,15 @@ public class ConformanceTestRunner {
             } catch(SQLException e) {
             	//no need to carp now... this'll just come from css
             }
-            if(readerName == null || readerName.isEmpty()) {
+            if(terminals.size() > 1) {
+                s_logger.info("Testing the cards in {} readers", terminals.size());
+                String pinFromConfig = rs.getString("ApplicationPIN");
+                if(pinFromConfig != null && !pinFromConfig.isEmpty()) {
+                    css.setApplicationPin(pinFromConfig);
+                }
+            } else if(css.getTerminal() != null) {
+                s_logger.info("Using {}", css.getTerminal().getName());
+            } else if(readerName == null || readerName.isEmpty()) {
                 s_logger.info("No reader was specified. Using the first available reader.");
                 css.setReaderIndex(0);
             } else {
@@ -167,15 +252,7 @@ public class ConformanceTestRunner {
                     css.setApplicationPin(pinFromConfig);
                 }
                 
-                if(CardInfoController.getEncodedRetries() > 1) {
-                	if(!CardInfoController.checkPin(true)) {
-                		s_logger.error("Application PIN is invalid");
-                		System.exit(1);
-                	} else {
-                		s_logger.info("Verified Application PIN");
-                	}
-                } else {
-                	s_logger.error("PIN retry count is too low. Proceeding with tests risks locking the card");
+                if(!checkPinRetries()) {
                 	System.exit(1);
                 }
             }
@@ -184,13 +261,77 @@ public class ConformanceTestRunner {
         } catch (ConformanceTestException e) {
         	s_logger.error("Test apparatus configuration error", e);
 		}
-        
+
+        List<APDUTraceWriter> traceWriters = new ArrayList<APDUTraceWriter>();
+        if(cmd.hasOption("record")) {
+            try {
+                Path traceDir = Files.createDirectories(Paths.get(cmd.getOptionValue("record")));
+                if(terminals.size() > 1) {
+                    for(int i = 0; i < terminals.size(); i++) {
+                        terminals.set(i, recordTerminal(terminals.get(i), traceDir, traceWriters));
+                    }
+                } else {
+                    if(css.getTerminal() == null) {
+                        CardUtils.setUpReaderInSingleton();
+                    }
+                    css.setTerminal(recordTerminal(css.getTerminal(), traceDir, traceWriters));
+                    // connect again, through the recording reader
+                    css.setCardHandle(null);
+                    css.setPivHandle(null);
+                }
+            } catch (IOException | ConformanceTestException e) {
+                s_logger.error("Unable to record APDU trace", e);
+                System.exit(1);
+            }
+        }
+
+        // the test cases are read once, and run against every card
+        List<ConformanceTestCase> testCases = readTestCases(conn, enableVerboseParameterDebugging);
+        boolean showTree = !cmd.hasOption("noTree");
+
+        if(terminals.size() > 1) {
+            runOnReaders(terminals, css.getApplicationPin(), css.getLengthMode(), testCases, showTree);
+            // the metrics of all the readers follow the results of the last one
+            System.out.println("==============================================================");
+        } else {
+            PrintWriter out = new PrintWriter(System.out);
+            TestExecutionSummary summary = runTestCases(testCases, out, showTree);
+            System.out.println("--------------------------------------------------------------");
+            printSummary(summary, out);
+        }
+        System.out.print(TransmitMetrics.getInstance().getReport());
+        for(APDUTraceWriter writer : traceWriters) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                s_logger.error("Unable to write APDU trace", e);
+            }
+        }
+    }
+
+    // wraps a reader so that the APDUs exchanged with its card are recorded to a file named after it
+    private static CardTerminal recordTerminal(CardTerminal terminal, Path traceDir, List<APDUTraceWriter> traceWriters) throws IOException {
+        Path file = traceDir.resolve(terminal.getName().replaceAll("[^A-Za-z0-9._-]+", "_") + ".apdutrace");
+        APDUTraceWriter writer = APDUTraceWriter.create(file);
+        traceWriters.add(writer);
+        s_logger.info("Recording APDUs exchanged with the card in {} to {}", terminal.getName(), file);
+        return new RecordingCardTerminal(terminal, writer);
+    }
+
+    // A test case from the configuration database, ready to be run by a launcher
+    private static class ConformanceTestCase {
+        final String m_identifier;
+        final LauncherDiscoveryRequest m_request;
+
+        ConformanceTestCase(String identifier, LauncherDiscoveryRequest request) {
+            m_identifier = identifier;
+            m_request = request;
+        }
+    }
+
+    private static List<ConformanceTestCase> readTestCases(Connection conn, boolean enableVerboseParameterDebugging) {
+        List<ConformanceTestCase> testCases = new ArrayList<ConformanceTestCase>();
         ConformanceTestDatabase ctd = new ConformanceTestDatabase(conn);
-        PrintWriter out = new PrintWriter(System.out);
-        SummaryGeneratingListener summaryListener = new SummaryGeneratingListener();
-        ConformanceTestExecutionListener ctListener = new ConformanceTestExecutionListener();
-        
-        
         try (Statement testStatement = conn.createStatement()) {
             ResultSet rs = testStatement.executeQuery(TEST_SET);
             while(rs.next()) {
@@ -257,16 +398,7 @@ public class ConformanceTestRunner {
                 }
                 suiteBuilder.selectors(discoverySelectors);
                 suiteBuilder.configurationParameter("TestCaseIdentifier", testNameFromConfig);
-                LauncherDiscoveryRequest ldr = suiteBuilder.build();
-                
-                Launcher l = LauncherFactory.create();
-                List<TestExecutionListener> listeners = new ArrayList<TestExecutionListener>();
-                if(!cmd.hasOption("noTree")) listeners.add(summaryListener);
-                ctListener.setTestCaseIdentifier(testNameFromConfig);
-                listeners.add(ctListener);
-                registerListeners(out, l, listeners, !cmd.hasOption("noTree"));
-                //l.registerTestExecutionListeners(summaryListener);
-                l.execute(ldr);
+                testCases.add(new ConformanceTestCase(testNameFromConfig, suiteBuilder.build()));
             }
         } catch (SQLException e) {
             s_logger.error("Could not read test selection from configuration");
@@ -275,21 +407,113 @@ public class ConformanceTestRunner {
         // XXX *** TODO: Need to add key/value to each suite so that logging can be fixed up
         
         //TestPlan tp = l.discover(ldr);
-        
+        return testCases;
+    }
 
-        System.out.println("--------------------------------------------------------------");
-        TestExecutionSummary summary = summaryListener.getSummary();
+    // runs the test cases against the card in the current card settings
+    private static TestExecutionSummary runTestCases(List<ConformanceTestCase> testCases, PrintWriter out, boolean showTree) {
+        SummaryGeneratingListener summaryListener = new SummaryGeneratingListener();
+        ConformanceTestExecutionListener ctListener = new ConformanceTestExecutionListener();
+        for(ConformanceTestCase testCase : testCases) {
+            Launcher l = LauncherFactory.create();
+            List<TestExecutionListener> listeners = new ArrayList<TestExecutionListener>();
+            if(showTree) listeners.add(summaryListener);
+            ctListener.setTestCaseIdentifier(testCase.m_identifier);
+            listeners.add(ctListener);
+            registerListeners(out, l, listeners, showTree);
+            //l.registerTestExecutionListeners(summaryListener);
+            l.execute(testCase.m_request);
+        }
+        return summaryListener.getSummary();
+    }
+
+    /*
+     * Tests the card in each reader at the same time, one thread per reader. Every run has its own
+     * card settings and data model, so nothing read from one card is used for another. The output
+     * of each run is kept apart and printed once all the runs have finished, and its log events are
+     * tagged with the reader name, in the MDC and in the thread name.
+     */
+    private static void runOnReaders(List<CardTerminal> terminals, String appPin, APDULengthMode lengthMode, List<ConformanceTestCase> testCases, boolean showTree) {
+        ExecutorService pool = Executors.newFixedThreadPool(terminals.size());
+        Map<CardTerminal, StringWriter> outputs = new LinkedHashMap<CardTerminal, StringWriter>();
+        Map<CardTerminal, Future<TestExecutionSummary>> results = new LinkedHashMap<CardTerminal, Future<TestExecutionSummary>>();
+        for(CardTerminal terminal : terminals) {
+            StringWriter output = new StringWriter();
+            outputs.put(terminal, output);
+            results.put(terminal, pool.submit(() -> runOnReader(terminal, appPin, lengthMode, testCases, new PrintWriter(output), showTree)));
+        }
+        pool.shutdown();
+        for(CardTerminal terminal : terminals) {
+            TestExecutionSummary summary = null;
+            try {
+                summary = results.get(terminal).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                s_logger.error("Interrupted while waiting for the tests of {}", terminal.getName());
+            } catch (ExecutionException e) {
+                s_logger.error("Tests of {} failed", terminal.getName(), e.getCause());
+            }
+            PrintWriter out = new PrintWriter(System.out);
+            out.println("==============================================================");
+            out.println("Results for " + terminal.getName());
+            out.print(outputs.get(terminal).toString());
+            out.println("--------------------------------------------------------------");
+            printSummary(summary, out);
+        }
+    }
+
+    private static TestExecutionSummary runOnReader(CardTerminal terminal, String appPin, APDULengthMode lengthMode, List<ConformanceTestCase> testCases, PrintWriter out, boolean showTree) {
+        Thread.currentThread().setName(terminal.getName());
+        MDC.put(READER_MDC_KEY, terminal.getName());
+        CardSettingsSingleton css = CardSettingsSingleton.newInstance();
+        css.setTerminal(terminal);
+        css.setApplicationPin(appPin);
+        css.setLengthMode(lengthMode);
+        CardSettingsSingleton.bind(css);
+        DataModelSingleton.bind(DataModelSingleton.newInstance());
+        try {
+            CardUtils.setUpPivAppHandleInSingleton();
+            if(!checkPinRetries()) {
+                return null;
+            }
+            return runTestCases(testCases, out, showTree);
+        } catch (ConformanceTestException e) {
+            s_logger.error("Test apparatus configuration error", e);
+            return null;
+        } finally {
+            out.flush();
+            DataModelSingleton.bind(null);
+            CardSettingsSingleton.bind(null);
+            MDC.remove(READER_MDC_KEY);
+        }
+    }
+
+    // checks the application PIN of the card in the current card settings, without risking locking it
+    private static boolean checkPinRetries() {
+        if(CardInfoController.getEncodedRetries() > 1) {
+        	if(!CardInfoController.checkPin(true)) {
+        		s_logger.error("Application PIN is invalid");
+        		return false;
+        	}
+        	s_logger.info("Verified Application PIN");
+        	return true;
+        }
+        s_logger.error("PIN retry count is too low. Proceeding with tests risks locking the card");
+        return false;
+    }
+
+    private static void printSummary(TestExecutionSummary summary, PrintWriter out) {
         if(summary == null) {
         	s_logger.error("Failed to record test summary");
         } else {
 	        List<TestExecutionSummary.Failure> failures = summary.getFailures();
 	        for(TestExecutionSummary.Failure f : failures) {
 	            TestIdentifier ti = f.getTestIdentifier();
-	            System.out.println(String.format("Test failure: {}", ti.getDisplayName()));
+	            out.println(String.format("Test failure: %s", ti.getDisplayName()));
 	        }
-	        summary.printTo(new PrintWriter(System.out));
+	        summary.printTo(out);
         }
-
+        out.flush();
     }
     private static void registerListeners(PrintWriter out, Launcher launcher, List<TestExecutionListener> listeners, boolean showTree) {    
         for(TestExecutionListener listener : listeners) {
@@ -3,6 +3,7 @@ package gov.gsa.pivconformance.conformancelib.utilities;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.security.cert.X509Certificate;
+import java.util.Map;
 
 import org.bouncycastle.cms.CMSSignedData;
 import org.slf4j.Logger;
@@ -19,6 +20,7 @@ import gov.gsa.pivconformance.cardlib.card.client.PIVDataObjectFactory;
 import gov.gsa.pivconformance.cardlib.card.client.SecurityObject;
 import gov.gsa.pivconformance.cardlib.card.client.SignedPIVDataObject;
 import gov.gsa.pivconformance.cardlib.card.client.X509CertificateDataObject;
+import gov.gsa.pivconformance.cardlib.tlv.ContainerLengthReport;
 import gov.gsa.pivconformance.conformancelib.configuration.CardSettingsSingleton;
 import gov.gsa.pivconformance.conformancelib.configuration.CardSettingsSingleton.LOGIN_STATUS;
 import gov.gsa.pivconformance.conformancelib.tests.ConformanceTestException;
@@ -106,18 +108,26 @@ public class AtomHelper {
 					ConformanceTestException("Failed to obtain valid PIV handle");
 			fail(e);
 		}
-		// Created an object corresponding to the OID value
-		PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(oid);
-		
-		if (o == null) {
-			ConformanceTestException e  = new ConformanceTestException("Failed to allocate PIVDataObject");
+		// Containers are read and decoded once per card, then shared by every atom
+		ContainerSnapshot.Entry entry = null;
+		try {
+			entry = CardUtils.prefetchContainersInSingleton().get(oid);
+		} catch (ConformanceTestException e) {
 			fail(e);
 		}
 
-		// Get data from the card corresponding to the OID value
-		MiddlewareStatus result = piv.pivGetData(ch, oid, o);
-		
-		switch (result) {
+		MiddlewareStatus status = null;
+		if (entry != null) {
+			status = entry.getStatus();
+		} else if (APDUConstants.isProtectedContainer(oid)) {
+			// the card is not logged in, so the container was left out, as the card would refuse it
+			status = MiddlewareStatus.PIV_SECURITY_CONDITIONS_NOT_SATISFIED;
+		} else {
+			ConformanceTestException e  = new ConformanceTestException("No container read for OID " + oid);
+			fail(e);
+		}
+
+		switch (status) {
 		case PIV_DATA_OBJECT_NOT_FOUND:	// Only fail mandatory containers 
 			if (APDUConstants.isContainerMandatory(oid)) {
 				ConformanceTestException e  = new ConformanceTestException("Failed to find " + APDUConstants.oidNameMap.get(oid) + " container");
@@ -131,7 +141,8 @@ public class AtomHelper {
 			fail(e);				
 		}
 
-		if (o.decode() != true) {
+		PIVDataObject o = entry.getDataObject();
+		if (entry.isDecoded() != true) {
 			ConformanceTestException e  = new ConformanceTestException("Failed to decode object for OID " + oid);
 			fail(e);
 		}
@@ -176,6 +187,53 @@ public class AtomHelper {
 		return rv;
 	}
 	
+	/**
+	 * Gets the verdict on an object's signature, computed in the background when the card's
+	 * containers were read, or verifies it now if the object was not read into the snapshot.
+	 * @param o the signed PIV data object being processed
+	 * @return true if the signature verifies
+	 */
+	public static boolean verifySignature(SignedPIVDataObject o) {
+		ContainerSnapshot snapshot = CardSettingsSingleton.getInstance().getContainerSnapshot();
+		Boolean verdict = snapshot != null ? snapshot.getVerification().getSignatureVerdict(o) : null;
+		return verdict != null ? verdict : o.verifySignature();
+	}
+
+	/**
+	 * Gets the verdict on the data group hashes of a Security Object, computed in the background
+	 * when the card's containers were read, or checks them now against the given content.
+	 * @param so the Security Object being processed
+	 * @param dataElements the hashed content of each container, keyed by OID
+	 * @return true if every hash matches
+	 */
+	public static boolean verifyHashes(SecurityObject so, Map<String, byte[]> dataElements) {
+		ContainerSnapshot snapshot = CardSettingsSingleton.getInstance().getContainerSnapshot();
+		Boolean verdict = snapshot != null ? snapshot.getVerification().getHashVerdict(so) : null;
+		return verdict != null ? verdict : so.verifyHashes(dataElements);
+	}
+
+	/**
+	 * Checks the value lengths of every tag in a container against SP 800-73-4 Tables 8-43 using the
+	 * object's precomputed length report. Objects without raw bytes fall back to the decoded tags.
+	 * @param o the PIV data object being processed
+	 * @param oid Container OID
+	 * @return true if no tag is out of bounds
+	 * @throws Exception if the container has no length rules
+	 */
+	public static boolean isInBounds(PIVDataObject o, String oid) throws Exception {
+		ContainerLengthReport report = o.getLengthReport();
+		if (report == null) {
+			return o.inBounds(oid);
+		}
+		for (String failure : report.getFailures()) {
+			s_logger.error(failure);
+		}
+		if (report.getExtraCount() > 0) {
+			s_logger.debug("Length report: {}", report);
+		}
+		return report.isInBounds();
+	}
+
 	/***
 	 * Quick helper function to determine whether to run the atom
 	 * @param oid Container OID
@@ -245,6 +303,13 @@ public class AtomHelper {
 			return false;
 		}
 		
+		// Containers already read for this card need not be read again
+		ContainerSnapshot snapshot = css.getContainerSnapshot();
+		ContainerSnapshot.Entry entry = snapshot != null ? snapshot.get(oid) : null;
+		if (entry != null) {
+			return entry.getStatus() == MiddlewareStatus.PIV_OK;
+		}
+
 		// Created an object corresponding to the OID value
 		PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(oid);
 
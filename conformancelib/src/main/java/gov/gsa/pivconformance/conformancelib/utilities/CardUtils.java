@@ -14,6 +14,7 @@ import gov.gsa.pivconformance.cardlib.card.client.ApplicationAID;
 import gov.gsa.pivconformance.cardlib.card.client.ApplicationProperties;
 import gov.gsa.pivconformance.cardlib.card.client.CachingDefaultPIVApplication;
 import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.ChuidSignerResolver;
 import gov.gsa.pivconformance.cardlib.card.client.ConnectionDescription;
 import gov.gsa.pivconformance.cardlib.card.client.DefaultPIVApplication;
 import gov.gsa.pivconformance.cardlib.card.client.MiddlewareStatus;
@@ -83,6 +84,7 @@ public class CardUtils {
 			css.setCardHandle(ch);
 			css.setPivHandle(null);
 			DefaultPIVApplication piv = new CachingDefaultPIVApplication();
+			piv.setLengthMode(css.getLengthMode());
 			ApplicationProperties cardAppProperties = new ApplicationProperties();
 			ApplicationAID aid = new ApplicationAID();
 			connectResult = piv.pivSelectCardApplication(ch, aid, cardAppProperties);
@@ -94,6 +96,41 @@ public class CardUtils {
 		return true;
 	}
 
+	/**
+	 * Reads and decodes every container of the card in the singleton once, after the PIV application
+	 * has been selected. Until the card is logged in, PIN-protected containers are left out; calling
+	 * this again after login reads just those.
+	 *
+	 * @return the snapshot of the card's containers
+	 * @throws ConformanceTestException if the card or PIV application is not set up
+	 */
+	public static ContainerSnapshot prefetchContainersInSingleton() throws ConformanceTestException {
+		CardSettingsSingleton css = CardSettingsSingleton.getInstance();
+		// runs on other cards have their own settings and need not wait for this one
+		synchronized (css) {
+			return prefetchContainers(css);
+		}
+	}
+
+	private static ContainerSnapshot prefetchContainers(CardSettingsSingleton css) throws ConformanceTestException {
+		boolean authenticated = css.getLastLoginStatus() == LOGIN_STATUS.LOGIN_SUCCESS;
+		ContainerSnapshot snapshot = css.getContainerSnapshot();
+		if (snapshot != null && (snapshot.isAuthenticated() || !authenticated)) {
+			return snapshot;
+		}
+		CardHandle ch = css.getCardHandle();
+		AbstractPIVApplication piv = css.getPivHandle();
+		if (ch == null || piv == null) {
+			throw new ConformanceTestException("PIV application has not been selected");
+		}
+		// signed containers are checked against the CHUID signer, so it is resolved first
+		ChuidSignerResolver.resolve(piv, ch);
+		snapshot = ContainerSnapshot.read(piv, ch, authenticated, snapshot);
+		s_logger.debug("Read {} containers{}", snapshot.size(), authenticated ? "" : " (not logged in)");
+		css.setContainerSnapshot(snapshot);
+		return snapshot;
+	}
+
 	// this method will authenticate to the card
 	public static boolean authenticateInSingleton(boolean useGlobal) throws ConformanceTestException {
 
@@ -0,0 +1,287 @@
+package gov.gsa.pivconformance.conformancelib.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.CertPathBuilderException;
+import java.security.cert.CertPathBuilderResult;
+import java.security.cert.CertStore;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXBuilderParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509CertSelector;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.ContainerDigest;
+import gov.gsa.pivconformance.cardlib.tlv.HexUtil;
+
+/**
+ * Builds certificate paths for the PKIX atoms. Key stores are loaded from the classpath once, the
+ * builder parameters for a trust anchor are set up once and copied for each path, and verdicts,
+ * failures included, are memoized by the certificates offered, the trust anchor, the initial policy
+ * set, the provider and the validation time rounded down to a bucket, so that a certificate is
+ * validated once per run however many atoms and cards present it. Paths are always validated at the
+ * current time. A path with a certificate that becomes valid or expires within the current bucket
+ * could get a different verdict later in the bucket, so its verdict is not memoized.
+ *
+ * The memo holds a bounded number of verdicts and evicts the least recently used first. All methods
+ * are thread safe.
+ */
+public final class CertPathValidationService {
+	private static final Logger s_logger = LoggerFactory.getLogger(CertPathValidationService.class);
+
+	/** Default bound, the certificates of about twenty cards checked against a few policy sets */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	/** Default validation time bucket, one hour */
+	public static final long DEFAULT_TIME_BUCKET_MILLIS = 60L * 60L * 1000L;
+
+	private static final CertPathValidationService INSTANCE = new CertPathValidationService(DEFAULT_MAX_ENTRIES,
+			DEFAULT_TIME_BUCKET_MILLIS);
+
+	static {
+		System.setProperty("com.sun.security.enableAIAcaIssuers", String.valueOf(true));
+	}
+
+	/**
+	 * The outcome of building a path
+	 */
+	public static final class Verdict {
+		private final boolean m_valid;
+		private final String m_message;
+
+		Verdict(boolean valid, String message) {
+			m_valid = valid;
+			m_message = message;
+		}
+
+		public boolean isValid() {
+			return m_valid;
+		}
+
+		/**
+		 * @return the path that was built, or the reason no path could be built
+		 */
+		public String getMessage() {
+			return m_message;
+		}
+	}
+
+	private final long m_timeBucketMillis;
+	private final Map<String, KeyStore> m_keyStores = new HashMap<String, KeyStore>();
+	private final Map<String, PKIXBuilderParameters> m_templates = new HashMap<String, PKIXBuilderParameters>();
+	private final LinkedHashMap<String, Verdict> m_verdicts;
+	private long m_hits;
+	private long m_misses;
+
+	/**
+	 * @param maxEntries number of verdicts to keep
+	 * @param timeBucketMillis length of the periods within which a verdict holds
+	 */
+	public CertPathValidationService(final int maxEntries, long timeBucketMillis) {
+		m_timeBucketMillis = timeBucketMillis;
+		m_verdicts = new LinkedHashMap<String, Verdict>(32, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Verdict> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public static CertPathValidationService getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets a JKS key store from the classpath, loading it the first time it is asked for. The key
+	 * store is shared and must not be modified.
+	 *
+	 * @param keyStoreName resource name of the key store
+	 * @param password key store password
+	 * @return the key store, or null if it could not be loaded
+	 */
+	public synchronized KeyStore getKeyStore(String keyStoreName, String password) {
+		String key = keyStoreName + "\n" + password;
+		if (m_keyStores.containsKey(key)) {
+			return m_keyStores.get(key);
+		}
+		KeyStore ks = null;
+		try (InputStream is = CertPathValidationService.class.getClassLoader().getResourceAsStream(keyStoreName)) {
+			if (is == null) {
+				s_logger.error("Can't open '{}'", keyStoreName);
+			} else {
+				ks = KeyStore.getInstance("JKS");
+				ks.load(is, password.toCharArray());
+			}
+		} catch (KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException e) {
+			s_logger.error("Can't load key store '{}': {}", keyStoreName, e.getMessage());
+			ks = null;
+		}
+		m_keyStores.put(key, ks);
+		return ks;
+	}
+
+	/**
+	 * Builds a path from a certificate to a trust anchor under a set of initial policies at the
+	 * current time, or returns the verdict of an earlier build of the same path in the same time
+	 * bucket
+	 *
+	 * @param eeCert end entity certificate
+	 * @param certs intermediate certificates that may be used in the path, or null
+	 * @param trustAnchorCert trust anchor certificate
+	 * @param policyOids initial policy OIDs, one of which must be valid for the path
+	 * @param cpb the builder to use
+	 * @return the verdict
+	 */
+	public Verdict validate(X509Certificate eeCert, List<X509Certificate> certs, X509Certificate trustAnchorCert,
+			Set<String> policyOids, CertPathBuilder cpb) {
+		long now = System.currentTimeMillis();
+		long bucketStart = now / m_timeBucketMillis * m_timeBucketMillis;
+		long bucketEnd = bucketStart + m_timeBucketMillis;
+		String anchorKey;
+		String key;
+		try {
+			anchorKey = fingerprint(trustAnchorCert);
+			StringBuilder sb = new StringBuilder(fingerprint(eeCert));
+			if (certs != null) {
+				for (X509Certificate c : certs) {
+					sb.append(',').append(fingerprint(c));
+				}
+			}
+			sb.append('|').append(anchorKey).append('|').append(new TreeSet<String>(policyOids)).append('|')
+					.append(cpb.getProvider().getName()).append('|').append(bucketStart);
+			key = sb.toString();
+		} catch (CertificateEncodingException e) {
+			s_logger.error("Can't encode certificate: {}", e.getMessage());
+			return new Verdict(false, e.getMessage());
+		}
+
+		if (changesWithin(eeCert, bucketStart, bucketEnd) || changesWithin(trustAnchorCert, bucketStart, bucketEnd)
+				|| (certs != null && certs.stream().anyMatch(c -> changesWithin(c, bucketStart, bucketEnd)))) {
+			s_logger.debug("A certificate becomes valid or expires within the time bucket, not memoizing its path");
+			synchronized (this) {
+				m_misses++;
+			}
+			return build(eeCert, certs, getTemplate(anchorKey, trustAnchorCert), policyOids, cpb, new Date(now));
+		}
+
+		Verdict verdict;
+		synchronized (this) {
+			verdict = m_verdicts.get(key);
+			if (verdict != null) {
+				m_hits++;
+				return verdict;
+			}
+			m_misses++;
+		}
+		verdict = build(eeCert, certs, getTemplate(anchorKey, trustAnchorCert), policyOids, cpb, new Date(now));
+		synchronized (this) {
+			m_verdicts.put(key, verdict);
+		}
+		return verdict;
+	}
+
+	// Whether the certificate's notBefore or notAfter falls within [start, end)
+	private static boolean changesWithin(X509Certificate cert, long start, long end) {
+		long notBefore = cert.getNotBefore().getTime();
+		long notAfter = cert.getNotAfter().getTime();
+		return (notBefore >= start && notBefore < end) || (notAfter >= start && notAfter < end);
+	}
+
+	// The parameters shared by every path to a trust anchor
+	private synchronized PKIXBuilderParameters getTemplate(String anchorKey, X509Certificate trustAnchorCert) {
+		PKIXBuilderParameters template = m_templates.get(anchorKey);
+		if (template == null) {
+			try {
+				Set<TrustAnchor> trustAnchors = Collections.singleton(new TrustAnchor(trustAnchorCert, null));
+				template = new PKIXBuilderParameters(trustAnchors, null);
+			} catch (InvalidAlgorithmParameterException e) {
+				// only thrown for an empty trust anchor set
+				throw new IllegalStateException(e);
+			}
+			template.setRevocationEnabled(false);
+			template.setMaxPathLength(10);
+			template.setExplicitPolicyRequired(true);
+			template.setPolicyMappingInhibited(false);
+			m_templates.put(anchorKey, template);
+		}
+		return template;
+	}
+
+	private static Verdict build(X509Certificate eeCert, List<X509Certificate> certs, PKIXBuilderParameters template,
+			Set<String> policyOids, CertPathBuilder cpb, Date time) {
+		try {
+			List<X509Certificate> certList = new ArrayList<X509Certificate>();
+			certList.add(eeCert);
+			if (certs != null) {
+				certList.addAll(certs);
+			}
+			X509CertSelector eeCertSelector = new X509CertSelector();
+			eeCertSelector.setCertificate(eeCert);
+
+			PKIXBuilderParameters params = (PKIXBuilderParameters) template.clone();
+			params.setTargetCertConstraints(eeCertSelector);
+			params.addCertStore(CertStore.getInstance("Collection", new CollectionCertStoreParameters(certList)));
+			// the signature provider is left to the JCA: the Sun builder's own provider has no RSA or ECDSA
+			params.setInitialPolicies(policyOids);
+			params.setDate(time);
+
+			CertPathBuilderResult cpbResult = cpb.build(params);
+			s_logger.info("Build passed, path contents: {}", cpbResult.getCertPath());
+			return new Verdict(cpbResult.getCertPath() != null, String.valueOf(cpbResult.getCertPath()));
+		} catch (CertPathBuilderException | InvalidAlgorithmParameterException | NoSuchAlgorithmException e) {
+			s_logger.error("Path build failed: {}", e.getMessage());
+			return new Verdict(false, e.getMessage());
+		}
+	}
+
+	private static String fingerprint(X509Certificate cert) throws CertificateEncodingException {
+		MessageDigest md;
+		try {
+			md = ContainerDigest.getMessageDigest("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		return HexUtil.toHexString(md.digest(cert.getEncoded()));
+	}
+
+	/**
+	 * Removes every verdict
+	 */
+	public synchronized void clear() {
+		m_verdicts.clear();
+	}
+
+	public synchronized int getSize() {
+		return m_verdicts.size();
+	}
+
+	public synchronized long getHitCount() {
+		return m_hits;
+	}
+
+	public synchronized long getMissCount() {
+		return m_misses;
+	}
+}
@@ -0,0 +1,166 @@
+package gov.gsa.pivconformance.conformancelib.utilities;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.AbstractPIVApplication;
+import gov.gsa.pivconformance.cardlib.card.client.CardHandle;
+import gov.gsa.pivconformance.cardlib.card.client.DecodedObjectCache;
+import gov.gsa.pivconformance.cardlib.card.client.MiddlewareStatus;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObjectFactory;
+import gov.gsa.pivconformance.cardlib.card.client.SecurityObject;
+
+/**
+ * Every container of a card, read in one sweep and decoded once (through {@link DecodedObjectCache}),
+ * so that atoms can share them instead of reading and decoding each container again. Snapshots are
+ * immutable, and the decoded objects they hold are shared and must not be modified. A snapshot taken
+ * before login leaves out the PIN-protected containers, and {@link #read(AbstractPIVApplication,
+ * CardHandle, boolean, ContainerSnapshot)} adds them to a new snapshot once the card is logged in.
+ */
+public final class ContainerSnapshot {
+	private static final Logger s_logger = LoggerFactory.getLogger(ContainerSnapshot.class);
+
+	private final Map<String, Entry> m_entries;
+	private final boolean m_authenticated;
+	private final ContainerVerification m_verification;
+
+	/**
+	 * The outcome of reading and decoding one container
+	 */
+	public static final class Entry {
+		private final MiddlewareStatus m_status;
+		private final PIVDataObject m_dataObject;
+		private final boolean m_decoded;
+
+		Entry(MiddlewareStatus status, PIVDataObject dataObject, boolean decoded) {
+			m_status = status;
+			m_dataObject = dataObject;
+			m_decoded = decoded;
+		}
+
+		/**
+		 * Gets the result of GET DATA
+		 *
+		 * @return the status returned by pivGetData
+		 */
+		public MiddlewareStatus getStatus() {
+			return m_status;
+		}
+
+		/**
+		 * Gets the data object, which is shared by every atom that uses the snapshot
+		 *
+		 * @return the data object
+		 */
+		public PIVDataObject getDataObject() {
+			return m_dataObject;
+		}
+
+		/**
+		 * Indicates whether the container decoded
+		 *
+		 * @return the result of decode()
+		 */
+		public boolean isDecoded() {
+			return m_decoded;
+		}
+	}
+
+	private ContainerSnapshot(Map<String, Entry> entries, boolean authenticated, ContainerVerification verification) {
+		m_entries = Collections.unmodifiableMap(entries);
+		m_authenticated = authenticated;
+		m_verification = verification;
+	}
+
+	/**
+	 * Reads and decodes every container in {@link APDUConstants#AllContainers()}, in order, so that
+	 * the CHUID signer is known before the containers it signs are decoded, then starts verifying
+	 * their signatures in the background. The Security Object is read first, so that the containers
+	 * it covers, and only those, are digested with its algorithm as they are read.
+	 *
+	 * @param piv PIV application, already selected
+	 * @param ch card handle
+	 * @param authenticated true if the card is logged in, so PIN-protected containers can be read
+	 * @param previous an earlier snapshot of the same card whose entries are reused, or null
+	 * @return the snapshot
+	 */
+	public static ContainerSnapshot read(AbstractPIVApplication piv, CardHandle ch, boolean authenticated, ContainerSnapshot previous) {
+		List<String> oids = APDUConstants.AllContainers();
+		Map<String, Entry> entries = new LinkedHashMap<String, Entry>(oids.size() * 2);
+		Entry securityObject = previous != null ? previous.get(APDUConstants.SECURITY_OBJECT_OID) : null;
+		if (securityObject == null) {
+			securityObject = readEntry(piv, ch, APDUConstants.SECURITY_OBJECT_OID);
+		}
+		if (securityObject.isDecoded() && securityObject.getDataObject() instanceof SecurityObject) {
+			SecurityObject so = (SecurityObject) securityObject.getDataObject();
+			ch.setValueDigests(so.getDigestAlgorithmName(), so.getContainerIDList().values());
+		}
+		for (String oid : oids) {
+			Entry e = previous != null ? previous.get(oid) : null;
+			if (oid.equals(APDUConstants.SECURITY_OBJECT_OID)) {
+				e = securityObject;
+			} else if (e == null && (authenticated || !APDUConstants.isProtectedContainer(oid))) {
+				e = readEntry(piv, ch, oid);
+			}
+			if (e != null) {
+				entries.put(oid, e);
+			}
+		}
+		ContainerVerification verification = ContainerVerification.start(entries, previous != null ? previous.m_verification : null);
+		return new ContainerSnapshot(entries, authenticated, verification);
+	}
+
+	// Reads and decodes one container
+	private static Entry readEntry(AbstractPIVApplication piv, CardHandle ch, String oid) {
+		PIVDataObject o = PIVDataObjectFactory.createDataObjectForOid(oid);
+		MiddlewareStatus status = piv.pivGetData(ch, oid, o);
+		boolean decoded = false;
+		try {
+			o = DecodedObjectCache.getInstance().decode(ch.getCardIdentity(), o);
+			decoded = o.isDecoded();
+		} catch (Exception ex) {
+			s_logger.error("Exception decoding {}: {}", APDUConstants.oidNameMap.get(oid), ex.getMessage());
+		}
+		s_logger.debug("Read {}: {}{}", APDUConstants.oidNameMap.get(oid), status, decoded ? "" : ", did not decode");
+		return new Entry(status, o, decoded);
+	}
+
+	/**
+	 * Gets a container
+	 *
+	 * @param oid container OID
+	 * @return the container, or null if it was not read
+	 */
+	public Entry get(String oid) {
+		return m_entries.get(oid);
+	}
+
+	/**
+	 * Indicates whether the snapshot was taken while the card was logged in
+	 *
+	 * @return true if PIN-protected containers were read
+	 */
+	public boolean isAuthenticated() {
+		return m_authenticated;
+	}
+
+	/**
+	 * Gets the signature and hash checks of the containers
+	 *
+	 * @return the checks started when the snapshot was read
+	 */
+	public ContainerVerification getVerification() {
+		return m_verification;
+	}
+
+	public int size() {
+		return m_entries.size();
+	}
+}
@@ -0,0 +1,227 @@
+package gov.gsa.pivconformance.conformancelib.utilities;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.CardCapabilityContainer;
+import gov.gsa.pivconformance.cardlib.card.client.CardHolderBiometricData;
+import gov.gsa.pivconformance.cardlib.card.client.CardHolderUniqueIdentifier;
+import gov.gsa.pivconformance.cardlib.card.client.ContainerDigest;
+import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
+import gov.gsa.pivconformance.cardlib.card.client.DiscoveryObject;
+import gov.gsa.pivconformance.cardlib.card.client.KeyHistoryObject;
+import gov.gsa.pivconformance.cardlib.card.client.PIVDataObject;
+import gov.gsa.pivconformance.cardlib.card.client.PrintedInformation;
+import gov.gsa.pivconformance.cardlib.card.client.SecurityObject;
+import gov.gsa.pivconformance.cardlib.card.client.SignatureVerifier;
+import gov.gsa.pivconformance.cardlib.card.client.SignedPIVDataObject;
+
+/**
+ * The signature and Security Object hash checks of the containers in a {@link ContainerSnapshot}.
+ * They are submitted to a shared ForkJoinPool as soon as the containers are read, so the signatures
+ * of a card are verified on several cores at once while the atoms run, and an atom only waits for
+ * the verdict on the object it checks.
+ *
+ * Verdicts belong to the data object that was verified: an atom holding any other object gets
+ * null and verifies it itself. The checks do not modify the data objects, which the atoms read at
+ * the same time; the signer certificate found by a signature check is recorded on its object by
+ * the thread that takes the verdict. The checks log with the MDC of the thread that submitted them.
+ */
+public final class ContainerVerification {
+	private static final Logger s_logger = LoggerFactory.getLogger(ContainerVerification.class);
+
+	private static final ForkJoinPool s_pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	// A check submitted for one data object
+	private static final class Pending<T> {
+		final PIVDataObject m_dataObject;
+		final ForkJoinTask<T> m_verdict;
+
+		Pending(PIVDataObject dataObject, ForkJoinTask<T> verdict) {
+			m_dataObject = dataObject;
+			m_verdict = verdict;
+		}
+
+		T getVerdict(PIVDataObject o) {
+			return o == m_dataObject ? m_verdict.join() : null;
+		}
+	}
+
+	private final Map<String, Pending<SignatureVerifier.Verdict>> m_signatures;
+	private final Pending<Boolean> m_hashes;
+
+	private ContainerVerification(Map<String, Pending<SignatureVerifier.Verdict>> signatures, Pending<Boolean> hashes) {
+		m_signatures = signatures;
+		m_hashes = hashes;
+	}
+
+	/**
+	 * Submits the checks of every signed container, and of the Security Object hashes once every
+	 * container they cover has been read. Checks already submitted for the same objects by the
+	 * previous snapshot of the card are reused.
+	 *
+	 * This must be called on the thread running the card, where the card's CHUID signer is known.
+	 *
+	 * @param entries the containers of a snapshot, keyed by OID
+	 * @param previous the checks of the previous snapshot of the same card, or null
+	 * @return the submitted checks
+	 */
+	static ContainerVerification start(Map<String, ContainerSnapshot.Entry> entries, ContainerVerification previous) {
+		// resolved by ChuidSignerResolver before the containers were read
+		final X509Certificate chuidSignerCert = DataModelSingleton.getInstance().getChuidSignerCert();
+		Map<String, Pending<SignatureVerifier.Verdict>> signatures = new HashMap<String, Pending<SignatureVerifier.Verdict>>();
+		for (Map.Entry<String, ContainerSnapshot.Entry> e : entries.entrySet()) {
+			PIVDataObject o = e.getValue().getDataObject();
+			if (!e.getValue().isDecoded() || !(o instanceof SignedPIVDataObject) || !o.isSigned()) {
+				continue;
+			}
+			Pending<SignatureVerifier.Verdict> p = previous != null ? previous.m_signatures.get(e.getKey()) : null;
+			if (p == null || p.m_dataObject != o) {
+				final SignedPIVDataObject so = (SignedPIVDataObject) o;
+				p = new Pending<SignatureVerifier.Verdict>(o,
+						s_pool.submit(withMdc(() -> SignatureVerifier.getInstance().check(so, chuidSignerCert))));
+			}
+			signatures.put(e.getKey(), p);
+		}
+
+		Pending<Boolean> hashes = null;
+		ContainerSnapshot.Entry soEntry = entries.get(APDUConstants.SECURITY_OBJECT_OID);
+		if (soEntry != null && soEntry.isDecoded() && soEntry.getDataObject() instanceof SecurityObject) {
+			final SecurityObject so = (SecurityObject) soEntry.getDataObject();
+			if (previous != null && previous.m_hashes != null && previous.m_hashes.m_dataObject == so) {
+				hashes = previous.m_hashes;
+			} else {
+				final Map<String, PIVDataObject> covered = getCoveredContainers(so, entries);
+				if (covered != null) {
+					hashes = new Pending<Boolean>(so, s_pool.submit(withMdc(() -> so.verifyDigests(getDigests(so, covered)))));
+				}
+			}
+		}
+		s_logger.debug("Submitted {} signature checks{}", signatures.size(), hashes != null ? " and the Security Object hashes" : "");
+		return new ContainerVerification(signatures, hashes);
+	}
+
+	// Runs a check with the MDC of the submitting thread, so that its log lines name the card's reader
+	private static <T> Callable<T> withMdc(final Callable<T> check) {
+		final Map<String, String> mdc = MDC.getCopyOfContextMap();
+		return () -> {
+			Map<String, String> saved = MDC.getCopyOfContextMap();
+			if (mdc != null) {
+				MDC.setContextMap(mdc);
+			} else {
+				MDC.clear();
+			}
+			try {
+				return check.call();
+			} finally {
+				if (saved != null) {
+					MDC.setContextMap(saved);
+				} else {
+					MDC.clear();
+				}
+			}
+		};
+	}
+
+	// Every container the Security Object covers, or null if one was not read
+	private static Map<String, PIVDataObject> getCoveredContainers(SecurityObject so, Map<String, ContainerSnapshot.Entry> entries) {
+		if (so.getContainerIDList() == null) {
+			return null;
+		}
+		Map<String, PIVDataObject> covered = new HashMap<String, PIVDataObject>();
+		for (String oid : so.getContainerIDList().values()) {
+			ContainerSnapshot.Entry e = entries.get(oid);
+			if (e == null || !e.isDecoded()) {
+				return null;
+			}
+			covered.put(oid, e.getDataObject());
+		}
+		return covered;
+	}
+
+	// The digest of the hashed content of each container. The digest computed as the container was
+	// read is used when the hashed content is exactly the container's value, as it usually is.
+	private static Map<String, byte[]> getDigests(SecurityObject so, Map<String, PIVDataObject> covered) {
+		String algorithm = so.getDigestAlgorithmName();
+		Map<String, byte[]> digests = new HashMap<String, byte[]>();
+		int streamed = 0;
+		for (Map.Entry<String, PIVDataObject> e : covered.entrySet()) {
+			PIVDataObject o = e.getValue();
+			byte[] content = getHashedContent(o);
+			if (content == null || algorithm == null) {
+				continue;
+			}
+			byte[] digest;
+			try {
+				digest = ContainerDigest.digestContent(algorithm, content, o);
+			} catch (NoSuchAlgorithmException ex) {
+				s_logger.error("Error creating message digest: {}", ex.getMessage());
+				continue;
+			}
+			if (digest == o.getValueDigest(algorithm)) {
+				streamed++;
+			}
+			digests.put(e.getKey(), digest);
+		}
+		s_logger.debug("Checking Security Object hashes, {} of {} digests computed as the containers were read", streamed, digests.size());
+		return digests;
+	}
+
+	/**
+	 * Gets the part of a container that the Security Object hashes
+	 *
+	 * @param o the decoded container
+	 * @return the hashed content
+	 */
+	public static byte[] getHashedContent(PIVDataObject o) {
+		if (o instanceof CardHolderUniqueIdentifier) {
+			return ((CardHolderUniqueIdentifier) o).getChuidContainer();
+		} else if (o instanceof CardHolderBiometricData) {
+			return ((CardHolderBiometricData) o).getCbeffContainer();
+		} else if (o instanceof CardCapabilityContainer) {
+			return ((CardCapabilityContainer) o).getSignedContent();
+		} else if (o instanceof PrintedInformation) {
+			return ((PrintedInformation) o).getSignedContent();
+		} else if (o instanceof DiscoveryObject) {
+			return ((DiscoveryObject) o).getSignedContent();
+		} else if (o instanceof KeyHistoryObject) {
+			return ((KeyHistoryObject) o).getTlvBuf();
+		}
+		return o.getBytes();
+	}
+
+	/**
+	 * Gets the verdict on a signature, waiting for it if it is still being computed, and records
+	 * the signer certificate found by the check on the object unless it is shared by the decoded
+	 * object cache (see {@link SignatureVerifier.Verdict#applyTo(SignedPIVDataObject)})
+	 *
+	 * @param o the data object
+	 * @return the verdict, or null if this object was not verified here
+	 */
+	public Boolean getSignatureVerdict(SignedPIVDataObject o) {
+		Pending<SignatureVerifier.Verdict> p = m_signatures.get(o.getOID());
+		SignatureVerifier.Verdict verdict = p != null ? p.getVerdict(o) : null;
+		return verdict != null ? verdict.applyTo(o) : null;
+	}
+
+	/**
+	 * Gets the verdict on the data group hashes of a Security Object, waiting for it if it is still
+	 * being computed
+	 *
+	 * @param so the Security Object
+	 * @return the verdict, or null if its hashes were not checked here
+	 */
+	public Boolean getHashVerdict(SecurityObject so) {
+		return m_hashes != null ? m_hashes.getVerdict(so) : null;
+	}
+}
@@ -56,27 +56,13 @@ public class Validator {
     }
 
     /**
-     * Sets the validator's KeyStore to keyStoreName
+     * Sets the validator's KeyStore to keyStoreName. The KeyStore is loaded once per run and shared.
      *
      * @param keyStoreName the path to the KeyStore file
      */
 
     public void setKeyStore(String keyStoreName, String password) {
-        InputStream is = getFileFromResourceAsStream(Validator.class, keyStoreName);
-        KeyStore ks = null;
-        try {
-            ks = KeyStore.getInstance("JKS");
-            ks.load(is, password.toCharArray());
-        } catch (KeyStoreException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (CertificateException e) {
-            e.printStackTrace();
-        }
-        m_keystore = ks;
+        m_keystore = CertPathValidationService.getInstance().getKeyStore(keyStoreName, password);
     }
 
     /**
@@ -325,76 +311,50 @@ public class Validator {
     }
 
     /**
-     * Determines if a valid certificate path can be built to the specified trust anchor using the given policy OIDs
+     * Determines if a valid certificate path can be built to the specified trust anchor using the given policy OIDs.
+     * Verdicts are shared through the {@link CertPathValidationService}.
      * @param eeCert end entity cert
-     * @param policyOids comma-separated string of policy OIDs
+     * @param policyOids policy OIDs separated by '|', ',' or white space
      * @param trustAnchorCert
      * @return true if the certificate path was built, false if a path cannot be built
      */
     public boolean isValid(X509Certificate eeCert, String policyOids, X509Certificate trustAnchorCert) {
         // CertiPath monitor creates a CA bundle file which we can use for trust anchors
         try {
-            List<X509Certificate> certList = new ArrayList<>();
-            certList.add(eeCert);
-            X509CertSelector eeCertSelector = new X509CertSelector();
-            eeCertSelector.setCertificate(eeCert);
-            TrustAnchor trustAnchor = new TrustAnchor(trustAnchorCert, null);
-
+            List<X509Certificate> certList = null;
             // ---------------------------------------------------------------------------------- //
             // Uncomment to use Bouncy Castle Provider - Requires FPKI Crawler's output file
             // This output file contains a series of issuing CA's trusted by a given trust anchor
             //Security.addProvider(new BouncyCastleProvider());
-            // Create CertPathBuilder that implements the "PKIX" algorithm
-            // This is now set during instantiation CertPathBuilder cpb = CertPathBuilder.getInstance("PKIX");//, "BC");
             // Open an input stream to the bundle file
             //
             if (m_useCABundle ==  true) {
                 if (loadCABundle(m_monitorUrlString)) {
                     FileInputStream fis = new FileInputStream(m_monitorFileName);
-                    if (fis != null) {
-                        // Instantiate a CertificateFactory for X.509
-                        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-                        // Extract the certification path from the PKCS7 SignedData structure
-                        CertPath cp = cf.generateCertPath(fis, "PKCS7");
-                        List<X509Certificate> certs = (List<X509Certificate>) cp.getCertificates();
-                        certList.addAll(certs);
-                        //cpb = CertPathBuilder.getInstance("PKIX");//, new BouncyCastleProvider());
-                    } else {
-                        s_logger.warn(m_monitorUrlString + " was not found");
-                    }
+                    // Instantiate a CertificateFactory for X.509
+                    CertificateFactory cf = CertificateFactory.getInstance("X.509");
+                    // Extract the certification path from the PKCS7 SignedData structure
+                    CertPath cp = cf.generateCertPath(fis, "PKCS7");
+                    certList = new ArrayList<>((List<X509Certificate>) cp.getCertificates());
                 }
             }
             //
             // ---------------------------------------------------------------------------------- //
 
-            CertStore certStore = CertStore.getInstance("Collection", new CollectionCertStoreParameters(certList));
-            Set<TrustAnchor> trustAnchors = new HashSet<>();
-            trustAnchors.add(trustAnchor);
-            PKIXBuilderParameters params = new PKIXBuilderParameters(trustAnchors, eeCertSelector);
-            params.addCertStore(certStore);
-            params.setRevocationEnabled(false);
-            params.setMaxPathLength(10);
-            params.setSigProvider(m_cpb.getProvider().getName());
+            if (m_cpb == null) {
+                setCpb("Sun");
+            }
             // Defining required Policy OID
-            HashSet<String> policies = new HashSet<>();
-            String[] allowedPolicies = policyOids.split("|");
-            policies = new HashSet<>(Arrays.asList(allowedPolicies));
-            params.setInitialPolicies(policies);
-            params.setExplicitPolicyRequired(true);
-            params.setPolicyMappingInhibited(false);
-
-            System.setProperty("com.sun.security.enableAIAcaIssuers", String.valueOf(true));
-            CertPathBuilderResult cpbResult = m_cpb.build(params);
-            s_logger.debug("cpb.build() returned " + cpbResult.toString());
-            CertPath certPath = cpbResult.getCertPath();
-            s_logger.info("Build passed, path contents: " + certPath);
-            return certPath != null;
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (InvalidAlgorithmParameterException e) {
-            e.printStackTrace();
-        } catch (CertPathBuilderException e) {
-            e.printStackTrace();
+            Set<String> policies = new HashSet<>();
+            for (String oid : policyOids.split("[\\s,|\\[\\]]+")) {
+                if (!oid.isEmpty()) {
+                    policies.add(oid);
+                }
+            }
+            CertPathValidationService.Verdict verdict = CertPathValidationService.getInstance()
+                    .validate(eeCert, certList, trustAnchorCert, policies, m_cpb);
+            s_logger.debug("Path to " + trustAnchorCert.getSubjectX500Principal().getName() + ": " + verdict.getMessage());
+            return verdict.isValid();
         } catch (Exception ex) {
             s_logger.error("Path build failed: " + ex.getMessage());
         }
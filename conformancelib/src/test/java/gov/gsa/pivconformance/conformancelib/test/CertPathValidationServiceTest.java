@@ -0,0 +1,128 @@
+package gov.gsa.pivconformance.conformancelib.test;
+
+import gov.gsa.pivconformance.conformancelib.utilities.CertPathValidationService;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CertificatePolicies;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.asn1.x509.PolicyInformation;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Security;
+import java.security.cert.CertPathBuilder;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CertPathValidationServiceTest {
+    private static final String COMMON_AUTHENTICATION = "2.16.840.1.101.3.2.1.3.13";
+    private static final String COMMON_HARDWARE = "2.16.840.1.101.3.2.1.3.7";
+
+    private static X509Certificate s_root;
+    private static X509Certificate s_leaf;
+    // Issued a minute ago, for ten minutes
+    private static X509Certificate s_newLeaf;
+
+    @BeforeAll
+    static void createPath() throws Exception {
+        Security.addProvider(new BouncyCastleProvider());
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair rootKeys = kpg.generateKeyPair();
+        KeyPair leafKeys = kpg.generateKeyPair();
+        Date notBefore = new Date(System.currentTimeMillis() - 2 * 86400000L);
+        Date notAfter = new Date(System.currentTimeMillis() + 2 * 86400000L);
+        X500Name rootName = new X500Name("CN=Test root CA");
+
+        JcaX509v3CertificateBuilder root = new JcaX509v3CertificateBuilder(rootName, BigInteger.ONE, notBefore, notAfter,
+                rootName, rootKeys.getPublic());
+        root.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        root.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+        s_root = new JcaX509CertificateConverter()
+                .getCertificate(root.build(new JcaContentSignerBuilder("SHA256withRSA").build(rootKeys.getPrivate())));
+
+        JcaX509v3CertificateBuilder leaf = new JcaX509v3CertificateBuilder(rootName, BigInteger.TWO, notBefore, notAfter,
+                new X500Name("CN=Test PIV authentication"), leafKeys.getPublic());
+        leaf.addExtension(Extension.certificatePolicies, false,
+                new CertificatePolicies(new PolicyInformation(new ASN1ObjectIdentifier(COMMON_AUTHENTICATION))));
+        s_leaf = new JcaX509CertificateConverter()
+                .getCertificate(leaf.build(new JcaContentSignerBuilder("SHA256withRSA").build(rootKeys.getPrivate())));
+
+        JcaX509v3CertificateBuilder newLeaf = new JcaX509v3CertificateBuilder(rootName, BigInteger.valueOf(3),
+                new Date(System.currentTimeMillis() - 60000L), new Date(System.currentTimeMillis() + 600000L), new X500Name("CN=Test new PIV authentication"),
+                leafKeys.getPublic());
+        newLeaf.addExtension(Extension.certificatePolicies, false,
+                new CertificatePolicies(new PolicyInformation(new ASN1ObjectIdentifier(COMMON_AUTHENTICATION))));
+        s_newLeaf = new JcaX509CertificateConverter()
+                .getCertificate(newLeaf.build(new JcaContentSignerBuilder("SHA256withRSA").build(rootKeys.getPrivate())));
+    }
+
+    @DisplayName("Path verdicts, failures included, are computed once per policy set")
+    @Test
+    void verdictsAreCached() throws Exception {
+        CertPathValidationService service = new CertPathValidationService(8, CertPathValidationService.DEFAULT_TIME_BUCKET_MILLIS);
+        CertPathBuilder cpb = CertPathBuilder.getInstance("PKIX");
+
+        CertPathValidationService.Verdict valid = service.validate(s_leaf, null, s_root,
+                Collections.singleton(COMMON_AUTHENTICATION), cpb);
+        assertTrue(valid.isValid(), valid.getMessage());
+        assertSame(valid, service.validate(s_leaf, null, s_root,
+                new HashSet<String>(Arrays.asList(COMMON_AUTHENTICATION)), cpb));
+
+        CertPathValidationService.Verdict invalid = service.validate(s_leaf, null, s_root,
+                Collections.singleton(COMMON_HARDWARE), cpb);
+        assertFalse(invalid.isValid());
+        assertSame(invalid, service.validate(s_leaf, null, s_root, Collections.singleton(COMMON_HARDWARE), cpb));
+
+        assertEquals(2, service.getSize());
+        assertEquals(2, service.getHitCount());
+        assertEquals(2, service.getMissCount());
+        service.clear();
+        assertEquals(0, service.getSize());
+    }
+
+    @DisplayName("Paths are validated at the current time, and not memoized while a certificate's validity changes")
+    @Test
+    void validityChangesWithinBucket() throws Exception {
+        // A day-long bucket holds the new certificate's notBefore or notAfter
+        CertPathValidationService service = new CertPathValidationService(8, 86400000L);
+        CertPathBuilder cpb = CertPathBuilder.getInstance("PKIX");
+
+        CertPathValidationService.Verdict verdict = service.validate(s_newLeaf, null, s_root,
+                Collections.singleton(COMMON_AUTHENTICATION), cpb);
+        assertTrue(verdict.isValid(), verdict.getMessage());
+        assertTrue(service.validate(s_newLeaf, null, s_root, Collections.singleton(COMMON_AUTHENTICATION), cpb).isValid());
+        assertEquals(0, service.getSize());
+        assertEquals(0, service.getHitCount());
+        assertEquals(2, service.getMissCount());
+    }
+
+    @DisplayName("Key stores are loaded once")
+    @Test
+    void keyStoreIsShared() {
+        CertPathValidationService service = CertPathValidationService.getInstance();
+        assertSame(service.getKeyStore("x509-certs/cacerts.keystore", "changeit"),
+                service.getKeyStore("x509-certs/cacerts.keystore", "changeit"));
+        assertNull(service.getKeyStore("x509-certs/missing.keystore", "changeit"));
+    }
+}
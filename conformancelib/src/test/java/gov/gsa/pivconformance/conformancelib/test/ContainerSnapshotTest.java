@@ -0,0 +1,117 @@
+package gov.gsa.pivconformance.conformancelib.test;
+
+import gov.gsa.pivconformance.cardlib.card.client.APDUConstants;
+import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
+import gov.gsa.pivconformance.cardlib.card.client.MiddlewareStatus;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCard;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedCardTerminal;
+import gov.gsa.pivconformance.cardlib.utils.SimulatedContainers;
+import gov.gsa.pivconformance.conformancelib.configuration.CardSettingsSingleton;
+import gov.gsa.pivconformance.conformancelib.configuration.CardSettingsSingleton.LOGIN_STATUS;
+import gov.gsa.pivconformance.conformancelib.utilities.AtomHelper;
+import gov.gsa.pivconformance.conformancelib.utilities.CardUtils;
+import gov.gsa.pivconformance.conformancelib.utilities.ContainerSnapshot;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+
+import java.security.Security;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ContainerSnapshotTest {
+    private CardSettingsSingleton m_css;
+
+    @BeforeAll
+    static void addProvider() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    // The Card Capability Container and Key History Object are left off the card
+    @BeforeEach
+    void setUpCard() throws Exception {
+        Map<String, byte[]> containers = new HashMap<>();
+        containers.put(APDUConstants.DISCOVERY_OBJECT_OID, SimulatedContainers.discovery());
+        containers.put(APDUConstants.X509_CERTIFICATE_FOR_PIV_AUTHENTICATION_OID, SimulatedContainers.container(300));
+        containers.put(APDUConstants.CARDHOLDER_FINGERPRINTS_OID, SimulatedContainers.container(300));
+        SimulatedCardTerminal t = new SimulatedCardTerminal("Simulated", new SimulatedCard(null, containers, new HashMap<>()));
+
+        m_css = CardSettingsSingleton.newInstance();
+        m_css.setTerminal(t);
+        m_css.setGlobalPin(SimulatedCard.DEFAULT_PIN);
+        CardSettingsSingleton.bind(m_css);
+        DataModelSingleton.bind(DataModelSingleton.newInstance());
+        CardUtils.setUpPivAppHandleInSingleton();
+    }
+
+    @AfterEach
+    void unbind() {
+        CardSettingsSingleton.bind(null);
+        DataModelSingleton.bind(null);
+    }
+
+    @DisplayName("PIN-protected containers are added to a new snapshot once the card is logged in")
+    @Test
+    void unauthenticatedThenAuthenticated() throws Exception {
+        ContainerSnapshot first = CardUtils.prefetchContainersInSingleton();
+        assertFalse(first.isAuthenticated());
+        assertSame(first, CardUtils.prefetchContainersInSingleton());
+        assertNull(first.get(APDUConstants.CARDHOLDER_FINGERPRINTS_OID));
+        assertEquals(MiddlewareStatus.PIV_OK, first.get(APDUConstants.DISCOVERY_OBJECT_OID).getStatus());
+        assertTrue(first.get(APDUConstants.DISCOVERY_OBJECT_OID).isDecoded());
+
+        assertTrue(CardUtils.authenticateInSingleton(true));
+        assertEquals(LOGIN_STATUS.LOGIN_SUCCESS, m_css.getLastLoginStatus());
+        ContainerSnapshot second = CardUtils.prefetchContainersInSingleton();
+        assertNotSame(first, second);
+        assertTrue(second.isAuthenticated());
+        assertSame(second, m_css.getContainerSnapshot());
+        assertEquals(MiddlewareStatus.PIV_OK, second.get(APDUConstants.CARDHOLDER_FINGERPRINTS_OID).getStatus());
+        // containers already read are not read again
+        assertSame(first.get(APDUConstants.DISCOVERY_OBJECT_OID), second.get(APDUConstants.DISCOVERY_OBJECT_OID));
+        assertSame(second, CardUtils.prefetchContainersInSingleton());
+    }
+
+    @DisplayName("Missing containers are NOT_FOUND, and only fail atoms if they are mandatory")
+    @Test
+    void notFound() throws Exception {
+        ContainerSnapshot snapshot = CardUtils.prefetchContainersInSingleton();
+        assertEquals(MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND, snapshot.get(APDUConstants.CARD_CAPABILITY_CONTAINER_OID).getStatus());
+        assertEquals(MiddlewareStatus.PIV_DATA_OBJECT_NOT_FOUND, snapshot.get(APDUConstants.KEY_HISTORY_OBJECT_OID).getStatus());
+
+        AssertionFailedError mandatory = assertThrows(AssertionFailedError.class,
+                () -> AtomHelper.getDataObject(APDUConstants.CARD_CAPABILITY_CONTAINER_OID));
+        assertTrue(mandatory.getCause().getMessage().startsWith("Failed to find "));
+
+        // an optional container is not reported missing, although there is nothing to decode
+        AssertionFailedError optional = assertThrows(AssertionFailedError.class,
+                () -> AtomHelper.getDataObject(APDUConstants.KEY_HISTORY_OBJECT_OID));
+        assertTrue(optional.getCause().getMessage().startsWith("Failed to decode "));
+
+        assertSame(snapshot.get(APDUConstants.DISCOVERY_OBJECT_OID).getDataObject(),
+                AtomHelper.getDataObject(APDUConstants.DISCOVERY_OBJECT_OID));
+    }
+
+    @DisplayName("Resetting the card settings drops the snapshot")
+    @Test
+    void reset() throws Exception {
+        ContainerSnapshot snapshot = CardUtils.prefetchContainersInSingleton();
+        assertSame(snapshot, m_css.getContainerSnapshot());
+        m_css.reset();
+        assertNull(m_css.getContainerSnapshot());
+        assertNull(m_css.getCardHandle());
+    }
+}
@@ -36,7 +36,6 @@ import gov.gsa.pivconformance.cardlib.card.client.DataModelSingleton;
 public class GuiTestExecutionController {
 	private static final Logger s_logger = LoggerFactory.getLogger(GuiTestExecutionController.class);
 	private static final GuiTestExecutionController INSTANCE = new GuiTestExecutionController();
-	private static final String tag30TestId = "8.2.2.1"; // TODO: Fixme
 
 	private TestRunLogController m_trlc;
 	private GuiTestTreePanel m_testTreePanel;
@@ -126,6 +125,7 @@ public class GuiTestExecutionController {
 		m_running = true;
 		GuiRunnerAppController.getInstance().reloadTree();
 		PCSCWrapper pcsc = PCSCWrapper.getInstance();
+		pcsc.resetCounters();
 		DataModelSingleton.getInstance().reset();
 
 		int atomCount = 0;
@@ -150,114 +150,96 @@ public class GuiTestExecutionController {
 		GuiTestListener guiListener = new GuiTestListener();
 		guiListener.setProgressBar(progress);
 
-		/* Workaround to ensure that the tool is primed with the CHUID cert.
-		 * TODO: Create "factory" database with 8.2.2.1 as the only test, open,
-		 * run, then open actual database.
-		 */
-		
-		int passes = 0;
-		
-		do {
-			GuiTestCaseTreeNode curr = (GuiTestCaseTreeNode) root.getFirstChild();
-
-			while(curr != null) {
-				TestCaseModel testCase = curr.getTestCase();
-				boolean runTest = false;
-				String id = testCase.getIdentifier();
-				if (passes % 2 == 1) { // TODO: Fixme
-					runTest = true;
-				} else if (id.compareTo(GuiTestExecutionController.tag30TestId) == 0) {
-					runTest = true;
-				}
-				if (testCase.getTestStatus().equals(TestStatus.TESTCATEGORY)) {
-					// Test categories don't need to be processed
-					runTest = false;
-				}
-				if (runTest) {
-					LauncherDiscoveryRequestBuilder suiteBuilder = LauncherDiscoveryRequestBuilder.request();
-					List<DiscoverySelector> discoverySelectors = new ArrayList<>();
-					List<TestStepModel> steps = testCase.getSteps();
-					for(TestStepModel currentStep : steps) {
-						atomCount++;
-						Class<?> testClass = null;
-						String className = currentStep.getTestClassName();
-						String methodName = currentStep.getTestMethodName();
-						List<String> parameters = currentStep.getParameters();
-						String fqmn = className;
-						try {
-							testClass = Class.forName(className);
-							for(Method m : testClass.getDeclaredMethods()) {
-								if(m.getName().contentEquals(methodName)) {
-									fqmn += "#" + m.getName() + "(";
-									Class<?>[] methodParameters = m.getParameterTypes();
-									int nMethodParameters = 0;
-									for(Class<?> mp : methodParameters) {
-										if(nMethodParameters >= 1) {
-											fqmn += ", ";
-										}
-										fqmn += mp.getName();
-										nMethodParameters++;
+		// The CHUID signer is resolved from the card before its containers are read, so the tests
+		// can run in any order in a single pass
+		GuiTestCaseTreeNode curr = (GuiTestCaseTreeNode) root.getFirstChild();
+
+		while(curr != null) {
+			TestCaseModel testCase = curr.getTestCase();
+			// Test categories don't need to be processed
+			boolean runTest = !testCase.getTestStatus().equals(TestStatus.TESTCATEGORY);
+			if (runTest) {
+				LauncherDiscoveryRequestBuilder suiteBuilder = LauncherDiscoveryRequestBuilder.request();
+				List<DiscoverySelector> discoverySelectors = new ArrayList<>();
+				List<TestStepModel> steps = testCase.getSteps();
+				for(TestStepModel currentStep : steps) {
+					atomCount++;
+					Class<?> testClass = null;
+					String className = currentStep.getTestClassName();
+					String methodName = currentStep.getTestMethodName();
+					List<String> parameters = currentStep.getParameters();
+					String fqmn = className;
+					try {
+						testClass = Class.forName(className);
+						for(Method m : testClass.getDeclaredMethods()) {
+							if(m.getName().contentEquals(methodName)) {
+								fqmn += "#" + m.getName() + "(";
+								Class<?>[] methodParameters = m.getParameterTypes();
+								int nMethodParameters = 0;
+								for(Class<?> mp : methodParameters) {
+									if(nMethodParameters >= 1) {
+										fqmn += ", ";
 									}
-									fqmn += ")";
+									fqmn += mp.getName();
+									nMethodParameters++;
 								}
-
+								fqmn += ")";
 							}
 
-							if(fqmn == className) {
-								String errorMessage = "Test " + testCase.getIdentifier() + " specifies a test atom " + className + "#" +
-										methodName + "()" + " but no such method could be found for the class " + className + "." +
-										" (Test atom: " + currentStep.getTestDescription() + ")" +
-										" Check that the database matches the included set of test atoms.";
-
-								s_logger.error(errorMessage);
-								
-								if (passes % 2 == 1) { // TODO: Fixme
-									try {
-										SwingUtilities.invokeAndWait(() -> {			
-											JOptionPane msgBox = new JOptionPane(errorMessage, JOptionPane.ERROR_MESSAGE);
-											JDialog dialog = msgBox.createDialog(GuiRunnerAppController.getInstance().getMainFrame(), "Error");
-											dialog.setAlwaysOnTop(true);
-											dialog.setVisible(true);
-										});
-									} catch (InvocationTargetException | InterruptedException e) {
-										s_logger.error("Unable to display error dialog.");
-									}
-								}
-								break;
-							} // End skipped test
-						} catch (ClassNotFoundException e) {
-							s_logger.error("Method {} was configured in the database but the method could not be found in code.", fqmn);
-							break;
 						}
 
-						if(className != null && !className.isEmpty() && testClass != null) {
-							s_logger.debug("Adding {} from config", fqmn);
-							discoverySelectors.add(selectMethod(fqmn));
-							ParameterProviderSingleton.getInstance().addNamedParameter(fqmn, parameters);
-							String containerName = testCase.getContainer();
-							if(containerName != null && !containerName.isEmpty()) {
-								ParameterProviderSingleton.getInstance().addContainer(fqmn, containerName);
+						if(fqmn == className) {
+							String errorMessage = "Test " + testCase.getIdentifier() + " specifies a test atom " + className + "#" +
+									methodName + "()" + " but no such method could be found for the class " + className + "." +
+									" (Test atom: " + currentStep.getTestDescription() + ")" +
+									" Check that the database matches the included set of test atoms.";
+
+							s_logger.error(errorMessage);
+							
+							try {
+								SwingUtilities.invokeAndWait(() -> {			
+									JOptionPane msgBox = new JOptionPane(errorMessage, JOptionPane.ERROR_MESSAGE);
+									JDialog dialog = msgBox.createDialog(GuiRunnerAppController.getInstance().getMainFrame(), "Error");
+									dialog.setAlwaysOnTop(true);
+									dialog.setVisible(true);
+								});
+							} catch (InvocationTargetException | InterruptedException e) {
+								s_logger.error("Unable to display error dialog.");
 							}
-							s_logger.debug("Added {} from config: {}", fqmn, parameters);
-						}
+							break;
+						} // End skipped test
+					} catch (ClassNotFoundException e) {
+						s_logger.error("Method {} was configured in the database but the method could not be found in code.", fqmn);
+						break;
+					}
 
+					if(className != null && !className.isEmpty() && testClass != null) {
+						s_logger.debug("Adding {} from config", fqmn);
+						discoverySelectors.add(selectMethod(fqmn));
+						ParameterProviderSingleton.getInstance().addNamedParameter(fqmn, parameters);
+						String containerName = testCase.getContainer();
+						if(containerName != null && !containerName.isEmpty()) {
+							ParameterProviderSingleton.getInstance().addContainer(fqmn, containerName);
+						}
+						s_logger.debug("Added {} from config: {}", fqmn, parameters);
 					}
-					suiteBuilder.selectors(discoverySelectors);
-					suiteBuilder.configurationParameter("TestCaseIdentifier", testCase.getIdentifier());
-					LauncherDiscoveryRequest ldr = suiteBuilder.build();
-					Launcher l = LauncherFactory.create();
-					guiListener.setTestCaseIdentifier(testCase.getIdentifier());
-					guiListener.setTestCaseDescription(testCase.getDescription());
-					guiListener.setTestCaseExpectedResult(testCase.getExpectedStatus() == 1);
-					List<TestExecutionListener> listeners = new ArrayList<TestExecutionListener>();
-					listeners.add(guiListener);
-					registerListeners(l, listeners);
-					
-					l.execute(ldr);
+
 				}
-				curr = (GuiTestCaseTreeNode) curr.getNextSibling();
+				suiteBuilder.selectors(discoverySelectors);
+				suiteBuilder.configurationParameter("TestCaseIdentifier", testCase.getIdentifier());
+				LauncherDiscoveryRequest ldr = suiteBuilder.build();
+				Launcher l = LauncherFactory.create();
+				guiListener.setTestCaseIdentifier(testCase.getIdentifier());
+				guiListener.setTestCaseDescription(testCase.getDescription());
+				guiListener.setTestCaseExpectedResult(testCase.getExpectedStatus() == 1);
+				List<TestExecutionListener> listeners = new ArrayList<TestExecutionListener>();
+				listeners.add(guiListener);
+				registerListeners(l, listeners);
+				
+				l.execute(ldr);
 			}
-		} while (++passes < 2); // End of CHUID priming workaround
+			curr = (GuiTestCaseTreeNode) curr.getNextSibling();
+		}
 
 
 		try {
@@ -274,6 +256,7 @@ public class GuiTestExecutionController {
 		s_logger.debug("tree count: {}", root.getChildCount() + root.getLeafCount() );
 		s_logger.debug("PCSC counters - connect() was called {} times, transmit() was called {} times",
 				pcsc.getConnectCount(), pcsc.getTransmitCount());
+		s_logger.info("{}", pcsc.getMetrics().getReport());
 
 		m_trlc.setTimeStamps(); // Sets the timestamp for all of the logger files
 		m_trlc.cleanup();
@@ -28,6 +28,7 @@ import gov.gsa.pivconformance.conformancelib.configuration.CardSettingsSingleton
 import gov.gsa.pivconformance.conformancelib.configuration.ConformanceTestDatabase;
 import gov.gsa.pivconformance.conformancelib.tests.ConformanceTestException;
 import gov.gsa.pivconformance.conformancelib.utilities.CardUtils;
+import gov.gsa.pivconformance.cardlib.card.client.APDULengthMode;
 import gov.gsa.pivconformance.cardlib.utils.PCSCUtils;
 
 import javax.swing.JTextField;
@@ -51,6 +52,7 @@ public class SimpleTestExecutionPanel extends JPanel {
 	
 	private JComboBox<String> m_readerComboBox;
 	private JPasswordField m_appPinField;
+	private JComboBox<APDULengthMode> m_lengthModeComboBox;
 	private JTextField m_databaseNameField;
 	private JTextField m_readerStatusField;
 	private JProgressBar m_testProgressBar;
@@ -88,6 +90,12 @@ public class SimpleTestExecutionPanel extends JPanel {
 		m_appPinField = new JPasswordField();
 		m_appPinField.setColumns(10);
 		
+		JLabel lblLengthMode = new JLabel("APDU Length");
+		
+		m_lengthModeComboBox = new JComboBox<APDULengthMode>(APDULengthMode.values());
+		m_lengthModeComboBox.setSelectedItem(APDULengthMode.AUTO);
+		m_lengthModeComboBox.setToolTipText("How to send GET DATA: AUTO uses extended length when the card and reader allow it");
+		
 		JLabel lblTestDatabase = new JLabel("Test Database");
 		
 		m_databaseNameField = new JTextField();
@@ -117,6 +125,7 @@ public class SimpleTestExecutionPanel extends JPanel {
 					CardSettingsSingleton css = CardSettingsSingleton.getInstance();
 					css.reset();
 					css.setReaderIndex(selected);
+					css.setLengthMode((APDULengthMode) m_lengthModeComboBox.getSelectedItem());
 					try {
 						CardUtils.setUpReaderInSingleton();
 					} catch (ConformanceTestException e1) {
@@ -240,6 +249,10 @@ public class SimpleTestExecutionPanel extends JPanel {
 									.addComponent(lblApplicationPin)
 									.addGap(425)
 									.addComponent(m_appPinField, 0, 0, Short.MAX_VALUE))
+								.addGroup(Alignment.LEADING, groupLayout.createSequentialGroup()
+									.addComponent(lblLengthMode)
+									.addGap(32)
+									.addComponent(m_lengthModeComboBox, GroupLayout.PREFERRED_SIZE, 507, GroupLayout.PREFERRED_SIZE))
 								.addGroup(Alignment.LEADING, groupLayout.createSequentialGroup()
 									.addComponent(lblCardReader)
 									.addGap(34)
@@ -290,6 +303,13 @@ public class SimpleTestExecutionPanel extends JPanel {
 						.addGroup(groupLayout.createSequentialGroup()
 							.addGap(20)
 							.addComponent(m_appPinField, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)))
+					.addGroup(groupLayout.createParallelGroup(Alignment.LEADING)
+						.addGroup(groupLayout.createSequentialGroup()
+							.addGap(23)
+							.addComponent(lblLengthMode))
+						.addGroup(groupLayout.createSequentialGroup()
+							.addGap(20)
+							.addComponent(m_lengthModeComboBox, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)))
 					.addGap(20)
 					.addGroup(groupLayout.createParallelGroup(Alignment.LEADING)
 						.addGroup(groupLayout.createSequentialGroup()